@@ -0,0 +1,30 @@
+#!/bin/bash
+# Builds and runs the JMH benchmarks with the allocation profiler.
+#   ./run-benchmarks.sh baseline [jmh-args]  records baseline/jmh-baseline.json
+#   ./run-benchmarks.sh check [jmh-args]     runs again and compares against the baseline
+set -e
+cd "$(dirname "$0")"
+
+MODE=${1:-check}
+shift || true
+
+(cd .. && mvn -B -q install -DskipTests)
+mvn -B -q package
+
+mkdir -p baseline target
+if [ "$MODE" = "baseline" ]; then
+    OUTPUT=baseline/jmh-baseline.json
+else
+    OUTPUT=target/jmh-current.json
+fi
+
+java -jar target/benchmarks.jar -prof gc -rf json -rff "$OUTPUT" "$@"
+
+if [ "$MODE" != "baseline" ]; then
+    if [ ! -f baseline/jmh-baseline.json ]; then
+        echo "No baseline yet: run ./run-benchmarks.sh baseline first"
+        exit 1
+    fi
+    java -cp target/benchmarks.jar ma.ensasafi.jdocker.benchmarks.BaselineCheck \
+        baseline/jmh-baseline.json "$OUTPUT" "${TOLERANCE:-10}"
+fi
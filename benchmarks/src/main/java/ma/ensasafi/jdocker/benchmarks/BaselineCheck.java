@@ -0,0 +1,109 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Compares two JMH JSON result files (-rf json) and fails when a benchmark got slower,
+ * or allocates more per operation, than the tolerance allows.
+ * Usage: BaselineCheck <baseline.json> <current.json> [tolerance-percent]
+ */
+public class BaselineCheck {
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCheck <baseline.json> <current.json> [tolerance-percent]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.10;
+
+        Map<String, Result> baseline = load(args[0]);
+        Map<String, Result> current = load(args[1]);
+
+        int regressions = 0;
+        System.out.println(String.format("%-70s %14s %14s %8s %12s %12s %8s",
+                "BENCHMARK", "BASE", "NOW", "DIFF", "BASE B/op", "NOW B/op", "DIFF"));
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result base = baseline.get(entry.getKey());
+            if (base == null) {
+                System.out.println(String.format("%-70s %14s %14.3f", entry.getKey(), "new", now.score));
+                continue;
+            }
+
+            // Throughput modes are better when higher, time modes when lower
+            double timeChange = now.higherIsBetter ? base.score / now.score - 1 : now.score / base.score - 1;
+            double allocationChange = base.bytesPerOp > 0 ? now.bytesPerOp / base.bytesPerOp - 1 : 0;
+            boolean regressed = timeChange > tolerance || allocationChange > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.println(String.format("%-70s %14.3f %14.3f %+7.1f%% %12.0f %12.0f %+7.1f%%%s",
+                    entry.getKey(), base.score, now.score, timeChange * 100,
+                    base.bytesPerOp, now.bytesPerOp, allocationChange * 100, regressed ? "  ✗" : ""));
+        }
+
+        if (regressions > 0) {
+            System.out.println("\n✗ " + regressions + " benchmark(s) regressed by more than "
+                    + Math.round(tolerance * 100) + "%");
+            System.exit(1);
+        }
+        System.out.println("\n✓ No regression beyond " + Math.round(tolerance * 100) + "%");
+    }
+
+    private static Map<String, Result> load(String path) throws IOException {
+        JsonArray runs;
+        try (Reader reader = Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8)) {
+            runs = new Gson().fromJson(reader, JsonArray.class);
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonElement element : runs) {
+            JsonObject run = element.getAsJsonObject();
+            String name = run.get("benchmark").getAsString();
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+            // Params are sorted so the key does not depend on JMH's output order
+            if (run.has("params")) {
+                Map<String, String> params = new TreeMap<>();
+                for (Map.Entry<String, JsonElement> param : run.getAsJsonObject("params").entrySet()) {
+                    params.put(param.getKey(), param.getValue().getAsString());
+                }
+                name = name + params;
+            }
+
+            Result result = new Result();
+            result.score = run.getAsJsonObject("primaryMetric").get("score").getAsDouble();
+            result.higherIsBetter = "thrpt".equals(run.get("mode").getAsString());
+            if (run.has("secondaryMetrics")) {
+                for (Map.Entry<String, JsonElement> metric : run.getAsJsonObject("secondaryMetrics").entrySet()) {
+                    // Older JMH versions prefix profiler metrics with a middle dot
+                    if (metric.getKey().replace("·", "").equals(ALLOCATION_METRIC)) {
+                        result.bytesPerOp = metric.getValue().getAsJsonObject().get("score").getAsDouble();
+                    }
+                }
+            }
+            results.put(name, result);
+        }
+        return results;
+    }
+
+    private static class Result {
+        private double score;
+        private boolean higherIsBetter;
+        private double bytesPerOp;
+    }
+}
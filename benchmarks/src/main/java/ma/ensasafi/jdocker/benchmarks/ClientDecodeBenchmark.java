@@ -0,0 +1,62 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.protocol.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Client-side decode of a LIST_CONTAINERS reply line.
+ * listContainersRoundTrip is what DockerClient.handleListContainers does today: parse the line into
+ * a Response whose data is a tree of maps, print that tree back to JSON, then parse it again.
+ * listContainersDirect parses once and binds the data element straight to ContainerInfo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientDecodeBenchmark {
+    private static final Type CONTAINER_LIST = new TypeToken<List<ContainerInfo>>(){}.getType();
+
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private Gson gson;
+    private String responseLine;
+
+    @Setup
+    public void setup() {
+        gson = new Gson();
+        responseLine = gson.toJson(Response.success("Containers retrieved successfully", Payloads.containers(size)));
+    }
+
+    @Benchmark
+    public List<ContainerInfo> listContainersRoundTrip() {
+        Response response = gson.fromJson(responseLine, Response.class);
+        return gson.fromJson(gson.toJson(response.getData()), CONTAINER_LIST);
+    }
+
+    @Benchmark
+    public List<ContainerInfo> listContainersDirect() {
+        JsonObject response = gson.fromJson(responseLine, JsonObject.class);
+        return gson.fromJson(response.get("data"), CONTAINER_LIST);
+    }
+}
@@ -0,0 +1,115 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import com.google.gson.Gson;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.server.ClientSession;
+import ma.ensasafi.jdocker.server.CommandDispatcher;
+import ma.ensasafi.jdocker.server.DockerManager;
+import ma.ensasafi.jdocker.server.ServerConfig;
+import ma.ensasafi.jdocker.server.SimulatedEngine;
+import ma.ensasafi.jdocker.server.SimulationProfile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Server-side handling of one command against the simulated engine with zero latency,
+ * so only the protocol layer is measured: the dispatcher alone, then a whole JSON line
+ * through ClientSession (parse, dispatch, serialize) as a connection would see it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"100", "5000"})
+    public int containers;
+
+    private DockerManager dockerManager;
+    private CommandDispatcher dispatcher;
+    private Command ping;
+    private Command listAll;
+    private Command status;
+    private String listAllLine;
+    private String pingLine;
+
+    @Setup
+    public void setup() {
+        SimulationProfile profile = new SimulationProfile();
+        profile.setContainers(containers);
+        dockerManager = new DockerManager(new SimulatedEngine(profile), new ServerConfig());
+        dispatcher = new CommandDispatcher(dockerManager);
+
+        ping = new Command(CommandType.PING, null);
+        listAll = new Command(CommandType.LIST_CONTAINERS, Map.of("all", "true"));
+        String someId = dockerManager.listContainers(true).get(0).getId();
+        status = new Command(CommandType.CONTAINER_STATUS, Map.of("id", someId.substring(0, 12)));
+
+        Gson gson = new Gson();
+        pingLine = gson.toJson(ping);
+        listAllLine = gson.toJson(listAll);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dockerManager.close();
+    }
+
+    @Benchmark
+    public Response dispatchPing() {
+        return dispatcher.handleCommand(ping);
+    }
+
+    @Benchmark
+    public Response dispatchListContainers() {
+        return dispatcher.handleCommand(listAll);
+    }
+
+    @Benchmark
+    public Response dispatchContainerStatus() {
+        return dispatcher.handleCommand(status);
+    }
+
+    @Benchmark
+    public String sessionPing(SessionState session) throws IOException {
+        session.session.onMessage(pingLine);
+        return session.written;
+    }
+
+    @Benchmark
+    public String sessionListContainers(SessionState session) throws IOException {
+        session.session.onMessage(listAllLine);
+        return session.written;
+    }
+
+    // One lock-step session per benchmark thread; its sink serializes like ClientHandler does
+    @State(Scope.Thread)
+    public static class SessionState {
+        private ClientSession session;
+        private String written;
+
+        @Setup
+        public void setup(DispatchBenchmark benchmark) {
+            Gson gson = new Gson();
+            session = new ClientSession("bench", benchmark.dispatcher,
+                    (response, format, compressor) -> written = gson.toJson(response), Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic listings shaped like what the daemon returns, so runs stay comparable
+final class Payloads {
+    private static final String[] STATES = {"running", "running", "exited", "created"};
+
+    private Payloads() {}
+
+    static List<ContainerInfo> containers(int count) {
+        Random random = new Random(42);
+        List<ContainerInfo> containers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String state = STATES[random.nextInt(STATES.length)];
+            containers.add(new ContainerInfo(
+                    hex(random, 64),
+                    String.format("service-%05d", i),
+                    "registry.example.com/team/app-" + (i % 40) + ":1." + (i % 7),
+                    state,
+                    "running".equals(state) ? "Up " + (1 + random.nextInt(59)) + " minutes" : "Exited (0) 2 hours ago",
+                    1_700_000_000L + random.nextInt(10_000_000)
+            ));
+        }
+        return containers;
+    }
+
+    static List<ImageInfo> images(int count) {
+        Random random = new Random(7);
+        List<ImageInfo> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(new ImageInfo(
+                    hex(random, 64),
+                    "registry.example.com/team/app-" + i,
+                    "1." + (i % 7),
+                    5_000_000L + random.nextInt(900_000_000),
+                    1_700_000_000L + random.nextInt(10_000_000)
+            ));
+        }
+        return images;
+    }
+
+    private static String hex(Random random, int length) {
+        StringBuilder hex = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hex.toString();
+    }
+}
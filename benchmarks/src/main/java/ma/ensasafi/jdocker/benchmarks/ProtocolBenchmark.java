@@ -0,0 +1,149 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import com.google.gson.Gson;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Wire encoding of commands and of listing responses, JSON lines against binary frames
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtocolBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int size;
+
+    private Gson gson;
+    private Command command;
+    private String commandJson;
+    private byte[] commandFrame;
+    private Response containersResponse;
+    private Response imagesResponse;
+    private String containersJson;
+    private String imagesJson;
+    private byte[] containersFrame;
+    private byte[] imagesJsonBytes;
+    private Compression.Compressor compressor;
+    private byte[] imagesCompressedFrame;
+
+    @Setup
+    public void setup() {
+        gson = new Gson();
+        command = new Command(CommandType.LIST_CONTAINERS, Map.of("all", "true"));
+        command.setRequestId("42");
+        commandJson = gson.toJson(command);
+        commandFrame = payload(BinaryCodec.encodeCommandFrame(command));
+
+        containersResponse = Response.success("Containers retrieved successfully", Payloads.containers(size));
+        imagesResponse = Response.success("Images retrieved successfully", Payloads.images(size));
+        containersJson = gson.toJson(containersResponse);
+        imagesJson = gson.toJson(imagesResponse);
+        containersFrame = payload(BinaryCodec.encodeResponseFrame(containersResponse));
+
+        imagesJsonBytes = imagesJson.getBytes(StandardCharsets.UTF_8);
+        compressor = new Compression.Compressor(Compression.DEFAULT_THRESHOLD);
+        imagesCompressedFrame = compressor.encodeFrame(imagesJsonBytes, 0, imagesJsonBytes.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        compressor.close();
+    }
+
+    @Benchmark
+    public String encodeCommandJson() {
+        return gson.toJson(command);
+    }
+
+    @Benchmark
+    public Command decodeCommandJson() {
+        return gson.fromJson(commandJson, Command.class);
+    }
+
+    @Benchmark
+    public byte[] encodeCommandBinary() {
+        return BinaryCodec.encodeCommandFrame(command);
+    }
+
+    @Benchmark
+    public Command decodeCommandBinary() {
+        return BinaryCodec.decodeCommand(commandFrame);
+    }
+
+    @Benchmark
+    public String encodeContainersJson() {
+        return gson.toJson(containersResponse);
+    }
+
+    @Benchmark
+    public Response decodeContainersJson() {
+        return gson.fromJson(containersJson, Response.class);
+    }
+
+    @Benchmark
+    public String encodeImagesJson() {
+        return gson.toJson(imagesResponse);
+    }
+
+    @Benchmark
+    public Response decodeImagesJson() {
+        return gson.fromJson(imagesJson, Response.class);
+    }
+
+    @Benchmark
+    public byte[] encodeContainersBinary() {
+        return BinaryCodec.encodeResponseFrame(containersResponse);
+    }
+
+    @Benchmark
+    public Response decodeContainersBinary() {
+        return BinaryCodec.decodeResponse(containersFrame);
+    }
+
+    // What a connection that negotiated compression pays on top of encodeImagesJson
+    @Benchmark
+    public byte[] compressImagesJson() {
+        return compressor.encodeFrame(imagesJsonBytes, 0, imagesJsonBytes.length);
+    }
+
+    @Benchmark
+    public byte[] decompressImagesJson() throws IOException {
+        Compression.Decompressor decompressor = new Compression.Decompressor();
+        try {
+            return decompressor.readFrame(new DataInputStream(new ByteArrayInputStream(imagesCompressedFrame)),
+                    BinaryCodec.MAX_RESPONSE_FRAME);
+        } finally {
+            decompressor.close();
+        }
+    }
+
+    // Frames carry a 4-byte length the decoders do not expect
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, 4, frame.length);
+    }
+}
@@ -0,0 +1,114 @@
+package ma.ensasafi.jdocker.benchmarks;
+
+import ma.ensasafi.jdocker.client.PipelinedConnection;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+import ma.ensasafi.jdocker.server.CommandDispatcher;
+import ma.ensasafi.jdocker.server.ConnectionEngine;
+import ma.ensasafi.jdocker.server.ConnectionEngineType;
+import ma.ensasafi.jdocker.server.DockerManager;
+import ma.ensasafi.jdocker.server.NioConnectionEngine;
+import ma.ensasafi.jdocker.server.ServerConfig;
+import ma.ensasafi.jdocker.server.SimulatedEngine;
+import ma.ensasafi.jdocker.server.SocketConnectionEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One command at a time from a client on the server's host, over TCP loopback or over the server's
+ * Unix domain socket. A real server runs in-process against the simulated engine with zero latency,
+ * so the difference between the two transports is what the socket layer costs per round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    @Param({"THREAD", "NIO"})
+    public ConnectionEngineType engine;
+
+    private Path socketDirectory;
+    private DockerManager dockerManager;
+    private ConnectionEngine server;
+    private PipelinedConnection connection;
+    private Command ping;
+    private Command listAll;
+
+    @Setup
+    public void setup() throws IOException {
+        socketDirectory = Files.createTempDirectory("jdocker-bench");
+        ServerConfig config = new ServerConfig(freePort());
+        config.setUnixSocket(socketDirectory.resolve("server.sock"));
+        config.setEngine(engine);
+        config.getSimulation().setContainers(100);
+
+        dockerManager = new DockerManager(new SimulatedEngine(config.getSimulation()), config);
+        CommandDispatcher dispatcher = new CommandDispatcher(dockerManager);
+        server = engine == ConnectionEngineType.NIO
+                ? new NioConnectionEngine(config, dispatcher)
+                : new SocketConnectionEngine(config, dispatcher);
+        Thread acceptor = new Thread(server::start, "bench-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        SocketAddress address = transport.equals("unix")
+                ? UnixSockets.address(config.getUnixSocket().toString())
+                : new InetSocketAddress("localhost", config.getPort());
+        connection = new PipelinedConnection(address, WireFormat.BINARY, 0, false);
+
+        ping = new Command(CommandType.PING, null);
+        listAll = new Command(CommandType.LIST_CONTAINERS, Map.of("all", "true"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        connection.close();
+        server.shutdown();
+        dockerManager.close();
+        Files.deleteIfExists(socketDirectory.resolve("server.sock"));
+        Files.deleteIfExists(socketDirectory);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            return probe.getLocalPort();
+        }
+    }
+
+    @Benchmark
+    public Response ping() {
+        return connection.send(ping).join();
+    }
+
+    @Benchmark
+    public Response listAllContainers() {
+        return connection.send(listAll).join();
+    }
+}
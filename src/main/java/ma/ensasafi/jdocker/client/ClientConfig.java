@@ -0,0 +1,124 @@
+package ma.ensasafi.jdocker.client;
+
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ClientConfig {
+    public static final int DEFAULT_PORT = 9999;
+
+    private List<SocketAddress> servers = new ArrayList<>();
+    private int connectionsPerServer = 2;
+    private WireFormat format = WireFormat.JSON_LINES;
+    private boolean compression;
+    private Duration connectTimeout = Duration.ofSeconds(5);
+    private Duration timeout = Duration.ofSeconds(30);
+    private Duration pullTimeout = Duration.ofMinutes(30);
+    private Duration reconnectDelay = Duration.ofMillis(100);
+    private Duration maxReconnectDelay = Duration.ofSeconds(10);
+    private int busyRetries = 3;
+
+    public ClientConfig() {}
+
+    public ClientConfig(String host, int port) {
+        addServer(host, port);
+    }
+
+    // Commands are spread over every server added; each gets its own connections
+    public ClientConfig addServer(String host, int port) {
+        servers.add(InetSocketAddress.createUnresolved(host, port));
+        return this;
+    }
+
+    // A server on this host, through the Unix domain socket it was started with (--unix-socket)
+    public ClientConfig addUnixSocket(String path) {
+        servers.add(UnixSockets.address(path));
+        return this;
+    }
+
+    public List<SocketAddress> getServers() {
+        return servers;
+    }
+
+    public int getConnectionsPerServer() {
+        return connectionsPerServer;
+    }
+
+    public void setConnectionsPerServer(int connectionsPerServer) {
+        this.connectionsPerServer = connectionsPerServer;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    // Asks servers to deflate large responses; servers that do not know the option answer uncompressed
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    // Default deadline of a call, from submission to its final response
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    // Pulls that stream progress run for minutes, so they get their own deadline
+    public Duration getPullTimeout() {
+        return pullTimeout;
+    }
+
+    public void setPullTimeout(Duration pullTimeout) {
+        this.pullTimeout = pullTimeout;
+    }
+
+    // First wait before reconnecting to a server that failed; doubles on each failure up to the maximum
+    public Duration getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    public void setReconnectDelay(Duration reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    public Duration getMaxReconnectDelay() {
+        return maxReconnectDelay;
+    }
+
+    public void setMaxReconnectDelay(Duration maxReconnectDelay) {
+        this.maxReconnectDelay = maxReconnectDelay;
+    }
+
+    // Times a command answered "busy, retry after" is sent again before the busy answer is returned
+    public int getBusyRetries() {
+        return busyRetries;
+    }
+
+    public void setBusyRetries(int busyRetries) {
+        this.busyRetries = busyRetries;
+    }
+}
@@ -0,0 +1,19 @@
+package ma.ensasafi.jdocker.client;
+
+import ma.ensasafi.jdocker.protocol.Response;
+
+// The server answered, but with success=false; the message is the server's
+public class CommandFailedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Response response;
+
+    public CommandFailedException(Response response) {
+        super(response.getMessage());
+        this.response = response;
+    }
+
+    public Response getResponse() {
+        return response;
+    }
+}
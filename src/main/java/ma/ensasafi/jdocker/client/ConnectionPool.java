@@ -0,0 +1,193 @@
+package ma.ensasafi.jdocker.client;
+
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Fixed set of pipelined connections to one or more servers, handed out round-robin.
+ * Slots connect lazily and reconnect on the next acquire once their connection dropped.
+ * A server that refuses connections is skipped for a backoff delay that doubles per failure.
+ */
+class ConnectionPool implements Closeable {
+    private final ClientConfig config;
+    private final List<Slot> slots = new ArrayList<>();
+    private final ExecutorService connector;
+    // Where the connections complete their futures: callers' stages may block, so it grows as needed
+    private final ExecutorService completions;
+    private int next;
+    private boolean closed;
+
+    ConnectionPool(ClientConfig config) {
+        if (config.getServers().isEmpty()) {
+            throw new IllegalArgumentException("At least one server is required");
+        }
+        this.config = config;
+
+        for (SocketAddress address : config.getServers()) {
+            Endpoint endpoint = new Endpoint(address);
+            for (int i = 0; i < Math.max(1, config.getConnectionsPerServer()); i++) {
+                slots.add(new Slot(endpoint));
+            }
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        this.connector = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "jdocker-connect-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger completers = new AtomicInteger();
+        this.completions = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "jdocker-complete-" + completers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    synchronized CompletableFuture<PipelinedConnection> acquire() {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Client closed"));
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < slots.size(); i++) {
+            Slot slot = slots.get(next);
+            next = (next + 1) % slots.size();
+
+            if (slot.isUsable()) {
+                return slot.connection;
+            }
+            if (now - slot.endpoint.retryAt < 0) {
+                continue;
+            }
+            slot.connection = connect(slot.endpoint);
+            return slot.connection;
+        }
+
+        // Every server is backing off: report why the most recent attempt failed
+        Endpoint last = slots.get(0).endpoint;
+        for (Slot slot : slots) {
+            if (slot.endpoint.retryAt - last.retryAt > 0) {
+                last = slot.endpoint;
+            }
+        }
+        return CompletableFuture.failedFuture(new IOException("No server reachable, last error from "
+                + describe(last.address) + ": " + last.lastError));
+    }
+
+    private CompletableFuture<PipelinedConnection> connect(Endpoint endpoint) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return new PipelinedConnection(endpoint.address, config.getFormat(),
+                        (int) config.getConnectTimeout().toMillis(), config.isCompression(), completions);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, connector).handle((connection, error) -> {
+            synchronized (this) {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    if (cause instanceof UncheckedIOException) {
+                        cause = cause.getCause();
+                    }
+                    endpoint.failed(cause);
+                    throw new CompletionException(cause);
+                }
+                endpoint.failures = 0;
+                if (closed) {
+                    closeQuietly(connection);
+                    throw new CompletionException(new IOException("Client closed"));
+                }
+                return connection;
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        List<CompletableFuture<PipelinedConnection>> open = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Slot slot : slots) {
+                if (slot.connection != null) {
+                    open.add(slot.connection);
+                }
+            }
+        }
+
+        for (CompletableFuture<PipelinedConnection> connection : open) {
+            connection.thenAccept(ConnectionPool::closeQuietly);
+        }
+        connector.shutdown();
+        completions.shutdown();
+    }
+
+    static String describe(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            InetSocketAddress inet = (InetSocketAddress) address;
+            return inet.getHostString() + ":" + inet.getPort();
+        }
+        return UnixSockets.SCHEME + address;
+    }
+
+    private static void closeQuietly(PipelinedConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    private class Endpoint {
+        private final SocketAddress address;
+        private int failures;
+        private long retryAt = System.nanoTime();
+        private String lastError;
+
+        Endpoint(SocketAddress address) {
+            this.address = address;
+        }
+
+        void failed(Throwable cause) {
+            long delay = config.getReconnectDelay().toNanos() << Math.min(failures, 20);
+            failures++;
+            retryAt = System.nanoTime() + Math.min(delay, config.getMaxReconnectDelay().toNanos());
+            lastError = cause.getMessage();
+        }
+    }
+
+    private static class Slot {
+        private final Endpoint endpoint;
+        private CompletableFuture<PipelinedConnection> connection;
+
+        Slot(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        // Still connecting counts as usable: callers queue behind the same attempt
+        boolean isUsable() {
+            if (connection == null) {
+                return false;
+            }
+            if (!connection.isDone()) {
+                return true;
+            }
+            return !connection.isCompletedExceptionally() && connection.join().isOpen();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ma.ensasafi.jdocker.client;
+
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.protocol.ContainerDelta;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Local copy of a server's container list, kept current with delta listings: each refresh
+ * fetches only what changed since the previous one. Meant for pollers such as dashboards.
+ * Overlapping refreshes are safe; a delta computed against a version the mirror has
+ * already moved past is discarded.
+ */
+public class ContainerMirror {
+    private final JDockerClient client;
+    private final boolean all;
+    private final Map<String, ContainerInfo> containers = new HashMap<>();
+    private String epoch;
+    private long version = -1;
+
+    public ContainerMirror(JDockerClient client, boolean all) {
+        this.client = client;
+        this.all = all;
+    }
+
+    // Completes with the containers as of the server's latest version, newest first
+    public CompletableFuture<List<ContainerInfo>> refresh() {
+        String sinceEpoch;
+        long since;
+        synchronized (this) {
+            sinceEpoch = epoch;
+            since = Math.max(version, 0);
+        }
+
+        return client.listContainerChanges(all, since, sinceEpoch).thenApply(delta -> {
+            synchronized (this) {
+                apply(delta, since);
+                return snapshot();
+            }
+        });
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private void apply(ContainerDelta delta, long since) {
+        if (delta.isFull()) {
+            if (delta.getEpoch() != null && delta.getEpoch().equals(epoch) && delta.getVersion() < version) {
+                return;
+            }
+            containers.clear();
+        } else if (since != version || !delta.getEpoch().equals(epoch)) {
+            return;
+        }
+
+        for (String containerId : delta.getRemoved()) {
+            containers.remove(containerId);
+        }
+        for (ContainerInfo container : delta.getContainers()) {
+            containers.put(container.getId(), container);
+        }
+        epoch = delta.getEpoch();
+        version = delta.getVersion();
+    }
+
+    private List<ContainerInfo> snapshot() {
+        List<ContainerInfo> list = new ArrayList<>(containers.values());
+        list.sort(Comparator.comparing(ContainerInfo::getCreated, Comparator.nullsLast(Comparator.reverseOrder())));
+        return list;
+    }
+}
@@ -0,0 +1,115 @@
+package ma.ensasafi.jdocker.client;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Filters, fields and page of a container listing; the server applies them, nothing is filtered here
+public class ContainerQuery {
+    private boolean all;
+    private List<String> states = new ArrayList<>();
+    private String namePrefix;
+    private String imagePrefix;
+    private List<String> labels = new ArrayList<>();
+    private Instant createdAfter;
+    private List<String> fields = new ArrayList<>();
+    private int limit;
+    private String cursor;
+
+    public ContainerQuery() {}
+
+    // Running containers only unless all() or a state is given
+    public static ContainerQuery running() {
+        return new ContainerQuery();
+    }
+
+    public static ContainerQuery allContainers() {
+        return new ContainerQuery().all();
+    }
+
+    public ContainerQuery all() {
+        this.all = true;
+        return this;
+    }
+
+    // "running", "exited", "created"...; several states match any of them
+    public ContainerQuery state(String... states) {
+        this.states.addAll(Arrays.asList(states));
+        return this;
+    }
+
+    public ContainerQuery namePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+        return this;
+    }
+
+    public ContainerQuery imagePrefix(String imagePrefix) {
+        this.imagePrefix = imagePrefix;
+        return this;
+    }
+
+    // label is "key=value" or just "key"; every label must match
+    public ContainerQuery label(String label) {
+        labels.add(label);
+        return this;
+    }
+
+    public ContainerQuery createdAfter(Instant createdAfter) {
+        this.createdAfter = createdAfter;
+        return this;
+    }
+
+    // Fields left out come back null: id, name, image, state, status, created
+    public ContainerQuery fields(String... fields) {
+        this.fields.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    public ContainerQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    // The nextCursor of the previous page, with the same filters
+    public ContainerQuery after(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    boolean isPaged() {
+        return limit > 0 || cursor != null;
+    }
+
+    Map<String, String> toParameters() {
+        Map<String, String> params = new HashMap<>();
+        params.put("all", String.valueOf(all));
+        if (!states.isEmpty()) {
+            params.put("state", String.join(",", states));
+        }
+        if (namePrefix != null) {
+            params.put("name", namePrefix);
+        }
+        if (imagePrefix != null) {
+            params.put("image", imagePrefix);
+        }
+        if (!labels.isEmpty()) {
+            params.put("label", String.join(",", labels));
+        }
+        if (createdAfter != null) {
+            params.put("createdAfter", String.valueOf(createdAfter.getEpochSecond()));
+        }
+        if (!fields.isEmpty()) {
+            params.put("fields", String.join(",", fields));
+        }
+        if (limit > 0) {
+            params.put("limit", String.valueOf(limit));
+        }
+        if (cursor != null) {
+            params.put("cursor", cursor);
+        }
+        return params;
+    }
+}
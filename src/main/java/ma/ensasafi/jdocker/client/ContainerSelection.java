@@ -0,0 +1,74 @@
+package ma.ensasafi.jdocker.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Targets of a bulk start/stop/delete: explicit IDs, or label and name selectors resolved by the server
+public class ContainerSelection {
+    private List<String> ids = new ArrayList<>();
+    private List<String> labels = new ArrayList<>();
+    private String name;
+    private int concurrency;
+
+    public ContainerSelection() {}
+
+    public static ContainerSelection ids(String... ids) {
+        return ids(Arrays.asList(ids));
+    }
+
+    public static ContainerSelection ids(List<String> ids) {
+        ContainerSelection selection = new ContainerSelection();
+        selection.ids.addAll(ids);
+        return selection;
+    }
+
+    // label is "key=value" or just "key"
+    public static ContainerSelection label(String label) {
+        return new ContainerSelection().andLabel(label);
+    }
+
+    public static ContainerSelection name(String name) {
+        return new ContainerSelection().andName(name);
+    }
+
+    public ContainerSelection andId(String id) {
+        ids.add(id);
+        return this;
+    }
+
+    public ContainerSelection andLabel(String label) {
+        labels.add(label);
+        return this;
+    }
+
+    public ContainerSelection andName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    // 0 leaves the server default
+    public ContainerSelection concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    Map<String, String> toParameters() {
+        Map<String, String> params = new HashMap<>();
+        if (!ids.isEmpty()) {
+            params.put("ids", String.join(",", ids));
+        }
+        if (!labels.isEmpty()) {
+            params.put("label", String.join(",", labels));
+        }
+        if (name != null) {
+            params.put("name", name);
+        }
+        if (concurrency > 0) {
+            params.put("concurrency", String.valueOf(concurrency));
+        }
+        return params;
+    }
+}
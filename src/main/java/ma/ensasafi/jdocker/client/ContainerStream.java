@@ -0,0 +1,284 @@
+package ma.ensasafi.jdocker.client;
+
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Output, and stdin for interactive execs, of a CONTAINER_LOGS or EXEC command running on a pipelined
+ * connection. The server sends no more than window bytes ahead of what stdout and stderr have been
+ * read, so a reader that falls behind slows its own stream only. Chunks are kept as the connection
+ * read them, without copying. Both outputs share the window: read the one you do not need too.
+ */
+public class ContainerStream implements Closeable {
+    private final long id;
+    private final PipelinedConnection connection;
+    private final int window;
+    private final Output stdout;
+    private final Output stderr;
+    private final Stdin stdin;
+    private final CompletableFuture<Response> completion;
+    // Output read since the last CREDIT frame; guarded by this stream
+    private long consumed;
+
+    ContainerStream(long id, PipelinedConnection connection, int window, boolean interactive) {
+        this.id = id;
+        this.connection = connection;
+        this.window = window;
+        this.stdout = new Output();
+        this.stderr = new Output();
+        this.stdin = interactive ? new Stdin() : null;
+        this.completion = new CompletableFuture<>();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // Stdout, or everything when the exec runs with a tty
+    public InputStream getStdout() {
+        return stdout;
+    }
+
+    public InputStream getStderr() {
+        return stderr;
+    }
+
+    // Null unless the stream was opened interactive; closing it sends EOF
+    public OutputStream getStdin() {
+        return stdin;
+    }
+
+    // The command's final response, once the stream has ended
+    public CompletableFuture<Response> getCompletion() {
+        return completion;
+    }
+
+    // Exit code of a finished exec, null for logs or while the process runs
+    public CompletableFuture<Long> exitCode() {
+        return completion.thenApply(response -> {
+            if (!response.isSuccess()) {
+                throw new CommandFailedException(response);
+            }
+            if (response.getData() instanceof Map) {
+                Object code = ((Map<?, ?>) response.getData()).get("exitCode");
+                if (code instanceof Number) {
+                    return ((Number) code).longValue();
+                }
+            }
+            return null;
+        });
+    }
+
+    // Stops the stream on the server; its output so far can still be read
+    @Override
+    public void close() {
+        if (completion.isDone()) {
+            return;
+        }
+        try {
+            connection.sendStreamFrame(BinaryCodec.encodeStreamFrame(id, StreamFrame.CANCEL));
+        } catch (IOException e) {
+            // The connection is gone, and the command with it
+        }
+    }
+
+    // Called on the connection's reader
+    void received(StreamFrame frame) {
+        switch (frame.getKind()) {
+            case StreamFrame.STDOUT:
+                stdout.offer(frame);
+                break;
+            case StreamFrame.STDERR:
+                stderr.offer(frame);
+                break;
+            case StreamFrame.CREDIT:
+                if (stdin != null) {
+                    stdin.grant(frame.getCredit());
+                }
+                break;
+            default:
+                // Input kinds only travel to the server
+        }
+    }
+
+    // The command answered or the connection failed: nothing more will arrive
+    void finish(Response response, Throwable error) {
+        stdout.end();
+        stderr.end();
+        if (stdin != null) {
+            stdin.end();
+        }
+        if (error != null) {
+            completion.completeExceptionally(error);
+        } else {
+            completion.complete(response);
+        }
+    }
+
+    // Gives back a quarter of the window at a time, so the server rarely waits on a full one
+    private void consumed(int bytes) {
+        long credit = 0;
+        synchronized (this) {
+            consumed += bytes;
+            if (consumed >= Math.max(1, window / 4)) {
+                credit = consumed;
+                consumed = 0;
+            }
+        }
+        if (credit > 0 && !completion.isDone()) {
+            try {
+                connection.sendStreamFrame(BinaryCodec.encodeStreamCredit(id, credit));
+            } catch (IOException e) {
+                // The reader fails the stream along with the connection
+            }
+        }
+    }
+
+    private final class Output extends InputStream {
+        private final ArrayDeque<StreamFrame> chunks = new ArrayDeque<>();
+        private int position;
+        private boolean ended;
+
+        synchronized void offer(StreamFrame frame) {
+            if (frame.getLength() > 0) {
+                chunks.add(frame);
+                notifyAll();
+            }
+        }
+
+        synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int read;
+            synchronized (this) {
+                while (chunks.isEmpty() && !ended) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while reading the stream");
+                    }
+                }
+                StreamFrame chunk = chunks.peek();
+                if (chunk == null) {
+                    return -1;
+                }
+                read = Math.min(length, chunk.getLength() - position);
+                System.arraycopy(chunk.getBuffer(), chunk.getOffset() + position, buffer, offset, read);
+                position += read;
+                if (position == chunk.getLength()) {
+                    chunks.poll();
+                    position = 0;
+                }
+            }
+            consumed(read);
+            return read;
+        }
+
+        @Override
+        public synchronized int available() {
+            StreamFrame chunk = chunks.peek();
+            return chunk == null ? 0 : chunk.getLength() - position;
+        }
+    }
+
+    // Writes wait for stdin credit from the server, which is the room left in its stdin buffer
+    private final class Stdin extends OutputStream {
+        private long credit;
+        private boolean opened;
+        private boolean ended;
+        private boolean closed;
+
+        synchronized void grant(long bytes) {
+            credit += bytes;
+            opened = true;
+            notifyAll();
+        }
+
+        synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            while (length > 0) {
+                int chunk = acquire(Math.min(length, StreamFrame.MAX_CHUNK));
+                connection.sendStreamFrame(BinaryCodec.encodeStreamFrame(id, StreamFrame.STDIN, buffer, offset, chunk));
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private synchronized int acquire(int wanted) throws IOException {
+            while (credit == 0 && !ended && !closed) {
+                waitForServer();
+            }
+            if (closed) {
+                throw new IOException("Stdin closed");
+            }
+            if (ended) {
+                throw new IOException("Stream ended");
+            }
+            int granted = (int) Math.min(wanted, credit);
+            credit -= granted;
+            return granted;
+        }
+
+        // EOF only once the server opened the stream, which drops frames for streams it does not know yet
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                while (!opened && !ended) {
+                    waitForServer();
+                }
+                if (ended) {
+                    return;
+                }
+            }
+            connection.sendStreamFrame(BinaryCodec.encodeStreamFrame(id, StreamFrame.EOF));
+        }
+
+        private void waitForServer() throws InterruptedIOException {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for stdin credit");
+            }
+        }
+    }
+}
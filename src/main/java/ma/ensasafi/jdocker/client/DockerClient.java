@@ -1,42 +1,70 @@
 package ma.ensasafi.jdocker.client;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import ma.ensasafi.jdocker.models.ContainerInfo;
 import ma.ensasafi.jdocker.models.ImageInfo;
-import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.BulkResult;
 import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.ContainerStats;
+import ma.ensasafi.jdocker.protocol.Page;
+import ma.ensasafi.jdocker.protocol.PullProgress;
 import ma.ensasafi.jdocker.protocol.Response;
-
-import java.io.*;
-import java.net.Socket;
-import java.util.HashMap;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
+// Interactive console on top of JDockerClient
 public class DockerClient {
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
-    private Gson gson;
+    private JDockerClient client;
+    private String server;
     private Scanner scanner;
 
     public DockerClient(String host, int port) throws IOException {
-        this.socket = new Socket(host, port);
-        this.out = new PrintWriter(socket.getOutputStream(), true);
-        this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        this.gson = new Gson();
-        this.scanner = new Scanner(System.in);
+        this(host, port, false);
     }
 
-    public void start() throws IOException {
-        // Read welcome message
-        String welcomeJson = in.readLine();
-        Response welcome = gson.fromJson(welcomeJson, Response.class);
+    public DockerClient(String host, int port, boolean compression) throws IOException {
+        this(new ClientConfig(host, port), host + ":" + port, compression);
+    }
+
+    // A server on this host, through its Unix domain socket
+    public DockerClient(String socketPath, boolean compression) throws IOException {
+        this(new ClientConfig().addUnixSocket(socketPath), socketPath, compression);
+    }
+
+    private DockerClient(ClientConfig config, String server, boolean compression) throws IOException {
+        config.setConnectionsPerServer(1);
+        config.setCompression(compression);
+        // Logs and exec stream over binary frames
+        config.setFormat(WireFormat.BINARY);
+        this.client = new JDockerClient(config);
+        this.server = server;
+        this.scanner = new Scanner(System.in);
+
+        try {
+            await(client.ping());
+        } catch (IOException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+    }
 
+    public void start() {
         printBanner();
-        System.out.println("✓ " + welcome.getMessage());
+        System.out.println("✓ Connected to J-Docker Remote Manager at " + server);
         System.out.println("\nType 'help' to see available commands\n");
 
         boolean running = true;
@@ -58,7 +86,7 @@ public class DockerClient {
                         break;
 
                     case "ping":
-                        sendCommand(new Command(CommandType.PING, null));
+                        handlePing();
                         break;
 
                     case "images":
@@ -67,17 +95,30 @@ public class DockerClient {
                         break;
 
                     case "pull":
-                        if (parts.length < 2) {
-                            System.out.println("Usage: pull <image-name>");
+                        if (parts.length >= 3 && parts[1].equals("-d")) {
+                            handlePullDetached(parts[2]);
+                        } else if (parts.length < 2 || parts[1].equals("-d")) {
+                            System.out.println("Usage: pull [-d] <image-name>");
                         } else {
                             handlePullImage(parts[1]);
                         }
                         break;
 
+                    case "jobs":
+                        handlePullJobs(parts.length > 1 ? parts[1] : null);
+                        break;
+
+                    case "cancel":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: cancel <job-id>");
+                        } else {
+                            handlePullCancel(parts[1]);
+                        }
+                        break;
+
                     case "ps":
                     case "containers":
-                        boolean showAll = parts.length > 1 && parts[1].equals("-a");
-                        handleListContainers(showAll);
+                        handleListContainers(parts);
                         break;
 
                     case "create":
@@ -90,7 +131,9 @@ public class DockerClient {
 
                     case "start":
                         if (parts.length < 2) {
-                            System.out.println("Usage: start <container-id>");
+                            System.out.println("Usage: start <container-id>... | --label <k=v> | --name <name>");
+                        } else if (isBulk(parts)) {
+                            handleBulk(CommandType.START_CONTAINERS, parts);
                         } else {
                             handleStartContainer(parts[1]);
                         }
@@ -98,7 +141,9 @@ public class DockerClient {
 
                     case "stop":
                         if (parts.length < 2) {
-                            System.out.println("Usage: stop <container-id>");
+                            System.out.println("Usage: stop <container-id>... | --label <k=v> | --name <name>");
+                        } else if (isBulk(parts)) {
+                            handleBulk(CommandType.STOP_CONTAINERS, parts);
                         } else {
                             handleStopContainer(parts[1]);
                         }
@@ -107,7 +152,9 @@ public class DockerClient {
                     case "rm":
                     case "delete":
                         if (parts.length < 2) {
-                            System.out.println("Usage: rm <container-id>");
+                            System.out.println("Usage: rm <container-id>... | --label <k=v> | --name <name>");
+                        } else if (isBulk(parts)) {
+                            handleBulk(CommandType.DELETE_CONTAINERS, parts);
                         } else {
                             handleDeleteContainer(parts[1]);
                         }
@@ -121,9 +168,36 @@ public class DockerClient {
                         }
                         break;
 
+                    case "top":
+                        handleTop(parts);
+                        break;
+
+                    case "usage":
+                        if (parts.length < 2) {
+                            System.out.println("Usage: usage <container-id> [--res <1s|10s|1m>]");
+                        } else {
+                            handleUsage(parts);
+                        }
+                        break;
+
+                    case "logs":
+                        handleLogs(parts);
+                        break;
+
+                    case "exec":
+                        handleExec(parts);
+                        break;
+
+                    case "inventory":
+                        handleInventory();
+                        break;
+
+                    case "stats":
+                        handleStats();
+                        break;
+
                     case "exit":
                     case "quit":
-                        sendCommand(new Command(CommandType.EXIT, null));
                         running = false;
                         break;
 
@@ -135,6 +209,8 @@ public class DockerClient {
                         System.out.println("Unknown command: " + commandStr);
                         System.out.println("Type 'help' for available commands");
                 }
+            } catch (CommandFailedException e) {
+                System.err.println("✗ Error: " + e.getMessage());
             } catch (Exception e) {
                 System.err.println("Error: " + e.getMessage());
             }
@@ -143,109 +219,473 @@ public class DockerClient {
         cleanup();
     }
 
+    private void handlePing() throws IOException {
+        long start = System.nanoTime();
+        await(client.ping());
+        System.out.println(String.format("PONG from %s in %.1f ms", server, (System.nanoTime() - start) / 1e6));
+    }
+
     private void handleListImages() throws IOException {
-        Response response = sendCommand(new Command(CommandType.LIST_IMAGES, null));
-        if (response.isSuccess() && response.getData() != null) {
-            List<ImageInfo> images = gson.fromJson(
-                    gson.toJson(response.getData()),
-                    new TypeToken<List<ImageInfo>>(){}.getType()
-            );
-
-            if (images.isEmpty()) {
-                System.out.println("No images found");
-            } else {
-                System.out.println("\n" + String.format("%-12s %-30s %-15s %-15s",
-                        "IMAGE ID", "REPOSITORY:TAG", "SIZE", "CREATED"));
-                System.out.println("─".repeat(75));
-                for (ImageInfo img : images) {
-                    System.out.println(img.toString());
-                }
-                System.out.println("\nTotal: " + images.size() + " image(s)\n");
+        List<ImageInfo> images = await(client.listImages());
+        if (images.isEmpty()) {
+            System.out.println("No images found");
+        } else {
+            System.out.println("\n" + String.format("%-12s %-30s %-15s %-15s",
+                    "IMAGE ID", "REPOSITORY:TAG", "SIZE", "CREATED"));
+            System.out.println("─".repeat(75));
+            for (ImageInfo img : images) {
+                System.out.println(img.toString());
             }
+            System.out.println("\nTotal: " + images.size() + " image(s)\n");
         }
     }
 
     private void handlePullImage(String imageName) throws IOException {
         System.out.println("Pulling image: " + imageName + " (this may take a while...)");
-        Response response = sendCommand(new Command(CommandType.PULL_IMAGE,
-                Map.of("image", imageName)));
-        System.out.println(response.getMessage());
+        boolean[] rendered = {false};
+        try {
+            await(client.pullImage(imageName, progress -> {
+                // Redraw the same line for every update
+                System.out.print("\r" + formatProgress(progress) + "   ");
+                System.out.flush();
+                rendered[0] = true;
+            }));
+        } finally {
+            if (rendered[0]) {
+                System.out.println();
+            }
+        }
+        System.out.println("Successfully pulled image: " + imageName);
+    }
+
+    private void handlePullDetached(String imageName) throws IOException {
+        PullProgress job = await(client.startPull(imageName));
+        System.out.println("Pull job " + job.getJobId() + " started for " + imageName);
+    }
+
+    private void handlePullJobs(String jobId) throws IOException {
+        if (jobId != null) {
+            PullProgress progress = await(client.pullJob(jobId));
+            System.out.println(formatProgress(progress));
+            if (progress.getError() != null) {
+                System.out.println("  Error: " + progress.getError());
+            }
+            return;
+        }
+
+        List<PullProgress> jobs = await(client.pullJobs());
+        if (jobs.isEmpty()) {
+            System.out.println("No pull jobs");
+        } else {
+            for (PullProgress progress : jobs) {
+                System.out.println(formatProgress(progress));
+            }
+        }
     }
 
-    private void handleListContainers(boolean all) throws IOException {
-        Map<String, String> params = new HashMap<>();
-        params.put("all", String.valueOf(all));
+    private void handlePullCancel(String jobId) throws IOException {
+        await(client.cancelPull(jobId));
+        System.out.println("Pull job " + jobId + " cancelled");
+    }
 
-        Response response = sendCommand(new Command(CommandType.LIST_CONTAINERS, params));
-        if (response.isSuccess() && response.getData() != null) {
-            List<ContainerInfo> containers = gson.fromJson(
-                    gson.toJson(response.getData()),
-                    new TypeToken<List<ContainerInfo>>(){}.getType()
-            );
+    private String formatProgress(PullProgress progress) {
+        int layers = progress.getLayers() != null ? progress.getLayers().size() : 0;
+        return String.format("%-10s %-10s %-30s %10s / %-10s (%d/%d layers)",
+                progress.getJobId(),
+                progress.getState(),
+                progress.getStatus() != null && progress.getStatus().length() > 30
+                        ? progress.getStatus().substring(0, 30)
+                        : progress.getStatus(),
+                formatBytes(progress.getCurrentBytes()),
+                formatBytes(progress.getTotalBytes()),
+                progress.getLayersDone(),
+                layers);
+    }
 
-            if (containers.isEmpty()) {
-                System.out.println("No containers found" + (all ? "" : " (use 'ps -a' to see all)"));
+    private String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    // ps [-a] [--state s] [--name prefix] [--image prefix] [--label k=v] [--limit n] [--cursor c]
+    private void handleListContainers(String[] parts) throws IOException {
+        ContainerQuery query = new ContainerQuery();
+        for (int i = 1; i < parts.length; i++) {
+            boolean hasValue = i + 1 < parts.length;
+            if (parts[i].equals("-a")) {
+                query.all();
+            } else if (parts[i].equals("--state") && hasValue) {
+                query.state(parts[++i].split(","));
+            } else if (parts[i].equals("--name") && hasValue) {
+                query.namePrefix(parts[++i]);
+            } else if (parts[i].equals("--image") && hasValue) {
+                query.imagePrefix(parts[++i]);
+            } else if (parts[i].equals("--label") && hasValue) {
+                query.label(parts[++i]);
+            } else if (parts[i].equals("--limit") && hasValue) {
+                query.limit(Integer.parseInt(parts[++i]));
+            } else if (parts[i].equals("--cursor") && hasValue) {
+                query.after(parts[++i]);
             } else {
-                System.out.println("\n" + String.format("%-12s %-20s %-25s %-10s %-30s",
-                        "CONTAINER ID", "NAME", "IMAGE", "STATE", "STATUS"));
-                System.out.println("─".repeat(100));
-                for (ContainerInfo container : containers) {
-                    System.out.println(container.toString());
-                }
-                System.out.println("\nTotal: " + containers.size() + " container(s)\n");
+                System.out.println("Usage: ps [-a] [--state <s>] [--name <prefix>] [--image <prefix>] "
+                        + "[--label <k=v>] [--limit <n>] [--cursor <c>]");
+                return;
             }
         }
+
+        Page<ContainerInfo> page = await(client.listContainers(query));
+        List<ContainerInfo> containers = page.getItems();
+        if (containers.isEmpty()) {
+            System.out.println("No containers found" + (parts.length > 1 ? "" : " (use 'ps -a' to see all)"));
+        } else {
+            System.out.println("\n" + String.format("%-12s %-20s %-25s %-10s %-30s",
+                    "CONTAINER ID", "NAME", "IMAGE", "STATE", "STATUS"));
+            System.out.println("─".repeat(100));
+            for (ContainerInfo container : containers) {
+                System.out.println(container.toString());
+            }
+            System.out.println("\nTotal: " + containers.size() + " container(s)"
+                    + (page.hasNext() ? " - next page: --cursor " + page.getNextCursor() : "") + "\n");
+        }
     }
 
     private void handleCreateContainer(String image, String name) throws IOException {
-        Map<String, String> params = new HashMap<>();
-        params.put("image", image);
-        params.put("name", name);
-
-        Response response = sendCommand(new Command(CommandType.CREATE_CONTAINER, params));
-        System.out.println(response.getMessage());
+        String containerId = await(client.createContainer(image, name));
+        System.out.println("Container created successfully with ID: " + containerId);
     }
 
     private void handleStartContainer(String containerId) throws IOException {
-        Response response = sendCommand(new Command(CommandType.START_CONTAINER,
-                Map.of("id", containerId)));
-        System.out.println(response.getMessage());
+        await(client.startContainer(containerId));
+        System.out.println("Container started successfully");
     }
 
     private void handleStopContainer(String containerId) throws IOException {
-        Response response = sendCommand(new Command(CommandType.STOP_CONTAINER,
-                Map.of("id", containerId)));
-        System.out.println(response.getMessage());
+        await(client.stopContainer(containerId));
+        System.out.println("Container stopped successfully");
     }
 
     private void handleDeleteContainer(String containerId) throws IOException {
-        Response response = sendCommand(new Command(CommandType.DELETE_CONTAINER,
-                Map.of("id", containerId)));
-        System.out.println(response.getMessage());
+        await(client.deleteContainer(containerId));
+        System.out.println("Container deleted successfully");
+    }
+
+    private static boolean isBulk(String[] parts) {
+        return parts.length > 2 || parts[1].startsWith("--");
+    }
+
+    // start/stop/rm with several IDs, or with --label k=v / --name x selectors
+    private void handleBulk(CommandType type, String[] parts) throws IOException {
+        ContainerSelection selection = new ContainerSelection();
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].equals("--label") && i + 1 < parts.length) {
+                selection.andLabel(parts[++i]);
+            } else if (parts[i].equals("--name") && i + 1 < parts.length) {
+                selection.andName(parts[++i]);
+            } else if (parts[i].equals("--concurrency") && i + 1 < parts.length) {
+                selection.concurrency(Integer.parseInt(parts[++i]));
+            } else {
+                selection.andId(parts[i]);
+            }
+        }
+
+        List<BulkResult> results;
+        String verb;
+        switch (type) {
+            case START_CONTAINERS:
+                results = await(client.startContainers(selection));
+                verb = "started";
+                break;
+            case STOP_CONTAINERS:
+                results = await(client.stopContainers(selection));
+                verb = "stopped";
+                break;
+            default:
+                results = await(client.deleteContainers(selection));
+                verb = "deleted";
+        }
+
+        int succeeded = 0;
+        for (BulkResult result : results) {
+            String id = result.getId().length() > 12 ? result.getId().substring(0, 12) : result.getId();
+            System.out.println(String.format("  %s %-12s %s", result.isSuccess() ? "✓" : "✗", id,
+                    result.getMessage()));
+            if (result.isSuccess()) {
+                succeeded++;
+            }
+        }
+        System.out.println(succeeded + "/" + results.size() + " container(s) " + verb);
     }
 
     private void handleContainerStatus(String containerId) throws IOException {
-        Response response = sendCommand(new Command(CommandType.CONTAINER_STATUS,
-                Map.of("id", containerId)));
-        System.out.println(response.getMessage());
+        System.out.println(await(client.containerStatus(containerId)));
+    }
+
+    private void handleTop(String[] parts) throws IOException {
+        int count = 10;
+        String metric = "cpu";
+        String resolution = "1s";
+        long watchSeconds = 0;
+        for (int i = 1; i < parts.length; i++) {
+            boolean hasValue = i + 1 < parts.length;
+            if (parts[i].equals("--by") && hasValue) {
+                metric = parts[++i];
+            } else if (parts[i].equals("--res") && hasValue) {
+                resolution = parts[++i];
+            } else if (parts[i].equals("--watch") && hasValue) {
+                watchSeconds = Long.parseLong(parts[++i]);
+            } else if (parts[i].matches("\\d+")) {
+                count = Integer.parseInt(parts[i]);
+            } else {
+                System.out.println("Usage: top [n] [--by <cpu|memory|netRx|netTx|blockRead|blockWrite>] "
+                        + "[--res <1s|10s|1m>] [--watch <seconds>]");
+                return;
+            }
+        }
+
+        if (watchSeconds > 0) {
+            await(client.watchTop(count, metric, resolution, Duration.ofSeconds(watchSeconds), stats -> {
+                clearScreen();
+                printUsage(stats, true);
+            }));
+            return;
+        }
+        printUsage(await(client.topContainers(count, metric, resolution)), true);
     }
 
-    private Response sendCommand(Command command) throws IOException {
-        String json = gson.toJson(command);
-        out.println(json);
+    private void handleUsage(String[] parts) throws IOException {
+        String resolution = parts.length > 3 && parts[2].equals("--res") ? parts[3] : "1s";
+        List<ContainerStats> history = await(client.containerStats(parts[1], resolution));
+        // The newest intervals fit on one screen
+        printUsage(history.subList(Math.max(0, history.size() - 20), history.size()), false);
+    }
 
-        String responseJson = in.readLine();
-        if (responseJson == null) {
-            throw new IOException("Connection lost to server");
+    private void printUsage(List<ContainerStats> stats, boolean byContainer) {
+        if (stats.isEmpty()) {
+            System.out.println("No stats yet");
+            return;
         }
+        System.out.println("\n" + String.format("%-20s %8s %21s %11s %11s %11s %11s",
+                byContainer ? "NAME" : "TIME", "CPU %", "MEM USAGE / LIMIT", "NET RX/s", "NET TX/s", "BLOCK R/s",
+                "BLOCK W/s"));
+        System.out.println("─".repeat(100));
+        for (ContainerStats stat : stats) {
+            String label = byContainer ? stat.getName()
+                    : Instant.ofEpochSecond(stat.getTime()).atZone(ZoneId.systemDefault()).toLocalTime().toString();
+            System.out.println(String.format("%-20s %8.2f %21s %11s %11s %11s %11s",
+                    label != null && label.length() > 20 ? label.substring(0, 20) : label, stat.getCpuPercent(),
+                    formatBytes(stat.getMemoryBytes()) + " / " + formatBytes(stat.getMemoryLimit()),
+                    formatBytes((long) stat.getNetRxBytesPerSec()), formatBytes((long) stat.getNetTxBytesPerSec()),
+                    formatBytes((long) stat.getBlockReadBytesPerSec()),
+                    formatBytes((long) stat.getBlockWriteBytesPerSec())));
+        }
+        System.out.println();
+    }
 
-        Response response = gson.fromJson(responseJson, Response.class);
+    // logs [-f] [--tail n] <id>; Enter stops following
+    private void handleLogs(String[] parts) throws IOException {
+        boolean follow = false;
+        Integer tail = null;
+        String containerId = null;
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].equals("-f") || parts[i].equals("--follow")) {
+                follow = true;
+            } else if (parts[i].equals("--tail") && i + 1 < parts.length && parts[i + 1].matches("\\d+")) {
+                tail = Integer.parseInt(parts[++i]);
+            } else if (containerId == null && !parts[i].startsWith("-")) {
+                containerId = parts[i];
+            } else {
+                containerId = null;
+                break;
+            }
+        }
+        if (containerId == null) {
+            System.out.println("Usage: logs [-f] [--tail <n>] <container-id>");
+            return;
+        }
 
+        ContainerStream stream = await(client.logs(containerId, follow, tail));
+        List<Thread> pumps = pumpOutput(stream);
+        if (follow) {
+            System.out.println("(following, press Enter to stop)");
+            stream.getCompletion().thenRun(() -> System.out.println("(log stream ended, press Enter)"));
+            scanner.nextLine();
+            stream.close();
+        }
+        Response response = await(stream.getCompletion());
+        joinAll(pumps);
         if (!response.isSuccess()) {
-            System.err.println("✗ Error: " + response.getMessage());
+            throw new CommandFailedException(response);
+        }
+    }
+
+    // exec [-i] [-t] <id> <command...>; with -i each line typed goes to stdin, a lone "." ends it
+    private void handleExec(String[] parts) throws IOException {
+        boolean interactive = false;
+        boolean tty = false;
+        int i = 1;
+        for (; i < parts.length && parts[i].startsWith("-"); i++) {
+            if (parts[i].equals("-i")) {
+                interactive = true;
+            } else if (parts[i].equals("-t")) {
+                tty = true;
+            } else if (parts[i].equals("-it") || parts[i].equals("-ti")) {
+                interactive = true;
+                tty = true;
+            }
+        }
+        if (parts.length - i < 2) {
+            System.out.println("Usage: exec [-i] [-t] <container-id> <command> [args...]");
+            return;
+        }
+        String containerId = parts[i];
+        List<String> command = List.of(parts).subList(i + 1, parts.length);
+
+        ContainerStream stream = await(client.exec(containerId, command, tty, interactive));
+        List<Thread> pumps = pumpOutput(stream);
+        if (interactive) {
+            OutputStream stdin = stream.getStdin();
+            try {
+                while (!stream.getCompletion().isDone()) {
+                    String line = scanner.nextLine();
+                    if (line.equals(".") || stream.getCompletion().isDone()) {
+                        break;
+                    }
+                    stdin.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                // The process ended while the line was being sent
+            } finally {
+                stdin.close();
+            }
+        }
+        Long exitCode = await(stream.exitCode());
+        joinAll(pumps);
+        System.out.println(exitCode != null ? "(exit code " + exitCode + ")" : "(still running)");
+    }
+
+    // Copies the stream's output to the console as it arrives
+    private static List<Thread> pumpOutput(ContainerStream stream) {
+        List<Thread> pumps = new ArrayList<>();
+        pumps.add(pump(stream.getStdout(), System.out));
+        pumps.add(pump(stream.getStderr(), System.err));
+        return pumps;
+    }
+
+    private static Thread pump(InputStream from, PrintStream to) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try {
+                int read;
+                while ((read = from.read(buffer)) != -1) {
+                    to.write(buffer, 0, read);
+                    to.flush();
+                }
+            } catch (IOException e) {
+                // Interrupted; the stream ends with the command anyway
+            }
+        }, "stream-output");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void joinAll(List<Thread> threads) {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        return response;
+    private void handleInventory() throws IOException {
+        Map<String, Object> inventory = await(client.inventory());
+        System.out.println("Inventory version " + asLong(inventory.get("version")));
+        for (Map.Entry<String, Object> entry : inventory.entrySet()) {
+            System.out.println(String.format("  %-12s %s", entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void handleStats() throws IOException {
+        Map<String, Object> stats = await(client.stats());
+        System.out.println(String.format("Uptime: %ds | Connections: %d active, %d total | In: %d B | Out: %d B",
+                asLong(stats.get("uptimeSeconds")), asLong(stats.get("activeConnections")),
+                asLong(stats.get("totalConnections")), asLong(stats.get("bytesReceived")),
+                asLong(stats.get("bytesSent"))));
+
+        System.out.println(String.format("%n%-20s %8s %7s %6s %10s %10s %10s %10s",
+                "COMMAND", "COUNT", "ERRORS", "LIVE", "P50 (ms)", "P99 (ms)", "ENG P50", "ENG P99"));
+        if (stats.get("commands") instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) stats.get("commands")).entrySet()) {
+                Map<?, ?> command = (Map<?, ?>) entry.getValue();
+                System.out.println(String.format("%-20s %8d %7d %6d %10.2f %10.2f %10.2f %10.2f",
+                        entry.getKey(), asLong(command.get("count")), asLong(command.get("errors")),
+                        asLong(command.get("inFlight")), asDouble(command.get("serverP50Ms")),
+                        asDouble(command.get("serverP99Ms")), asDouble(command.get("engineP50Ms")),
+                        asDouble(command.get("engineP99Ms"))));
+            }
+        }
+
+        System.out.println(String.format("%n%-20s %8s %7s %10s %10s", "ENGINE OPERATION", "COUNT", "ERRORS",
+                "P50 (ms)", "P99 (ms)"));
+        if (stats.get("engine") instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) stats.get("engine")).entrySet()) {
+                Map<?, ?> operation = (Map<?, ?>) entry.getValue();
+                System.out.println(String.format("%-20s %8d %7d %10.2f %10.2f",
+                        entry.getKey(), asLong(operation.get("count")), asLong(operation.get("errors")),
+                        asDouble(operation.get("p50Ms")), asDouble(operation.get("p99Ms"))));
+            }
+        }
+
+        // Only federated servers report hosts
+        if (stats.get("hosts") instanceof Map) {
+            System.out.println(String.format("%n%-20s %-10s %8s %8s  %s", "HOST", "STATE", "FAILURES", "RUNNING",
+                    "LAST ERROR"));
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) stats.get("hosts")).entrySet()) {
+                Map<?, ?> host = (Map<?, ?>) entry.getValue();
+                System.out.println(String.format("%-20s %-10s %8d %8s  %s", entry.getKey(),
+                        Boolean.TRUE.equals(host.get("available")) ? "up" : "down", asLong(host.get("failures")),
+                        host.get("runningContainers") != null ? asLong(host.get("runningContainers")) : "-",
+                        host.get("lastError") != null ? host.get("lastError") : ""));
+            }
+        }
+    }
+
+    // Gson turns untyped JSON numbers into doubles
+    private static long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double asDouble(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    // Blocks for the call; failures surface as CommandFailedException or IOException
+    private static <T> T await(CompletableFuture<T> call) throws IOException {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new IOException("No answer from server in time");
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
     }
 
     private void printBanner() {
@@ -262,18 +702,34 @@ public class DockerClient {
         System.out.println("║  IMAGE MANAGEMENT:                                       ║");
         System.out.println("║    images, list-images    - List all Docker images       ║");
         System.out.println("║    pull <image>          - Pull image from Docker Hub    ║");
+        System.out.println("║    pull -d <image>       - Pull in the background        ║");
+        System.out.println("║    jobs [job-id]         - Show pull jobs                ║");
+        System.out.println("║    cancel <job-id>       - Cancel a pull job             ║");
         System.out.println("║                                                          ║");
         System.out.println("║  CONTAINER MANAGEMENT:                                   ║");
         System.out.println("║    ps                    - List running containers       ║");
         System.out.println("║    ps -a                 - List all containers           ║");
+        System.out.println("║      --state/--name/--image/--label - Filter the listing ║");
+        System.out.println("║      --limit <n>, --cursor <c>      - Page the listing   ║");
         System.out.println("║    create <img> <name>   - Create new container          ║");
-        System.out.println("║    start <id>            - Start a container             ║");
-        System.out.println("║    stop <id>             - Stop a container              ║");
-        System.out.println("║    rm <id>               - Delete a container            ║");
+        System.out.println("║    start <id>...         - Start one or more containers  ║");
+        System.out.println("║    stop <id>...          - Stop one or more containers   ║");
+        System.out.println("║    rm <id>...            - Delete one or more containers ║");
+        System.out.println("║      --label <k=v>       - Select containers by label    ║");
+        System.out.println("║      --name <name>       - Select containers by name     ║");
         System.out.println("║    status <id>           - Get container status          ║");
+        System.out.println("║    top [n]               - Busiest containers by CPU     ║");
+        System.out.println("║      --by <metric>, --res <1s|10s|1m>, --watch <secs>    ║");
+        System.out.println("║    usage <id>            - Recent resource usage         ║");
+        System.out.println("║    logs [-f] <id>        - Show (and follow) logs        ║");
+        System.out.println("║      --tail <n>          - Start from the last n lines   ║");
+        System.out.println("║    exec [-i] <id> <cmd>  - Run a command in a container  ║");
+        System.out.println("║      -t for a tty; with -i a lone '.' ends the input     ║");
         System.out.println("║                                                          ║");
         System.out.println("║  GENERAL:                                                ║");
         System.out.println("║    ping                  - Test server connection        ║");
+        System.out.println("║    inventory             - Show server inventory state   ║");
+        System.out.println("║    stats                 - Show server metrics           ║");
         System.out.println("║    help                  - Show this help                ║");
         System.out.println("║    clear                 - Clear screen                  ║");
         System.out.println("║    exit, quit            - Disconnect from server        ║");
@@ -288,37 +744,48 @@ public class DockerClient {
     }
 
     private void cleanup() {
-        try {
-            if (scanner != null) scanner.close();
-            if (out != null) out.close();
-            if (in != null) in.close();
-            if (socket != null && !socket.isClosed()) socket.close();
-            System.out.println("\n✓ Disconnected from server");
-        } catch (IOException e) {
-            System.err.println("Error during cleanup: " + e.getMessage());
-        }
+        if (scanner != null) scanner.close();
+        client.close();
+        System.out.println("\n✓ Disconnected from server");
     }
 
+    // [host] [port] [--compress] [--socket=PATH]
     public static void main(String[] args) {
         String host = "localhost";
         int port = 9999;
+        String socketPath = null;
+        boolean compression = false;
+
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--compress")) {
+                compression = true;
+            } else if (arg.startsWith("--socket=")) {
+                socketPath = arg.substring("--socket=".length());
+            } else {
+                positional.add(arg);
+            }
+        }
 
-        if (args.length >= 1) {
-            host = args[0];
+        if (positional.size() >= 1) {
+            host = positional.get(0);
         }
-        if (args.length >= 2) {
+        if (positional.size() >= 2) {
             try {
-                port = Integer.parseInt(args[1]);
+                port = Integer.parseInt(positional.get(1));
             } catch (NumberFormatException e) {
                 System.err.println("Invalid port number. Using default: 9999");
             }
         }
 
         try {
-            DockerClient client = new DockerClient(host, port);
+            DockerClient client = socketPath != null
+                    ? new DockerClient(socketPath, compression)
+                    : new DockerClient(host, port, compression);
             client.start();
-        } catch (IOException e) {
-            System.err.println("✗ Failed to connect to server at " + host + ":" + port);
+        } catch (IOException | RuntimeException e) {
+            String server = socketPath != null ? socketPath : host + ":" + port;
+            System.err.println("✗ Failed to connect to server at " + server);
             System.err.println("Error: " + e.getMessage());
             System.err.println("\nMake sure the server is running and accessible.");
         }
@@ -0,0 +1,78 @@
+package ma.ensasafi.jdocker.client;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Filters, fields and page of an image listing, applied by the server like ContainerQuery
+public class ImageQuery {
+    private String repositoryPrefix;
+    private List<String> labels = new ArrayList<>();
+    private Instant createdAfter;
+    private List<String> fields = new ArrayList<>();
+    private int limit;
+    private String cursor;
+
+    public ImageQuery() {}
+
+    public ImageQuery repositoryPrefix(String repositoryPrefix) {
+        this.repositoryPrefix = repositoryPrefix;
+        return this;
+    }
+
+    public ImageQuery label(String label) {
+        labels.add(label);
+        return this;
+    }
+
+    public ImageQuery createdAfter(Instant createdAfter) {
+        this.createdAfter = createdAfter;
+        return this;
+    }
+
+    // id, repository, tag, size, created
+    public ImageQuery fields(String... fields) {
+        this.fields.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    public ImageQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public ImageQuery after(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    boolean isPaged() {
+        return limit > 0 || cursor != null;
+    }
+
+    Map<String, String> toParameters() {
+        Map<String, String> params = new HashMap<>();
+        if (repositoryPrefix != null) {
+            params.put("repository", repositoryPrefix);
+        }
+        if (!labels.isEmpty()) {
+            params.put("label", String.join(",", labels));
+        }
+        if (createdAfter != null) {
+            params.put("createdAfter", String.valueOf(createdAfter.getEpochSecond()));
+        }
+        if (!fields.isEmpty()) {
+            params.put("fields", String.join(",", fields));
+        }
+        if (limit > 0) {
+            params.put("limit", String.valueOf(limit));
+        }
+        if (cursor != null) {
+            params.put("cursor", cursor);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,393 @@
+package ma.ensasafi.jdocker.client;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+import ma.ensasafi.jdocker.protocol.BulkResult;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.ContainerDelta;
+import ma.ensasafi.jdocker.protocol.ContainerStats;
+import ma.ensasafi.jdocker.protocol.Page;
+import ma.ensasafi.jdocker.protocol.PullProgress;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/*
+ * Programmatic client of a J-Docker server. Every call returns a CompletableFuture that completes
+ * with the decoded data, or exceptionally with a CommandFailedException (the server said no), an
+ * IOException (no usable connection) or a TimeoutException (the deadline passed).
+ *
+ * Calls share a pool of pipelined connections. A call that could not be sent is retried on another
+ * connection; one that was sent is retried only if it does not change anything on the server.
+ * Progress listeners run on the connection's reader thread and must not block. The futures complete
+ * on the client's own threads instead, so a dependent stage may make another call and wait for it.
+ * Log and exec streams are read through a ContainerStream, at the pace of whoever reads it.
+ */
+public class JDockerClient implements Closeable {
+    private static final Type IMAGE_LIST = new TypeToken<List<ImageInfo>>(){}.getType();
+    private static final Type CONTAINER_LIST = new TypeToken<List<ContainerInfo>>(){}.getType();
+    private static final Type IMAGE_PAGE = new TypeToken<Page<ImageInfo>>(){}.getType();
+    private static final Type CONTAINER_PAGE = new TypeToken<Page<ContainerInfo>>(){}.getType();
+    private static final Type BULK_RESULTS = new TypeToken<List<BulkResult>>(){}.getType();
+    private static final Type PULL_JOBS = new TypeToken<List<PullProgress>>(){}.getType();
+    private static final Type STATS_LIST = new TypeToken<List<ContainerStats>>(){}.getType();
+    private static final Type PROPERTIES = new TypeToken<Map<String, Object>>(){}.getType();
+
+    // Safe to send twice: reads only
+    private static final Set<CommandType> IDEMPOTENT = EnumSet.of(CommandType.PING, CommandType.LIST_IMAGES,
+            CommandType.LIST_CONTAINERS, CommandType.CONTAINER_STATUS, CommandType.PULL_STATUS,
+            CommandType.INVENTORY, CommandType.STATS, CommandType.CONTAINER_STATS);
+
+    private final ConnectionPool pool;
+    private final ClientConfig config;
+    // null: the configured defaults apply
+    private final Duration timeout;
+
+    public JDockerClient(ClientConfig config) {
+        this(new ConnectionPool(config), config, null);
+    }
+
+    private JDockerClient(ConnectionPool pool, ClientConfig config, Duration timeout) {
+        this.pool = pool;
+        this.config = config;
+        this.timeout = timeout;
+    }
+
+    public static JDockerClient connect(String host, int port) {
+        return new JDockerClient(new ClientConfig(host, port));
+    }
+
+    // Same connections, different deadline for every call made through the returned client
+    public JDockerClient withTimeout(Duration timeout) {
+        return new JDockerClient(pool, config, timeout);
+    }
+
+    public CompletableFuture<Void> ping() {
+        return call(new Command(CommandType.PING, null), null).thenApply(data -> null);
+    }
+
+    public CompletableFuture<List<ImageInfo>> listImages() {
+        return call(new Command(CommandType.LIST_IMAGES, null), IMAGE_LIST);
+    }
+
+    // An unpaged query completes with a single page holding the whole listing
+    public CompletableFuture<Page<ImageInfo>> listImages(ImageQuery query) {
+        Command command = new Command(CommandType.LIST_IMAGES, query.toParameters());
+        if (query.isPaged()) {
+            return call(command, IMAGE_PAGE);
+        }
+        return this.<List<ImageInfo>>call(command, IMAGE_LIST).thenApply(images -> new Page<>(images, null));
+    }
+
+    public CompletableFuture<List<ContainerInfo>> listContainers(boolean all) {
+        Map<String, String> params = new HashMap<>();
+        params.put("all", String.valueOf(all));
+        return call(new Command(CommandType.LIST_CONTAINERS, params), CONTAINER_LIST);
+    }
+
+    public CompletableFuture<Page<ContainerInfo>> listContainers(ContainerQuery query) {
+        Command command = new Command(CommandType.LIST_CONTAINERS, query.toParameters());
+        if (query.isPaged()) {
+            return call(command, CONTAINER_PAGE);
+        }
+        return this.<List<ContainerInfo>>call(command, CONTAINER_LIST)
+                .thenApply(containers -> new Page<>(containers, null));
+    }
+
+    // Changes after a version taken from an earlier delta; ContainerMirror keeps the bookkeeping
+    public CompletableFuture<ContainerDelta> listContainerChanges(boolean all, long since, String epoch) {
+        Map<String, String> params = new HashMap<>();
+        params.put("all", String.valueOf(all));
+        params.put("since", String.valueOf(since));
+        if (epoch != null) {
+            params.put("epoch", epoch);
+        }
+        return call(new Command(CommandType.LIST_CONTAINERS, params), ContainerDelta.class);
+    }
+
+    // Completes with the new container's ID
+    public CompletableFuture<String> createContainer(String image, String name) {
+        Map<String, String> params = new HashMap<>();
+        params.put("image", image);
+        params.put("name", name);
+        return call(new Command(CommandType.CREATE_CONTAINER, params), String.class);
+    }
+
+    public CompletableFuture<Void> startContainer(String containerId) {
+        return call(new Command(CommandType.START_CONTAINER, Map.of("id", containerId)), null).thenApply(data -> null);
+    }
+
+    public CompletableFuture<Void> stopContainer(String containerId) {
+        return call(new Command(CommandType.STOP_CONTAINER, Map.of("id", containerId)), null).thenApply(data -> null);
+    }
+
+    public CompletableFuture<Void> deleteContainer(String containerId) {
+        return call(new Command(CommandType.DELETE_CONTAINER, Map.of("id", containerId)), null)
+                .thenApply(data -> null);
+    }
+
+    // The server's one-line description of the container's state
+    public CompletableFuture<String> containerStatus(String containerId) {
+        return send(new Command(CommandType.CONTAINER_STATUS, Map.of("id", containerId)), null, null, null,
+                defaultTimeout()).thenApply(response -> checked(response).getMessage());
+    }
+
+    public CompletableFuture<List<BulkResult>> startContainers(ContainerSelection selection) {
+        return bulk(CommandType.START_CONTAINERS, selection);
+    }
+
+    public CompletableFuture<List<BulkResult>> stopContainers(ContainerSelection selection) {
+        return bulk(CommandType.STOP_CONTAINERS, selection);
+    }
+
+    public CompletableFuture<List<BulkResult>> deleteContainers(ContainerSelection selection) {
+        return bulk(CommandType.DELETE_CONTAINERS, selection);
+    }
+
+    // Some containers failing is not a failed call: each result says how its container fared
+    private CompletableFuture<List<BulkResult>> bulk(CommandType type, ContainerSelection selection) {
+        return send(new Command(type, selection.toParameters()), BULK_RESULTS, null, null, defaultTimeout())
+                .thenApply(response -> {
+                    if (!response.isSuccess() && response.getData() == null) {
+                        throw new CommandFailedException(response);
+                    }
+                    @SuppressWarnings("unchecked")
+                    List<BulkResult> results = (List<BulkResult>) response.getData();
+                    return results;
+                });
+    }
+
+    // Waits for the pull to finish
+    public CompletableFuture<Void> pullImage(String image) {
+        return send(new Command(CommandType.PULL_IMAGE, Map.of("image", image)), null, null, null, pullTimeout())
+                .thenApply(response -> {
+                    checked(response);
+                    return null;
+                });
+    }
+
+    // Streams progress to the listener and completes with the job's final state
+    public CompletableFuture<PullProgress> pullImage(String image, Consumer<PullProgress> listener) {
+        Consumer<Response> onPartial = partial -> listener.accept((PullProgress) partial.getData());
+        return send(new Command(CommandType.PULL_IMAGE, Map.of("image", image, "progress", "true")),
+                PullProgress.class, PullProgress.class, onPartial, pullTimeout())
+                .thenApply(response -> (PullProgress) checked(response).getData());
+    }
+
+    // Starts a server-side pull job and completes as soon as it is registered
+    public CompletableFuture<PullProgress> startPull(String image) {
+        return call(new Command(CommandType.PULL_IMAGE, Map.of("image", image, "async", "true")), PullProgress.class);
+    }
+
+    public CompletableFuture<List<PullProgress>> pullJobs() {
+        return call(new Command(CommandType.PULL_STATUS, null), PULL_JOBS);
+    }
+
+    public CompletableFuture<PullProgress> pullJob(String jobId) {
+        return call(new Command(CommandType.PULL_STATUS, Map.of("job", jobId)), PullProgress.class);
+    }
+
+    public CompletableFuture<Void> cancelPull(String jobId) {
+        return call(new Command(CommandType.PULL_CANCEL, Map.of("job", jobId)), null).thenApply(data -> null);
+    }
+
+    public CompletableFuture<Map<String, Object>> inventory() {
+        return call(new Command(CommandType.INVENTORY, null), PROPERTIES);
+    }
+
+    public CompletableFuture<Map<String, Object>> stats() {
+        return call(new Command(CommandType.STATS, null), PROPERTIES);
+    }
+
+    // One container's history at resolution "1s", "10s" or "1m", oldest interval first
+    public CompletableFuture<List<ContainerStats>> containerStats(String containerId, String resolution) {
+        return call(new Command(CommandType.CONTAINER_STATS, Map.of("id", containerId, "resolution", resolution)),
+                STATS_LIST);
+    }
+
+    // The n busiest containers by metric: cpu, memory, netRx, netTx, blockRead or blockWrite
+    public CompletableFuture<List<ContainerStats>> topContainers(int n, String metric, String resolution) {
+        return call(new Command(CommandType.CONTAINER_STATS,
+                Map.of("top", Integer.toString(n), "by", metric, "resolution", resolution)), STATS_LIST);
+    }
+
+    // Sends the top n to the listener once per resolution interval until the duration is over
+    public CompletableFuture<Void> watchTop(int n, String metric, String resolution, Duration duration,
+                                            Consumer<List<ContainerStats>> listener) {
+        Map<String, String> parameters = Map.of("top", Integer.toString(n), "by", metric,
+                "resolution", resolution, "duration", Long.toString(duration.toSeconds()));
+        @SuppressWarnings("unchecked")
+        Consumer<Response> onPartial = partial -> listener.accept((List<ContainerStats>) partial.getData());
+        return watch(parameters, STATS_LIST, onPartial, duration);
+    }
+
+    // Sends one container's newest interval to the listener until the duration is over
+    public CompletableFuture<Void> watchStats(String containerId, String resolution, Duration duration,
+                                              Consumer<ContainerStats> listener) {
+        Map<String, String> parameters = Map.of("id", containerId, "resolution", resolution,
+                "duration", Long.toString(duration.toSeconds()));
+        return watch(parameters, ContainerStats.class, partial -> listener.accept((ContainerStats) partial.getData()),
+                duration);
+    }
+
+    private CompletableFuture<Void> watch(Map<String, String> parameters, Type progressType,
+                                          Consumer<Response> onPartial, Duration duration) {
+        return send(new Command(CommandType.WATCH_STATS, parameters), null, progressType, onPartial,
+                duration.plus(defaultTimeout())).thenApply(response -> {
+                    checked(response);
+                    return null;
+                });
+    }
+
+    /*
+     * Log output of a container, from the last tail lines (null for all), kept open for new output with
+     * follow. Needs a binary format; the stream is not retried on another server, it ends with its
+     * connection.
+     */
+    public CompletableFuture<ContainerStream> logs(String containerId, boolean follow, Integer tail) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("id", containerId);
+        parameters.put("follow", Boolean.toString(follow));
+        parameters.put("tail", tail == null ? "all" : tail.toString());
+        return stream(new Command(CommandType.CONTAINER_LOGS, parameters), false);
+    }
+
+    // Runs command in a running container; interactive attaches the stream's stdin to the process
+    public CompletableFuture<ContainerStream> exec(String containerId, List<String> command, boolean tty,
+                                                   boolean interactive) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("id", containerId);
+        parameters.put("cmd", new Gson().toJson(command));
+        parameters.put("tty", Boolean.toString(tty));
+        return stream(new Command(CommandType.EXEC, parameters), interactive);
+    }
+
+    private CompletableFuture<ContainerStream> stream(Command command, boolean interactive) {
+        if (config.getFormat() != WireFormat.BINARY) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Log and exec streams need the binary format"));
+        }
+        return pool.acquire().thenApply(connection ->
+                connection.openStream(command, StreamFrame.DEFAULT_WINDOW, interactive));
+    }
+
+    // Any command, answered with the raw response whether or not it succeeded
+    public CompletableFuture<Response> execute(Command command) {
+        return send(command, null, null, null, defaultTimeout());
+    }
+
+    private <T> CompletableFuture<T> call(Command command, Type dataType) {
+        return send(command, dataType, null, null, defaultTimeout()).thenApply(response -> {
+            @SuppressWarnings("unchecked")
+            T data = (T) checked(response).getData();
+            return data;
+        });
+    }
+
+    private static Response checked(Response response) {
+        if (!response.isSuccess()) {
+            throw new CommandFailedException(response);
+        }
+        return response;
+    }
+
+    private Duration defaultTimeout() {
+        return timeout != null ? timeout : config.getTimeout();
+    }
+
+    private Duration pullTimeout() {
+        return timeout != null ? timeout : config.getPullTimeout();
+    }
+
+    private CompletableFuture<Response> send(Command command, Type dataType, Type progressType,
+                                             Consumer<Response> onPartial, Duration deadline) {
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<Response>> current = new AtomicReference<>();
+        attempt(command, dataType, progressType, onPartial, config.getServers().size() + 1, config.getBusyRetries(),
+                current, result);
+
+        if (deadline != null && !deadline.isZero()) {
+            result.orTimeout(deadline.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        // A call that timed out must also release its slot on the connection
+        result.whenComplete((response, error) -> {
+            CompletableFuture<Response> inFlight = current.get();
+            if (error != null && inFlight != null) {
+                inFlight.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    private void attempt(Command command, Type dataType, Type progressType, Consumer<Response> onPartial,
+                         int attemptsLeft, int busyRetriesLeft, AtomicReference<CompletableFuture<Response>> current,
+                         CompletableFuture<Response> result) {
+        pool.acquire().whenComplete((connection, connectError) -> {
+            if (result.isDone()) {
+                return;
+            }
+            if (connectError != null) {
+                // Nothing reached the server, so any command may go elsewhere
+                retryOrFail(command, dataType, progressType, onPartial, attemptsLeft, busyRetriesLeft, current,
+                        result, unwrap(connectError), true);
+                return;
+            }
+
+            CompletableFuture<Response> sent = connection.send(command, dataType, progressType, onPartial);
+            current.set(sent);
+            sent.whenComplete((response, error) -> {
+                if (error != null) {
+                    retryOrFail(command, dataType, progressType, onPartial, attemptsLeft, busyRetriesLeft, current,
+                            result, unwrap(error), IDEMPOTENT.contains(command.getType()));
+                } else if (response.isBusy() && busyRetriesLeft > 0 && !result.isDone()) {
+                    // Turned away before it ran, so even a mutation can go again once the delay is over
+                    Executor delayed = CompletableFuture.delayedExecutor(response.getRetryAfterMs(),
+                            TimeUnit.MILLISECONDS);
+                    delayed.execute(() -> attempt(command, dataType, progressType, onPartial, attemptsLeft,
+                            busyRetriesLeft - 1, current, result));
+                } else {
+                    result.complete(response);
+                }
+            });
+        });
+    }
+
+    private void retryOrFail(Command command, Type dataType, Type progressType, Consumer<Response> onPartial,
+                             int attemptsLeft, int busyRetriesLeft,
+                             AtomicReference<CompletableFuture<Response>> current,
+                             CompletableFuture<Response> result, Throwable error, boolean retryable) {
+        if (retryable && error instanceof IOException && attemptsLeft > 1 && !result.isDone()) {
+            attempt(command, dataType, progressType, onPartial, attemptsLeft - 1, busyRetriesLeft, current, result);
+        } else {
+            result.completeExceptionally(error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,81 @@
+package ma.ensasafi.jdocker.client;
+
+/*
+ * Log-linear histogram of latencies in microseconds, in the spirit of HdrHistogram.
+ * Values below 128 are exact; above, every power of two is split into 64 buckets,
+ * so a reported percentile is at most ~1.6% above the real value. Not thread-safe:
+ * each load thread records into its own histograms, which are merged at the end.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    // Enough octaves for anything up to 2^48 µs
+    private static final int BUCKET_COUNT = (48 - 6) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+    private long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long max;
+    private double sum;
+
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[Math.min(indexOf(value), BUCKET_COUNT - 1)]++;
+        totalCount++;
+        max = Math.max(max, value);
+        sum += value;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+        sum += other.sum;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    // Highest value that falls in the bucket holding the given percentile (0-100)
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >> shift) - SUB_BUCKETS);
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,450 @@
+package ma.ensasafi.jdocker.client;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Headless load tool: N lock-step connections drive a weighted mix of commands.
+ * closed mode: each connection sends its next command as soon as the previous one answered.
+ * open mode: commands are scheduled at a fixed total rate, and latency is measured from the
+ * time a command was due, not from when it was sent. A stalled server therefore shows up
+ * in the percentiles instead of silently lowering the request rate (coordinated omission).
+ */
+public class LoadGenerator {
+    private static final List<CommandType> SUPPORTED = List.of(
+            CommandType.PING, CommandType.LIST_CONTAINERS, CommandType.LIST_IMAGES, CommandType.CONTAINER_STATUS,
+            CommandType.INVENTORY, CommandType.PULL_STATUS, CommandType.START_CONTAINER, CommandType.STOP_CONTAINER);
+
+    private String host = "localhost";
+    private int port = 9999;
+    // Set by --socket: connections go through the server's Unix domain socket instead
+    private String socketPath;
+    private int connections = 16;
+    private long durationSeconds = 30;
+    private long warmupSeconds = 5;
+    private boolean openLoop;
+    private double rate = 1000;
+    private WireFormat format = WireFormat.JSON_LINES;
+    private boolean compression;
+    private Map<CommandType, Integer> mix = new LinkedHashMap<>();
+
+    private Gson gson = new Gson();
+    private List<String> containerIds = new ArrayList<>();
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parse(args);
+            generator.run();
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage());
+            System.err.println("Usage: LoadGenerator [--host=H] [--port=P] [--socket=PATH] [--connections=N]");
+            System.err.println("                     [--duration=S] [--warmup=S]");
+            System.err.println("                     [--mode=closed|open] [--rate=OPS_PER_SEC] [--format=json|binary]");
+            System.err.println("                     [--compression=deflate|none]");
+            System.err.println("                     [--mix=LIST_CONTAINERS=60,CONTAINER_STATUS=30,PING=10]");
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("✗ Load run failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        String mixSpec = "LIST_CONTAINERS=60,CONTAINER_STATUS=30,PING=10";
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+
+            String key = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (key) {
+                case "host":
+                    host = value;
+                    break;
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "socket":
+                    socketPath = value;
+                    break;
+                case "connections":
+                    connections = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    durationSeconds = Long.parseLong(value);
+                    break;
+                case "warmup":
+                    warmupSeconds = Long.parseLong(value);
+                    break;
+                case "mode":
+                    if (!value.equals("open") && !value.equals("closed")) {
+                        throw new IllegalArgumentException("Mode must be open or closed: " + value);
+                    }
+                    openLoop = value.equals("open");
+                    break;
+                case "rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "format":
+                    format = value.equals("binary") ? WireFormat.BINARY : WireFormat.JSON_LINES;
+                    break;
+                case "compression":
+                    if (!value.equals(Compression.DEFLATE_NAME) && !value.equals("none")) {
+                        throw new IllegalArgumentException("Compression must be deflate or none: " + value);
+                    }
+                    compression = value.equals(Compression.DEFLATE_NAME);
+                    break;
+                case "mix":
+                    mixSpec = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        for (String part : mixSpec.split(",")) {
+            String[] entry = part.trim().split("=");
+            CommandType type = CommandType.valueOf(entry[0].trim().toUpperCase());
+            if (!SUPPORTED.contains(type)) {
+                throw new IllegalArgumentException("Command not supported in a load mix: " + type);
+            }
+            mix.put(type, entry.length > 1 ? Integer.parseInt(entry[1].trim()) : 1);
+        }
+        if (connections < 1 || (openLoop && rate <= 0)) {
+            throw new IllegalArgumentException("Connections and rate must be positive");
+        }
+    }
+
+    private void run() throws Exception {
+        loadContainerIds();
+
+        System.out.println(String.format("Load: %d connection(s), %s loop%s, %s, warmup %ds, measure %ds",
+                connections, openLoop ? "open" : "closed",
+                openLoop ? String.format(" at %.0f ops/s", rate) : "",
+                (format == WireFormat.BINARY ? "binary frames" : "JSON lines") + (compression ? " + deflate" : ""),
+                warmupSeconds, durationSeconds));
+        System.out.println("Mix: " + mix);
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch finished = new CountDownLatch(connections);
+        for (int i = 0; i < connections; i++) {
+            Worker worker = new Worker(i, start, measureFrom, end, finished);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "load-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        finished.await();
+
+        report(workers);
+    }
+
+    private SocketAddress serverAddress() {
+        return socketPath != null ? UnixSockets.address(socketPath) : new InetSocketAddress(host, port);
+    }
+
+    // CONTAINER_STATUS and START/STOP need real IDs to aim at
+    private void loadContainerIds() throws IOException {
+        boolean needsIds = mix.containsKey(CommandType.CONTAINER_STATUS)
+                || mix.containsKey(CommandType.START_CONTAINER) || mix.containsKey(CommandType.STOP_CONTAINER);
+        if (!needsIds) {
+            return;
+        }
+
+        try (Connection connection = new Connection(serverAddress(), WireFormat.JSON_LINES, false)) {
+            Response response = connection.call(new Command(CommandType.LIST_CONTAINERS, Map.of("all", "true")));
+            if (response.isSuccess() && response.getData() != null) {
+                List<ContainerInfo> containers = gson.fromJson(gson.toJson(response.getData()),
+                        new TypeToken<List<ContainerInfo>>(){}.getType());
+                for (ContainerInfo container : containers) {
+                    containerIds.add(container.getId());
+                }
+            }
+        }
+        if (containerIds.isEmpty()) {
+            throw new IOException("The mix needs containers but the server lists none");
+        }
+    }
+
+    private Command nextCommand() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int pick = random.nextInt(total);
+        CommandType type = null;
+        for (Map.Entry<CommandType, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                type = entry.getKey();
+                break;
+            }
+        }
+
+        switch (type) {
+            case LIST_CONTAINERS:
+                return new Command(type, Map.of("all", "true"));
+            case CONTAINER_STATUS:
+            case START_CONTAINER:
+            case STOP_CONTAINER:
+                return new Command(type, Map.of("id", containerIds.get(random.nextInt(containerIds.size()))));
+            default:
+                return new Command(type, null);
+        }
+    }
+
+    private void report(List<Worker> workers) {
+        Map<CommandType, LatencyHistogram> responseTimes = new EnumMap<>(CommandType.class);
+        Map<CommandType, long[]> errors = new EnumMap<>(CommandType.class);
+        LatencyHistogram allResponses = new LatencyHistogram();
+        LatencyHistogram allService = new LatencyHistogram();
+        long failedConnections = 0;
+
+        for (Worker worker : workers) {
+            for (Map.Entry<CommandType, LatencyHistogram> entry : worker.responseTimes.entrySet()) {
+                responseTimes.computeIfAbsent(entry.getKey(), key -> new LatencyHistogram()).add(entry.getValue());
+                allResponses.add(entry.getValue());
+            }
+            for (Map.Entry<CommandType, long[]> entry : worker.errors.entrySet()) {
+                errors.computeIfAbsent(entry.getKey(), key -> new long[1])[0] += entry.getValue()[0];
+            }
+            allService.add(worker.serviceTime);
+            if (worker.failure != null) {
+                failedConnections++;
+            }
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-18s %10s %8s %10s %9s %9s %9s %9s %9s",
+                "COMMAND", "COUNT", "ERRORS", "OPS/S", "MEAN ms", "P50 ms", "P99 ms", "P999 ms", "MAX ms"));
+        System.out.println("─".repeat(100));
+        for (Map.Entry<CommandType, LatencyHistogram> entry : responseTimes.entrySet()) {
+            long[] failed = errors.get(entry.getKey());
+            printRow(entry.getKey().name(), entry.getValue(), failed != null ? failed[0] : 0);
+        }
+        long totalErrors = 0;
+        for (long[] failed : errors.values()) {
+            totalErrors += failed[0];
+        }
+        System.out.println("─".repeat(100));
+        printRow("TOTAL", allResponses, totalErrors);
+
+        if (openLoop) {
+            // The gap between both lines is time commands spent waiting for their turn
+            printRow("(service time)", allService, totalErrors);
+            System.out.println("\nLatencies are measured from each command's scheduled time (coordinated omission corrected).");
+        }
+        if (failedConnections > 0) {
+            System.out.println("\n✗ " + failedConnections + " connection(s) failed during the run");
+        }
+    }
+
+    private void printRow(String label, LatencyHistogram histogram, long errorCount) {
+        System.out.println(String.format("%-18s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f",
+                label, histogram.getTotalCount(), errorCount,
+                histogram.getTotalCount() / (double) durationSeconds,
+                histogram.getMean() / 1000.0,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMax() / 1000.0));
+    }
+
+    private class Worker implements Runnable {
+        private int index;
+        private long start;
+        private long measureFrom;
+        private long end;
+        private CountDownLatch finished;
+        private Map<CommandType, LatencyHistogram> responseTimes = new EnumMap<>(CommandType.class);
+        private Map<CommandType, long[]> errors = new EnumMap<>(CommandType.class);
+        private LatencyHistogram serviceTime = new LatencyHistogram();
+        private Exception failure;
+
+        Worker(int index, long start, long measureFrom, long end, CountDownLatch finished) {
+            this.index = index;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.finished = finished;
+        }
+
+        @Override
+        public void run() {
+            try (Connection connection = new Connection(serverAddress(), format, compression)) {
+                // Each connection carries rate / connections, offset so they do not fire together
+                long interval = openLoop ? (long) (TimeUnit.SECONDS.toNanos(1) * connections / rate) : 0;
+                long due = start + (openLoop ? interval * index / connections : 0);
+
+                while (true) {
+                    long now = System.nanoTime();
+                    if (openLoop) {
+                        if (due >= end) {
+                            break;
+                        }
+                        while (now < due) {
+                            LockSupport.parkNanos(due - now);
+                            now = System.nanoTime();
+                        }
+                    } else if (now >= end) {
+                        break;
+                    }
+
+                    Command command = nextCommand();
+                    long sent = System.nanoTime();
+                    Response response = connection.call(command);
+                    long done = System.nanoTime();
+
+                    long scheduled = openLoop ? due : sent;
+                    if (scheduled >= measureFrom) {
+                        responseTimes.computeIfAbsent(command.getType(), key -> new LatencyHistogram())
+                                .record((done - scheduled) / 1000);
+                        serviceTime.record((done - sent) / 1000);
+                        if (!response.isSuccess()) {
+                            errors.computeIfAbsent(command.getType(), key -> new long[1])[0]++;
+                        }
+                    }
+                    due += interval;
+                }
+            } catch (Exception e) {
+                failure = e;
+                System.err.println("✗ Connection " + (index + 1) + " failed: " + e.getMessage());
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    // One lock-step connection; binary framing and compression are negotiated with HELLO when asked for
+    private static class Connection implements Closeable {
+        // A Socket, or a SocketChannel on a Unix domain socket
+        private Closeable socket;
+        private OutputStream out;
+        private DataInputStream in;
+        private BufferedReader lines;
+        private Gson gson = new Gson();
+        private WireFormat format = WireFormat.JSON_LINES;
+        private Compression.Decompressor decompressor;
+
+        Connection(SocketAddress address, WireFormat requested, boolean compression) throws IOException {
+            if (address instanceof UnixDomainSocketAddress) {
+                SocketChannel channel = UnixSockets.connect((UnixDomainSocketAddress) address);
+                this.socket = channel;
+                this.out = new BufferedOutputStream(UnixSockets.output(channel));
+                this.in = new DataInputStream(new BufferedInputStream(UnixSockets.input(channel)));
+            } else {
+                Socket tcp = new Socket();
+                this.socket = tcp;
+                tcp.connect(address);
+                tcp.setTcpNoDelay(true);
+                this.out = new BufferedOutputStream(tcp.getOutputStream());
+                this.in = new DataInputStream(new BufferedInputStream(tcp.getInputStream()));
+            }
+
+            // Welcome message
+            readLine();
+            if (requested == WireFormat.BINARY || compression) {
+                Map<String, String> settings = new HashMap<>();
+                settings.put("framing", requested == WireFormat.BINARY ? "binary" : "json");
+                if (compression) {
+                    settings.put("compression", Compression.DEFLATE_NAME);
+                }
+                Response reply = call(new Command(CommandType.HELLO, settings));
+                if (!reply.isSuccess()) {
+                    throw new IOException("Server refused session settings: " + reply.getMessage());
+                }
+                format = requested;
+                if (compression) {
+                    if (!(reply.getData() instanceof Map)
+                            || !Compression.DEFLATE_NAME.equals(((Map<?, ?>) reply.getData()).get("compression"))) {
+                        throw new IOException("Server does not support compression");
+                    }
+                    decompressor = new Compression.Decompressor();
+                }
+            }
+            if (format == WireFormat.JSON_LINES && decompressor == null) {
+                // Nothing else is negotiated, so JSON lines can be read with read-ahead from here on
+                lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+
+        Response call(Command command) throws IOException {
+            if (format == WireFormat.BINARY) {
+                BinaryCodec.writeFrame(out, BinaryCodec.encodeCommandFrame(command));
+            } else {
+                out.write((gson.toJson(command) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+
+            if (decompressor != null) {
+                byte[] payload = decompressor.readFrame(in, BinaryCodec.MAX_RESPONSE_FRAME);
+                return format == WireFormat.BINARY
+                        ? BinaryCodec.decodeResponse(payload)
+                        : gson.fromJson(new String(payload, StandardCharsets.UTF_8), Response.class);
+            }
+            if (format == WireFormat.BINARY) {
+                return BinaryCodec.decodeResponse(BinaryCodec.readFrame(in, BinaryCodec.MAX_RESPONSE_FRAME));
+            }
+            String line = lines != null ? lines.readLine() : readLine();
+            if (line == null) {
+                throw new IOException("Connection lost to server");
+            }
+            return gson.fromJson(line, Response.class);
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            int b;
+            while ((b = in.read()) != -1 && b != '\n') {
+                line.write(b);
+            }
+            if (b == -1 && line.size() == 0) {
+                return null;
+            }
+            return line.toString(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            if (decompressor != null) {
+                decompressor.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package ma.ensasafi.jdocker.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/*
+ * One socket carrying many commands at once; responses are matched back by request ID.
+ * A command may name the types its data and progress payloads decode to: the reader binds
+ * them straight from the stream instead of going through maps and back.
+ * Futures complete on the completion executor, never on the reader: a dependent stage that sends
+ * another command and waits for it, or that is merely slow, holds up no other response.
+ */
+public class PipelinedConnection implements Closeable {
+    // A Socket, or a SocketChannel on a Unix domain socket
+    private Closeable socket;
+    private OutputStream out;
+    private DataInputStream in;
+    private Gson gson;
+    private WireFormat format;
+    // Set when the server agreed to compress; responses then arrive as Compression frames
+    private Compression.Decompressor decompressor;
+    private AtomicLong nextRequestId;
+    private Map<String, Pending> pending;
+    // Log and exec streams, by the ID their command gave the server
+    private Map<Long, ContainerStream> streams;
+    private AtomicLong nextStreamId;
+    private Thread reader;
+    // Runs the callers' dependent stages
+    private Executor completions;
+    private volatile boolean closed;
+
+    public PipelinedConnection(String host, int port) throws IOException {
+        this(host, port, WireFormat.JSON_LINES);
+    }
+
+    public PipelinedConnection(String host, int port, WireFormat format) throws IOException {
+        this(host, port, format, 0);
+    }
+
+    // connectTimeoutMillis of 0 waits as long as the operating system does
+    public PipelinedConnection(String host, int port, WireFormat format, int connectTimeoutMillis) throws IOException {
+        this(host, port, format, connectTimeoutMillis, false);
+    }
+
+    public PipelinedConnection(String host, int port, WireFormat format, int connectTimeoutMillis,
+                               boolean compression) throws IOException {
+        this(new InetSocketAddress(host, port), format, connectTimeoutMillis, compression);
+    }
+
+    // A TCP address, or a UnixDomainSocketAddress for a server on this host
+    public PipelinedConnection(SocketAddress address, WireFormat format, int connectTimeoutMillis,
+                               boolean compression) throws IOException {
+        this(address, format, connectTimeoutMillis, compression, ForkJoinPool.commonPool());
+    }
+
+    public PipelinedConnection(SocketAddress address, WireFormat format, int connectTimeoutMillis,
+                               boolean compression, Executor completions) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            SocketChannel channel = UnixSockets.connect((UnixDomainSocketAddress) address);
+            this.socket = channel;
+            this.out = new BufferedOutputStream(UnixSockets.output(channel));
+            this.in = new DataInputStream(new BufferedInputStream(UnixSockets.input(channel)));
+        } else {
+            Socket tcp = new Socket();
+            this.socket = tcp;
+            try {
+                tcp.connect(resolved(address), connectTimeoutMillis);
+                tcp.setTcpNoDelay(true);
+                this.out = new BufferedOutputStream(tcp.getOutputStream());
+                this.in = new DataInputStream(new BufferedInputStream(tcp.getInputStream()));
+            } catch (IOException e) {
+                tcp.close();
+                throw e;
+            }
+        }
+        this.gson = new Gson();
+        this.format = format;
+        this.completions = completions;
+        this.nextRequestId = new AtomicLong(0);
+        this.pending = new ConcurrentHashMap<>();
+        this.streams = new ConcurrentHashMap<>();
+        this.nextStreamId = new AtomicLong(0);
+
+        try {
+            handshake(compression);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        this.reader = new Thread(this::readResponses, "pipeline-reader-" + ConnectionPool.describe(address));
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    // Addresses from ClientConfig are kept unresolved, so DNS changes are seen on reconnect
+    private static SocketAddress resolved(SocketAddress address) {
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).isUnresolved()) {
+            InetSocketAddress unresolved = (InetSocketAddress) address;
+            return new InetSocketAddress(unresolved.getHostString(), unresolved.getPort());
+        }
+        return address;
+    }
+
+    private void handshake(boolean compression) throws IOException {
+        // Welcome message
+        if (readLine() == null) {
+            throw new IOException("Connection lost to server");
+        }
+
+        Map<String, String> settings = new HashMap<>();
+        settings.put("pipeline", "true");
+        settings.put("framing", format == WireFormat.BINARY ? "binary" : "json");
+        if (compression) {
+            settings.put("compression", Compression.DEFLATE_NAME);
+        }
+        out.write((gson.toJson(new Command(CommandType.HELLO, settings)) + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+
+        String replyJson = readLine();
+        if (replyJson == null) {
+            throw new IOException("Connection lost to server");
+        }
+
+        Response reply = gson.fromJson(replyJson, Response.class);
+        if (!reply.isSuccess()) {
+            throw new IOException("Server refused session settings: " + reply.getMessage());
+        }
+        if (reply.getData() instanceof Map
+                && Compression.DEFLATE_NAME.equals(((Map<?, ?>) reply.getData()).get("compression"))) {
+            decompressor = new Compression.Decompressor();
+        }
+    }
+
+    public boolean isCompressed() {
+        return decompressor != null;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public CompletableFuture<Response> send(Command command) {
+        return send(command, null);
+    }
+
+    // Progress messages for this command are handed to onPartial before the future completes
+    public CompletableFuture<Response> send(Command command, Consumer<Response> onPartial) {
+        return send(command, null, null, onPartial);
+    }
+
+    /*
+     * dataType and progressType say what the final and the partial responses carry (null for
+     * untyped maps and lists). Completing the future from outside, e.g. on a timeout, forgets
+     * the request; a reply that arrives later is dropped.
+     */
+    public CompletableFuture<Response> send(Command command, Type dataType, Type progressType,
+                                            Consumer<Response> onPartial) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("Connection closed"));
+            return future;
+        }
+
+        String requestId = Long.toString(nextRequestId.incrementAndGet());
+        command.setRequestId(requestId);
+        pending.put(requestId, new Pending(future, dataType, progressType, onPartial));
+        future.whenComplete((response, error) -> pending.remove(requestId));
+        if (closed && pending.remove(requestId) != null) {
+            future.completeExceptionally(new IOException("Connection closed"));
+            return future;
+        }
+
+        byte[] bytes = format == WireFormat.BINARY
+                ? BinaryCodec.encodeCommandFrame(command)
+                : (gson.toJson(command) + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            synchronized (out) {
+                out.write(bytes);
+                out.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /*
+     * Sends a CONTAINER_LOGS or EXEC command under a new stream ID; the stream is registered first, so
+     * no output can arrive ahead of it. It ends with the command's response. Binary connections only:
+     * stream frames have no JSON form.
+     */
+    public ContainerStream openStream(Command command, int window, boolean interactive) {
+        if (format != WireFormat.BINARY) {
+            throw new IllegalStateException("Streams need a binary connection");
+        }
+        long streamId = nextStreamId.incrementAndGet();
+        ContainerStream stream = new ContainerStream(streamId, this, window, interactive);
+        Map<String, String> parameters = new HashMap<>();
+        if (command.getParameters() != null) {
+            parameters.putAll(command.getParameters());
+        }
+        parameters.put("stream", Long.toString(streamId));
+        parameters.put("window", Integer.toString(window));
+        parameters.put("stdin", Boolean.toString(interactive));
+        command.setParameters(parameters);
+
+        streams.put(streamId, stream);
+        send(command).whenComplete((response, error) -> {
+            streams.remove(streamId);
+            stream.finish(response, error);
+        });
+        return stream;
+    }
+
+    void sendStreamFrame(byte[] frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        synchronized (out) {
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    public int getInFlight() {
+        return pending.size();
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    private void readResponses() {
+        // The format is settled after the handshake, so JSON can be read with read-ahead.
+        // Lenient mode accepts one top-level object after another, the newlines being whitespace.
+        JsonReader json = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        json.setLenient(true);
+        try {
+            while (true) {
+                Response response;
+                if (decompressor != null) {
+                    byte[] payload;
+                    try {
+                        payload = decompressor.readFrame(in, BinaryCodec.MAX_RESPONSE_FRAME);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (format == WireFormat.BINARY && BinaryCodec.isStreamFrame(payload)) {
+                        dispatchStreamFrame(payload);
+                        continue;
+                    }
+                    response = format == WireFormat.BINARY
+                            ? BinaryCodec.decodeResponse(payload, this::dataTypeOf)
+                            : readJsonResponse(new JsonReader(new InputStreamReader(
+                                    new ByteArrayInputStream(payload), StandardCharsets.UTF_8)));
+                } else if (format == WireFormat.BINARY) {
+                    byte[] payload;
+                    try {
+                        payload = BinaryCodec.readFrame(in, BinaryCodec.MAX_RESPONSE_FRAME);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (BinaryCodec.isStreamFrame(payload)) {
+                        dispatchStreamFrame(payload);
+                        continue;
+                    }
+                    response = BinaryCodec.decodeResponse(payload, this::dataTypeOf);
+                } else {
+                    if (json.peek() == JsonToken.END_DOCUMENT) {
+                        break;
+                    }
+                    response = readJsonResponse(json);
+                }
+
+                if (response.getRequestId() == null) {
+                    continue;
+                }
+                if (response.isPartial()) {
+                    Pending target = pending.get(response.getRequestId());
+                    if (target != null && target.onPartial != null) {
+                        try {
+                            target.onPartial.accept(response);
+                        } catch (Exception e) {
+                            System.err.println("✗ Progress listener failed: " + e.getMessage());
+                        }
+                    }
+                    continue;
+                }
+
+                Pending target = pending.remove(response.getRequestId());
+                if (target != null) {
+                    Response answer = response;
+                    deliver(() -> target.future.complete(answer));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                System.err.println("✗ Pipelined connection failed: " + e.getMessage());
+            }
+        } finally {
+            failPending();
+            if (decompressor != null) {
+                decompressor.close();
+            }
+        }
+    }
+
+    private void dispatchStreamFrame(byte[] payload) {
+        StreamFrame frame = BinaryCodec.decodeStreamFrame(payload);
+        ContainerStream stream = streams.get(frame.getStream());
+        if (stream != null) {
+            stream.received(frame);
+        }
+    }
+
+    // Servers write requestId and partial ahead of data; should data come first, it is bound once the ID is known
+    private Response readJsonResponse(JsonReader json) throws IOException {
+        Response response = new Response();
+        JsonElement earlyData = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "requestId":
+                    response.setRequestId(nextNullableString(json));
+                    break;
+                case "partial":
+                    if (json.peek() == JsonToken.NULL) {
+                        json.nextNull();
+                    } else {
+                        response.setPartial(json.nextBoolean());
+                    }
+                    break;
+                case "success":
+                    response.setSuccess(json.nextBoolean());
+                    break;
+                case "message":
+                    response.setMessage(nextNullableString(json));
+                    break;
+                case "retryAfterMs":
+                    if (json.peek() == JsonToken.NULL) {
+                        json.nextNull();
+                    } else {
+                        response.setRetryAfterMs(json.nextLong());
+                    }
+                    break;
+                case "data":
+                    if (response.getRequestId() != null) {
+                        response.setData(gson.getAdapter(TypeToken.get(dataTypeOf(response))).read(json));
+                    } else {
+                        earlyData = JsonParser.parseReader(json);
+                    }
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (earlyData != null) {
+            response.setData(gson.fromJson(earlyData, dataTypeOf(response)));
+        }
+        return response;
+    }
+
+    private Type dataTypeOf(Response response) {
+        Pending target = response.getRequestId() != null ? pending.get(response.getRequestId()) : null;
+        Type type = target == null ? null : response.isPartial() ? target.progressType : target.dataType;
+        return type != null ? type : Object.class;
+    }
+
+    private static String nextNullableString(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return null;
+        }
+        return json.nextString();
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return line.toString(StandardCharsets.UTF_8).stripTrailing();
+    }
+
+    private void failPending() {
+        closed = true;
+        IOException lost = new IOException("Connection lost to server");
+        for (String requestId : pending.keySet()) {
+            Pending target = pending.remove(requestId);
+            if (target != null) {
+                deliver(() -> target.future.completeExceptionally(lost));
+            }
+        }
+    }
+
+    private void deliver(Runnable completion) {
+        try {
+            completions.execute(completion);
+        } catch (RejectedExecutionException e) {
+            // The client is closing and its executor with it
+            completion.run();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+
+    private static class Pending {
+        private final CompletableFuture<Response> future;
+        private final Type dataType;
+        private final Type progressType;
+        private final Consumer<Response> onPartial;
+
+        Pending(CompletableFuture<Response> future, Type dataType, Type progressType, Consumer<Response> onPartial) {
+            this.future = future;
+            this.dataType = dataType;
+            this.progressType = progressType;
+            this.onPartial = onPartial;
+        }
+    }
+}
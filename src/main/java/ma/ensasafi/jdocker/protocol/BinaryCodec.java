@@ -0,0 +1,466 @@
+package ma.ensasafi.jdocker.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Compact encoding used once a connection negotiated framing=binary.
+ * Every message travels as a frame: a 4-byte big-endian length followed by the payload.
+ * Strings are a varint (length + 1, 0 meaning null) followed by UTF-8 bytes, and
+ * listings of ContainerInfo/ImageInfo are written field by field instead of as JSON.
+ * Stream frames (see StreamFrame) share the connection and start with STREAM_MARKER.
+ */
+public final class BinaryCodec {
+    public static final int MAX_COMMAND_FRAME = 1024 * 1024;
+    public static final int MAX_RESPONSE_FRAME = 256 * 1024 * 1024;
+
+    private static final byte DATA_NULL = 0;
+    private static final byte DATA_STRING = 1;
+    private static final byte DATA_CONTAINERS = 2;
+    private static final byte DATA_IMAGES = 3;
+    private static final byte DATA_JSON = 4;
+    private static final byte DATA_CONTAINER_DELTA = 5;
+    private static final byte DATA_PAGE = 6;
+
+    private static final byte FLAG_SUCCESS = 1;
+    private static final byte FLAG_PARTIAL = 2;
+    // The retry delay follows the data, where decoders that predate it stop reading
+    private static final byte FLAG_RETRY_AFTER = 4;
+
+    // Response flags never reach it and no command name is 127 bytes long, which is what a command
+    // payload starting with this byte would announce
+    private static final byte STREAM_MARKER = (byte) 0x80;
+
+    private static final Gson GSON = new Gson();
+
+    private BinaryCodec() {}
+
+    public static byte[] encodeCommandFrame(Command command) {
+        Writer writer = new Writer(64);
+        writer.writeString(command.getType() != null ? command.getType().name() : null);
+        writer.writeString(command.getRequestId());
+
+        Map<String, String> parameters = command.getParameters();
+        if (parameters == null) {
+            writer.writeVarLong(0);
+        } else {
+            writer.writeVarLong(parameters.size() + 1L);
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                writer.writeString(entry.getKey());
+                writer.writeString(entry.getValue());
+            }
+        }
+        return writer.toFrame();
+    }
+
+    public static Command decodeCommand(byte[] payload) {
+        Reader reader = new Reader(payload);
+        Command command = new Command();
+
+        String type = reader.readString();
+        command.setType(type != null ? CommandType.valueOf(type) : null);
+        command.setRequestId(reader.readString());
+
+        int count = (int) reader.readVarLong();
+        if (count > 0) {
+            Map<String, String> parameters = new HashMap<>();
+            for (int i = 0; i < count - 1; i++) {
+                parameters.put(reader.readString(), reader.readString());
+            }
+            command.setParameters(parameters);
+        }
+        return command;
+    }
+
+    public static byte[] encodeResponseFrame(Response response) {
+        Writer writer = new Writer(256);
+        Long retryAfter = response.getRetryAfterMs();
+        writer.writeByte((response.isSuccess() ? FLAG_SUCCESS : 0) | (response.isPartial() ? FLAG_PARTIAL : 0)
+                | (retryAfter != null ? FLAG_RETRY_AFTER : 0));
+        writer.writeString(response.getMessage());
+        writer.writeString(response.getRequestId());
+        writeData(writer, response.getData());
+        if (retryAfter != null) {
+            writer.writeVarLong(retryAfter);
+        }
+        return writer.toFrame();
+    }
+
+    /*
+     * The response payload cut around its request ID: flags and message, then data. A response
+     * cached this way is encoded once; each request it answers only adds a header carrying its ID,
+     * see encodeResponseHeader.
+     */
+    public static byte[][] encodeResponseParts(Response response) {
+        Long retryAfter = response.getRetryAfterMs();
+        Writer head = new Writer(64);
+        head.writeByte((response.isSuccess() ? FLAG_SUCCESS : 0) | (response.isPartial() ? FLAG_PARTIAL : 0)
+                | (retryAfter != null ? FLAG_RETRY_AFTER : 0));
+        head.writeString(response.getMessage());
+        Writer tail = new Writer(256);
+        writeData(tail, response.getData());
+        if (retryAfter != null) {
+            tail.writeVarLong(retryAfter);
+        }
+        return new byte[][] {head.toPayload(), tail.toPayload()};
+    }
+
+    // Frame length, head and request ID of a response whose tailLength bytes of data follow as they are
+    public static byte[] encodeResponseHeader(byte[] head, String requestId, int tailLength) {
+        Writer writer = new Writer(head.length + 16);
+        writer.writeBytes(head, 0, head.length);
+        writer.writeString(requestId);
+        return writer.toFrame(tailLength);
+    }
+
+    public static Response decodeResponse(byte[] payload) {
+        return decodeResponse(payload, response -> Object.class);
+    }
+
+    // dataTypes sees the flags, message and request ID, and picks the type JSON-encoded data is bound to
+    public static Response decodeResponse(byte[] payload, Function<Response, Type> dataTypes) {
+        Reader reader = new Reader(payload);
+        Response response = new Response();
+        byte flags = reader.readByte();
+        response.setSuccess((flags & FLAG_SUCCESS) != 0);
+        response.setPartial((flags & FLAG_PARTIAL) != 0);
+        response.setMessage(reader.readString());
+        response.setRequestId(reader.readString());
+        response.setData(readData(reader, dataTypes.apply(response)));
+        if ((flags & FLAG_RETRY_AFTER) != 0) {
+            response.setRetryAfterMs(reader.readVarLong());
+        }
+        return response;
+    }
+
+    public static boolean isStreamFrame(byte[] payload) {
+        return payload.length > 0 && payload[0] == STREAM_MARKER;
+    }
+
+    // Data is copied once, from the caller's buffer into the frame
+    public static byte[] encodeStreamFrame(long stream, byte kind, byte[] data, int offset, int length) {
+        Writer writer = new Writer(length + 12);
+        writer.writeByte(STREAM_MARKER);
+        writer.writeVarLong(stream);
+        writer.writeByte(kind);
+        writer.writeBytes(data, offset, length);
+        return writer.toFrame();
+    }
+
+    public static byte[] encodeStreamFrame(long stream, byte kind) {
+        return encodeStreamFrame(stream, kind, new byte[0], 0, 0);
+    }
+
+    public static byte[] encodeStreamCredit(long stream, long credit) {
+        Writer writer = new Writer(24);
+        writer.writeByte(STREAM_MARKER);
+        writer.writeVarLong(stream);
+        writer.writeByte(StreamFrame.CREDIT);
+        writer.writeVarLong(credit);
+        return writer.toFrame();
+    }
+
+    public static StreamFrame decodeStreamFrame(byte[] payload) {
+        Reader reader = new Reader(payload);
+        reader.readByte();
+        long stream = reader.readVarLong();
+        byte kind = reader.readByte();
+        if (kind == StreamFrame.CREDIT) {
+            return new StreamFrame(stream, kind, reader.readVarLong(), payload, 0, 0);
+        }
+        return new StreamFrame(stream, kind, 0, payload, reader.position, payload.length - reader.position);
+    }
+
+    public static void writeFrame(OutputStream out, byte[] frame) throws IOException {
+        out.write(frame);
+        out.flush();
+    }
+
+    public static byte[] readFrame(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return payload;
+    }
+
+    private static void writeData(Writer writer, Object data) {
+        if (data == null) {
+            writer.writeByte(DATA_NULL);
+        } else if (data instanceof String) {
+            writer.writeByte(DATA_STRING);
+            writer.writeString((String) data);
+        } else if (isListOf(data, ContainerInfo.class)) {
+            writer.writeByte(DATA_CONTAINERS);
+            writeContainers(writer, (List<?>) data);
+        } else if (data instanceof ContainerDelta) {
+            ContainerDelta delta = (ContainerDelta) data;
+            writer.writeByte(DATA_CONTAINER_DELTA);
+            writer.writeString(delta.getEpoch());
+            writer.writeVarLong(delta.getVersion());
+            writer.writeByte(delta.isFull() ? 1 : 0);
+            writeContainers(writer, delta.getContainers() != null ? delta.getContainers() : List.of());
+            List<String> removed = delta.getRemoved() != null ? delta.getRemoved() : List.of();
+            writer.writeVarLong(removed.size());
+            for (String id : removed) {
+                writer.writeString(id);
+            }
+        } else if (data instanceof Page) {
+            Page<?> page = (Page<?>) data;
+            writer.writeByte(DATA_PAGE);
+            writer.writeString(page.getNextCursor());
+            writeData(writer, page.getItems() != null ? page.getItems() : List.of());
+        } else if (isListOf(data, ImageInfo.class)) {
+            List<?> images = (List<?>) data;
+            writer.writeByte(DATA_IMAGES);
+            writer.writeVarLong(images.size());
+            for (Object element : images) {
+                ImageInfo image = (ImageInfo) element;
+                writer.writeString(image.getId());
+                writer.writeString(image.getRepository());
+                writer.writeString(image.getTag());
+                writer.writeNullableLong(image.getSize());
+                writer.writeNullableLong(image.getCreated());
+            }
+        } else {
+            // Anything without a dedicated encoding keeps its JSON form
+            writer.writeByte(DATA_JSON);
+            writer.writeString(GSON.toJson(data));
+        }
+    }
+
+    private static Object readData(Reader reader, Type jsonType) {
+        byte tag = reader.readByte();
+        switch (tag) {
+            case DATA_NULL:
+                return null;
+            case DATA_STRING:
+                return reader.readString();
+            case DATA_CONTAINERS:
+                return readContainers(reader);
+            case DATA_CONTAINER_DELTA: {
+                String epoch = reader.readString();
+                long version = reader.readVarLong();
+                boolean full = reader.readByte() != 0;
+                List<ContainerInfo> containers = readContainers(reader);
+                int count = (int) reader.readVarLong();
+                List<String> removed = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    removed.add(reader.readString());
+                }
+                return new ContainerDelta(epoch, version, full, containers, removed);
+            }
+            case DATA_PAGE: {
+                String nextCursor = reader.readString();
+                List<?> items = (List<?>) readData(reader, itemsType(jsonType));
+                return new Page<>(items, nextCursor);
+            }
+            case DATA_IMAGES: {
+                int count = (int) reader.readVarLong();
+                List<ImageInfo> images = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    images.add(new ImageInfo(
+                            reader.readString(),
+                            reader.readString(),
+                            reader.readString(),
+                            reader.readNullableLong(),
+                            reader.readNullableLong()
+                    ));
+                }
+                return images;
+            }
+            case DATA_JSON:
+                return GSON.fromJson(reader.readString(), jsonType != null ? jsonType : Object.class);
+            default:
+                throw new IllegalArgumentException("Unknown data tag: " + tag);
+        }
+    }
+
+    // Page<T> items are List<T>; anything else leaves JSON-encoded items untyped
+    private static Type itemsType(Type pageType) {
+        if (pageType instanceof ParameterizedType && ((ParameterizedType) pageType).getRawType() == Page.class) {
+            return TypeToken.getParameterized(List.class,
+                    ((ParameterizedType) pageType).getActualTypeArguments()[0]).getType();
+        }
+        return List.class;
+    }
+
+    private static void writeContainers(Writer writer, List<?> containers) {
+        writer.writeVarLong(containers.size());
+        for (Object element : containers) {
+            ContainerInfo container = (ContainerInfo) element;
+            writer.writeString(container.getId());
+            writer.writeString(container.getName());
+            writer.writeString(container.getImage());
+            writer.writeString(container.getState());
+            writer.writeString(container.getStatus());
+            writer.writeNullableLong(container.getCreated());
+        }
+    }
+
+    private static List<ContainerInfo> readContainers(Reader reader) {
+        int count = (int) reader.readVarLong();
+        List<ContainerInfo> containers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            containers.add(new ContainerInfo(
+                    reader.readString(),
+                    reader.readString(),
+                    reader.readString(),
+                    reader.readString(),
+                    reader.readString(),
+                    reader.readNullableLong()
+            ));
+        }
+        return containers;
+    }
+
+    private static boolean isListOf(Object data, Class<?> elementType) {
+        if (!(data instanceof List) || ((List<?>) data).isEmpty()) {
+            return false;
+        }
+        for (Object element : (List<?>) data) {
+            if (!elementType.isInstance(element)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int initialCapacity) {
+            // The first four bytes are reserved for the frame length
+            this.buffer = new byte[initialCapacity + 4];
+            this.position = 4;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeNullableLong(Long value) {
+            if (value == null) {
+                writeByte(0);
+            } else {
+                writeByte(1);
+                long v = value;
+                writeVarLong((v << 1) ^ (v >> 63));
+            }
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        byte[] toFrame() {
+            return toFrame(0);
+        }
+
+        // following bytes of the payload are written after this frame's bytes
+        byte[] toFrame(int following) {
+            int length = position - 4 + following;
+            buffer[0] = (byte) (length >>> 24);
+            buffer[1] = (byte) (length >>> 16);
+            buffer[2] = (byte) (length >>> 8);
+            buffer[3] = (byte) length;
+            return position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        }
+
+        // Without the length prefix, to be joined with other parts into a frame
+        byte[] toPayload() {
+            return Arrays.copyOfRange(buffer, 4, position);
+        }
+
+        private void ensure(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        Long readNullableLong() {
+            if (readByte() == 0) {
+                return null;
+            }
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        String readString() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
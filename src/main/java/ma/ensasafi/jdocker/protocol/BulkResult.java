@@ -0,0 +1,28 @@
+package ma.ensasafi.jdocker.protocol;
+
+// Outcome of one container in a bulk START/STOP/DELETE_CONTAINERS command
+public class BulkResult {
+    private String id;
+    private boolean success;
+    private String message;
+
+    public BulkResult() {}
+
+    public BulkResult(String id, boolean success, String message) {
+        this.id = id;
+        this.success = success;
+        this.message = message;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.Map;
 public class Command {
     private CommandType type;
     private Map<String, String> parameters;
+    private String requestId;
 
     public Command() {}
 
@@ -29,6 +30,14 @@ public class Command {
         this.parameters = parameters;
     }
 
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
     public String getParameter(String key) {
         return parameters != null ? parameters.get(key) : null;
     }
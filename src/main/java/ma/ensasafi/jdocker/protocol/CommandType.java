@@ -3,12 +3,24 @@ package ma.ensasafi.jdocker.protocol;
 public enum CommandType {
     LIST_IMAGES,
     PULL_IMAGE,
+    PULL_STATUS,
+    PULL_CANCEL,
     LIST_CONTAINERS,
     CREATE_CONTAINER,
     START_CONTAINER,
     STOP_CONTAINER,
     DELETE_CONTAINER,
+    START_CONTAINERS,
+    STOP_CONTAINERS,
+    DELETE_CONTAINERS,
     CONTAINER_STATUS,
+    CONTAINER_STATS,
+    WATCH_STATS,
+    CONTAINER_LOGS,
+    EXEC,
+    INVENTORY,
+    STATS,
     PING,
+    HELLO,
     EXIT
 }
@@ -0,0 +1,203 @@
+package ma.ensasafi.jdocker.protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Response envelope of connections that negotiated compression=deflate with HELLO.
+ * Every response then travels as a frame, whatever the framing: a 4-byte big-endian length, an
+ * encoding byte, and the response as the connection would otherwise send it (a JSON document
+ * without its newline, or a BinaryCodec response payload). PLAIN carries those bytes as they are;
+ * DEFLATE carries their length as 4 bytes and then the bytes compressed with raw deflate.
+ * Responses under the threshold stay PLAIN. Commands are never compressed.
+ */
+public final class Compression {
+    public static final String DEFLATE_NAME = "deflate";
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    public static final byte PLAIN = 0;
+    public static final byte DEFLATE = 1;
+
+    // Buffers grown by one huge listing are dropped afterwards rather than kept for the connection's life
+    private static final int INITIAL_BUFFER = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private Compression() {}
+
+    /*
+     * Compresses the responses of one connection with a single Deflater and reused buffers.
+     * Level 1: listings repeat the same names and states so much that higher levels gain little
+     * for several times the CPU. Methods are synchronized, pipelined responses come from many threads.
+     */
+    public static final class Compressor {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        private final int threshold;
+        private final PayloadBuffer payload = new PayloadBuffer();
+        private byte[] compressed = new byte[INITIAL_BUFFER];
+        private boolean closed;
+
+        public Compressor(int threshold) {
+            this.threshold = threshold;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+
+        // Reused buffer for a response serialized as a stream, e.g. JSON; see writePayloadFrame
+        public synchronized OutputStream payload() {
+            payload.reset();
+            return payload;
+        }
+
+        // Frames what was written to payload() since it was last handed out
+        public synchronized void writePayloadFrame(OutputStream out) throws IOException {
+            writeFrame(out, payload.buffer(), 0, payload.size());
+            payload.trim();
+        }
+
+        public synchronized void writeFrame(OutputStream out, byte[] bytes, int offset, int length) throws IOException {
+            int size = deflate(bytes, offset, length);
+            if (size < 0) {
+                writeHeader(out, length + 1, PLAIN);
+                out.write(bytes, offset, length);
+            } else {
+                writeHeader(out, size + 5, DEFLATE);
+                writeInt(out, length);
+                out.write(compressed, 0, size);
+            }
+            trimCompressed();
+        }
+
+        // Same frame as a new array, for writers that queue it instead of writing it out at once
+        public synchronized byte[] encodeFrame(byte[] bytes, int offset, int length) {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(Math.min(length, MAX_RETAINED_BUFFER) + 9);
+            try {
+                writeFrame(frame, bytes, offset, length);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return frame.toByteArray();
+        }
+
+        // Compressed size in the reused buffer, or -1 when the bytes go out as they are
+        private int deflate(byte[] bytes, int offset, int length) {
+            if (length < threshold || closed) {
+                return -1;
+            }
+            deflater.reset();
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == compressed.length) {
+                    if (size >= length) {
+                        // Incompressible: not worth more than the original
+                        return -1;
+                    }
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+            return size < length ? size : -1;
+        }
+
+        private void trimCompressed() {
+            if (compressed.length > MAX_RETAINED_BUFFER) {
+                compressed = new byte[INITIAL_BUFFER];
+            }
+        }
+
+        // Releases the Deflater's native memory; later responses go out uncompressed
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                deflater.end();
+            }
+        }
+    }
+
+    // Client side: one Inflater per connection, used by its reader thread only
+    public static final class Decompressor {
+        private final Inflater inflater = new Inflater(true);
+
+        // Reads one response frame and returns the response bytes it carries
+        public byte[] readFrame(DataInputStream in, int maxLength) throws IOException {
+            byte[] frame = BinaryCodec.readFrame(in, maxLength);
+            if (frame.length == 0) {
+                throw new IOException("Empty compressed frame");
+            }
+            if (frame[0] == PLAIN) {
+                return Arrays.copyOfRange(frame, 1, frame.length);
+            }
+            if (frame[0] != DEFLATE || frame.length < 5) {
+                throw new IOException("Unknown response encoding: " + frame[0]);
+            }
+
+            int length = ((frame[1] & 0xFF) << 24) | ((frame[2] & 0xFF) << 16) | ((frame[3] & 0xFF) << 8)
+                    | (frame[4] & 0xFF);
+            if (length < 0 || length > maxLength) {
+                throw new IOException("Invalid uncompressed length: " + length);
+            }
+            byte[] bytes = new byte[length];
+            inflater.reset();
+            inflater.setInput(frame, 5, frame.length - 5);
+            try {
+                int size = 0;
+                while (size < length && !inflater.finished()) {
+                    int count = inflater.inflate(bytes, size, length - size);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    size += count;
+                }
+                if (size != length) {
+                    throw new IOException("Truncated compressed response");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed response: " + e.getMessage());
+            }
+            return bytes;
+        }
+
+        public void close() {
+            inflater.end();
+        }
+    }
+
+    private static void writeHeader(OutputStream out, int length, byte encoding) throws IOException {
+        writeInt(out, length);
+        out.write(encoding);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+        PayloadBuffer() {
+            super(INITIAL_BUFFER);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void trim() {
+            if (buf.length > MAX_RETAINED_BUFFER) {
+                buf = new byte[INITIAL_BUFFER];
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ma.ensasafi.jdocker.protocol;
+
+import ma.ensasafi.jdocker.models.ContainerInfo;
+
+import java.util.List;
+
+/*
+ * Answer to LIST_CONTAINERS with since=<version>: what changed in the container set after that version.
+ * When full is set, containers is the whole listing and the client replaces what it had;
+ * otherwise it upserts containers and drops the removed IDs. Either way it asks next with
+ * since=version and the same epoch, which changes whenever the server's versions restart.
+ */
+public class ContainerDelta {
+    private String epoch;
+    private long version;
+    private boolean full;
+    private List<ContainerInfo> containers;
+    private List<String> removed;
+
+    public ContainerDelta() {}
+
+    public ContainerDelta(String epoch, long version, boolean full, List<ContainerInfo> containers,
+                          List<String> removed) {
+        this.epoch = epoch;
+        this.version = version;
+        this.full = full;
+        this.containers = containers;
+        this.removed = removed;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public List<ContainerInfo> getContainers() {
+        return containers;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+}
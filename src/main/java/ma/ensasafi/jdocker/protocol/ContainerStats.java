@@ -0,0 +1,78 @@
+package ma.ensasafi.jdocker.protocol;
+
+/*
+ * Resource usage of one container over one interval of a resolution (1s, 10s or 1m), averaged over
+ * the daemon's samples that fell in it. Sent as CONTAINER_STATS data and as WATCH_STATS progress.
+ * Rates are per second; time is the interval's start in epoch seconds.
+ */
+public class ContainerStats {
+    private String id;
+    private String name;
+    private long time;
+    private double cpuPercent;
+    private long memoryBytes;
+    private long memoryLimit;
+    private double netRxBytesPerSec;
+    private double netTxBytesPerSec;
+    private double blockReadBytesPerSec;
+    private double blockWriteBytesPerSec;
+
+    public ContainerStats() {}
+
+    public ContainerStats(String id, String name, long time, double cpuPercent, long memoryBytes, long memoryLimit,
+                          double netRxBytesPerSec, double netTxBytesPerSec, double blockReadBytesPerSec,
+                          double blockWriteBytesPerSec) {
+        this.id = id;
+        this.name = name;
+        this.time = time;
+        this.cpuPercent = cpuPercent;
+        this.memoryBytes = memoryBytes;
+        this.memoryLimit = memoryLimit;
+        this.netRxBytesPerSec = netRxBytesPerSec;
+        this.netTxBytesPerSec = netTxBytesPerSec;
+        this.blockReadBytesPerSec = blockReadBytesPerSec;
+        this.blockWriteBytesPerSec = blockWriteBytesPerSec;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    // 100 is one full CPU
+    public double getCpuPercent() {
+        return cpuPercent;
+    }
+
+    // Usage without the page cache the kernel can reclaim, like docker stats shows it
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public double getNetRxBytesPerSec() {
+        return netRxBytesPerSec;
+    }
+
+    public double getNetTxBytesPerSec() {
+        return netTxBytesPerSec;
+    }
+
+    public double getBlockReadBytesPerSec() {
+        return blockReadBytesPerSec;
+    }
+
+    public double getBlockWriteBytesPerSec() {
+        return blockWriteBytesPerSec;
+    }
+}
@@ -0,0 +1,33 @@
+package ma.ensasafi.jdocker.protocol;
+
+import java.util.List;
+
+/*
+ * One page of a listing requested with limit=<n>. The next page is asked for with
+ * cursor=nextCursor and the same filters; nextCursor is null on the last page.
+ * Cursors are opaque positions in the listing order, not offsets, so containers
+ * appearing or going away between two calls do not shift the pages.
+ */
+public class Page<T> {
+    private List<T> items;
+    private String nextCursor;
+
+    public Page() {}
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
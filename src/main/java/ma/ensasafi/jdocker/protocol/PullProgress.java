@@ -0,0 +1,122 @@
+package ma.ensasafi.jdocker.protocol;
+
+import java.util.List;
+
+// Snapshot of a server-side pull job, sent as PULL_STATUS data and as streamed progress
+public class PullProgress {
+    private String jobId;
+    private String image;
+    private String state;
+    private String status;
+    private String error;
+    private long currentBytes;
+    private long totalBytes;
+    private int layersDone;
+    private List<LayerProgress> layers;
+
+    public PullProgress() {}
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public void setImage(String image) {
+        this.image = image;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public void setCurrentBytes(long currentBytes) {
+        this.currentBytes = currentBytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public int getLayersDone() {
+        return layersDone;
+    }
+
+    public void setLayersDone(int layersDone) {
+        this.layersDone = layersDone;
+    }
+
+    public List<LayerProgress> getLayers() {
+        return layers;
+    }
+
+    public void setLayers(List<LayerProgress> layers) {
+        this.layers = layers;
+    }
+
+    public static class LayerProgress {
+        private String id;
+        private String status;
+        private long current;
+        private long total;
+
+        public LayerProgress() {}
+
+        public LayerProgress(String id, String status, long current, long total) {
+            this.id = id;
+            this.status = status;
+            this.current = current;
+            this.total = total;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getCurrent() {
+            return current;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package ma.ensasafi.jdocker.protocol;
 
 public class Response {
+    // Declared ahead of data so JSON readers know which command a reply belongs to before reaching its payload
+    private String requestId;
+    // Set on intermediate messages (progress) that precede the final response to a command
+    private Boolean partial;
     private boolean success;
     private String message;
+    // Set when the server turned the command away without running it: resend after this many milliseconds
+    private Long retryAfterMs;
     private Object data;
 
     public Response() {}
@@ -25,6 +31,18 @@ public class Response {
         return new Response(false, message, null);
     }
 
+    public static Response busy(String message, long retryAfterMillis) {
+        Response response = new Response(false, message, null);
+        response.retryAfterMs = retryAfterMillis;
+        return response;
+    }
+
+    public static Response progress(String message, Object data) {
+        Response response = new Response(true, message, data);
+        response.partial = true;
+        return response;
+    }
+
     // Getters and setters
     public boolean isSuccess() {
         return success;
@@ -49,4 +67,33 @@ public class Response {
     public void setData(Object data) {
         this.data = data;
     }
-}
\ No newline at end of file
+
+    public Long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public void setRetryAfterMs(Long retryAfterMs) {
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    // A busy answer: the command was not executed and can safely be sent again
+    public boolean isBusy() {
+        return retryAfterMs != null;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    public boolean isPartial() {
+        return Boolean.TRUE.equals(partial);
+    }
+
+    public void setPartial(boolean partial) {
+        this.partial = partial ? Boolean.TRUE : null;
+    }
+}
@@ -0,0 +1,70 @@
+package ma.ensasafi.jdocker.protocol;
+
+/*
+ * Chunk of a logical stream multiplexed over a pipelined binary connection, next to the commands
+ * and responses. CONTAINER_LOGS and EXEC open a stream under an ID the client picks; frames of that
+ * stream flow both ways until the command's final response, which ends it.
+ *
+ * Each direction is bounded by credit. The server sends at most the output bytes the client granted
+ * (the command's window, then CREDIT frames as the client's reader consumes), so a slow reader stalls
+ * its own stream only and nothing is buffered beyond the window. Stdin works the same way the other
+ * way round: the server grants CREDIT for what its stdin buffer can take.
+ *
+ * Client to server: STDIN, EOF (no more stdin), CREDIT (output credit), CANCEL.
+ * Server to client: STDOUT, STDERR, CREDIT (stdin credit).
+ */
+public final class StreamFrame {
+    public static final byte STDIN = 0;
+    public static final byte STDOUT = 1;
+    public static final byte STDERR = 2;
+    public static final byte CREDIT = 3;
+    public static final byte EOF = 4;
+    public static final byte CANCEL = 5;
+
+    public static final int DEFAULT_WINDOW = 256 * 1024;
+    public static final int MAX_WINDOW = 16 * 1024 * 1024;
+    // Output larger than this is split, so one big write cannot hold the connection for long
+    public static final int MAX_CHUNK = 32 * 1024;
+
+    private final long stream;
+    private final byte kind;
+    private final long credit;
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
+
+    public StreamFrame(long stream, byte kind, long credit, byte[] buffer, int offset, int length) {
+        this.stream = stream;
+        this.kind = kind;
+        this.credit = credit;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public long getStream() {
+        return stream;
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    // Bytes granted by a CREDIT frame
+    public long getCredit() {
+        return credit;
+    }
+
+    // Data of STDIN, STDOUT and STDERR frames: a view into the frame as it was read, not a copy
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
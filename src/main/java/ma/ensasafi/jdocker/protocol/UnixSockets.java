@@ -0,0 +1,139 @@
+package ma.ensasafi.jdocker.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Unix domain socket endpoints, for clients on the server's own host: the same protocol as over TCP,
+ * without the loopback TCP stack. An endpoint is written "unix:/path" or "unix:///path".
+ * Blocking streams are built here rather than with Channels.newInputStream/newOutputStream, whose
+ * streams lock the whole channel: a reader waiting for a response would block every write.
+ */
+public final class UnixSockets {
+    public static final String SCHEME = "unix:";
+
+    private UnixSockets() {}
+
+    public static boolean isEndpoint(String endpoint) {
+        return endpoint != null && endpoint.startsWith(SCHEME);
+    }
+
+    // "unix:///run/jdocker.sock", "unix:/run/jdocker.sock" or a plain path
+    public static UnixDomainSocketAddress address(String endpoint) {
+        String path = isEndpoint(endpoint) ? endpoint.substring(SCHEME.length()) : endpoint;
+        if (path.startsWith("//")) {
+            path = path.substring(2);
+        }
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Missing socket path: " + endpoint);
+        }
+        return UnixDomainSocketAddress.of(path);
+    }
+
+    public static SocketChannel connect(UnixDomainSocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /*
+     * Binds a listening socket at path. A file left there by a server that did not stop cleanly is
+     * replaced; a socket some live server still accepts on is not.
+     */
+    public static ServerSocketChannel bind(Path path, int backlog) throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+        if (Files.exists(path)) {
+            boolean live;
+            try {
+                connect(address).close();
+                live = true;
+            } catch (IOException e) {
+                live = false;
+            }
+            if (live) {
+                throw new BindException("Socket already in use: " + path);
+            }
+            Files.delete(path);
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(address, backlog);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    // Closes the listening channel and removes its file, which outlives the channel otherwise
+    public static void unbind(ServerSocketChannel channel, Path path) throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    // Reads on a blocking channel, independently of writes on the same channel
+    public static InputStream input(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int read = read(one, 0, 1);
+                return read < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                return channel.read(ByteBuffer.wrap(buffer, offset, length));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    // Writes on a blocking channel, independently of reads on the same channel
+    public static OutputStream output(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package ma.ensasafi.jdocker.protocol;
+
+public enum WireFormat {
+    // One Gson document per line, the original protocol
+    JSON_LINES,
+    // Length-prefixed frames encoded with BinaryCodec
+    BINARY
+}
@@ -0,0 +1,300 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.CommandType;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Decides whether a command runs now, waits briefly, or is turned away with a retry delay.
+ * Commands fall in lanes with their own concurrency limit, so a burst of pulls or creates uses up
+ * its lane and never the slots that PING and CONTAINER_STATUS need; a command that cannot get a slot
+ * within the admission wait is answered "busy" instead of queueing without bound. Each client address
+ * also has a token bucket. Lane limits are sized against the Docker client's 100-connection pool:
+ * mutations plus bulk operations times their fan-out stay below it.
+ *
+ * On the NIO engine every command runs on one bounded worker pool, and a mutation, bulk operation
+ * or pull keeps its worker until it answers. Those lanes then also share a cap that leaves a quarter
+ * of the workers (one at least) to reads, whatever their own limits add up to: slow commands cannot
+ * take every worker and leave the fast lane queueing behind them.
+ */
+public class AdmissionController {
+    public enum Lane {
+        // Served from the inventory or from memory: the fast lane
+        READ,
+        // One engine call on one container
+        MUTATE,
+        // Fans out to up to --bulk-concurrency engine calls
+        BULK,
+        // Waits on a download, possibly for minutes
+        PULL,
+        // Holds its slot for as long as the client watches or its stream stays open
+        STREAM
+    }
+
+    // Busy answers never ask for less, so clients do not spin on a saturated lane
+    private static final long MIN_RETRY_MILLIS = 10;
+    private static final long MAX_RETRY_MILLIS = 5000;
+    // Idle buckets are dropped once this many clients have been seen
+    private static final int MAX_TRACKED_CLIENTS = 4096;
+    // Reads keep at least 1 / READ_WORKER_SHARE of a bounded worker pool
+    private static final int READ_WORKER_SHARE = 4;
+    // Run on a worker until they answer; watches and streams answer later without one
+    private static final Set<Lane> WORKER_LANES = EnumSet.of(Lane.MUTATE, Lane.BULK, Lane.PULL);
+
+    private static final Map<CommandType, Lane> LANES = new EnumMap<>(CommandType.class);
+
+    static {
+        for (CommandType type : CommandType.values()) {
+            LANES.put(type, Lane.READ);
+        }
+        LANES.put(CommandType.CREATE_CONTAINER, Lane.MUTATE);
+        LANES.put(CommandType.START_CONTAINER, Lane.MUTATE);
+        LANES.put(CommandType.STOP_CONTAINER, Lane.MUTATE);
+        LANES.put(CommandType.DELETE_CONTAINER, Lane.MUTATE);
+        LANES.put(CommandType.START_CONTAINERS, Lane.BULK);
+        LANES.put(CommandType.STOP_CONTAINERS, Lane.BULK);
+        LANES.put(CommandType.DELETE_CONTAINERS, Lane.BULK);
+        LANES.put(CommandType.PULL_IMAGE, Lane.PULL);
+        LANES.put(CommandType.WATCH_STATS, Lane.STREAM);
+        LANES.put(CommandType.CONTAINER_LOGS, Lane.STREAM);
+        LANES.put(CommandType.EXEC, Lane.STREAM);
+    }
+
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final double clientRate;
+    private final double clientBurst;
+    private final long waitNanos;
+    // Worker lanes together on a bounded worker pool; null when each command has a thread of its own
+    private final LaneState workerShare;
+
+    public AdmissionController(ServerConfig config) {
+        for (Lane lane : Lane.values()) {
+            lanes.put(lane, new LaneState(config.getLaneLimit(lane)));
+        }
+        this.workerShare = workerShare(config);
+        this.clientRate = config.getClientRate();
+        this.clientBurst = config.getClientBurst() > 0 ? config.getClientBurst() : Math.max(1, config.getClientRate());
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(config.getAdmissionWaitMillis());
+    }
+
+    private static LaneState workerShare(ServerConfig config) {
+        if (config.getEngine() != ConnectionEngineType.NIO) {
+            return null;
+        }
+        int workers = config.getWorkerThreads();
+        int share = Math.max(1, workers - Math.max(1, workers / READ_WORKER_SHARE));
+        int wanted = 0;
+        for (Lane lane : WORKER_LANES) {
+            wanted += config.getLaneLimit(lane);
+        }
+        if (wanted <= share) {
+            return null;
+        }
+        if (workers < 2) {
+            System.err.println("⚠ With a single worker, reads can wait behind mutations, bulk operations and pulls");
+        }
+        return new LaneState(share);
+    }
+
+    public static Lane laneOf(CommandType type) {
+        return LANES.get(type);
+    }
+
+    // Either a granted permit, to be released once the command is answered, or a refusal
+    public Permit admit(String client, CommandType type) {
+        if (clientRate > 0 && client != null) {
+            long retryMillis = bucketOf(client).take(clientRate, clientBurst);
+            if (retryMillis > 0) {
+                return Permit.refused("Rate limit exceeded", clamp(retryMillis));
+            }
+        }
+
+        Lane laneType = laneOf(type);
+        LaneState lane = lanes.get(laneType);
+        LaneState shared = workerShare != null && WORKER_LANES.contains(laneType) ? workerShare : null;
+        // Under the shared cap, waiting for a slot would itself hold one of the workers kept for reads
+        long deadline = System.nanoTime() + (shared != null ? 0 : waitNanos);
+        if (!acquire(lane, deadline)) {
+            return refused(lane);
+        }
+        if (shared != null && !acquire(shared, deadline)) {
+            lane.slots.release();
+            return refused(shared);
+        }
+        return new Permit(lane, shared, System.nanoTime());
+    }
+
+    private static boolean acquire(LaneState lane, long deadline) {
+        try {
+            long remaining = deadline - System.nanoTime();
+            return lane.slots.tryAcquire() || (remaining > 0 && lane.slots.tryAcquire(remaining, TimeUnit.NANOSECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // A slot frees up roughly every average service time divided by the slots
+    private static Permit refused(LaneState lane) {
+        return Permit.refused("Server busy", clamp(lane.averageNanos / 1_000_000 / Math.max(1, lane.limit)));
+    }
+
+    private TokenBucket bucketOf(String client) {
+        TokenBucket bucket = buckets.get(client);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_TRACKED_CLIENTS) {
+                pruneIdleBuckets();
+            }
+            bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(clientBurst));
+        }
+        return bucket;
+    }
+
+    // A bucket that refilled completely holds nothing a new one would not
+    private void pruneIdleBuckets() {
+        long now = System.nanoTime();
+        for (Iterator<TokenBucket> it = buckets.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFull(now, clientRate, clientBurst)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static long clamp(long retryMillis) {
+        return Math.max(MIN_RETRY_MILLIS, Math.min(MAX_RETRY_MILLIS, retryMillis));
+    }
+
+    // Shape of the "admission" section of STATS
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<Lane, LaneState> entry : lanes.entrySet()) {
+            LaneState lane = entry.getValue();
+            Map<String, Object> laneStats = new LinkedHashMap<>();
+            laneStats.put("limit", lane.limit);
+            laneStats.put("inUse", lane.limit - lane.slots.availablePermits());
+            laneStats.put("waiting", lane.slots.getQueueLength());
+            laneStats.put("avgMs", lane.averageNanos / 1_000_000.0);
+            stats.put(entry.getKey().name().toLowerCase(), laneStats);
+        }
+        if (workerShare != null) {
+            Map<String, Object> shareStats = new LinkedHashMap<>();
+            shareStats.put("limit", workerShare.limit);
+            shareStats.put("inUse", workerShare.limit - workerShare.slots.availablePermits());
+            shareStats.put("waiting", workerShare.slots.getQueueLength());
+            stats.put("workerLanes", shareStats);
+        }
+        stats.put("clientRate", clientRate);
+        stats.put("trackedClients", buckets.size());
+        return stats;
+    }
+
+    public static final class Permit {
+        private final LaneState lane;
+        private final LaneState shared;
+        private final long startNanos;
+        private final String reason;
+        private final long retryAfterMillis;
+        private boolean released;
+
+        private Permit(LaneState lane, LaneState shared, long startNanos) {
+            this.lane = lane;
+            this.shared = shared;
+            this.startNanos = startNanos;
+            this.reason = null;
+            this.retryAfterMillis = 0;
+        }
+
+        private Permit(String reason, long retryAfterMillis) {
+            this.lane = null;
+            this.shared = null;
+            this.startNanos = 0;
+            this.reason = reason;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        static Permit refused(String reason, long retryAfterMillis) {
+            return new Permit(reason, retryAfterMillis);
+        }
+
+        public boolean isGranted() {
+            return lane != null;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        public void release() {
+            if (lane == null || released) {
+                return;
+            }
+            released = true;
+            long nanos = System.nanoTime() - startNanos;
+            lane.completed(nanos);
+            lane.slots.release();
+            if (shared != null) {
+                shared.completed(nanos);
+                shared.slots.release();
+            }
+        }
+    }
+
+    private static final class LaneState {
+        private final int limit;
+        private final Semaphore slots;
+        // Moving average of how long a command holds a slot; racy updates only blur it a little
+        private volatile long averageNanos;
+
+        LaneState(int limit) {
+            this.limit = limit;
+            this.slots = new Semaphore(limit);
+        }
+
+        void completed(long nanos) {
+            averageNanos += (nanos - averageNanos) / 8;
+        }
+    }
+
+    // Refilled lazily on each take, at rate tokens per second up to burst
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double burst) {
+            this.tokens = burst;
+        }
+
+        // 0 when a token was taken, otherwise how long until one will be there
+        synchronized long take(double rate, double burst) {
+            refill(System.nanoTime(), rate, burst);
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * 1000 / rate);
+        }
+
+        synchronized boolean isFull(long now, double rate, double burst) {
+            refill(now, rate, burst);
+            return tokens >= burst;
+        }
+
+        private void refill(long now, double rate, double burst) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1_000_000_000.0);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock-free latency histogram with fixed Prometheus-style buckets.
+ * Each bucket is a LongAdder, which stripes its cells under contention,
+ * so concurrent recorders never wait on each other.
+ */
+public class BucketHistogram {
+    // Upper bounds in microseconds; the last bucket catches everything above
+    static final long[] BOUNDS_MICROS = {
+            50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+    private LongAdder[] buckets;
+    private LongAdder count;
+    private LongAdder sumMicros;
+
+    public BucketHistogram() {
+        this.buckets = new LongAdder[BOUNDS_MICROS.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sumMicros = new LongAdder();
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int index = 0;
+        while (index < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumMicros() {
+        return sumMicros.sum();
+    }
+
+    // Non-cumulative count of one bucket; index BOUNDS_MICROS.length is the overflow bucket
+    long getBucketCount(int index) {
+        return buckets[index].sum();
+    }
+
+    // Upper bound of the bucket holding the percentile (0-100), -1 when nothing was recorded
+    public long getPercentileMicros(double percentile) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return BOUNDS_MICROS[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
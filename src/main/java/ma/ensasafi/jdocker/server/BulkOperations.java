@@ -0,0 +1,80 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.BulkResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Applies one container operation to many containers, at most `concurrency` at a time. All requests
+ * share one pool of maxConcurrency threads, so concurrent bulk requests queue their containers
+ * behind each other instead of adding up to more engine calls than that.
+ */
+public class BulkOperations {
+    public interface ContainerOperation {
+        void apply(String containerId) throws Exception;
+    }
+
+    private ExecutorService executor;
+    private int maxConcurrency;
+
+    public BulkOperations(int maxConcurrency) {
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        int threads = Math.max(1, maxConcurrency);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "bulk-op-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    // Results come back in the order of containerIds
+    public List<BulkResult> run(List<String> containerIds, int concurrency, String verb, ContainerOperation operation) {
+        BulkResult[] results = new BulkResult[containerIds.size()];
+        int workers = Math.max(1, Math.min(Math.min(concurrency, maxConcurrency), containerIds.size()));
+
+        // A fixed number of workers draining a shared index bounds the parallelism of this request
+        AtomicInteger next = new AtomicInteger(0);
+        List<CompletableFuture<Void>> running = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            running.add(CompletableFuture.runAsync(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < results.length) {
+                    String containerId = containerIds.get(index);
+                    try {
+                        operation.apply(containerId);
+                        results[index] = new BulkResult(containerId, true, "Container " + verb + " successfully");
+                    } catch (Exception e) {
+                        results[index] = new BulkResult(containerId, false, e.getMessage());
+                    }
+                }
+            }, executor));
+        }
+
+        CompletableFuture.allOf(running.toArray(new CompletableFuture<?>[0])).join();
+
+        List<BulkResult> ordered = new ArrayList<>(results.length);
+        for (BulkResult result : results) {
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,45 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.Gson;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Response;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Reply served from the ResponseCache. It is a fresh object per request, so the connection can set
+ * its request ID, while the encoded bytes are shared: sinks write them instead of serializing.
+ */
+public class CachedResponse extends Response {
+    private static final Gson REQUEST_ID_FORMAT = new Gson();
+
+    private final transient ResponseCache.Entry entry;
+
+    CachedResponse(ResponseCache.Entry entry) {
+        super(entry.getResponse().isSuccess(), entry.getResponse().getMessage(), entry.getResponse().getData());
+        this.entry = entry;
+    }
+
+    // JSON document without requestId, starting with '{'; written after jsonHead from its second byte
+    byte[] json() {
+        return entry.json();
+    }
+
+    // '{' followed by this reply's request ID
+    byte[] jsonHead() {
+        String requestId = getRequestId();
+        String head = requestId == null ? "{" : "{\"requestId\":" + REQUEST_ID_FORMAT.toJson(requestId) + ",";
+        return head.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Binary payload parts around the request ID
+    byte[][] binary() {
+        return entry.binary();
+    }
+
+    // Frame length, flags, message and this reply's request ID; the second binary part follows
+    byte[] binaryHeader() {
+        byte[][] parts = entry.binary();
+        return BinaryCodec.encodeResponseHeader(parts[0], getRequestId(), parts[1].length);
+    }
+}
@@ -1,55 +1,127 @@
 package ma.ensasafi.jdocker.server;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-import ma.ensasafi.jdocker.protocol.Command;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Compression;
 import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
 
 import java.io.*;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class ClientHandler implements Runnable {
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
     private Socket clientSocket;
-    private DockerManager dockerManager;
+    // Set instead of clientSocket for clients on the Unix domain socket
+    private SocketChannel clientChannel;
+    private String clientAddress;
+    private CommandDispatcher dispatcher;
+    private Executor executor;
     private Gson gson;
     private String clientId;
+    private ServerMetrics metrics;
+    private int compressionThreshold;
+
+    public ClientHandler(Socket socket, CommandDispatcher dispatcher, Executor executor, int clientNumber) {
+        this(socket, dispatcher, executor, clientNumber, Compression.DEFAULT_THRESHOLD);
+    }
 
-    public ClientHandler(Socket socket, DockerManager dockerManager, int clientNumber) {
+    public ClientHandler(Socket socket, CommandDispatcher dispatcher, Executor executor, int clientNumber,
+                         int compressionThreshold) {
+        this(socket.getInetAddress().getHostAddress(), socket.getInetAddress().getHostAddress(), dispatcher, executor,
+                clientNumber, compressionThreshold);
         this.clientSocket = socket;
-        this.dockerManager = dockerManager;
+    }
+
+    // A client of the Unix domain socket, necessarily on this host
+    public ClientHandler(SocketChannel channel, CommandDispatcher dispatcher, Executor executor, int clientNumber,
+                         int compressionThreshold) {
+        this("local", localClientKey(clientNumber), dispatcher, executor, clientNumber, compressionThreshold);
+        this.clientChannel = channel;
+    }
+
+    private ClientHandler(String host, String clientAddress, CommandDispatcher dispatcher, Executor executor,
+                          int clientNumber, int compressionThreshold) {
+        this.clientAddress = clientAddress;
+        this.compressionThreshold = compressionThreshold;
+        this.dispatcher = dispatcher;
+        this.executor = executor;
         this.gson = new Gson();
-        this.clientId = "Client-" + clientNumber + " (" + socket.getInetAddress().getHostAddress() + ")";
+        this.metrics = dispatcher.getMetrics();
+        this.clientId = "Client-" + clientNumber + " (" + host + ")";
+    }
+
+    /*
+     * Rate limit key of a Unix socket client. Every local process shares the same address, so each
+     * connection gets its own bucket rather than one busy tool throttling all the others.
+     */
+    static String localClientKey(int clientNumber) {
+        return "local#" + clientNumber;
     }
 
     @Override
     public void run() {
         System.out.println("✓ " + clientId + " connected");
+        metrics.connectionOpened();
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-             PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true)) {
+        ClientSession session = null;
+        // Raw byte streams: the connection may switch from JSON lines to binary frames after HELLO
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(openInput()));
+             OutputStream out = new BufferedOutputStream(new CountingOutputStream(openOutput()), WRITE_BUFFER_SIZE)) {
+            Writer jsonOut = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            JsonStaging staging = new JsonStaging();
 
-            // Send welcome message
-            Response welcome = Response.success("Connected to J-Docker Remote Manager");
-            out.println(gson.toJson(welcome));
+            // Pipelined commands answer from other threads, so writes are serialized on the stream
+            ResponseSink sink = new ResponseSink() {
+                @Override
+                public void send(Response response, WireFormat format, Compression.Compressor compressor)
+                        throws IOException {
+                    write(out, jsonOut, staging, response, format, compressor);
+                }
+
+                @Override
+                public void sendFrame(byte[] frame, Compression.Compressor compressor) throws IOException {
+                    writeFrame(out, frame, compressor);
+                }
+            };
+            session = new ClientSession(clientId, clientAddress, dispatcher, sink, executor, compressionThreshold);
 
-            String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                try {
-                    Command command = gson.fromJson(inputLine, Command.class);
-                    Response response = handleCommand(command);
-                    out.println(gson.toJson(response));
+            // Send welcome message
+            session.welcome();
 
-                    if (command.getType() != null && command.getType().name().equals("EXIT")) {
+            while (true) {
+                boolean keepOpen;
+                if (session.getInputFormat() == WireFormat.BINARY) {
+                    byte[] payload;
+                    try {
+                        payload = BinaryCodec.readFrame(in, BinaryCodec.MAX_COMMAND_FRAME);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    metrics.bytesReceived(payload.length + 4L);
+                    awaitAnswer(session);
+                    keepOpen = session.onFrame(payload);
+                } else {
+                    String inputLine = readLine(in);
+                    if (inputLine == null) {
                         break;
                     }
-                } catch (JsonSyntaxException e) {
-                    Response error = Response.error("Invalid command format: " + e.getMessage());
-                    out.println(gson.toJson(error));
-                } catch (Exception e) {
-                    Response error = Response.error("Error processing command: " + e.getMessage());
-                    out.println(gson.toJson(error));
-                    e.printStackTrace();
+                    awaitAnswer(session);
+                    keepOpen = session.onMessage(inputLine);
+                }
+
+                if (!keepOpen) {
+                    break;
                 }
             }
         } catch (SocketException e) {
@@ -57,101 +129,191 @@ public class ClientHandler implements Runnable {
         } catch (IOException e) {
             System.err.println("✗ Error handling " + clientId + ": " + e.getMessage());
         } finally {
+            if (session != null) {
+                session.close();
+            }
             cleanup();
         }
     }
 
-    private Response handleCommand(Command command) {
-        try {
-            if (command.getType() == null) {
-                return Response.error("Command type is required");
+    /*
+     * JSON responses are serialized straight onto the socket stream: list elements are written as
+     * Gson walks the data, and the buffer goes out whenever it fills, so a listing never exists as
+     * one String or byte array. Binary frames carry their length up front and are still encoded whole,
+     * and so are compressed responses, staged in the compressor's reused buffer to be measured.
+     */
+    private void write(OutputStream out, Writer jsonOut, JsonStaging staging, Response response, WireFormat format,
+                       Compression.Compressor compressor) throws IOException {
+        if (response instanceof CachedResponse) {
+            writeCached(out, (CachedResponse) response, format, compressor);
+            return;
+        }
+        if (format == WireFormat.BINARY) {
+            writeFrame(out, BinaryCodec.encodeResponseFrame(response), compressor);
+            return;
+        }
+
+        synchronized (out) {
+            if (compressor != null) {
+                Writer json = staging.writerFor(compressor);
+                writeJson(json, response);
+                json.flush();
+                compressor.writePayloadFrame(out);
+                out.flush();
+                return;
             }
+            writeJson(jsonOut, response);
+            jsonOut.write('\n');
+            jsonOut.flush();
+        }
+    }
 
-            switch (command.getType()) {
-                case PING:
-                    return Response.success("PONG");
+    // The shared bytes go out as they are, from the cache entry to the socket; only the request ID is encoded
+    private void writeCached(OutputStream out, CachedResponse response, WireFormat format,
+                             Compression.Compressor compressor) throws IOException {
+        byte[] head;
+        byte[] body;
+        int bodyOffset;
+        if (format == WireFormat.BINARY) {
+            head = response.binaryHeader();
+            body = response.binary()[1];
+            bodyOffset = 0;
+        } else {
+            head = response.jsonHead();
+            body = response.json();
+            bodyOffset = 1;
+        }
 
-                case LIST_IMAGES:
-                    return Response.success("Images retrieved successfully", dockerManager.listImages());
+        synchronized (out) {
+            if (compressor != null) {
+                OutputStream payload = compressor.payload();
+                // Compressed frames carry their own length
+                int headOffset = format == WireFormat.BINARY ? 4 : 0;
+                payload.write(head, headOffset, head.length - headOffset);
+                payload.write(body, bodyOffset, body.length - bodyOffset);
+                compressor.writePayloadFrame(out);
+            } else {
+                out.write(head);
+                out.write(body, bodyOffset, body.length - bodyOffset);
+                if (format != WireFormat.BINARY) {
+                    out.write('\n');
+                }
+            }
+            out.flush();
+        }
+    }
 
-                case PULL_IMAGE:
-                    String imageName = command.getParameter("image");
-                    if (imageName == null || imageName.trim().isEmpty()) {
-                        return Response.error("Image name is required");
-                    }
-                    String pullResult = dockerManager.pullImage(imageName);
-                    return Response.success(pullResult);
+    private void writeFrame(OutputStream out, byte[] frame, Compression.Compressor compressor) throws IOException {
+        synchronized (out) {
+            if (compressor != null) {
+                compressor.writeFrame(out, frame, 4, frame.length - 4);
+                out.flush();
+            } else {
+                BinaryCodec.writeFrame(out, frame);
+            }
+        }
+    }
 
-                case LIST_CONTAINERS:
-                    boolean showAll = "true".equals(command.getParameter("all"));
-                    return Response.success("Containers retrieved successfully",
-                            dockerManager.listContainers(showAll));
+    private void writeJson(Writer target, Response response) throws IOException {
+        JsonWriter writer = gson.newJsonWriter(target);
+        try {
+            gson.toJson(response, Response.class, writer);
+        } catch (JsonIOException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e);
+        }
+    }
 
-                case CREATE_CONTAINER:
-                    String image = command.getParameter("image");
-                    String name = command.getParameter("name");
+    // UTF-8 writer over the compressor's payload buffer, which stays the same object for the connection
+    private static class JsonStaging {
+        private Writer writer;
 
-                    if (image == null || image.trim().isEmpty()) {
-                        return Response.error("Image name is required");
-                    }
-                    if (name == null || name.trim().isEmpty()) {
-                        return Response.error("Container name is required");
-                    }
+        Writer writerFor(Compression.Compressor compressor) {
+            OutputStream payload = compressor.payload();
+            if (writer == null) {
+                writer = new OutputStreamWriter(payload, StandardCharsets.UTF_8);
+            }
+            return writer;
+        }
+    }
 
-                    String containerId = dockerManager.createContainer(image, name);
-                    return Response.success("Container created successfully with ID: " + containerId, containerId);
+    // Same line rules as BufferedReader.readLine, without reading ahead past the line
+    /*
+     * Commands of a connection that is not pipelined are answered in order: one read while a watch
+     * still answers the last waits for it. Waiting after the read rather than before lets a client
+     * that leaves meanwhile close the connection, which ends the watch.
+     */
+    private static void awaitAnswer(ClientSession session) {
+        CompletableFuture<Void> awaited = session.getAwaitedAnswer();
+        if (awaited != null) {
+            awaited.join();
+        }
+    }
 
-                case START_CONTAINER:
-                    String startId = command.getParameter("id");
-                    if (startId == null || startId.trim().isEmpty()) {
-                        return Response.error("Container ID is required");
-                    }
-                    dockerManager.startContainer(startId);
-                    return Response.success("Container started successfully");
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Command line too long");
+            }
+            line.write(b);
+        }
 
-                case STOP_CONTAINER:
-                    String stopId = command.getParameter("id");
-                    if (stopId == null || stopId.trim().isEmpty()) {
-                        return Response.error("Container ID is required");
-                    }
-                    dockerManager.stopContainer(stopId);
-                    return Response.success("Container stopped successfully");
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        metrics.bytesReceived(line.size() + (b == '\n' ? 1 : 0));
 
-                case DELETE_CONTAINER:
-                    String deleteId = command.getParameter("id");
-                    if (deleteId == null || deleteId.trim().isEmpty()) {
-                        return Response.error("Container ID is required");
-                    }
-                    dockerManager.deleteContainer(deleteId);
-                    return Response.success("Container deleted successfully");
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
 
-                case CONTAINER_STATUS:
-                    String statusId = command.getParameter("id");
-                    if (statusId == null || statusId.trim().isEmpty()) {
-                        return Response.error("Container ID is required");
-                    }
-                    String status = dockerManager.getContainerStatus(statusId);
-                    return Response.success(status);
+    // Counts what actually reaches the socket, whichever way a response was written
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
 
-                case EXIT:
-                    return Response.success("Goodbye!");
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            metrics.bytesSent(1);
+        }
 
-                default:
-                    return Response.error("Unknown command: " + command.getType());
-            }
-        } catch (Exception e) {
-            return Response.error("Command execution failed: " + e.getMessage());
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            metrics.bytesSent(len);
         }
     }
 
+    private InputStream openInput() throws IOException {
+        return clientSocket != null ? clientSocket.getInputStream() : UnixSockets.input(clientChannel);
+    }
+
+    private OutputStream openOutput() throws IOException {
+        return clientSocket != null ? clientSocket.getOutputStream() : UnixSockets.output(clientChannel);
+    }
+
     private void cleanup() {
+        metrics.connectionClosed();
         try {
             if (clientSocket != null && !clientSocket.isClosed()) {
                 clientSocket.close();
             }
+            if (clientChannel != null) {
+                clientChannel.close();
+            }
             System.out.println("✓ " + clientId + " disconnected cleanly");
         } catch (IOException e) {
             System.err.println("Error closing client socket: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
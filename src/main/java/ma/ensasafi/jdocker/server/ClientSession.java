@@ -0,0 +1,360 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Protocol state of one client connection, independent of how its bytes are read and written
+public class ClientSession {
+    private static final int MAX_IN_FLIGHT = 256;
+    // Suggested to clients whose commands found the connection or the worker pool full
+    static final long BUSY_RETRY_MILLIS = 100;
+
+    private String clientId;
+    private String clientAddress;
+    private CommandDispatcher dispatcher;
+    private ResponseSink sink;
+    private Executor executor;
+    private Gson gson;
+    private volatile boolean pipelined;
+    // Read side switches before the HELLO reply leaves, write side right after it
+    private volatile WireFormat inputFormat = WireFormat.JSON_LINES;
+    private volatile WireFormat outputFormat = WireFormat.JSON_LINES;
+    // Set once the client asked for compression, like the output format right after the HELLO reply
+    private volatile Compression.Compressor compressor;
+    private int compressionThreshold;
+    private int inFlight;
+    // Log and exec streams; their frames go out compressed like responses
+    private final StreamMultiplexer streams;
+    // Answers of watches and streams still going on, cancelled if the connection closes first
+    private final Set<PendingResponse> pending;
+    // Completes once a connection that is not pipelined has been sent the deferred answer of its last command
+    private volatile CompletableFuture<Void> awaited;
+    private volatile boolean closed;
+
+    public ClientSession(String clientId, CommandDispatcher dispatcher, ResponseSink sink, Executor executor) {
+        this(clientId, null, dispatcher, sink, executor, Compression.DEFAULT_THRESHOLD);
+    }
+
+    // clientAddress keys the client's rate limit; null leaves the session unlimited
+    public ClientSession(String clientId, String clientAddress, CommandDispatcher dispatcher, ResponseSink sink,
+                         Executor executor, int compressionThreshold) {
+        this.clientId = clientId;
+        this.clientAddress = clientAddress;
+        this.dispatcher = dispatcher;
+        this.sink = sink;
+        this.executor = executor;
+        this.gson = new Gson();
+        this.compressionThreshold = compressionThreshold;
+        this.streams = new StreamMultiplexer(frame -> sink.sendFrame(frame, compressor));
+        this.pending = ConcurrentHashMap.newKeySet();
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    public WireFormat getInputFormat() {
+        return inputFormat;
+    }
+
+    public WireFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public Compression.Compressor getCompressor() {
+        return compressor;
+    }
+
+    /*
+     * Completes once the last command has been answered, null when it already was. Only a connection
+     * that is not pipelined ever waits for it: its commands are answered one at a time, in order, so
+     * it reads no further command until then; the reading thread is free in the meantime.
+     */
+    public CompletableFuture<Void> getAwaitedAnswer() {
+        CompletableFuture<Void> current = awaited;
+        return current == null || current.isDone() ? null : current;
+    }
+
+    public void welcome() throws IOException {
+        send(Response.success("Connected to J-Docker Remote Manager"));
+    }
+
+    // Returns false once the client asked to end the session
+    public boolean onMessage(String inputLine) throws IOException {
+        Command command;
+        try {
+            command = gson.fromJson(inputLine, Command.class);
+        } catch (JsonSyntaxException e) {
+            send(Response.error("Invalid command format: " + e.getMessage()));
+            return true;
+        }
+        return handle(command);
+    }
+
+    public boolean onFrame(byte[] payload) throws IOException {
+        if (BinaryCodec.isStreamFrame(payload)) {
+            onStreamFrame(payload);
+            return true;
+        }
+        Command command;
+        try {
+            command = BinaryCodec.decodeCommand(payload);
+        } catch (RuntimeException e) {
+            send(Response.error("Invalid command format: " + e.getMessage()));
+            return true;
+        }
+        return handle(command);
+    }
+
+    // Busy replies for commands the connection could not hand to a worker, under their request IDs
+    public void rejectMessage(String inputLine) throws IOException {
+        Command command;
+        try {
+            command = gson.fromJson(inputLine, Command.class);
+        } catch (JsonSyntaxException e) {
+            command = null;
+        }
+        rejectBusy(command);
+    }
+
+    public void rejectFrame(byte[] payload) throws IOException {
+        Command command;
+        try {
+            command = BinaryCodec.decodeCommand(payload);
+        } catch (RuntimeException e) {
+            command = null;
+        }
+        rejectBusy(command);
+    }
+
+    private void rejectBusy(Command command) throws IOException {
+        Response busy = Response.busy("Server busy, retry later", BUSY_RETRY_MILLIS);
+        if (command != null) {
+            reply(command, busy);
+        } else {
+            send(busy);
+        }
+    }
+
+    // Handled at once on the connection's reader, never queued behind commands
+    public void onStreamFrame(byte[] payload) {
+        try {
+            streams.onFrame(BinaryCodec.decodeStreamFrame(payload));
+        } catch (RuntimeException e) {
+            System.err.println("✗ Invalid stream frame from " + clientId + ": " + e.getMessage());
+        }
+    }
+
+    private boolean handle(Command command) throws IOException {
+        if (command == null) {
+            send(Response.error("Command type is required"));
+            return true;
+        }
+
+        if (command.getType() == CommandType.HELLO) {
+            negotiate(command);
+            return true;
+        }
+
+        if (command.getType() == CommandType.EXIT) {
+            // Watches and streams could keep the goodbye waiting for good: they end here
+            for (PendingResponse response : pending) {
+                response.cancel();
+            }
+            streams.closeAll();
+            // Let every pipelined command answer before saying goodbye
+            awaitInFlight();
+            execute(command);
+            return false;
+        }
+
+        if (pipelined) {
+            submit(command);
+        } else {
+            awaited = execute(command);
+        }
+        return true;
+    }
+
+    private void negotiate(Command command) throws IOException {
+        WireFormat requestedFormat = outputFormat;
+        String framing = command.getParameter("framing");
+        if ("binary".equals(framing)) {
+            requestedFormat = WireFormat.BINARY;
+        } else if ("json".equals(framing)) {
+            requestedFormat = WireFormat.JSON_LINES;
+        } else if (framing != null) {
+            reply(command, Response.error("Unsupported framing: " + framing));
+            return;
+        }
+
+        // Only turned on: a connection's responses cannot go back to lines once they are frames
+        String compression = command.getParameter("compression");
+        boolean compress = compressor != null;
+        if (Compression.DEFLATE_NAME.equals(compression)) {
+            compress = true;
+        } else if (compression != null && !"none".equals(compression)) {
+            reply(command, Response.error("Unsupported compression: " + compression));
+            return;
+        }
+
+        if ("true".equals(command.getParameter("pipeline"))) {
+            pipelined = true;
+        }
+
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put("pipeline", String.valueOf(pipelined));
+        settings.put("framing", requestedFormat == WireFormat.BINARY ? "binary" : "json");
+        settings.put("compression", compress ? Compression.DEFLATE_NAME : "none");
+        if (compress) {
+            settings.put("compressionThreshold", String.valueOf(compressionThreshold));
+        }
+
+        // The reply still uses the old format; the client switches once it has read it
+        inputFormat = requestedFormat;
+        reply(command, Response.success("Session settings applied", settings));
+        outputFormat = requestedFormat;
+        if (compress && compressor == null) {
+            compressor = new Compression.Compressor(compressionThreshold);
+        }
+    }
+
+    private void submit(Command command) throws IOException {
+        synchronized (this) {
+            if (inFlight >= MAX_IN_FLIGHT) {
+                reply(command, Response.busy("Too many commands in flight, retry later", BUSY_RETRY_MILLIS));
+                return;
+            }
+            inFlight++;
+        }
+
+        try {
+            executor.execute(() -> {
+                CompletableFuture<Void> answered = null;
+                try {
+                    answered = execute(command);
+                } catch (IOException e) {
+                    System.err.println("✗ Could not answer " + clientId + ": " + e.getMessage());
+                } finally {
+                    if (answered == null) {
+                        completed();
+                    } else {
+                        answered.whenComplete((ignored, error) -> completed());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            completed();
+            reply(command, Response.busy("Server busy, retry later", BUSY_RETRY_MILLIS));
+        }
+    }
+
+    // Null once answered; otherwise what completes when the deferred answer has been sent
+    private CompletableFuture<Void> execute(Command command) throws IOException {
+        Response response;
+        try {
+            response = dispatcher.handleCommand(clientAddress, command, partial -> {
+                try {
+                    reply(command, partial);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, streamsFor());
+        } catch (Exception e) {
+            response = Response.error("Error processing command: " + e.getMessage());
+            e.printStackTrace();
+        }
+        if (response instanceof PendingResponse) {
+            return defer(command, (PendingResponse) response);
+        }
+        reply(command, response);
+        return null;
+    }
+
+    private CompletableFuture<Void> defer(Command command, PendingResponse response) {
+        pending.add(response);
+        if (closed) {
+            response.cancel();
+        }
+        return response.getResult().handle((result, error) -> {
+            pending.remove(response);
+            if (response.getResult().isCancelled()) {
+                // The connection is gone
+                return null;
+            }
+            Response answer = error == null ? result
+                    : Response.error("Error processing command: " + error.getMessage());
+            try {
+                reply(command, answer);
+            } catch (IOException e) {
+                System.err.println("✗ Could not answer " + clientId + ": " + e.getMessage());
+            }
+            return null;
+        });
+    }
+
+    // Stream frames interleave with responses by stream ID: only pipelined binary connections get them
+    private StreamMultiplexer streamsFor() {
+        return pipelined && outputFormat == WireFormat.BINARY ? streams : null;
+    }
+
+    private void reply(Command command, Response response) throws IOException {
+        response.setRequestId(command.getRequestId());
+        send(response);
+    }
+
+    private void send(Response response) throws IOException {
+        sink.send(response, outputFormat, compressor);
+    }
+
+    // Called by the connection once it is closed
+    public void close() {
+        closed = true;
+        for (PendingResponse response : pending) {
+            response.cancel();
+        }
+        streams.closeAll();
+        Compression.Compressor current = compressor;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private synchronized void completed() {
+        inFlight--;
+        if (inFlight == 0) {
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitInFlight() {
+        while (inFlight > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
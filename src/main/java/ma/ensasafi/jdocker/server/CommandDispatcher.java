@@ -0,0 +1,675 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import ma.ensasafi.jdocker.protocol.BulkResult;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.CommandType;
+import ma.ensasafi.jdocker.protocol.ContainerDelta;
+import ma.ensasafi.jdocker.protocol.ContainerStats;
+import ma.ensasafi.jdocker.protocol.PullProgress;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class CommandDispatcher {
+    private static final int MAX_TOP = 1000;
+    private static final int DEFAULT_WATCH_SECONDS = 60;
+    private static final int MAX_WATCH_SECONDS = 3600;
+    // How long an exec that ended its output may take to report its exit code
+    private static final int EXIT_CODE_POLLS = 20;
+    private static final long EXIT_CODE_POLL_MILLIS = 50;
+
+    private DockerManager dockerManager;
+
+    public CommandDispatcher(DockerManager dockerManager) {
+        this.dockerManager = dockerManager;
+    }
+
+    public Response handleCommand(Command command) {
+        return handleCommand(command, null);
+    }
+
+    public ServerMetrics getMetrics() {
+        return dockerManager.getMetrics();
+    }
+
+    // Intermediate messages such as pull progress go to the progress consumer when one is given
+    public Response handleCommand(Command command, Consumer<Response> progress) {
+        return handleCommand(null, command, progress);
+    }
+
+    // client is the address rate limits are kept for; null for callers that are not connections
+    public Response handleCommand(String client, Command command, Consumer<Response> progress) {
+        Response response = handleCommand(client, command, progress, null);
+        if (response instanceof PendingResponse) {
+            // Callers of this form expect the final answer, on their own thread as before
+            return ((PendingResponse) response).getResult().join();
+        }
+        return response;
+    }
+
+    /*
+     * streams carries CONTAINER_LOGS and EXEC output; null on connections that cannot multiplex.
+     * Watches and streams answer with a PendingResponse right away instead of holding the calling
+     * thread: the caller sends its result once complete, and cancels it if the client goes away.
+     */
+    public Response handleCommand(String client, Command command, Consumer<Response> progress,
+                                  StreamMultiplexer streams) {
+        CommandType type = command.getType();
+        // EXIT is never refused: a client told to retry its goodbye would keep the connection open
+        if (type == null || type == CommandType.EXIT) {
+            return dispatch(command, progress, streams);
+        }
+
+        ServerMetrics metrics = dockerManager.getMetrics();
+        AdmissionController.Permit permit = dockerManager.getAdmission().admit(client, type);
+        if (!permit.isGranted()) {
+            metrics.commandRejected(type);
+            return Response.busy(permit.getReason() + ", retry in " + permit.getRetryAfterMillis() + " ms",
+                    permit.getRetryAfterMillis());
+        }
+
+        boolean deferred = false;
+        try {
+            Response response = dispatchMetered(type, command, progress, streams);
+            if (response instanceof PendingResponse) {
+                // The lane counts the watch or stream until it ends, not the thread that started it
+                ((PendingResponse) response).getResult().whenComplete((result, error) -> permit.release());
+                deferred = true;
+            }
+            return response;
+        } finally {
+            if (!deferred) {
+                permit.release();
+            }
+        }
+    }
+
+    private Response dispatchMetered(CommandType type, Command command, Consumer<Response> progress,
+                                     StreamMultiplexer streams) {
+        ServerMetrics metrics = dockerManager.getMetrics();
+        long engineBefore = metrics.engineNanosOnThisThread();
+        long start = System.nanoTime();
+        metrics.commandStarted(type);
+        Response response = null;
+        boolean deferred = false;
+        try {
+            response = dispatch(command, progress, streams);
+            if (response instanceof PendingResponse) {
+                long engineNanos = metrics.engineNanosOnThisThread() - engineBefore;
+                ((PendingResponse) response).getResult().whenComplete((result, error) ->
+                        metrics.commandFinished(type, System.nanoTime() - start, engineNanos,
+                                result != null && result.isSuccess()));
+                deferred = true;
+            }
+            return response;
+        } finally {
+            if (!deferred) {
+                metrics.commandFinished(type, System.nanoTime() - start,
+                        metrics.engineNanosOnThisThread() - engineBefore, response != null && response.isSuccess());
+            }
+        }
+    }
+
+    private Response dispatch(Command command, Consumer<Response> progress, StreamMultiplexer streams) {
+        try {
+            if (command.getType() == null) {
+                return Response.error("Command type is required");
+            }
+
+            switch (command.getType()) {
+                case PING:
+                    return Response.success("PONG");
+
+                case LIST_IMAGES: {
+                    ListingQuery query = ListingQuery.forImages(command);
+                    return cachedListing(command, query.getImageFilter().hasLabels(), () ->
+                            Response.success("Images retrieved successfully",
+                                    query.answerImages(dockerManager.listImages(query.getImageFilter()))));
+                }
+
+                case PULL_IMAGE:
+                    String imageName = command.getParameter("image");
+                    if (imageName == null || imageName.trim().isEmpty()) {
+                        return Response.error("Image name is required");
+                    }
+                    return handlePull(imageName, command, progress);
+
+                case PULL_STATUS:
+                    String statusJobId = command.getParameter("job");
+                    if (statusJobId == null || statusJobId.trim().isEmpty()) {
+                        return Response.success("Pull jobs retrieved successfully", dockerManager.getPullJobs().list());
+                    }
+                    PullJob statusJob = dockerManager.getPullJobs().get(statusJobId);
+                    if (statusJob == null) {
+                        return Response.error("Unknown pull job: " + statusJobId);
+                    }
+                    return Response.success("Pull job " + statusJobId + " is " + statusJob.getState(), statusJob.snapshot());
+
+                case PULL_CANCEL:
+                    String cancelJobId = command.getParameter("job");
+                    if (cancelJobId == null || cancelJobId.trim().isEmpty()) {
+                        return Response.error("Pull job ID is required");
+                    }
+                    if (!dockerManager.getPullJobs().cancel(cancelJobId)) {
+                        return Response.error("No running pull job: " + cancelJobId);
+                    }
+                    return Response.success("Pull job " + cancelJobId + " cancelled");
+
+                case LIST_CONTAINERS: {
+                    if (command.getParameter("since") != null) {
+                        if (ListingQuery.hasListingParameters(command)) {
+                            return Response.error("since cannot be combined with filters, fields or paging");
+                        }
+                        return handleContainerChanges(command, "true".equals(command.getParameter("all")));
+                    }
+                    ListingQuery query = ListingQuery.forContainers(command);
+                    return cachedListing(command, query.getContainerFilter().hasLabels(), () ->
+                            Response.success("Containers retrieved successfully",
+                                    query.answerContainers(dockerManager.listContainers(query.getContainerFilter()))));
+                }
+
+                case CREATE_CONTAINER:
+                    String image = command.getParameter("image");
+                    String name = command.getParameter("name");
+
+                    if (image == null || image.trim().isEmpty()) {
+                        return Response.error("Image name is required");
+                    }
+                    if (name == null || name.trim().isEmpty()) {
+                        return Response.error("Container name is required");
+                    }
+
+                    String containerId = dockerManager.createContainer(image, name);
+                    return Response.success("Container created successfully with ID: " + containerId, containerId);
+
+                case START_CONTAINER:
+                    String startId = command.getParameter("id");
+                    if (startId == null || startId.trim().isEmpty()) {
+                        return Response.error("Container ID is required");
+                    }
+                    dockerManager.startContainer(startId);
+                    return Response.success("Container started successfully");
+
+                case STOP_CONTAINER:
+                    String stopId = command.getParameter("id");
+                    if (stopId == null || stopId.trim().isEmpty()) {
+                        return Response.error("Container ID is required");
+                    }
+                    dockerManager.stopContainer(stopId);
+                    return Response.success("Container stopped successfully");
+
+                case DELETE_CONTAINER:
+                    String deleteId = command.getParameter("id");
+                    if (deleteId == null || deleteId.trim().isEmpty()) {
+                        return Response.error("Container ID is required");
+                    }
+                    dockerManager.deleteContainer(deleteId);
+                    return Response.success("Container deleted successfully");
+
+                case START_CONTAINERS:
+                case STOP_CONTAINERS:
+                case DELETE_CONTAINERS:
+                    return handleBulk(command);
+
+                case CONTAINER_STATUS:
+                    String statusId = command.getParameter("id");
+                    if (statusId == null || statusId.trim().isEmpty()) {
+                        return Response.error("Container ID is required");
+                    }
+                    String status = dockerManager.getContainerStatus(statusId);
+                    return Response.success(status);
+
+                case CONTAINER_STATS:
+                    return handleContainerStats(command);
+
+                case WATCH_STATS:
+                    return handleWatchStats(command, progress);
+
+                case CONTAINER_LOGS:
+                    return handleLogs(command, streams);
+
+                case EXEC:
+                    return handleExec(command, streams);
+
+                case INVENTORY:
+                    DockerInventory inventory = dockerManager.getInventory();
+                    if (inventory == null) {
+                        return Response.error("Inventory is disabled on this server");
+                    }
+                    return Response.success("Inventory version " + inventory.getVersion(), inventory.describe());
+
+                case STATS: {
+                    Map<String, Object> stats = dockerManager.getMetrics().snapshot();
+                    stats.put("admission", dockerManager.getAdmission().snapshot());
+                    if (dockerManager.getFederation() != null) {
+                        stats.put("hosts", dockerManager.getFederation().snapshot());
+                    }
+                    if (dockerManager.getStats() != null) {
+                        stats.put("resources", dockerManager.getStats().snapshot());
+                    }
+                    if (dockerManager.getReads() != null) {
+                        stats.put("coalescing", dockerManager.getReads().snapshot());
+                    }
+                    if (dockerManager.getResponses() != null) {
+                        stats.put("responseCache", dockerManager.getResponses().snapshot());
+                    }
+                    if (dockerManager.getWarmPool() != null) {
+                        stats.put("warmPool", dockerManager.getWarmPool().snapshot());
+                    }
+                    return Response.success("Server statistics", stats);
+                }
+
+                case EXIT:
+                    return Response.success("Goodbye!");
+
+                default:
+                    return Response.error("Unknown command: " + command.getType());
+            }
+        } catch (IllegalArgumentException e) {
+            // Malformed parameters, already phrased for the client
+            return Response.error(e.getMessage());
+        } catch (Exception e) {
+            return Response.error("Command execution failed: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Listings the inventory answers are the same bytes for everyone until its version moves: the
+     * encoded response is cached for that version. Label filters go to the engine and are not cached.
+     * A response is kept only if the version did not move while it was built, so it reflects that version.
+     */
+    private Response cachedListing(Command command, boolean labels, Supplier<Response> listing) {
+        ResponseCache cache = dockerManager.getResponses();
+        long version = dockerManager.getListingVersion();
+        if (cache == null || labels || version < 0) {
+            return listing.get();
+        }
+
+        String key = ResponseCache.key(command);
+        Response cached = cache.get(key, version);
+        if (cached != null) {
+            return cached;
+        }
+        Response response = listing.get();
+        if (response.isSuccess() && dockerManager.getListingVersion() == version) {
+            return cache.put(key, version, response);
+        }
+        return response;
+    }
+
+    private Response handlePull(String imageName, Command command, Consumer<Response> progress) throws InterruptedException {
+        PullJob job = dockerManager.getPullJobs().submit(imageName);
+        if ("true".equals(command.getParameter("async"))) {
+            return Response.success("Pull job " + job.getId() + " started for " + imageName, job.snapshot());
+        }
+
+        boolean streaming = progress != null && "true".equals(command.getParameter("progress"));
+        Consumer<PullProgress> subscriber = snapshot -> progress.accept(Response.progress("Pulling " + imageName, snapshot));
+        if (streaming) {
+            job.subscribe(subscriber);
+        }
+
+        PullProgress result;
+        try {
+            result = job.await();
+        } finally {
+            job.unsubscribe(subscriber);
+        }
+
+        switch (job.getState()) {
+            case COMPLETED:
+                return Response.success("Successfully pulled image: " + imageName, streaming ? result : null);
+            case CANCELLED:
+                return Response.error("Pull job " + job.getId() + " cancelled");
+            default:
+                return Response.error("Command execution failed: " + result.getError());
+        }
+    }
+
+    // id=<container> for its history, otherwise top=<n> containers by=<metric>; resolution=1s|10s|1m
+    private Response handleContainerStats(Command command) {
+        StatsCollector stats = dockerManager.getStats();
+        if (stats == null) {
+            return Response.error("Resource stats are disabled on this server");
+        }
+        StatsCollector.Resolution resolution = statsResolution(command);
+
+        String id = command.getParameter("id");
+        if (id != null && !id.trim().isEmpty()) {
+            List<ContainerStats> history = stats.history(id, resolution);
+            if (history == null) {
+                return Response.error("No stats for container: " + id);
+            }
+            return Response.success(history.size() + " interval(s) of " + resolution.getLabel(), history);
+        }
+
+        StatsCollector.Metric metric = statsMetric(command);
+        List<ContainerStats> top = stats.top(intParameter(command, "top", 10, 1, MAX_TOP), metric, resolution);
+        return Response.success("Top " + top.size() + " container(s) by " + metric.name().toLowerCase(), top);
+    }
+
+    /*
+     * Sends the same view as CONTAINER_STATS as progress every interval seconds (the resolution's
+     * period by default) for duration seconds, or until the client is gone. Only the newest interval is
+     * sent for a single container. Every watcher reads the collector's shared views: watching adds no
+     * engine call. The collector's watch threads send the updates, so no worker waits in between.
+     */
+    private Response handleWatchStats(Command command, Consumer<Response> progress) {
+        StatsCollector stats = dockerManager.getStats();
+        if (stats == null) {
+            return Response.error("Resource stats are disabled on this server");
+        }
+        if (progress == null) {
+            return Response.error("WATCH_STATS needs a connection that accepts progress messages");
+        }
+        StatsCollector.Resolution resolution = statsResolution(command);
+        StatsCollector.Metric metric = statsMetric(command);
+        int top = intParameter(command, "top", 10, 1, MAX_TOP);
+        int interval = intParameter(command, "interval", resolution.getPeriodSeconds(), 1, MAX_WATCH_SECONDS);
+        int duration = intParameter(command, "duration", DEFAULT_WATCH_SECONDS, 1, MAX_WATCH_SECONDS);
+        String id = command.getParameter("id");
+        boolean single = id != null && !id.trim().isEmpty();
+        if (single && stats.latest(id, resolution) == null) {
+            return Response.error("No stats for container: " + id);
+        }
+
+        CompletableFuture<Integer> watch = stats.watch(interval * 1000L, duration * 1000L, () -> {
+            if (single) {
+                ContainerStats latest = stats.latest(id, resolution);
+                if (latest == null) {
+                    throw new IllegalArgumentException("No stats for container: " + id);
+                }
+                progress.accept(Response.progress("Stats of " + id, latest));
+            } else {
+                progress.accept(Response.progress("Top " + top + " by " + metric.name().toLowerCase(),
+                        stats.top(top, metric, resolution)));
+            }
+        });
+        CompletableFuture<Response> result = watch.handle((sent, error) -> {
+            if (error instanceof UncheckedIOException) {
+                // The client went away; nobody reads the answer either
+                return Response.error("Watch ended: " + error.getMessage());
+            }
+            if (error != null) {
+                return Response.error(error.getMessage());
+            }
+            return Response.success("Watch ended after " + sent + " update(s)");
+        });
+        result.whenComplete((response, error) -> watch.cancel(false));
+        return new PendingResponse(result);
+    }
+
+    /*
+     * Output goes to the stream the client opened with stream=<id>, at most window=<bytes> ahead of
+     * its CREDIT frames; follow keeps it open until the container stops or the client cancels.
+     * tail=<n>|all, timestamps=true. The response comes once the stream has ended; until then the
+     * engine's callback drives the stream and no worker waits for it.
+     */
+    private Response handleLogs(Command command, StreamMultiplexer streams) throws Exception {
+        String id = command.getParameter("id");
+        if (id == null || id.trim().isEmpty()) {
+            return Response.error("Container ID is required");
+        }
+        if (streams == null) {
+            return Response.error("Log streams need a pipelined binary connection");
+        }
+        Integer tail = tailParameter(command);
+
+        StreamChannel channel = streams.open(streamParameter(command), windowParameter(command), false);
+        try {
+            dockerManager.streamLogs(id, "true".equals(command.getParameter("follow")), tail,
+                    "true".equals(command.getParameter("timestamps")), channel);
+        } catch (Exception e) {
+            streams.release(channel);
+            throw e;
+        }
+        return pending(whenEnded(streams, channel).thenApply(cancelled ->
+                Response.success(cancelled ? "Log stream cancelled" : "Log stream ended")));
+    }
+
+    /*
+     * Runs cmd=<JSON array or words> in a container, output on stream=<id> like logs. With stdin=true
+     * (the default) the client's STDIN frames feed the process until EOF; tty=true merges the output
+     * into one raw stream. The response carries the exit code once the output has ended.
+     */
+    private Response handleExec(Command command, StreamMultiplexer streams) throws Exception {
+        String id = command.getParameter("id");
+        if (id == null || id.trim().isEmpty()) {
+            return Response.error("Container ID is required");
+        }
+        if (streams == null) {
+            return Response.error("Exec streams need a pipelined binary connection");
+        }
+        List<String> cmd = execParameter(command);
+        boolean tty = "true".equals(command.getParameter("tty"));
+        boolean interactive = !"false".equals(command.getParameter("stdin"));
+
+        StreamChannel channel = streams.open(streamParameter(command), windowParameter(command), interactive);
+        String execId;
+        try {
+            execId = dockerManager.execCommand(id, cmd, tty, channel.getInput(), channel);
+        } catch (Exception e) {
+            streams.release(channel);
+            throw e;
+        }
+
+        return pending(whenEnded(streams, channel).thenCompose(cancelled ->
+                exitCode(execId, cancelled ? 0 : EXIT_CODE_POLLS).thenApply(exitCode -> {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("execId", execId);
+                    result.put("exitCode", exitCode);
+                    if (exitCode == null) {
+                        return Response.success(cancelled ? "Exec detached" : "Exec still running", result);
+                    }
+                    return Response.success("Exec exited with code " + exitCode, result);
+                })));
+    }
+
+    // Whether the client cancelled the stream, once it has ended; an engine error fails the command
+    private static CompletableFuture<Boolean> whenEnded(StreamMultiplexer streams, StreamChannel channel) {
+        return channel.whenEnded().handle((ignored, error) -> {
+            // Releasing cancels the channel: whether the client did must be read first
+            boolean cancelled = channel.isCancelled();
+            streams.release(channel);
+            if (error != null) {
+                throw new CompletionException(error);
+            }
+            return cancelled;
+        });
+    }
+
+    // A stream that fails answers like any command that failed while running
+    private static PendingResponse pending(CompletableFuture<Response> result) {
+        return new PendingResponse(result.exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+            return Response.error("Command execution failed: " + cause.getMessage());
+        }));
+    }
+
+    /*
+     * The daemon may report the process as running for a moment after its output ended: asks again
+     * up to polls times, each a timer's delay later rather than a thread's sleep.
+     */
+    private CompletableFuture<Long> exitCode(String execId, int polls) {
+        Long exitCode = dockerManager.getExecExitCode(execId);
+        if (exitCode != null || polls == 0) {
+            return CompletableFuture.completedFuture(exitCode);
+        }
+        Executor later = CompletableFuture.delayedExecutor(EXIT_CODE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() -> exitCode(execId, polls - 1), later).thenCompose(next -> next);
+    }
+
+    private static long streamParameter(Command command) {
+        String value = command.getParameter("stream");
+        if (value == null) {
+            throw new IllegalArgumentException("Stream ID is required");
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid stream: " + value);
+        }
+    }
+
+    private static int windowParameter(Command command) {
+        return intParameter(command, "window", StreamFrame.DEFAULT_WINDOW, 1, StreamFrame.MAX_WINDOW);
+    }
+
+    // null asks for the whole log
+    private static Integer tailParameter(Command command) {
+        String value = command.getParameter("tail");
+        if (value == null || "all".equals(value)) {
+            return null;
+        }
+        return intParameter(command, "tail", 0, 0, Integer.MAX_VALUE);
+    }
+
+    private List<String> execParameter(Command command) {
+        String value = command.getParameter("cmd");
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Exec command is required");
+        }
+        List<String> cmd = new ArrayList<>();
+        if (value.trim().startsWith("[")) {
+            try {
+                for (JsonElement arg : JsonParser.parseString(value).getAsJsonArray()) {
+                    cmd.add(arg.getAsString());
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cmd: " + value);
+            }
+        } else {
+            cmd.addAll(Arrays.asList(value.trim().split("\\s+")));
+        }
+        if (cmd.isEmpty()) {
+            throw new IllegalArgumentException("Exec command is required");
+        }
+        return cmd;
+    }
+
+    private static StatsCollector.Resolution statsResolution(Command command) {
+        String value = command.getParameter("resolution");
+        return value == null ? StatsCollector.Resolution.SECOND : StatsCollector.Resolution.parse(value);
+    }
+
+    private static StatsCollector.Metric statsMetric(Command command) {
+        String value = command.getParameter("by");
+        return value == null ? StatsCollector.Metric.CPU : StatsCollector.Metric.parse(value);
+    }
+
+    private static int intParameter(Command command, String name, int defaultValue, int min, int max) {
+        String value = command.getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value + " (" + min + ".." + max + ")");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    // since=<version> with the epoch of the answer that version came from
+    private Response handleContainerChanges(Command command, boolean all) {
+        long since;
+        try {
+            since = Long.parseLong(command.getParameter("since"));
+        } catch (NumberFormatException e) {
+            return Response.error("Invalid version: " + command.getParameter("since"));
+        }
+
+        ContainerDelta delta = dockerManager.listContainerChanges(all, since, command.getParameter("epoch"));
+        if (delta.isFull()) {
+            return Response.success("Full container listing at version " + delta.getVersion(), delta);
+        }
+        return Response.success((delta.getContainers().size() + delta.getRemoved().size())
+                + " container change(s) since version " + since, delta);
+    }
+
+    // ids=a,b,c or a label=k=v,k2 / name=... selector; concurrency is optional
+    private Response handleBulk(Command command) {
+        List<String> containerIds = splitList(command.getParameter("ids"));
+        List<String> labels = splitList(command.getParameter("label"));
+        String name = command.getParameter("name");
+
+        if (containerIds.isEmpty()) {
+            if (labels.isEmpty() && (name == null || name.trim().isEmpty())) {
+                return Response.error("Container IDs or a label/name selector are required");
+            }
+            containerIds = dockerManager.selectContainers(labels, name);
+            if (containerIds.isEmpty()) {
+                return Response.success("No container matches the selector", new ArrayList<BulkResult>());
+            }
+        }
+
+        int concurrency = dockerManager.getMaxBulkConcurrency();
+        String requested = command.getParameter("concurrency");
+        if (requested != null) {
+            try {
+                concurrency = Integer.parseInt(requested);
+            } catch (NumberFormatException e) {
+                return Response.error("Invalid concurrency: " + requested);
+            }
+            if (concurrency < 1) {
+                return Response.error("Invalid concurrency: " + requested);
+            }
+        }
+
+        List<BulkResult> results;
+        String verb;
+        switch (command.getType()) {
+            case START_CONTAINERS:
+                results = dockerManager.startContainers(containerIds, concurrency);
+                verb = "started";
+                break;
+            case STOP_CONTAINERS:
+                results = dockerManager.stopContainers(containerIds, concurrency);
+                verb = "stopped";
+                break;
+            default:
+                results = dockerManager.deleteContainers(containerIds, concurrency);
+                verb = "deleted";
+        }
+
+        int succeeded = 0;
+        for (BulkResult result : results) {
+            if (result.isSuccess()) {
+                succeeded++;
+            }
+        }
+        return new Response(succeeded == results.size(),
+                succeeded + "/" + results.size() + " container(s) " + verb, results);
+    }
+
+    static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        if (value == null) {
+            return items;
+        }
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+}
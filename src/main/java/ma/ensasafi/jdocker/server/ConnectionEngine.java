@@ -0,0 +1,8 @@
+package ma.ensasafi.jdocker.server;
+
+public interface ConnectionEngine {
+    // Serves clients until shutdown() is called
+    void start();
+
+    void shutdown();
+}
@@ -0,0 +1,7 @@
+package ma.ensasafi.jdocker.server;
+
+public enum ConnectionEngineType {
+    THREAD,
+    VIRTUAL,
+    NIO
+}
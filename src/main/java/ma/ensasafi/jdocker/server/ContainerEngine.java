@@ -0,0 +1,87 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.Statistics;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+
+/*
+ * The container runtime behind DockerManager.
+ * Methods throw the runtime's own exceptions; DockerManager turns them into client messages.
+ * Pulls, stats, logs, execs and events are asynchronous and follow docker-java's ResultCallback contract,
+ * so closing the callback stops the stream whatever the implementation.
+ */
+public interface ContainerEngine {
+    // Shown in the server banner
+    String describe();
+
+    // Criteria the runtime can evaluate are pushed down to it, the rest is checked on its answer
+    List<ImageInfo> listImages(ImageFilter filter);
+
+    List<ContainerInfo> listContainers(ContainerFilter filter);
+
+    default List<ImageInfo> listImages() {
+        return listImages(ImageFilter.ALL);
+    }
+
+    default List<ContainerInfo> listContainers(boolean all) {
+        return listContainers(all ? ContainerFilter.ALL : ContainerFilter.RUNNING);
+    }
+
+    // Current state of one container by full ID, null once it is gone
+    ContainerInfo getContainer(String containerId);
+
+    // Label ("key" or "key=value") and name selectors, matched across all containers
+    List<String> selectContainers(List<String> labels, String name);
+
+    String createContainer(String imageName, String containerName);
+
+    void startContainer(String containerId);
+
+    void stopContainer(String containerId);
+
+    void deleteContainer(String containerId);
+
+    // New name of a container given by ID, without the leading "/"
+    void renameContainer(String containerId, String newName);
+
+    // Freezes the processes of a running container; unpause lets them run on
+    void pauseContainer(String containerId);
+
+    void unpauseContainer(String containerId);
+
+    // Raw state ("running", "exited"...) of a container given by ID, ID prefix or name
+    String getContainerState(String containerId);
+
+    // Starts pulling a normalized reference such as docker.io/library/nginx:latest
+    void pullImage(String reference, ResultCallback<PullResponseItem> callback);
+
+    // Resource samples of one running container, about one per second, until the callback is closed
+    // or the container stops
+    void streamStats(String containerId, ResultCallback<Statistics> callback);
+
+    // Log output as the daemon frames it, stdout and stderr apart; follow keeps the stream open for new
+    // output. tail is the number of past lines to start with, null for all of them
+    void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                    ResultCallback<Frame> callback);
+
+    // Runs command in a running container and returns the exec ID. stdin, when not null, is read until it
+    // ends; with tty the output comes as one raw stream
+    String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                       ResultCallback<Frame> callback);
+
+    // Exit code of a finished exec, null while it runs
+    Long getExecExitCode(String execId);
+
+    // Container and image events until the returned stream is closed
+    Closeable subscribeEvents(ResultCallback<Event> callback);
+
+    void close();
+}
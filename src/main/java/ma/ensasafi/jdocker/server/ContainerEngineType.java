@@ -0,0 +1,8 @@
+package ma.ensasafi.jdocker.server;
+
+public enum ContainerEngineType {
+    // docker-java against a real daemon
+    DOCKER,
+    // In-memory engine for benchmarks and soak tests, no daemon needed
+    SIMULATED
+}
@@ -0,0 +1,108 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.models.ContainerInfo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Which containers a listing asks for; null or empty criteria match everything.
+ * Engines hand what their runtime can filter on (state, labels, name) to the runtime and check
+ * the rest with matches(). Labels are not part of ContainerInfo, so only engines can apply them.
+ */
+public class ContainerFilter {
+    public static final ContainerFilter ALL = new ContainerFilter(null, null, null, null, null);
+    public static final ContainerFilter RUNNING = new ContainerFilter(Set.of("running"), null, null, null, null);
+
+    private final Set<String> states;
+    private final String namePrefix;
+    private final String imagePrefix;
+    private final List<String> labels;
+    private final Long createdAfter;
+
+    public ContainerFilter(Set<String> states, String namePrefix, String imagePrefix, List<String> labels,
+                           Long createdAfter) {
+        this.states = states != null && !states.isEmpty() ? states : null;
+        this.namePrefix = namePrefix != null && !namePrefix.isEmpty() ? namePrefix : null;
+        this.imagePrefix = imagePrefix != null && !imagePrefix.isEmpty() ? imagePrefix : null;
+        this.labels = labels != null ? labels : Collections.emptyList();
+        this.createdAfter = createdAfter;
+    }
+
+    public Set<String> getStates() {
+        return states;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public String getImagePrefix() {
+        return imagePrefix;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public Long getCreatedAfter() {
+        return createdAfter;
+    }
+
+    public boolean hasLabels() {
+        return !labels.isEmpty();
+    }
+
+    public boolean isRunningOnly() {
+        return states != null && states.size() == 1 && states.contains("running");
+    }
+
+    // Nothing beyond the running/all choice of a plain listing
+    public boolean isPlain() {
+        return (states == null || isRunningOnly()) && namePrefix == null && imagePrefix == null
+                && labels.isEmpty() && createdAfter == null;
+    }
+
+    // Same key for filters that select the same containers, whatever the order of states and labels
+    String key() {
+        return ReadCoalescer.key("containers", states != null ? new TreeSet<>(states) : null, namePrefix,
+                imagePrefix, new TreeSet<>(labels), createdAfter);
+    }
+
+    // Everything but labels; createdAfter is in seconds, like ContainerInfo.getCreated
+    public boolean matches(String name, String image, String state, Long created) {
+        if (states != null && !states.contains(state)) {
+            return false;
+        }
+        if (namePrefix != null && (name == null || !name.startsWith(namePrefix))) {
+            return false;
+        }
+        if (imagePrefix != null && (image == null || !image.startsWith(imagePrefix))) {
+            return false;
+        }
+        return createdAfter == null || (created != null && created > createdAfter);
+    }
+
+    public boolean matches(ContainerInfo container) {
+        return matches(container.getName(), container.getImage(), container.getState(), container.getCreated());
+    }
+
+    // Selectors are "key" (present) or "key=value" (equal), all of which must hold
+    public static boolean labelsMatch(Map<String, String> labels, List<String> selectors) {
+        if (selectors == null) {
+            return true;
+        }
+        for (String selector : selectors) {
+            int eq = selector.indexOf('=');
+            String key = eq < 0 ? selector : selector.substring(0, eq);
+            String value = labels != null ? labels.get(key) : null;
+            if (value == null || (eq >= 0 && !value.equals(selector.substring(eq + 1)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,395 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.command.InspectExecResponse;
+import com.github.dockerjava.api.command.ListContainersCmd;
+import com.github.dockerjava.api.command.ListImagesCmd;
+import com.github.dockerjava.api.command.LogContainerCmd;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.Image;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.core.DockerClientImpl;
+import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
+import com.github.dockerjava.transport.DockerHttpClient;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.regex.Pattern;
+
+// ContainerEngine backed by a Docker daemon through docker-java
+public class DockerEngine implements ContainerEngine {
+    private String dockerHost;
+    private DockerClient dockerClient;
+
+    public DockerEngine() {
+        this(ServerConfig.DEFAULT_DOCKER_HOST, true);
+    }
+
+    // Without failFast an unreachable daemon is only reported: calls fail until it comes up
+    public DockerEngine(String dockerHost, boolean failFast) {
+        this.dockerHost = dockerHost;
+        try {
+            // Try to connect to Docker daemon
+            DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
+                    .withDockerHost(dockerHost)
+                    .build();
+
+            DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
+                    .dockerHost(config.getDockerHost())
+                    .sslConfig(config.getSSLConfig())
+                    .maxConnections(100)
+                    .connectionTimeout(Duration.ofSeconds(30))
+                    .responseTimeout(Duration.ofSeconds(45))
+                    .build();
+
+            this.dockerClient = DockerClientImpl.getInstance(config, httpClient);
+        } catch (Exception e) {
+            System.err.println("✗ Invalid Docker endpoint " + dockerHost + ": " + e.getMessage());
+            throw new RuntimeException("Docker connection failed", e);
+        }
+
+        try {
+            // Test connection
+            dockerClient.pingCmd().exec();
+            System.out.println("✓ Successfully connected to Docker daemon (" + dockerHost + ")");
+        } catch (Exception e) {
+            System.err.println("✗ Failed to connect to Docker daemon: " + e.getMessage());
+            System.err.println("Make sure Docker is running and accessible on " + dockerHost);
+            if (failFast) {
+                close();
+                throw new RuntimeException("Docker connection failed", e);
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "Connected (" + dockerHost + ")";
+    }
+
+    // The daemon filters images by label; repository and creation date are checked here
+    @Override
+    public List<ImageInfo> listImages(ImageFilter filter) {
+        ListImagesCmd command = dockerClient.listImagesCmd();
+        if (filter.hasLabels()) {
+            command.withLabelFilter(filter.getLabels().toArray(new String[0]));
+        }
+        List<Image> images = command.exec();
+        if (filter.getRepositoryPrefix() == null && filter.getCreatedAfter() == null) {
+            return new ImageInfoList(images);
+        }
+
+        // Tags of one image can fall on both sides of a repository prefix, so this converts eagerly
+        List<ImageInfo> listed = new ArrayList<>();
+        for (Image image : images) {
+            for (int i = 0; i < imageInfoCount(image); i++) {
+                ImageInfo info = toImageInfo(image, i);
+                if (filter.matches(info)) {
+                    listed.add(info);
+                }
+            }
+        }
+        return listed;
+    }
+
+    // State, labels and name go to the daemon; image prefix and creation date are checked here
+    @Override
+    public List<ContainerInfo> listContainers(ContainerFilter filter) {
+        ListContainersCmd command = dockerClient.listContainersCmd().withShowAll(!filter.isRunningOnly());
+        if (filter.getStates() != null && !filter.isRunningOnly()) {
+            command.withStatusFilter(filter.getStates());
+        }
+        if (filter.hasLabels()) {
+            command.withLabelFilter(filter.getLabels());
+        }
+        if (filter.getNamePrefix() != null) {
+            // The daemon matches names as regular expressions against "/name"
+            command.withNameFilter(List.of("^/" + Pattern.quote(filter.getNamePrefix())));
+        }
+
+        List<Container> containers = command.exec();
+        if (filter.getImagePrefix() != null || filter.getCreatedAfter() != null) {
+            ContainerFilter rest = new ContainerFilter(null, null, filter.getImagePrefix(), null,
+                    filter.getCreatedAfter());
+            List<Container> kept = new ArrayList<>();
+            for (Container container : containers) {
+                if (rest.matches(null, container.getImage(), null, container.getCreated())) {
+                    kept.add(container);
+                }
+            }
+            containers = kept;
+        }
+        return new ContainerInfoList(containers);
+    }
+
+    @Override
+    public ContainerInfo getContainer(String containerId) {
+        List<Container> found = dockerClient.listContainersCmd()
+                .withShowAll(true)
+                .withIdFilter(List.of(containerId))
+                .exec();
+
+        for (Container container : found) {
+            if (container.getId().equals(containerId)) {
+                return toContainerInfo(container);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<String> selectContainers(List<String> labels, String name) {
+        ListContainersCmd command = dockerClient.listContainersCmd().withShowAll(true);
+        if (labels != null && !labels.isEmpty()) {
+            command.withLabelFilter(labels);
+        }
+        if (name != null && !name.isEmpty()) {
+            command.withNameFilter(List.of(name));
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (Container container : command.exec()) {
+            ids.add(container.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public String createContainer(String imageName, String containerName) {
+        CreateContainerResponse container = dockerClient.createContainerCmd(imageName)
+                .withName(containerName)
+                .exec();
+        return container.getId();
+    }
+
+    @Override
+    public void startContainer(String containerId) {
+        dockerClient.startContainerCmd(containerId).exec();
+    }
+
+    @Override
+    public void stopContainer(String containerId) {
+        dockerClient.stopContainerCmd(containerId)
+                .withTimeout(10)
+                .exec();
+    }
+
+    @Override
+    public void deleteContainer(String containerId) {
+        dockerClient.removeContainerCmd(containerId)
+                .withForce(true)
+                .exec();
+    }
+
+    @Override
+    public void renameContainer(String containerId, String newName) {
+        dockerClient.renameContainerCmd(containerId)
+                .withName(newName)
+                .exec();
+    }
+
+    @Override
+    public void pauseContainer(String containerId) {
+        dockerClient.pauseContainerCmd(containerId).exec();
+    }
+
+    @Override
+    public void unpauseContainer(String containerId) {
+        dockerClient.unpauseContainerCmd(containerId).exec();
+    }
+
+    @Override
+    public String getContainerState(String containerId) {
+        return dockerClient.inspectContainerCmd(containerId).exec().getState().getStatus();
+    }
+
+    @Override
+    public void pullImage(String reference, ResultCallback<PullResponseItem> callback) {
+        int digest = reference.indexOf('@');
+        int tag = reference.lastIndexOf(':');
+        if (digest < 0 && tag > reference.lastIndexOf('/')) {
+            dockerClient.pullImageCmd(reference.substring(0, tag))
+                    .withTag(reference.substring(tag + 1))
+                    .exec(callback);
+        } else {
+            dockerClient.pullImageCmd(reference)
+                    .exec(callback);
+        }
+    }
+
+    @Override
+    public void streamStats(String containerId, ResultCallback<Statistics> callback) {
+        dockerClient.statsCmd(containerId).exec(callback);
+    }
+
+    @Override
+    public void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                           ResultCallback<Frame> callback) {
+        LogContainerCmd command = dockerClient.logContainerCmd(containerId)
+                .withStdOut(true)
+                .withStdErr(true)
+                .withFollowStream(follow)
+                .withTimestamps(timestamps);
+        (tail != null ? command.withTail(tail) : command.withTailAll()).exec(callback);
+    }
+
+    @Override
+    public String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                              ResultCallback<Frame> callback) {
+        String execId = dockerClient.execCreateCmd(containerId)
+                .withCmd(command.toArray(new String[0]))
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .withAttachStdin(stdin != null)
+                .withTty(tty)
+                .exec()
+                .getId();
+        ExecStartCmd start = dockerClient.execStartCmd(execId)
+                .withDetach(false)
+                .withTty(tty);
+        if (stdin != null) {
+            start.withStdIn(stdin);
+        }
+        start.exec(callback);
+        return execId;
+    }
+
+    @Override
+    public Long getExecExitCode(String execId) {
+        InspectExecResponse exec = dockerClient.inspectExecCmd(execId).exec();
+        return Boolean.TRUE.equals(exec.isRunning()) ? null : exec.getExitCodeLong();
+    }
+
+    @Override
+    public Closeable subscribeEvents(ResultCallback<Event> callback) {
+        return dockerClient.eventsCmd()
+                .withEventTypeFilter(EventType.CONTAINER, EventType.IMAGE)
+                .exec(callback);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (dockerClient != null) {
+                dockerClient.close();
+            }
+        } catch (Exception e) {
+            System.err.println("Error closing Docker client: " + e.getMessage());
+        }
+    }
+
+    static ContainerInfo toContainerInfo(Container container) {
+        String name = container.getNames() != null && container.getNames().length > 0
+                ? container.getNames()[0].replace("/", "")
+                : "unnamed";
+
+        return new ContainerInfo(
+                container.getId(),
+                name,
+                container.getImage(),
+                container.getState(),
+                container.getStatus(),
+                container.getCreated()
+        );
+    }
+
+    // One entry per repo tag, or a single <none> entry for an untagged image
+    static int imageInfoCount(Image img) {
+        String[] repoTags = img.getRepoTags();
+        return repoTags != null && repoTags.length > 0 ? repoTags.length : 1;
+    }
+
+    static ImageInfo toImageInfo(Image img, int tagIndex) {
+        String[] repoTags = img.getRepoTags();
+        if (repoTags != null && repoTags.length > 0) {
+            String[] parts = repoTags[tagIndex].split(":");
+            String repo = parts.length > 0 ? parts[0] : "unknown";
+            String tag = parts.length > 1 ? parts[1] : "latest";
+
+            return new ImageInfo(
+                    img.getId().replace("sha256:", ""),
+                    repo,
+                    tag,
+                    img.getSize(),
+                    img.getCreated()
+            );
+        }
+        return new ImageInfo(
+                img.getId().replace("sha256:", ""),
+                "<none>",
+                "<none>",
+                img.getSize(),
+                img.getCreated()
+        );
+    }
+
+    /*
+     * Listings are views over the daemon result: each ContainerInfo/ImageInfo is built when the
+     * response writer reaches it and can be dropped right after, instead of converting the whole
+     * listing up front. Named classes rather than anonymous ones, which Gson refuses to serialize.
+     */
+    private static final class ContainerInfoList extends AbstractList<ContainerInfo> implements RandomAccess {
+        private final List<Container> containers;
+
+        ContainerInfoList(List<Container> containers) {
+            this.containers = containers;
+        }
+
+        @Override
+        public ContainerInfo get(int index) {
+            return toContainerInfo(containers.get(index));
+        }
+
+        @Override
+        public int size() {
+            return containers.size();
+        }
+    }
+
+    private static final class ImageInfoList extends AbstractList<ImageInfo> implements RandomAccess {
+        private final List<Image> images;
+        // offsets[i] is the position of the first entry of images[i]; the last slot holds the size
+        private final int[] offsets;
+
+        ImageInfoList(List<Image> images) {
+            this.images = images;
+            this.offsets = new int[images.size() + 1];
+            for (int i = 0; i < images.size(); i++) {
+                offsets[i + 1] = offsets[i] + imageInfoCount(images.get(i));
+            }
+        }
+
+        @Override
+        public ImageInfo get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int found = Arrays.binarySearch(offsets, index);
+            // Equal offsets can only come from a zero-count image, which imageInfoCount never returns
+            int image = found >= 0 ? found : -found - 2;
+            return toImageInfo(images.get(image), index - offsets[image]);
+        }
+
+        @Override
+        public int size() {
+            return offsets[offsets.length - 1];
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventType;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+import ma.ensasafi.jdocker.protocol.ContainerDelta;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * In-memory copy of the engine's containers and images.
+ * It is seeded with one full listing and then kept current from the engine's events stream,
+ * so listings are served without calling the daemon. Every change bumps the version.
+ * All mutations run on a single thread, which keeps event order and resyncs consistent.
+ *
+ * Each container change also takes its own version in a change log, one entry per container
+ * (its latest change), so getChanges can answer "what changed since version N" without a
+ * full listing. Removals stay in the log as tombstones; once there are too many the oldest
+ * are dropped and clients asking from before them get a full listing instead.
+ *
+ * Container IDs, names and image IDs are also kept in prefix indexes, updated with each change,
+ * so a short ID or a name given by a client is resolved here and a missing or ambiguous one is
+ * refused without a daemon round trip.
+ */
+public class DockerInventory {
+    private static final long RESYNC_INTERVAL_SECONDS = 60;
+    private static final long MAX_RECONNECT_DELAY_SECONDS = 30;
+    private static final int MAX_TOMBSTONES = 10_000;
+    // Ends the name in "name\0id" keys: several hosts of a federation may use the same name
+    private static final char NAME_END = '\0';
+    private static final String IMAGE_ID_SCHEME = "sha256:";
+
+    private static final Set<String> CONTAINER_ACTIONS = Set.of(
+            "create", "start", "restart", "stop", "die", "kill", "pause", "unpause",
+            "rename", "update", "oom");
+    private static final Set<String> IMAGE_ACTIONS = Set.of(
+            "pull", "tag", "untag", "delete", "import", "load");
+
+    private ContainerEngine engine;
+    private ScheduledExecutorService scheduler;
+    private volatile Map<String, ContainerInfo> containers;
+    private volatile List<ImageInfo> images;
+    // Written on the inventory thread only, read from any
+    private PrefixIndex<String> containerIds;
+    private PrefixIndex<String> containerNames;
+    private PrefixIndex<ImageInfo> imageIds;
+    private volatile Snapshot snapshot;
+    private AtomicLong version;
+    // Versions only mean something within one inventory lifetime
+    private String epoch;
+    private ConcurrentSkipListMap<Long, String> changeLog;
+    // Inventory thread only: latest log version per container, and tombstone versions oldest first
+    private Map<String, Long> lastChange;
+    private ArrayDeque<Long> tombstones;
+    private volatile long horizon;
+    private AtomicLong resyncCount;
+    private volatile Closeable eventStream;
+    private volatile boolean synced;
+    private volatile boolean running;
+    private long reconnectDelaySeconds;
+
+    public DockerInventory(ContainerEngine engine) {
+        this.engine = engine;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "docker-inventory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.containers = new ConcurrentHashMap<>();
+        this.images = Collections.emptyList();
+        this.containerIds = new PrefixIndex<>();
+        this.containerNames = new PrefixIndex<>();
+        this.imageIds = new PrefixIndex<>();
+        this.version = new AtomicLong(0);
+        this.epoch = Long.toString(System.currentTimeMillis(), 36);
+        this.changeLog = new ConcurrentSkipListMap<>();
+        this.lastChange = new HashMap<>();
+        this.tombstones = new ArrayDeque<>();
+        this.resyncCount = new AtomicLong(0);
+        this.reconnectDelaySeconds = 1;
+    }
+
+    public void start() {
+        running = true;
+        runOnInventoryThread(this::connect);
+        // Status strings such as "Up 5 minutes" age without events, so refresh them now and then
+        scheduler.scheduleWithFixedDelay(this::periodicResync, RESYNC_INTERVAL_SECONDS, RESYNC_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getResyncCount() {
+        return resyncCount.get();
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public List<ContainerInfo> getContainers(boolean all) {
+        Snapshot current = currentSnapshot();
+        return all ? current.all : current.running;
+    }
+
+    /*
+     * Containers added or changed after the given version, and IDs removed since. Without all,
+     * a container that is no longer running counts as removed. A foreign epoch, a version
+     * older than the retained tombstones or one from the future gets the full listing.
+     */
+    public ContainerDelta getChanges(boolean all, long since, String clientEpoch) {
+        long now = version.get();
+        if (!epoch.equals(clientEpoch) || since < horizon || since > now) {
+            return fullListing(all);
+        }
+
+        // Entries past now are left for the next call: the map may not hold their state yet
+        Map<String, ContainerInfo> current = containers;
+        List<ContainerInfo> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String containerId : changeLog.subMap(since, false, now, true).values()) {
+            if (!seen.add(containerId)) {
+                continue;
+            }
+            ContainerInfo info = current.get(containerId);
+            if (info != null && (all || "running".equals(info.getState()))) {
+                changed.add(info);
+            } else {
+                removed.add(containerId);
+            }
+        }
+        // A tombstone past since may have been pruned during the walk
+        if (since < horizon) {
+            return fullListing(all);
+        }
+        return new ContainerDelta(epoch, now, false, changed, removed);
+    }
+
+    private ContainerDelta fullListing(boolean all) {
+        Snapshot current = currentSnapshot();
+        return new ContainerDelta(epoch, current.version, true, all ? current.all : current.running,
+                Collections.emptyList());
+    }
+
+    public List<ImageInfo> getImages() {
+        return images;
+    }
+
+    // Exact ID, unique name, or an unambiguous ID prefix; null when the inventory cannot tell
+    public ContainerInfo findContainer(String idOrName) {
+        try {
+            return resolveContainer(idOrName);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Exact ID, then exact name, then ID prefix, the order the daemon tries them in. Null when nothing
+     * matches, which may only mean the event announcing the container has not been applied yet; throws
+     * the daemon's own NotFoundException when more than one container matches.
+     */
+    public ContainerInfo resolveContainer(String reference) {
+        Map<String, ContainerInfo> current = containers;
+        ContainerInfo exact = current.get(reference);
+        if (exact != null) {
+            return exact;
+        }
+
+        String name = reference.startsWith("/") ? reference.substring(1) : reference;
+        // "host/name" in a federation, whose IDs start with "host/"
+        int slash = name.indexOf('/');
+        List<String> named = slash < 0
+                ? containerNames.find(name + NAME_END, 2)
+                : containerNames.find(name.substring(slash + 1) + NAME_END + name.substring(0, slash + 1), 2);
+        if (named.size() > 1) {
+            throw new NotFoundException("Container " + reference + " exists on several hosts, use host/" + name);
+        }
+        if (named.size() == 1 && (exact = current.get(named.get(0))) != null) {
+            return exact;
+        }
+
+        List<String> ids = containerIds.find(reference, 2);
+        if (ids.size() > 1) {
+            throw new NotFoundException("Multiple IDs found with provided prefix: " + reference);
+        }
+        return ids.isEmpty() ? null : current.get(ids.get(0));
+    }
+
+    // Full ID of the image an ID prefix designates, "sha256:" or not; null when no image ID starts with it
+    public String resolveImageId(String prefix) {
+        String id = prefix.startsWith(IMAGE_ID_SCHEME) ? prefix.substring(IMAGE_ID_SCHEME.length()) : prefix;
+        List<ImageInfo> matches = imageIds.find(id, 2);
+        if (matches.size() > 1) {
+            throw new NotFoundException("Multiple IDs found with provided prefix: " + prefix);
+        }
+        return matches.isEmpty() ? null : matches.get(0).getId();
+    }
+
+    public Map<String, Object> describe() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("synced", synced);
+        status.put("version", version.get());
+        status.put("epoch", epoch);
+        status.put("changeLog", changeLog.size());
+        status.put("containers", containers.size());
+        status.put("images", images.size());
+        status.put("resyncs", resyncCount.get());
+        return status;
+    }
+
+    // Called after the server itself changed a container, so the caller reads its own write
+    public void containerChanged(String containerId) {
+        runOnInventoryThread(() -> refreshContainer(containerId));
+    }
+
+    public void imagesChanged() {
+        runOnInventoryThread(this::refreshImages);
+    }
+
+    public void close() {
+        running = false;
+        synced = false;
+        closeEventStream();
+        scheduler.shutdownNow();
+    }
+
+    private void connect() {
+        if (!running) {
+            return;
+        }
+
+        try {
+            // Subscribe first so nothing that happens during the seed listing is missed
+            eventStream = engine.subscribeEvents(new EventCallback());
+            resync();
+            reconnectDelaySeconds = 1;
+            System.out.println("✓ Inventory synchronized (" + containers.size() + " containers, "
+                    + images.size() + " images)");
+        } catch (Exception e) {
+            System.err.println("✗ Inventory synchronization failed: " + e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        synced = false;
+        closeEventStream();
+        if (!running) {
+            return;
+        }
+
+        long delay = reconnectDelaySeconds;
+        reconnectDelaySeconds = Math.min(reconnectDelaySeconds * 2, MAX_RECONNECT_DELAY_SECONDS);
+        scheduler.schedule(this::connect, delay, TimeUnit.SECONDS);
+    }
+
+    private void resync() {
+        try {
+            Map<String, ContainerInfo> fresh = new ConcurrentHashMap<>();
+            for (ContainerInfo info : engine.listContainers(true)) {
+                fresh.put(info.getId(), info);
+            }
+            Map<String, ContainerInfo> previous = containers;
+            containers = fresh;
+            // Log only what differs, so a resync costs delta clients nothing when nothing moved
+            for (ContainerInfo info : fresh.values()) {
+                ContainerInfo before = previous.get(info.getId());
+                index(before, info);
+                if (!sameContent(before, info)) {
+                    recordChange(info.getId());
+                }
+            }
+            for (ContainerInfo info : previous.values()) {
+                if (!fresh.containsKey(info.getId())) {
+                    unindex(info);
+                    recordRemoval(info.getId());
+                }
+            }
+            // A resync that found nothing new leaves the version, and the responses cached for it, alone
+            if (setImages(loadImages())) {
+                version.incrementAndGet();
+            }
+            resyncCount.incrementAndGet();
+            synced = eventStream != null;
+        } catch (Exception e) {
+            System.err.println("✗ Inventory resync failed: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private void periodicResync() {
+        if (!synced) {
+            return;
+        }
+        try {
+            resync();
+        } catch (Exception e) {
+            scheduleReconnect();
+        }
+    }
+
+    private void apply(Event event) {
+        String action = event.getAction() != null ? event.getAction() : event.getStatus();
+        if (action == null) {
+            return;
+        }
+
+        try {
+            if (event.getType() == EventType.CONTAINER) {
+                String containerId = event.getId() != null ? event.getId() : event.getActor().getId();
+                if ("destroy".equals(action)) {
+                    ContainerInfo removed = containers.remove(containerId);
+                    if (removed != null) {
+                        unindex(removed);
+                        recordRemoval(containerId);
+                    }
+                } else if (CONTAINER_ACTIONS.contains(action) || action.startsWith("health_status")) {
+                    refreshContainer(containerId);
+                }
+            } else if (event.getType() == EventType.IMAGE && IMAGE_ACTIONS.contains(action)) {
+                refreshImages();
+            }
+        } catch (Exception e) {
+            System.err.println("✗ Inventory could not apply " + action + " event: " + e.getMessage());
+        }
+    }
+
+    private void refreshContainer(String containerId) {
+        ContainerInfo info = engine.getContainer(containerId);
+        if (info != null) {
+            ContainerInfo previous = containers.put(containerId, info);
+            index(previous, info);
+            if (!sameContent(previous, info)) {
+                recordChange(containerId);
+            }
+            return;
+        }
+        ContainerInfo removed = containers.remove(containerId);
+        if (removed != null) {
+            unindex(removed);
+            recordRemoval(containerId);
+        }
+    }
+
+    // A renamed container leaves its old name behind
+    private void index(ContainerInfo previous, ContainerInfo info) {
+        if (previous != null && !Objects.equals(previous.getName(), info.getName())) {
+            unindex(previous);
+        }
+        containerIds.put(info.getId(), info.getId());
+        String bareId = bareId(info);
+        if (bareId != null) {
+            containerIds.put(bareId, info.getId());
+        }
+        String name = nameKey(info);
+        if (name != null) {
+            containerNames.put(name, info.getId());
+        }
+    }
+
+    private void unindex(ContainerInfo info) {
+        containerIds.remove(info.getId());
+        String bareId = bareId(info);
+        if (bareId != null) {
+            containerIds.remove(bareId);
+        }
+        String name = nameKey(info);
+        if (name != null) {
+            containerNames.remove(name);
+        }
+    }
+
+    /*
+     * A federation's "host/id" is also found by the daemon's own ID or a prefix of it, keyed
+     * "id\0host/" since two hosts may hand out the same ID.
+     */
+    private static String bareId(ContainerInfo info) {
+        String id = info.getId();
+        int slash = id.indexOf('/');
+        return slash < 0 ? null : id.substring(slash + 1) + NAME_END + id.substring(0, slash + 1);
+    }
+
+    private static String nameKey(ContainerInfo info) {
+        String name = info.getName();
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        return (name.startsWith("/") ? name.substring(1) : name) + NAME_END + info.getId();
+    }
+
+    // The new entry goes in before the old one leaves, so a concurrent reader always finds one of them
+    private void recordChange(String containerId) {
+        long changeVersion = version.get() + 1;
+        changeLog.put(changeVersion, containerId);
+        Long previous = lastChange.put(containerId, changeVersion);
+        if (previous != null) {
+            changeLog.remove(previous);
+        }
+        version.set(changeVersion);
+    }
+
+    private void recordRemoval(String containerId) {
+        recordChange(containerId);
+        tombstones.addLast(version.get());
+
+        while (tombstones.size() > MAX_TOMBSTONES) {
+            long oldest = tombstones.removeFirst();
+            // Raised first, so a reader that passed the check before it sees the entry or checks again
+            horizon = oldest;
+            String removedId = changeLog.get(oldest);
+            if (removedId != null && !containers.containsKey(removedId)) {
+                changeLog.remove(oldest);
+                lastChange.remove(removedId);
+            }
+        }
+    }
+
+    private static boolean sameContent(ContainerInfo a, ContainerInfo b) {
+        return a != null && b != null
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getImage(), b.getImage())
+                && Objects.equals(a.getState(), b.getState())
+                && Objects.equals(stableStatus(a.getStatus()), stableStatus(b.getStatus()))
+                && Objects.equals(a.getCreated(), b.getCreated());
+    }
+
+    /*
+     * The parenthesized parts of the daemon's Status text: "(healthy)" in "Up 5 minutes (healthy)", the
+     * exit code in "Exited (137) 2 hours ago". The rest is a relative time that moves every minute by
+     * itself, and would make every resync look like a change of every container.
+     */
+    private static String stableStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        StringBuilder stable = new StringBuilder();
+        int open = status.indexOf('(');
+        while (open >= 0) {
+            int close = status.indexOf(')', open);
+            if (close < 0) {
+                break;
+            }
+            stable.append(status, open, close + 1);
+            open = status.indexOf('(', close);
+        }
+        return stable.toString();
+    }
+
+    private void refreshImages() {
+        if (setImages(loadImages())) {
+            version.incrementAndGet();
+        }
+    }
+
+    // New IDs go in before vanished ones leave, so a lookup meanwhile finds one of them. True if the
+    // images or their tags changed
+    private boolean setImages(List<ImageInfo> loaded) {
+        boolean changed = !imageTags(loaded).equals(imageTags(images));
+        Set<String> ids = new HashSet<>();
+        for (ImageInfo image : loaded) {
+            imageIds.put(imageKey(image), image);
+            ids.add(imageKey(image));
+        }
+        for (ImageInfo image : images) {
+            if (!ids.contains(imageKey(image))) {
+                imageIds.remove(imageKey(image));
+            }
+        }
+        images = loaded;
+        return changed;
+    }
+
+    private static Set<String> imageTags(List<ImageInfo> images) {
+        Set<String> tags = new HashSet<>();
+        for (ImageInfo image : images) {
+            tags.add(imageKey(image) + " " + image.getRepository() + ":" + image.getTag());
+        }
+        return tags;
+    }
+
+    private static String imageKey(ImageInfo image) {
+        String id = image.getId();
+        return id.startsWith(IMAGE_ID_SCHEME) ? id.substring(IMAGE_ID_SCHEME.length()) : id;
+    }
+
+    private List<ImageInfo> loadImages() {
+        return Collections.unmodifiableList(new ArrayList<>(engine.listImages()));
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null || current.version != version.get()) {
+            current = buildSnapshot();
+        }
+        return current;
+    }
+
+    private synchronized Snapshot buildSnapshot() {
+        long currentVersion = version.get();
+        if (snapshot != null && snapshot.version == currentVersion) {
+            return snapshot;
+        }
+
+        List<ContainerInfo> all = new ArrayList<>(containers.values());
+        // Newest first, like the daemon's own listing; the ID tie-break is the order pages are cut in
+        all.sort(Comparator.comparing(ContainerInfo::getCreated,
+                Comparator.nullsLast(Comparator.<Long>reverseOrder())).thenComparing(ContainerInfo::getId));
+
+        List<ContainerInfo> running = new ArrayList<>();
+        for (ContainerInfo container : all) {
+            if ("running".equals(container.getState())) {
+                running.add(container);
+            }
+        }
+
+        snapshot = new Snapshot(currentVersion, Collections.unmodifiableList(all),
+                Collections.unmodifiableList(running));
+        return snapshot;
+    }
+
+    private void runOnInventoryThread(Runnable task) {
+        try {
+            scheduler.submit(task).get();
+        } catch (ExecutionException e) {
+            System.err.println("✗ Inventory update failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Scheduler already shut down
+        }
+    }
+
+    private void closeEventStream() {
+        Closeable stream = eventStream;
+        eventStream = null;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (Exception e) {
+                // Already broken
+            }
+        }
+    }
+
+    private class EventCallback extends ResultCallback.Adapter<Event> {
+        @Override
+        public void onNext(Event event) {
+            scheduler.execute(() -> apply(event));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Streams closed by a reconnect report too; only the current one matters
+            if (running && eventStream == this) {
+                System.err.println("✗ Engine event stream lost: " + throwable.getMessage());
+                scheduler.execute(DockerInventory.this::scheduleReconnect);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (running && eventStream == this) {
+                scheduler.execute(DockerInventory.this::scheduleReconnect);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final List<ContainerInfo> all;
+        private final List<ContainerInfo> running;
+
+        Snapshot(long version, List<ContainerInfo> all, List<ContainerInfo> running) {
+            this.version = version;
+            this.all = all;
+            this.running = running;
+        }
+    }
+}
@@ -1,151 +1,277 @@
 package ma.ensasafi.jdocker.server;
 
-import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.command.*;
-import com.github.dockerjava.api.model.*;
-import com.github.dockerjava.core.DefaultDockerClientConfig;
-import com.github.dockerjava.core.DockerClientConfig;
-import com.github.dockerjava.core.DockerClientImpl;
-import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
-import com.github.dockerjava.transport.DockerHttpClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
 import ma.ensasafi.jdocker.models.ContainerInfo;
 import ma.ensasafi.jdocker.models.ImageInfo;
+import ma.ensasafi.jdocker.protocol.BulkResult;
+import ma.ensasafi.jdocker.protocol.ContainerDelta;
 
-import java.time.Duration;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class DockerManager {
-    private DockerClient dockerClient;
+    // What the daemon would also try as an image ID once no repository matched
+    private static final Pattern IMAGE_ID = Pattern.compile("(sha256:)?[0-9a-f]+");
+
+    private ContainerEngine engine;
+    private ServerMetrics metrics;
+    private DockerInventory inventory;
+    private PullCoordinator pullCoordinator;
+    private PullJobManager pullJobs;
+    private BulkOperations bulkOperations;
+    private AdmissionController admission;
+    private StatsCollector stats;
+    // Null with --coalesce=false
+    private ReadCoalescer reads;
+    // Null without inventory, whose version is what entries are valid for, or with --response-cache=0
+    private ResponseCache responses;
+    // Set when the engine fronts several daemons
+    private FederatedEngine federation;
+    // Null without --warm-pool
+    private WarmPool warmPool;
 
     public DockerManager() {
-        try {
-            // Try to connect to Docker daemon
-            DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                    .withDockerHost("tcp://localhost:2375")  // Adjust if needed
-                    .build();
-
-            DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
-                    .dockerHost(config.getDockerHost())
-                    .sslConfig(config.getSSLConfig())
-                    .maxConnections(100)
-                    .connectionTimeout(Duration.ofSeconds(30))
-                    .responseTimeout(Duration.ofSeconds(45))
-                    .build();
-
-            this.dockerClient = DockerClientImpl.getInstance(config, httpClient);
-
-            // Test connection
-            dockerClient.pingCmd().exec();
-            System.out.println("✓ Successfully connected to Docker daemon");
-        } catch (Exception e) {
-            System.err.println("✗ Failed to connect to Docker daemon: " + e.getMessage());
-            System.err.println("Make sure Docker is running and accessible on tcp://localhost:2375");
-            throw new RuntimeException("Docker connection failed", e);
+        this(new ServerConfig());
+    }
+
+    public DockerManager(ServerConfig serverConfig) {
+        this(createContainerEngine(serverConfig), serverConfig);
+    }
+
+    public DockerManager(ContainerEngine engine, ServerConfig serverConfig) {
+        this.metrics = new ServerMetrics();
+        this.engine = new MeteredEngine(engine, metrics);
+        if (engine instanceof FederatedEngine) {
+            this.federation = (FederatedEngine) engine;
+        }
+
+        if (serverConfig.isInventoryEnabled()) {
+            this.inventory = new DockerInventory(this.engine);
+            this.inventory.start();
+            if (serverConfig.getResponseCacheBytes() > 0) {
+                this.responses = new ResponseCache(serverConfig.getResponseCacheBytes());
+            }
+        }
+        if (serverConfig.isCoalescingEnabled()) {
+            this.reads = new ReadCoalescer(serverConfig.getCoalesceWindowMillis());
+        }
+        this.pullCoordinator = new PullCoordinator(this.engine, serverConfig.getMaxConcurrentPulls(), reference -> {
+            if (reads != null) {
+                reads.invalidate();
+            }
+            if (inventory != null) {
+                inventory.imagesChanged();
+            }
+            if (warmPool != null) {
+                warmPool.imagePulled(reference);
+            }
+        });
+        this.pullJobs = new PullJobManager(pullCoordinator);
+        this.bulkOperations = new BulkOperations(serverConfig.getMaxBulkConcurrency());
+        this.admission = new AdmissionController(serverConfig);
+        if (serverConfig.isStatsEnabled()) {
+            this.stats = new StatsCollector(this.engine, () -> listContainers(ContainerFilter.RUNNING));
+            this.stats.start();
+        }
+        if (!serverConfig.getWarmPool().isEmpty()) {
+            this.warmPool = new WarmPool(this.engine, serverConfig);
+            this.warmPool.start();
         }
     }
 
+    private static ContainerEngine createContainerEngine(ServerConfig config) {
+        if (config.getHosts().size() > 1) {
+            Map<String, ContainerEngine> members = new LinkedHashMap<>();
+            for (Map.Entry<String, String> host : config.getHosts().entrySet()) {
+                members.put(host.getKey(), createHostEngine(host.getValue(), config, false));
+            }
+            return new FederatedEngine(members, config.getPlacement(), config.getHostTimeoutMillis());
+        }
+        if (config.getHosts().size() == 1) {
+            return createHostEngine(config.getHosts().values().iterator().next(), config, true);
+        }
+
+        switch (config.getContainerEngine()) {
+            case SIMULATED:
+                return new SimulatedEngine(config.getSimulation());
+            case DOCKER:
+            default:
+                return new DockerEngine(config.getDockerHost(), true);
+        }
+    }
+
+    private static ContainerEngine createHostEngine(String endpoint, ServerConfig config, boolean failFast) {
+        if ("simulated".equals(endpoint)) {
+            return new SimulatedEngine(config.getSimulation());
+        }
+        return new DockerEngine(endpoint, failFast);
+    }
+
+    public ContainerEngine getEngine() {
+        return engine;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public DockerInventory getInventory() {
+        return inventory;
+    }
+
+    public PullJobManager getPullJobs() {
+        return pullJobs;
+    }
+
+    // null unless --hosts names several daemons
+    public FederatedEngine getFederation() {
+        return federation;
+    }
+
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    // Null when started with --stats=false
+    public StatsCollector getStats() {
+        return stats;
+    }
+
+    public ReadCoalescer getReads() {
+        return reads;
+    }
+
+    public ResponseCache getResponses() {
+        return responses;
+    }
+
+    public WarmPool getWarmPool() {
+        return warmPool;
+    }
+
+    // Version of the state inventory-served listings reflect; -1 while listings go to the engine
+    public long getListingVersion() {
+        return inventoryReady() ? inventory.getVersion() : -1;
+    }
+
+    public int getMaxBulkConcurrency() {
+        return bulkOperations.getMaxConcurrency();
+    }
+
+    // Listings come from the inventory while it tracks the event stream, from the engine otherwise
+    private boolean inventoryReady() {
+        return inventory != null && inventory.isSynced();
+    }
+
     public List<ImageInfo> listImages() {
-        List<ImageInfo> images = new ArrayList<>();
-        try {
-            List<Image> dockerImages = dockerClient.listImagesCmd().exec();
-
-            for (Image img : dockerImages) {
-                String[] repoTags = img.getRepoTags();
-                if (repoTags != null && repoTags.length > 0) {
-                    for (String repoTag : repoTags) {
-                        String[] parts = repoTag.split(":");
-                        String repo = parts.length > 0 ? parts[0] : "unknown";
-                        String tag = parts.length > 1 ? parts[1] : "latest";
-
-                        images.add(new ImageInfo(
-                                img.getId().replace("sha256:", ""),
-                                repo,
-                                tag,
-                                img.getSize(),
-                                img.getCreated()
-                        ));
-                    }
-                } else {
-                    images.add(new ImageInfo(
-                            img.getId().replace("sha256:", ""),
-                            "<none>",
-                            "<none>",
-                            img.getSize(),
-                            img.getCreated()
-                    ));
+        return listImages(ImageFilter.ALL);
+    }
+
+    // The inventory does not know labels: label filters always go to the engine
+    public List<ImageInfo> listImages(ImageFilter filter) {
+        if (inventoryReady() && !filter.hasLabels()) {
+            List<ImageInfo> images = inventory.getImages();
+            if (filter.isEmpty()) {
+                return images;
+            }
+            List<ImageInfo> matching = new ArrayList<>();
+            for (ImageInfo image : images) {
+                if (filter.matches(image)) {
+                    matching.add(image);
                 }
             }
+            return matching;
+        }
+
+        try {
+            return coalesced(filter.key(), () -> engine.listImages(filter));
         } catch (Exception e) {
             System.err.println("Error listing images: " + e.getMessage());
             throw new RuntimeException("Failed to list images", e);
         }
-        return images;
     }
 
+    // Concurrent pulls of the same image share one engine pull and its outcome
     public String pullImage(String imageName) {
-        try {
-            System.out.println("Pulling image: " + imageName);
-
-            PullImageResultCallback callback = new PullImageResultCallback() {
-                @Override
-                public void onNext(PullResponseItem item) {
-                    if (item.getStatus() != null) {
-                        System.out.println("  " + item.getStatus() +
-                                (item.getProgress() != null ? " " + item.getProgress() : ""));
-                    }
-                    super.onNext(item);
-                }
-            };
+        return pullCoordinator.pull(imageName);
+    }
 
-            dockerClient.pullImageCmd(imageName)
-                    .exec(callback)
-                    .awaitCompletion();
 
-            return "Successfully pulled image: " + imageName;
+    public List<ContainerInfo> listContainers(boolean all) {
+        return listContainers(all ? ContainerFilter.ALL : ContainerFilter.RUNNING);
+    }
+
+    public List<ContainerInfo> listContainers(ContainerFilter filter) {
+        if (inventoryReady() && !filter.hasLabels()) {
+            List<ContainerInfo> containers = inventory.getContainers(!filter.isRunningOnly());
+            if (filter.isPlain()) {
+                return containers;
+            }
+            List<ContainerInfo> matching = new ArrayList<>();
+            for (ContainerInfo container : containers) {
+                if (filter.matches(container)) {
+                    matching.add(container);
+                }
+            }
+            return matching;
+        }
+
+        try {
+            return coalesced(filter.key(), () -> engine.listContainers(filter));
         } catch (Exception e) {
-            System.err.println("Pull exception: " + e.getMessage());
-            // Return success anyway - let user verify with 'images' command
-            return "Pull completed. Use 'images' command to verify.";
+            throw new RuntimeException("Failed to list containers", e);
         }
     }
 
+    // Without a synced inventory there is no change history: every answer is a full listing
+    public ContainerDelta listContainerChanges(boolean all, long since, String epoch) {
+        if (inventoryReady()) {
+            return inventory.getChanges(all, since, epoch);
+        }
+        return new ContainerDelta(null, 0, true, listContainers(all), Collections.emptyList());
+    }
 
-    public List<ContainerInfo> listContainers(boolean all) {
-        List<ContainerInfo> containers = new ArrayList<>();
+    public List<String> selectContainers(List<String> labels, String name) {
         try {
-            List<Container> dockerContainers = dockerClient.listContainersCmd()
-                    .withShowAll(all)
-                    .exec();
-
-            for (Container container : dockerContainers) {
-                String name = container.getNames() != null && container.getNames().length > 0
-                        ? container.getNames()[0].replace("/", "")
-                        : "unnamed";
-
-                containers.add(new ContainerInfo(
-                        container.getId(),
-                        name,
-                        container.getImage(),
-                        container.getState(),
-                        container.getStatus(),
-                        container.getCreated()
-                ));
-            }
+            return engine.selectContainers(labels, name);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to list containers", e);
+            throw new RuntimeException("Failed to select containers: " + e.getMessage(), e);
         }
-        return containers;
+    }
+
+    public List<BulkResult> startContainers(List<String> containerIds, int concurrency) {
+        return bulkOperations.run(containerIds, concurrency, "started", this::startContainer);
+    }
+
+    public List<BulkResult> stopContainers(List<String> containerIds, int concurrency) {
+        return bulkOperations.run(containerIds, concurrency, "stopped", this::stopContainer);
+    }
+
+    public List<BulkResult> deleteContainers(List<String> containerIds, int concurrency) {
+        return bulkOperations.run(containerIds, concurrency, "deleted", this::deleteContainer);
     }
 
     public String createContainer(String imageName, String containerName) {
         try {
-            CreateContainerResponse container = dockerClient.createContainerCmd(imageName)
-                    .withName(containerName)
-                    .exec();
+            String containerId = warmPool != null ? warmPool.claim(imageName, containerName) : null;
+            if (containerId == null) {
+                containerId = engine.createContainer(resolveImage(imageName), containerName);
+            }
 
-            return container.getId();
+            if (reads != null) {
+                reads.invalidate();
+            }
+            if (inventory != null) {
+                inventory.containerChanged(containerId);
+            }
+            return containerId;
         } catch (Exception e) {
             throw new RuntimeException("Failed to create container: " + e.getMessage(), e);
         }
@@ -153,7 +279,11 @@ public class DockerManager {
 
     public void startContainer(String containerId) {
         try {
-            dockerClient.startContainerCmd(containerId).exec();
+            String id = resolveContainer(containerId);
+            if (warmPool == null || !warmPool.resume(id)) {
+                engine.startContainer(id);
+            }
+            notifyChanged(id);
         } catch (Exception e) {
             throw new RuntimeException("Failed to start container: " + e.getMessage(), e);
         }
@@ -161,9 +291,12 @@ public class DockerManager {
 
     public void stopContainer(String containerId) {
         try {
-            dockerClient.stopContainerCmd(containerId)
-                    .withTimeout(10)
-                    .exec();
+            String id = resolveContainer(containerId);
+            if (warmPool != null) {
+                warmPool.forget(id);
+            }
+            engine.stopContainer(id);
+            notifyChanged(id);
         } catch (Exception e) {
             throw new RuntimeException("Failed to stop container: " + e.getMessage(), e);
         }
@@ -171,36 +304,119 @@ public class DockerManager {
 
     public void deleteContainer(String containerId) {
         try {
-            dockerClient.removeContainerCmd(containerId)
-                    .withForce(true)
-                    .exec();
+            String id = resolveContainer(containerId);
+            if (warmPool != null) {
+                warmPool.forget(id);
+            }
+            engine.deleteContainer(id);
+            notifyChanged(id);
         } catch (Exception e) {
             throw new RuntimeException("Failed to delete container: " + e.getMessage(), e);
         }
     }
 
-    public String getContainerStatus(String containerId) {
+    // The callback gets the output and, once the engine ends the stream, the error if any
+    public void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                           ResultCallback<Frame> callback) {
         try {
-            InspectContainerResponse container = dockerClient.inspectContainerCmd(containerId).exec();
-            InspectContainerResponse.ContainerState state = container.getState();
-
-            return String.format("Container %s - State: %s, Running: %s, Status: %s",
-                    containerId.substring(0, Math.min(12, containerId.length())),
-                    state.getStatus(),
-                    state.getRunning(),
-                    state.getStatus());
+            engine.streamLogs(containerId, follow, tail, timestamps, callback);
         } catch (Exception e) {
-            throw new RuntimeException("Failed to get container status: " + e.getMessage(), e);
+            throw new RuntimeException("Failed to read logs: " + e.getMessage(), e);
         }
     }
 
-    public void close() {
+    public String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                              ResultCallback<Frame> callback) {
+        try {
+            return engine.execCommand(containerId, command, tty, stdin, callback);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to exec in container: " + e.getMessage(), e);
+        }
+    }
+
+    public Long getExecExitCode(String execId) {
+        try {
+            return engine.getExecExitCode(execId);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to inspect exec: " + e.getMessage(), e);
+        }
+    }
+
+    public String getContainerStatus(String containerId) {
         try {
-            if (dockerClient != null) {
-                dockerClient.close();
+            ContainerInfo known = inventoryReady() ? inventory.resolveContainer(containerId) : null;
+            if (known != null) {
+                return formatStatus(containerId, known.getState());
             }
+            return formatStatus(containerId, coalesced(ReadCoalescer.key("state", containerId),
+                    () -> engine.getContainerState(containerId)));
         } catch (Exception e) {
-            System.err.println("Error closing Docker client: " + e.getMessage());
+            throw new RuntimeException("Failed to get container status: " + e.getMessage(), e);
+        }
+    }
+
+    private static String formatStatus(String containerId, String state) {
+        return String.format("Container %s - State: %s, Running: %s, Status: %s",
+                containerId.substring(0, Math.min(12, containerId.length())),
+                state,
+                "running".equals(state),
+                state);
+    }
+
+    /*
+     * A name or short ID becomes the container's full ID while the inventory is synced, so the engine
+     * never searches for it; one that is ambiguous fails here without an engine call. One the inventory
+     * does not know goes to the engine as given: it may be too recent for the inventory to have seen.
+     */
+    private String resolveContainer(String reference) {
+        ContainerInfo known = inventoryReady() ? inventory.resolveContainer(reference) : null;
+        return known != null ? known.getId() : reference;
+    }
+
+    // An ID prefix no repository is named after becomes the image's full ID; anything else goes as given
+    private String resolveImage(String reference) {
+        if (!inventoryReady() || !IMAGE_ID.matcher(reference).matches()) {
+            return reference;
+        }
+        for (ImageInfo image : inventory.getImages()) {
+            if (reference.equals(image.getRepository())) {
+                return reference;
+            }
+        }
+        String id = inventory.resolveImageId(reference);
+        return id != null ? id : reference;
+    }
+
+    // Identical engine reads in flight at the same time share one call
+    private <T> T coalesced(String key, Supplier<T> read) {
+        return reads != null ? reads.read(key, read) : read.get();
+    }
+
+    // Engines accept names and ID prefixes, the inventory is keyed by full ID
+    private void notifyChanged(String containerId) {
+        if (reads != null) {
+            reads.invalidate();
+        }
+        if (inventory == null) {
+            return;
+        }
+        ContainerInfo known = inventory.findContainer(containerId);
+        inventory.containerChanged(known != null ? known.getId() : containerId);
+    }
+
+    public void close() {
+        if (warmPool != null) {
+            warmPool.close();
+        }
+        if (stats != null) {
+            stats.close();
+        }
+        bulkOperations.close();
+        pullJobs.close();
+        pullCoordinator.close();
+        if (inventory != null) {
+            inventory.close();
         }
+        engine.close();
     }
-}
\ No newline at end of file
+}
@@ -1,34 +1,36 @@
 package ma.ensasafi.jdocker.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class DockerServer {
-    private static final int DEFAULT_PORT = 9999;
-    private ServerSocket serverSocket;
-    private ExecutorService executorService;
+    private ServerConfig config;
+    private ConnectionEngine engine;
     private DockerManager dockerManager;
-    private AtomicInteger clientCounter;
-    private volatile boolean running;
+    private MetricsEndpoint metricsEndpoint;
 
     public DockerServer(int port) {
+        this(new ServerConfig(port));
+    }
+
+    public DockerServer(ServerConfig config) {
+        int port = config.getPort();
         try {
-            this.serverSocket = new ServerSocket(port);
-            this.executorService = Executors.newCachedThreadPool();
-            this.dockerManager = new DockerManager();
-            this.clientCounter = new AtomicInteger(0);
-            this.running = true;
+            this.config = config;
+            if (!config.isTcpEnabled() && config.getUnixSocket() == null) {
+                throw new IOException("nothing to listen on, --port=0 needs --unix-socket");
+            }
+            this.dockerManager = new DockerManager(config);
+            this.engine = createEngine(config, new CommandDispatcher(dockerManager));
 
             System.out.println("╔════════════════════════════════════════════════════════╗");
             System.out.println("║     J-DOCKER REMOTE MANAGER - SERVER STARTED           ║");
             System.out.println("╟────────────────────────────────────────────────────────╢");
-            System.out.println("║  Port: " + port + "                                            ║");
-            System.out.println("║  Docker: Connected                                     ║");
+            System.out.println(String.format("║  Port: %-48s║", config.isTcpEnabled() ? port : "off"));
+            if (config.getUnixSocket() != null) {
+                System.out.println(String.format("║  Socket: %-46s║", config.getUnixSocket()));
+            }
+            System.out.println(String.format("║  Engine: %-46s║", config.getEngine()));
+            System.out.println(String.format("║  Docker: %-46s║", dockerManager.getEngine().describe()));
             System.out.println("║  Status: Waiting for clients...                        ║");
             System.out.println("╚════════════════════════════════════════════════════════╝");
 
@@ -38,36 +40,41 @@ public class DockerServer {
         }
     }
 
+    private static ConnectionEngine createEngine(ServerConfig config, CommandDispatcher dispatcher) throws IOException {
+        switch (config.getEngine()) {
+            case NIO:
+                return new NioConnectionEngine(config, dispatcher);
+            case VIRTUAL:
+            case THREAD:
+            default:
+                return new SocketConnectionEngine(config, dispatcher);
+        }
+    }
+
     public void start() {
         // Shutdown hook for graceful termination
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
 
-        while (running) {
+        if (config.getMetricsPort() > 0) {
             try {
-                Socket clientSocket = serverSocket.accept();
-                int clientNum = clientCounter.incrementAndGet();
-                ClientHandler handler = new ClientHandler(clientSocket, dockerManager, clientNum);
-                executorService.execute(handler);
+                metricsEndpoint = new MetricsEndpoint(config.getMetricsPort(), dockerManager.getMetrics());
+                metricsEndpoint.start();
             } catch (IOException e) {
-                if (running) {
-                    System.err.println("✗ Error accepting client connection: " + e.getMessage());
-                }
+                System.err.println("✗ Metrics endpoint unavailable: " + e.getMessage());
             }
         }
+
+        engine.start();
     }
 
     public void shutdown() {
         System.out.println("\n⚠ Shutting down server...");
-        running = false;
 
         try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
+            engine.shutdown();
 
-            executorService.shutdown();
-            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
+            if (metricsEndpoint != null) {
+                metricsEndpoint.stop();
             }
 
             if (dockerManager != null) {
@@ -77,22 +84,11 @@ public class DockerServer {
             System.out.println("✓ Server stopped cleanly");
         } catch (Exception e) {
             System.err.println("✗ Error during shutdown: " + e.getMessage());
-            executorService.shutdownNow();
         }
     }
 
     public static void main(String[] args) {
-        int port = DEFAULT_PORT;
-
-        if (args.length > 0) {
-            try {
-                port = Integer.parseInt(args[0]);
-            } catch (NumberFormatException e) {
-                System.err.println("Invalid port number. Using default: " + DEFAULT_PORT);
-            }
-        }
-
-        DockerServer server = new DockerServer(port);
+        DockerServer server = new DockerServer(ServerConfig.fromArgs(args));
         server.start();
     }
-}
\ No newline at end of file
+}
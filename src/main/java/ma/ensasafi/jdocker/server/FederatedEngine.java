@@ -0,0 +1,716 @@
+package ma.ensasafi.jdocker.server;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.DockerException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventActor;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.Statistics;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+ * ContainerEngine in front of several daemons ("hosts"), each reached through an engine of its own.
+ * Container and image IDs are qualified by their host, "node1/3f2a…", in listings, selections and
+ * created containers, so an ID the server handed out goes straight to its host. Names and bare ID
+ * prefixes are looked up on every host, and "node1/web" names a container on one host.
+ *
+ * Listings ask every host in parallel and wait at most the host timeout: a host that is slow or down
+ * is left out of that answer and skipped until its retry delay is over, while the others keep answering.
+ * Events of a host whose stream broke are lost until it is resubscribed; the inventory's periodic
+ * resync catches up with them.
+ */
+public class FederatedEngine implements ContainerEngine {
+    private static final char SEPARATOR = '/';
+    // A host that failed or timed out is skipped this long, then tried again
+    private static final long HOST_RETRY_MILLIS = 5000;
+    // Placement refreshes a host's load and images once they are older than this
+    private static final long LOAD_TTL_MILLIS = 5000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Host> hosts;
+    private final PlacementStrategy placement;
+    private final long timeoutMillis;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+
+    // Hosts in the given order, which is also the tie-break order of placement
+    public FederatedEngine(Map<String, ContainerEngine> engines, PlacementStrategy placement, long timeoutMillis) {
+        if (engines.isEmpty()) {
+            throw new IllegalArgumentException("A federation needs at least one host");
+        }
+        Map<String, Host> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, ContainerEngine> entry : engines.entrySet()) {
+            byName.put(entry.getKey(), new Host(entry.getKey(), entry.getValue()));
+        }
+        this.hosts = Collections.unmodifiableMap(byName);
+        this.placement = placement;
+        this.timeoutMillis = timeoutMillis;
+
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "federation-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "federation-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String describe() {
+        return "Federated (" + hosts.size() + " hosts: " + String.join(", ", hosts.keySet()) + ")";
+    }
+
+    // Every host answers with its own part of the filter; the parts are merged in listing order
+    @Override
+    public List<ImageInfo> listImages(ImageFilter filter) {
+        Map<Host, List<ImageInfo>> answers = gather(hosts.values(), engine -> engine.listImages(filter));
+        List<ImageInfo> merged = new ArrayList<>();
+        for (Map.Entry<Host, List<ImageInfo>> answer : answers.entrySet()) {
+            String host = answer.getKey().name;
+            for (ImageInfo image : answer.getValue()) {
+                merged.add(new ImageInfo(qualify(host, image.getId()), image.getRepository(), image.getTag(),
+                        image.getSize(), image.getCreated()));
+            }
+        }
+        merged.sort(ListingQuery.IMAGE_ORDER);
+        return merged;
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers(ContainerFilter filter) {
+        Map<Host, List<ContainerInfo>> answers = gather(hosts.values(), engine -> engine.listContainers(filter));
+        List<ContainerInfo> merged = new ArrayList<>();
+        for (Map.Entry<Host, List<ContainerInfo>> answer : answers.entrySet()) {
+            String host = answer.getKey().name;
+            for (ContainerInfo container : answer.getValue()) {
+                merged.add(qualify(host, container));
+            }
+        }
+        merged.sort(ListingQuery.CONTAINER_ORDER);
+        return merged;
+    }
+
+    @Override
+    public ContainerInfo getContainer(String containerId) {
+        Route route = route(containerId);
+        ContainerInfo container = route.host.call(engine -> engine.getContainer(route.local));
+        return container != null ? qualify(route.host.name, container) : null;
+    }
+
+    @Override
+    public List<String> selectContainers(List<String> labels, String name) {
+        Map<Host, List<String>> answers = gather(hosts.values(), engine -> engine.selectContainers(labels, name));
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<Host, List<String>> answer : answers.entrySet()) {
+            for (String id : answer.getValue()) {
+                ids.add(qualify(answer.getKey().name, id));
+            }
+        }
+        return ids;
+    }
+
+    // A "host/name" container goes to that host, any other to the one the placement strategy picks
+    @Override
+    public String createContainer(String imageName, String containerName) {
+        Host host;
+        String localName = containerName;
+        int slash = containerName != null ? containerName.indexOf(SEPARATOR) : -1;
+        if (slash >= 0) {
+            host = hostNamed(containerName.substring(0, slash));
+            localName = containerName.substring(slash + 1);
+        } else {
+            host = place(imageName);
+        }
+
+        String name = localName;
+        String containerId = host.call(engine -> engine.createContainer(imageName, name));
+        host.placed.incrementAndGet();
+        return qualify(host.name, containerId);
+    }
+
+    @Override
+    public void startContainer(String containerId) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.startContainer(route.local);
+            return null;
+        });
+    }
+
+    @Override
+    public void stopContainer(String containerId) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.stopContainer(route.local);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteContainer(String containerId) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.deleteContainer(route.local);
+            return null;
+        });
+    }
+
+    @Override
+    public void renameContainer(String containerId, String newName) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.renameContainer(route.local, newName);
+            return null;
+        });
+    }
+
+    @Override
+    public void pauseContainer(String containerId) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.pauseContainer(route.local);
+            return null;
+        });
+    }
+
+    @Override
+    public void unpauseContainer(String containerId) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.unpauseContainer(route.local);
+            return null;
+        });
+    }
+
+    @Override
+    public String getContainerState(String containerId) {
+        Route route = route(containerId);
+        return route.host.call(engine -> engine.getContainerState(route.local));
+    }
+
+    // Pulls on every reachable host; fails, once all are done, if any of them failed
+    @Override
+    public void pullImage(String reference, ResultCallback<PullResponseItem> callback) {
+        List<Host> targets = new ArrayList<>();
+        for (Host host : hosts.values()) {
+            if (host.isAvailable()) {
+                targets.add(host);
+            }
+        }
+        PullFanIn fanIn = new PullFanIn(callback, targets.size());
+        callback.onStart(fanIn);
+        if (targets.isEmpty()) {
+            callback.onError(new RuntimeException("No host available"));
+            return;
+        }
+
+        for (Host host : targets) {
+            ResultCallback.Adapter<PullResponseItem> relay = fanIn.relay(host);
+            try {
+                host.call(engine -> {
+                    engine.pullImage(reference, relay);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                relay.onError(e);
+            }
+        }
+    }
+
+    @Override
+    public void streamStats(String containerId, ResultCallback<Statistics> callback) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.streamStats(route.local, callback);
+            return null;
+        });
+    }
+
+    @Override
+    public void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                           ResultCallback<Frame> callback) {
+        Route route = route(containerId);
+        route.host.call(engine -> {
+            engine.streamLogs(route.local, follow, tail, timestamps, callback);
+            return null;
+        });
+    }
+
+    // Exec IDs are qualified like container IDs, so the exit code is asked of the right host
+    @Override
+    public String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                              ResultCallback<Frame> callback) {
+        Route route = route(containerId);
+        String execId = route.host.call(engine -> engine.execCommand(route.local, command, tty, stdin, callback));
+        return qualify(route.host.name, execId);
+    }
+
+    @Override
+    public Long getExecExitCode(String execId) {
+        int slash = execId.indexOf('/');
+        if (slash < 0) {
+            throw new NotFoundException("No such exec instance: " + execId);
+        }
+        Host host = hostNamed(execId.substring(0, slash));
+        return host.call(engine -> engine.getExecExitCode(execId.substring(slash + 1)));
+    }
+
+    // Returns the callback, like the engines it merges, so closing either ends every host's stream
+    @Override
+    public Closeable subscribeEvents(ResultCallback<Event> callback) {
+        EventFanIn fanIn = new EventFanIn(callback);
+        callback.onStart(fanIn);
+        for (Host host : hosts.values()) {
+            fanIn.subscribe(host);
+        }
+        return callback;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+        for (Host host : hosts.values()) {
+            host.engine.close();
+        }
+    }
+
+    // Shape of the "hosts" section of STATS
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Host host : hosts.values()) {
+            Map<String, Object> hostStats = new LinkedHashMap<>();
+            hostStats.put("engine", host.engine.describe());
+            hostStats.put("available", host.retryAt == 0);
+            hostStats.put("failures", host.failures.sum());
+            if (host.lastError != null) {
+                hostStats.put("lastError", host.lastError);
+            }
+            if (host.loadAt > 0) {
+                hostStats.put("runningContainers", host.running + host.placed.get());
+            }
+            stats.put(host.name, hostStats);
+        }
+        return stats;
+    }
+
+    // Answers of the given hosts that came within the timeout; throws only when none did
+    private <T> Map<Host, T> gather(Collection<Host> targets, Function<ContainerEngine, T> call) {
+        Map<Host, Future<T>> pending = new LinkedHashMap<>();
+        for (Host host : targets) {
+            if (host.isAvailable()) {
+                pending.put(host, executor.submit(() -> host.call(call)));
+            }
+        }
+        if (pending.isEmpty()) {
+            throw new RuntimeException("No host available");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Map<Host, T> answers = new LinkedHashMap<>();
+        RuntimeException firstError = null;
+        for (Map.Entry<Host, Future<T>> entry : pending.entrySet()) {
+            Host host = entry.getKey();
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                answers.put(host, entry.getValue().get(left, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                host.failed("no answer within " + timeoutMillis + " ms");
+                if (firstError == null) {
+                    firstError = new RuntimeException("Host " + host.name + " did not answer within "
+                            + timeoutMillis + " ms");
+                }
+            } catch (ExecutionException e) {
+                if (firstError == null) {
+                    firstError = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for hosts");
+            }
+        }
+        if (answers.isEmpty()) {
+            throw firstError;
+        }
+        return answers;
+    }
+
+    private Route route(String reference) {
+        int slash = reference.indexOf(SEPARATOR);
+        if (slash >= 0) {
+            return new Route(hostNamed(reference.substring(0, slash)), reference.substring(slash + 1));
+        }
+        return new Route(locate(reference), reference);
+    }
+
+    private Host hostNamed(String name) {
+        Host host = hosts.get(name);
+        if (host == null) {
+            throw new NotFoundException("No such host: " + name);
+        }
+        return host;
+    }
+
+    // The one host that knows a bare name or ID prefix
+    private Host locate(String reference) {
+        Map<Host, String> states = gather(hosts.values(), engine -> {
+            try {
+                return engine.getContainerState(reference);
+            } catch (NotFoundException e) {
+                return null;
+            }
+        });
+
+        List<String> owners = new ArrayList<>();
+        for (Map.Entry<Host, String> answer : states.entrySet()) {
+            if (answer.getValue() != null) {
+                owners.add(answer.getKey().name);
+            }
+        }
+        if (owners.isEmpty()) {
+            throw new NotFoundException("No such container: " + reference);
+        }
+        if (owners.size() > 1) {
+            throw new NotFoundException("Container " + reference + " exists on several hosts ("
+                    + String.join(", ", owners) + "), use host/" + reference);
+        }
+        return hosts.get(owners.get(0));
+    }
+
+    private Host place(String imageName) {
+        List<Host> stale = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Host host : hosts.values()) {
+            if (host.isAvailable() && now - host.loadAt > LOAD_TTL_MILLIS) {
+                stale.add(host);
+            }
+        }
+        if (!stale.isEmpty()) {
+            try {
+                gather(stale, this::loadOf).forEach(Host::loaded);
+            } catch (RuntimeException e) {
+                // None of them answered: placement goes by what the others last reported
+            }
+        }
+
+        List<PlacementStrategy.Candidate> candidates = new ArrayList<>();
+        for (Host host : hosts.values()) {
+            if (host.isAvailable() && host.loadAt > 0) {
+                candidates.add(new PlacementStrategy.Candidate(host.name, host.running + host.placed.get(),
+                        host.images));
+            }
+        }
+        if (candidates.isEmpty()) {
+            throw new RuntimeException("No host available to create the container on");
+        }
+        return hosts.get(placement.choose(candidates, PullCoordinator.normalize(imageName)).getHost());
+    }
+
+    private Load loadOf(ContainerEngine engine) {
+        int running = engine.listContainers(ContainerFilter.RUNNING).size();
+        Set<String> images = new HashSet<>();
+        for (ImageInfo image : engine.listImages()) {
+            if (!"<none>".equals(image.getRepository())) {
+                images.add(PullCoordinator.normalize(image.getRepository() + ":" + image.getTag()));
+            }
+        }
+        return new Load(running, images);
+    }
+
+    private static String qualify(String host, String id) {
+        return id != null ? host + SEPARATOR + id : null;
+    }
+
+    private static ContainerInfo qualify(String host, ContainerInfo container) {
+        return new ContainerInfo(qualify(host, container.getId()), container.getName(), container.getImage(),
+                container.getState(), container.getStatus(), container.getCreated());
+    }
+
+    // Image events only make the inventory reload images, so container events alone need their IDs qualified
+    private static Event qualify(String host, Event event) {
+        if (event.getType() != EventType.CONTAINER) {
+            return event;
+        }
+        EventActor actor = event.getActor();
+        return new Event()
+                .withStatus(event.getStatus())
+                .withId(qualify(host, event.getId()))
+                .withFrom(event.getFrom())
+                .withTime(event.getTime())
+                .withTimenano(event.getTimeNano())
+                .withNode(event.getNode())
+                .withType(event.getType())
+                .withAction(event.getAction())
+                .withEventActor(actor == null ? null : new EventActor()
+                        .withId(qualify(host, actor.getId()))
+                        .withAttributes(actor.getAttributes()));
+    }
+
+    /*
+     * Layer progress of each host under "host/layer", so per-layer views of the fanned-in pull keep
+     * the hosts apart instead of one host's "Pull complete" ending another's layer.
+     * The item classes are read-only, so the copy is built from JSON fields as docker-java does.
+     */
+    private static PullResponseItem qualify(String host, PullResponseItem item) {
+        if (item.getId() == null) {
+            return item;
+        }
+        Map<String, Object> fields = MAPPER.convertValue(item, new TypeReference<Map<String, Object>>() {});
+        fields.put("id", qualify(host, item.getId()));
+        return MAPPER.convertValue(fields, PullResponseItem.class);
+    }
+
+    private static final class Route {
+        private final Host host;
+        private final String local;
+
+        Route(Host host, String local) {
+            this.host = host;
+            this.local = local;
+        }
+    }
+
+    private static final class Load {
+        private final int running;
+        private final Set<String> images;
+
+        Load(int running, Set<String> images) {
+            this.running = running;
+            this.images = images;
+        }
+    }
+
+    private static final class Host {
+        private final String name;
+        private final ContainerEngine engine;
+        // 0 while the host answers; otherwise when it may be tried again
+        private volatile long retryAt;
+        private volatile String lastError;
+        private final LongAdder failures = new LongAdder();
+        // Placement view, refreshed every LOAD_TTL_MILLIS at most
+        private volatile int running;
+        private volatile Set<String> images = Set.of();
+        private volatile long loadAt;
+        private final AtomicInteger placed = new AtomicInteger();
+
+        Host(String name, ContainerEngine engine) {
+            this.name = name;
+            this.engine = engine;
+        }
+
+        boolean isAvailable() {
+            return System.currentTimeMillis() >= retryAt;
+        }
+
+        <T> T call(Function<ContainerEngine, T> call) {
+            if (!isAvailable()) {
+                throw new RuntimeException("Host " + name + " is unavailable: " + lastError);
+            }
+            try {
+                T result = call.apply(engine);
+                recovered();
+                return result;
+            } catch (DockerException e) {
+                // The daemon answered: the request failed, the host is fine
+                recovered();
+                throw e;
+            } catch (RuntimeException e) {
+                failed(e.getMessage());
+                throw e;
+            }
+        }
+
+        void failed(String reason) {
+            failures.increment();
+            lastError = reason;
+            boolean wasAvailable = retryAt == 0;
+            retryAt = System.currentTimeMillis() + HOST_RETRY_MILLIS;
+            if (wasAvailable) {
+                System.err.println("✗ Host " + name + " unavailable: " + reason);
+            }
+        }
+
+        void recovered() {
+            if (retryAt != 0) {
+                retryAt = 0;
+                System.out.println("✓ Host " + name + " is back");
+            }
+        }
+
+        void loaded(Load load) {
+            running = load.running;
+            images = load.images;
+            placed.set(0);
+            loadAt = System.currentTimeMillis();
+        }
+    }
+
+    // One pull stream per host behind the caller's callback
+    private static final class PullFanIn implements Closeable {
+        private final ResultCallback<PullResponseItem> callback;
+        private final List<ResultCallback.Adapter<PullResponseItem>> relays = new ArrayList<>();
+        private final List<String> failed = new ArrayList<>();
+        private int remaining;
+
+        PullFanIn(ResultCallback<PullResponseItem> callback, int hosts) {
+            this.callback = callback;
+            this.remaining = hosts;
+        }
+
+        synchronized ResultCallback.Adapter<PullResponseItem> relay(Host host) {
+            ResultCallback.Adapter<PullResponseItem> relay = new ResultCallback.Adapter<>() {
+                @Override
+                public void onNext(PullResponseItem item) {
+                    PullResponseItem tagged = qualify(host.name, item);
+                    synchronized (PullFanIn.this) {
+                        callback.onNext(tagged);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    finished(host, throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    finished(host, null);
+                }
+            };
+            relays.add(relay);
+            return relay;
+        }
+
+        private void finished(Host host, Throwable error) {
+            boolean last;
+            synchronized (this) {
+                if (error != null) {
+                    failed.add(host.name + ": " + error.getMessage());
+                }
+                last = --remaining == 0;
+            }
+            // The image is there now: the next placement must see it
+            host.loadAt = 0;
+            if (!last) {
+                return;
+            }
+            if (failed.isEmpty()) {
+                callback.onComplete();
+            } else {
+                callback.onError(new RuntimeException("Pull failed on " + String.join("; ", failed)));
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            for (ResultCallback.Adapter<PullResponseItem> relay : relays) {
+                try {
+                    relay.close();
+                } catch (Exception e) {
+                    // Already finished
+                }
+            }
+        }
+    }
+
+    // One event stream per host behind the caller's callback; a stream that breaks is resubscribed alone
+    private final class EventFanIn implements Closeable {
+        private final ResultCallback<Event> callback;
+        private final Map<Host, ResultCallback.Adapter<Event>> streams = new ConcurrentHashMap<>();
+        private volatile boolean closed;
+
+        EventFanIn(ResultCallback<Event> callback) {
+            this.callback = callback;
+        }
+
+        void subscribe(Host host) {
+            if (closed) {
+                return;
+            }
+            ResultCallback.Adapter<Event> relay = new ResultCallback.Adapter<>() {
+                @Override
+                public void onNext(Event event) {
+                    if (!closed) {
+                        callback.onNext(qualify(host.name, event));
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    lost(host, this, throwable.getMessage());
+                }
+
+                @Override
+                public void onComplete() {
+                    lost(host, this, "stream ended");
+                }
+            };
+            streams.put(host, relay);
+            try {
+                host.engine.subscribeEvents(relay);
+            } catch (RuntimeException e) {
+                lost(host, relay, e.getMessage());
+            }
+        }
+
+        private void lost(Host host, ResultCallback.Adapter<Event> relay, String reason) {
+            if (closed || !streams.remove(host, relay)) {
+                return;
+            }
+            System.err.println("✗ Event stream of host " + host.name + " lost: " + reason);
+            try {
+                scheduler.schedule(() -> subscribe(host), HOST_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // Engine closed
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            for (ResultCallback.Adapter<Event> relay : streams.values()) {
+                try {
+                    relay.close();
+                } catch (Exception e) {
+                    // Already broken
+                }
+            }
+            streams.clear();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+// Which images a listing asks for; like ContainerFilter, labels can only be applied by engines
+public class ImageFilter {
+    public static final ImageFilter ALL = new ImageFilter(null, null, null);
+
+    private final String repositoryPrefix;
+    private final List<String> labels;
+    private final Long createdAfter;
+
+    public ImageFilter(String repositoryPrefix, List<String> labels, Long createdAfter) {
+        this.repositoryPrefix = repositoryPrefix != null && !repositoryPrefix.isEmpty() ? repositoryPrefix : null;
+        this.labels = labels != null ? labels : Collections.emptyList();
+        this.createdAfter = createdAfter;
+    }
+
+    public String getRepositoryPrefix() {
+        return repositoryPrefix;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public Long getCreatedAfter() {
+        return createdAfter;
+    }
+
+    public boolean hasLabels() {
+        return !labels.isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return repositoryPrefix == null && labels.isEmpty() && createdAfter == null;
+    }
+
+    // Same key for filters that select the same images, whatever the order of labels
+    String key() {
+        return ReadCoalescer.key("images", repositoryPrefix, new TreeSet<>(labels), createdAfter);
+    }
+
+    public boolean matches(String repository, Long created) {
+        if (repositoryPrefix != null && (repository == null || !repository.startsWith(repositoryPrefix))) {
+            return false;
+        }
+        return createdAfter == null || (created != null && created > createdAfter);
+    }
+
+    public boolean matches(ImageInfo image) {
+        return matches(image.getRepository(), image.getCreated());
+    }
+}
@@ -0,0 +1,241 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/*
+ * Filters, projection and paging of a LIST_CONTAINERS or LIST_IMAGES command:
+ *   containers: state=running,exited name=<prefix> image=<prefix> label=k=v,k2
+ *   images:     repository=<prefix> label=k=v,k2
+ *   both:       createdAfter=<epoch seconds> fields=id,state limit=<n> cursor=<nextCursor>
+ * Pages follow the listing order, newest first with the ID as tie-break, and resume after the
+ * entry the cursor names. Without limit or cursor the answer stays a plain list, as before.
+ */
+class ListingQuery {
+    private static final Set<String> CONTAINER_FIELDS = Set.of("id", "name", "image", "state", "status", "created");
+    private static final Set<String> IMAGE_FIELDS = Set.of("id", "repository", "tag", "size", "created");
+    private static final Set<String> CONTAINER_PARAMETERS = Set.of("state", "name", "image", "label", "createdAfter",
+            "fields", "limit", "cursor");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 10_000;
+
+    static final Comparator<ContainerInfo> CONTAINER_ORDER = Comparator
+            .comparing(ContainerInfo::getCreated, Comparator.nullsLast(Comparator.<Long>reverseOrder()))
+            .thenComparing(ContainerInfo::getId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    static final Comparator<ImageInfo> IMAGE_ORDER = Comparator
+            .comparing(ImageInfo::getCreated, Comparator.nullsLast(Comparator.<Long>reverseOrder()))
+            .thenComparing(ImageInfo::getId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ImageInfo::getRepository, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(ImageInfo::getTag, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private ContainerFilter containerFilter;
+    private ImageFilter imageFilter;
+    // null: every field
+    private Set<String> fields;
+    // 0: not paged
+    private int limit;
+    private String cursor;
+
+    private ListingQuery() {}
+
+    // Throws IllegalArgumentException with a message meant for the client
+    static ListingQuery forContainers(Command command) {
+        ListingQuery query = new ListingQuery();
+        Set<String> states = null;
+        List<String> requested = CommandDispatcher.splitList(command.getParameter("state"));
+        if (!requested.isEmpty()) {
+            states = new HashSet<>(requested);
+        } else if (!"true".equals(command.getParameter("all"))) {
+            states = Set.of("running");
+        }
+        query.containerFilter = new ContainerFilter(states, command.getParameter("name"),
+                command.getParameter("image"), CommandDispatcher.splitList(command.getParameter("label")),
+                parseCreatedAfter(command));
+        query.parsePaging(command, CONTAINER_FIELDS);
+        return query;
+    }
+
+    static ListingQuery forImages(Command command) {
+        ListingQuery query = new ListingQuery();
+        query.imageFilter = new ImageFilter(command.getParameter("repository"),
+                CommandDispatcher.splitList(command.getParameter("label")), parseCreatedAfter(command));
+        query.parsePaging(command, IMAGE_FIELDS);
+        return query;
+    }
+
+    // Delta listings (since=) only take the all flag
+    static boolean hasListingParameters(Command command) {
+        for (String parameter : CONTAINER_PARAMETERS) {
+            if (command.getParameter(parameter) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long parseCreatedAfter(Command command) {
+        String value = command.getParameter("createdAfter");
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid createdAfter: " + value);
+        }
+    }
+
+    private void parsePaging(Command command, Set<String> knownFields) {
+        List<String> requested = CommandDispatcher.splitList(command.getParameter("fields"));
+        if (!requested.isEmpty()) {
+            for (String field : requested) {
+                if (!knownFields.contains(field)) {
+                    throw new IllegalArgumentException("Unknown field: " + field);
+                }
+            }
+            fields = new HashSet<>(requested);
+        }
+
+        String requestedLimit = command.getParameter("limit");
+        if (requestedLimit != null) {
+            try {
+                limit = Integer.parseInt(requestedLimit.trim());
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Invalid limit: " + requestedLimit
+                        + " (expected 1 to " + MAX_PAGE_SIZE + ")");
+            }
+        }
+
+        cursor = command.getParameter("cursor");
+        if (cursor != null && limit == 0) {
+            limit = DEFAULT_PAGE_SIZE;
+        }
+    }
+
+    ContainerFilter getContainerFilter() {
+        return containerFilter;
+    }
+
+    ImageFilter getImageFilter() {
+        return imageFilter;
+    }
+
+    // A List, or a Page when paging was asked for
+    Object answerContainers(List<ContainerInfo> containers) {
+        return answer(containers, CONTAINER_ORDER, ListingQuery::decodeContainerCursor,
+                container -> encodeCursor(container.getCreated(), container.getId()), this::project);
+    }
+
+    Object answerImages(List<ImageInfo> images) {
+        return answer(images, IMAGE_ORDER, ListingQuery::decodeImageCursor,
+                image -> encodeCursor(image.getCreated(), image.getId(), image.getRepository(), image.getTag()),
+                this::project);
+    }
+
+    private <T> Object answer(List<T> listed, Comparator<T> order, Function<String[], T> cursorKey,
+                              Function<T, String> cursorOf, UnaryOperator<T> projection) {
+        if (limit == 0) {
+            return fields == null ? listed : projectAll(listed, projection);
+        }
+
+        // Listings usually arrive in this order already, which the sort only has to confirm
+        List<T> sorted = new ArrayList<>(listed);
+        sorted.sort(order);
+
+        int start = 0;
+        if (cursor != null) {
+            int found = Collections.binarySearch(sorted, cursorKey.apply(decodeCursor(cursor)), order);
+            // The cursor's entry may be gone since; the page starts at the next one either way
+            start = found >= 0 ? found + 1 : -found - 1;
+        }
+        int end = Math.min(sorted.size(), start + limit);
+        List<T> items = sorted.subList(start, end);
+        String next = end < sorted.size() ? cursorOf.apply(sorted.get(end - 1)) : null;
+        return new Page<>(fields == null ? new ArrayList<>(items) : projectAll(items, projection), next);
+    }
+
+    private static <T> List<T> projectAll(List<T> listed, UnaryOperator<T> projection) {
+        List<T> projected = new ArrayList<>(listed.size());
+        for (T item : listed) {
+            projected.add(projection.apply(item));
+        }
+        return projected;
+    }
+
+    // Fields left out are null, which JSON leaves out of the object
+    private ContainerInfo project(ContainerInfo container) {
+        return new ContainerInfo(
+                fields.contains("id") ? container.getId() : null,
+                fields.contains("name") ? container.getName() : null,
+                fields.contains("image") ? container.getImage() : null,
+                fields.contains("state") ? container.getState() : null,
+                fields.contains("status") ? container.getStatus() : null,
+                fields.contains("created") ? container.getCreated() : null
+        );
+    }
+
+    private ImageInfo project(ImageInfo image) {
+        return new ImageInfo(
+                fields.contains("id") ? image.getId() : null,
+                fields.contains("repository") ? image.getRepository() : null,
+                fields.contains("tag") ? image.getTag() : null,
+                fields.contains("size") ? image.getSize() : null,
+                fields.contains("created") ? image.getCreated() : null
+        );
+    }
+
+    // A cursor is the sort key of the last entry served: creation time then the tie-break fields
+    private static String encodeCursor(Long created, String... keys) {
+        StringBuilder key = new StringBuilder(created != null ? created.toString() : "");
+        for (String part : keys) {
+            key.append('\n').append(part != null ? part : "");
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private static ContainerInfo decodeContainerCursor(String[] key) {
+        if (key.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new ContainerInfo(key[1], null, null, null, null, parseCreated(key[0]));
+    }
+
+    private static ImageInfo decodeImageCursor(String[] key) {
+        if (key.length != 4) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new ImageInfo(key[1], key[2], key[3], null, parseCreated(key[0]));
+    }
+
+    private static Long parseCreated(String value) {
+        try {
+            return value.isEmpty() ? null : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.Statistics;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Times every request/response call to the wrapped engine; pulls, stats, logs and events are long-lived
+// streams and pass through
+public class MeteredEngine implements ContainerEngine {
+    private ContainerEngine engine;
+    private ServerMetrics metrics;
+
+    public MeteredEngine(ContainerEngine engine, ServerMetrics metrics) {
+        this.engine = engine;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String describe() {
+        return engine.describe();
+    }
+
+    @Override
+    public List<ImageInfo> listImages(ImageFilter filter) {
+        return timed("list_images", () -> engine.listImages(filter));
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers(ContainerFilter filter) {
+        return timed("list_containers", () -> engine.listContainers(filter));
+    }
+
+    @Override
+    public ContainerInfo getContainer(String containerId) {
+        return timed("get_container", () -> engine.getContainer(containerId));
+    }
+
+    @Override
+    public List<String> selectContainers(List<String> labels, String name) {
+        return timed("select_containers", () -> engine.selectContainers(labels, name));
+    }
+
+    @Override
+    public String createContainer(String imageName, String containerName) {
+        return timed("create_container", () -> engine.createContainer(imageName, containerName));
+    }
+
+    @Override
+    public void startContainer(String containerId) {
+        timed("start_container", () -> {
+            engine.startContainer(containerId);
+            return null;
+        });
+    }
+
+    @Override
+    public void stopContainer(String containerId) {
+        timed("stop_container", () -> {
+            engine.stopContainer(containerId);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteContainer(String containerId) {
+        timed("delete_container", () -> {
+            engine.deleteContainer(containerId);
+            return null;
+        });
+    }
+
+    @Override
+    public void renameContainer(String containerId, String newName) {
+        timed("rename_container", () -> {
+            engine.renameContainer(containerId, newName);
+            return null;
+        });
+    }
+
+    @Override
+    public void pauseContainer(String containerId) {
+        timed("pause_container", () -> {
+            engine.pauseContainer(containerId);
+            return null;
+        });
+    }
+
+    @Override
+    public void unpauseContainer(String containerId) {
+        timed("unpause_container", () -> {
+            engine.unpauseContainer(containerId);
+            return null;
+        });
+    }
+
+    @Override
+    public String getContainerState(String containerId) {
+        return timed("inspect_container", () -> engine.getContainerState(containerId));
+    }
+
+    @Override
+    public void pullImage(String reference, ResultCallback<PullResponseItem> callback) {
+        engine.pullImage(reference, callback);
+    }
+
+    @Override
+    public void streamStats(String containerId, ResultCallback<Statistics> callback) {
+        engine.streamStats(containerId, callback);
+    }
+
+    @Override
+    public void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                           ResultCallback<Frame> callback) {
+        engine.streamLogs(containerId, follow, tail, timestamps, callback);
+    }
+
+    // Timed up to the start of the exec, not for as long as it runs
+    @Override
+    public String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                              ResultCallback<Frame> callback) {
+        return timed("exec_container", () -> engine.execCommand(containerId, command, tty, stdin, callback));
+    }
+
+    @Override
+    public Long getExecExitCode(String execId) {
+        return timed("inspect_exec", () -> engine.getExecExitCode(execId));
+    }
+
+    @Override
+    public Closeable subscribeEvents(ResultCallback<Event> callback) {
+        return engine.subscribeEvents(callback);
+    }
+
+    @Override
+    public void close() {
+        engine.close();
+    }
+
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T result = call.get();
+            success = true;
+            return result;
+        } finally {
+            metrics.engineCall(operation, System.nanoTime() - start, success);
+        }
+    }
+}
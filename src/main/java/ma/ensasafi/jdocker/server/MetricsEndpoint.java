@@ -0,0 +1,50 @@
+package ma.ensasafi.jdocker.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Prometheus scrape endpoint on the loopback interface: GET /metrics
+public class MetricsEndpoint {
+    private HttpServer httpServer;
+    private ServerMetrics metrics;
+
+    public MetricsEndpoint(int port, ServerMetrics metrics) throws IOException {
+        this.metrics = metrics;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.httpServer.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        httpServer.start();
+        System.out.println("✓ Metrics available on http://" + httpServer.getAddress().getHostString() + ":"
+                + httpServer.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.Gson;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Non-blocking engine: one selector thread owns every socket, Docker calls run on a bounded worker pool
+public class NioConnectionEngine implements ConnectionEngine {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_LENGTH = 1024 * 1024;
+    private static final int MAX_PENDING_COMMANDS = 64;
+    // Replies queued for a client that does not read them; reading its commands stops past this
+    private static final long MAX_PENDING_OUTPUT_BYTES = 4L * 1024 * 1024;
+    private static final byte[] LINE_END = {'\n'};
+
+    private ServerSocketChannel serverChannel;
+    // Null without --unix-socket; both listeners share the selector
+    private ServerSocketChannel unixChannel;
+    private Path unixSocket;
+    private Selector selector;
+    private ThreadPoolExecutor workers;
+    private CommandDispatcher dispatcher;
+    private ServerMetrics metrics;
+    private Gson gson;
+    private AtomicInteger clientCounter;
+    private Queue<NioConnection> pendingUpdates;
+    private ByteBuffer readBuffer;
+    private int compressionThreshold;
+    private volatile boolean running;
+
+    public NioConnectionEngine(ServerConfig config, CommandDispatcher dispatcher) throws IOException {
+        this.selector = Selector.open();
+        try {
+            if (config.isTcpEnabled()) {
+                this.serverChannel = ServerSocketChannel.open();
+                this.serverChannel.bind(new InetSocketAddress(config.getPort()), 1024);
+                this.serverChannel.configureBlocking(false);
+                this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+            if (config.getUnixSocket() != null) {
+                this.unixSocket = config.getUnixSocket();
+                this.unixChannel = UnixSockets.bind(unixSocket, 1024);
+                this.unixChannel.configureBlocking(false);
+                this.unixChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            closeListeners();
+            selector.close();
+            throw e;
+        }
+
+        AtomicInteger workerCounter = new AtomicInteger(0);
+        this.workers = new ThreadPoolExecutor(
+                config.getWorkerThreads(), config.getWorkerThreads(),
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(config.getWorkerQueueSize()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "nio-worker-" + workerCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+
+        this.dispatcher = dispatcher;
+        this.metrics = dispatcher.getMetrics();
+        this.gson = new Gson();
+        this.clientCounter = new AtomicInteger(0);
+        this.pendingUpdates = new ConcurrentLinkedQueue<>();
+        // Shared by all connections: only the selector thread reads from sockets
+        this.readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        this.compressionThreshold = config.getCompressionThreshold();
+        this.running = true;
+    }
+
+    @Override
+    public void start() {
+        try {
+            while (running) {
+                selector.select();
+                processPendingUpdates();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                        continue;
+                    }
+
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("✗ Selector loop failed: " + e.getMessage());
+            }
+        } finally {
+            closeAll();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+
+        try {
+            workers.shutdown();
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept(ServerSocketChannel listener) {
+        try {
+            SocketChannel channel = listener.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+
+            int clientNumber = clientCounter.incrementAndGet();
+            String host;
+            String clientAddress;
+            if (listener == unixChannel) {
+                host = "local";
+                clientAddress = ClientHandler.localClientKey(clientNumber);
+            } else {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                host = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+                clientAddress = host;
+            }
+            NioConnection connection = new NioConnection(channel,
+                    "Client-" + clientNumber + " (" + host + ")", clientAddress);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            metrics.connectionOpened();
+
+            System.out.println("✓ " + connection.session.getClientId() + " connected");
+            connection.session.welcome();
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("✗ Error accepting client connection: " + e.getMessage());
+            }
+        }
+    }
+
+    private void read(NioConnection connection) {
+        readBuffer.clear();
+        int count;
+        try {
+            count = connection.channel.read(readBuffer);
+        } catch (IOException e) {
+            System.out.println("✗ " + connection.session.getClientId() + " disconnected abruptly");
+            close(connection);
+            return;
+        }
+        if (count < 0) {
+            close(connection);
+            return;
+        }
+
+        metrics.bytesReceived(count);
+        readBuffer.flip();
+        if (!connection.consume(readBuffer)) {
+            System.err.println("✗ " + connection.session.getClientId() + " sent an oversized command, closing");
+            close(connection);
+            return;
+        }
+        updateInterest(connection);
+    }
+
+    private void flush(NioConnection connection) {
+        try {
+            ByteBuffer buffer;
+            while ((buffer = connection.outbox.peek()) != null) {
+                connection.outboxBytes.addAndGet(-connection.channel.write(buffer));
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                connection.outbox.poll();
+            }
+        } catch (IOException e) {
+            System.out.println("✗ " + connection.session.getClientId() + " disconnected abruptly");
+            close(connection);
+            return;
+        }
+        updateInterest(connection);
+    }
+
+    private void updateInterest(NioConnection connection) {
+        if (connection.closed) {
+            return;
+        }
+        if (connection.closing && connection.outbox.isEmpty()) {
+            close(connection);
+            return;
+        }
+
+        int ops = 0;
+        synchronized (connection) {
+            // Stop reading from clients that pile up commands faster than the workers drain them, or
+            // replies faster than they read them
+            if (!connection.closing && connection.inbox.size() < MAX_PENDING_COMMANDS
+                    && connection.outboxBytes.get() < MAX_PENDING_OUTPUT_BYTES) {
+                ops |= SelectionKey.OP_READ;
+            }
+        }
+        if (!connection.outbox.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void processPendingUpdates() {
+        NioConnection connection;
+        while ((connection = pendingUpdates.poll()) != null) {
+            if (!connection.closed) {
+                flush(connection);
+            }
+        }
+    }
+
+    private void requestUpdate(NioConnection connection) {
+        pendingUpdates.add(connection);
+        selector.wakeup();
+    }
+
+    private void close(NioConnection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        metrics.connectionClosed();
+        synchronized (connection) {
+            connection.inbox.clear();
+        }
+        connection.outbox.clear();
+        connection.outboxBytes.set(0);
+        connection.session.close();
+
+        try {
+            connection.key.cancel();
+            connection.channel.close();
+            System.out.println("✓ " + connection.session.getClientId() + " disconnected cleanly");
+        } catch (IOException e) {
+            System.err.println("Error closing client socket: " + e.getMessage());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection) {
+                close((NioConnection) key.attachment());
+            }
+        }
+        closeListeners();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("✗ Error closing selector: " + e.getMessage());
+        }
+    }
+
+    private void closeListeners() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+            if (unixChannel != null) {
+                UnixSockets.unbind(unixChannel, unixSocket);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Error closing listener: " + e.getMessage());
+        }
+    }
+
+    private class NioConnection implements ResponseSink {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ClientSession session;
+        // Bytes of an incomplete line, allocated only while one is pending
+        private ByteArrayOutputStream partial;
+        // Binary framing state: header bytes seen so far, then the payload being filled
+        private byte[] frameHeader;
+        private int frameHeaderLength;
+        private byte[] frame;
+        private int frameLength;
+        // Holds JSON lines (String) and binary frame payloads (byte[]) in arrival order
+        private Queue<Object> inbox;
+        private boolean processing;
+        private Queue<ByteBuffer> outbox;
+        // Bytes queued in the outbox and not yet written
+        private AtomicLong outboxBytes;
+        private volatile boolean closing;
+        private volatile boolean closed;
+
+        NioConnection(SocketChannel channel, String clientId, String clientAddress) {
+            this.channel = channel;
+            this.session = new ClientSession(clientId, clientAddress, dispatcher, this, workers, compressionThreshold);
+            this.inbox = new ArrayDeque<>();
+            this.outbox = new ConcurrentLinkedQueue<>();
+            this.outboxBytes = new AtomicLong();
+        }
+
+        @Override
+        public void send(Response response, WireFormat format, Compression.Compressor compressor) {
+            if (closed) {
+                return;
+            }
+            if (response instanceof CachedResponse) {
+                sendCached((CachedResponse) response, format, compressor);
+                return;
+            }
+            byte[] bytes;
+            if (compressor == null) {
+                bytes = format == WireFormat.BINARY
+                        ? BinaryCodec.encodeResponseFrame(response)
+                        : (gson.toJson(response) + "\n").getBytes(StandardCharsets.UTF_8);
+            } else if (format == WireFormat.BINARY) {
+                byte[] frame = BinaryCodec.encodeResponseFrame(response);
+                bytes = compressor.encodeFrame(frame, 4, frame.length - 4);
+            } else {
+                byte[] json = gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+                bytes = compressor.encodeFrame(json, 0, json.length);
+            }
+            metrics.bytesSent(bytes.length);
+            deliver(ByteBuffer.wrap(bytes));
+        }
+
+        /*
+         * Uncompressed, the outbox gets views of the cache entry's bytes behind a small buffer with this
+         * reply's request ID, so a hit copies nothing. Compressed frames depend on the whole payload,
+         * which is joined to be deflated; it is still not serialized again.
+         */
+        private void sendCached(CachedResponse response, WireFormat format, Compression.Compressor compressor) {
+            byte[] head;
+            byte[] body;
+            int bodyOffset;
+            if (format == WireFormat.BINARY) {
+                head = response.binaryHeader();
+                body = response.binary()[1];
+                bodyOffset = 0;
+            } else {
+                head = response.jsonHead();
+                body = response.json();
+                bodyOffset = 1;
+            }
+
+            if (compressor == null) {
+                ByteBuffer bodyView = ByteBuffer.wrap(body, bodyOffset, body.length - bodyOffset);
+                long size = head.length + bodyView.remaining();
+                if (format == WireFormat.BINARY) {
+                    metrics.bytesSent(size);
+                    deliver(ByteBuffer.wrap(head), bodyView);
+                } else {
+                    metrics.bytesSent(size + 1);
+                    deliver(ByteBuffer.wrap(head), bodyView, ByteBuffer.wrap(LINE_END));
+                }
+                return;
+            }
+
+            // Compressed frames carry their own length
+            int headOffset = format == WireFormat.BINARY ? 4 : 0;
+            int headLength = head.length - headOffset;
+            byte[] payload = new byte[headLength + body.length - bodyOffset];
+            System.arraycopy(head, headOffset, payload, 0, headLength);
+            System.arraycopy(body, bodyOffset, payload, headLength, body.length - bodyOffset);
+            byte[] bytes = compressor.encodeFrame(payload, 0, payload.length);
+            metrics.bytesSent(bytes.length);
+            deliver(ByteBuffer.wrap(bytes));
+        }
+
+        // The buffers of one message stay together when several threads answer at once
+        private void deliver(ByteBuffer... buffers) {
+            synchronized (outbox) {
+                for (ByteBuffer buffer : buffers) {
+                    outboxBytes.addAndGet(buffer.remaining());
+                    outbox.add(buffer);
+                }
+            }
+            requestUpdate(this);
+        }
+
+        @Override
+        public void sendFrame(byte[] frame, Compression.Compressor compressor) throws IOException {
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            byte[] bytes = compressor == null ? frame : compressor.encodeFrame(frame, 4, frame.length - 4);
+            metrics.bytesSent(bytes.length);
+            deliver(ByteBuffer.wrap(bytes));
+        }
+
+        // Returns false if the client sent a command larger than the protocol allows
+        boolean consume(ByteBuffer buffer) {
+            return session.getInputFormat() == WireFormat.BINARY ? consumeFrames(buffer) : consumeLines(buffer);
+        }
+
+        private boolean consumeFrames(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                if (frame == null) {
+                    if (frameHeader == null) {
+                        frameHeader = new byte[4];
+                    }
+                    frameHeader[frameHeaderLength++] = buffer.get();
+                    if (frameHeaderLength < 4) {
+                        continue;
+                    }
+
+                    int length = ((frameHeader[0] & 0xFF) << 24) | ((frameHeader[1] & 0xFF) << 16)
+                            | ((frameHeader[2] & 0xFF) << 8) | (frameHeader[3] & 0xFF);
+                    frameHeader = null;
+                    frameHeaderLength = 0;
+                    if (length < 0 || length > BinaryCodec.MAX_COMMAND_FRAME) {
+                        return false;
+                    }
+                    frame = new byte[length];
+                    frameLength = 0;
+                    if (length == 0) {
+                        frame = null;
+                        enqueue(new byte[0]);
+                        continue;
+                    }
+                }
+
+                int count = Math.min(buffer.remaining(), frame.length - frameLength);
+                buffer.get(frame, frameLength, count);
+                frameLength += count;
+                if (frameLength == frame.length) {
+                    byte[] payload = frame;
+                    frame = null;
+                    if (BinaryCodec.isStreamFrame(payload)) {
+                        // Credit and stdin must not wait for a worker behind commands, which may be streams
+                        // waiting for that very credit
+                        session.onStreamFrame(payload);
+                    } else {
+                        enqueue(payload);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean consumeLines(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                int end = -1;
+                for (int i = start; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        end = i;
+                        break;
+                    }
+                }
+
+                int length = (end < 0 ? buffer.limit() : end) - start;
+                byte[] chunk = new byte[length];
+                buffer.get(chunk);
+
+                if (end < 0) {
+                    if (partial == null) {
+                        partial = new ByteArrayOutputStream(Math.max(length, 256));
+                    }
+                    partial.write(chunk, 0, length);
+                    return partial.size() <= MAX_LINE_LENGTH;
+                }
+
+                buffer.get(); // skip '\n'
+                if (partial != null) {
+                    partial.write(chunk, 0, length);
+                    chunk = partial.toByteArray();
+                    partial = null;
+                }
+
+                int lineLength = chunk.length;
+                if (lineLength > 0 && chunk[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                if (lineLength > MAX_LINE_LENGTH) {
+                    return false;
+                }
+                enqueue(new String(chunk, 0, lineLength, StandardCharsets.UTF_8));
+            }
+            return true;
+        }
+
+        private void enqueue(Object message) {
+            synchronized (this) {
+                inbox.add(message);
+                if (processing) {
+                    return;
+                }
+                processing = true;
+            }
+
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                rejectPending();
+            }
+        }
+
+        // Runs on a worker: commands of one connection are processed in arrival order
+        private void drain() {
+            while (!closed) {
+                Object message;
+                synchronized (this) {
+                    message = inbox.poll();
+                    if (message == null) {
+                        processing = false;
+                        return;
+                    }
+                }
+
+                try {
+                    boolean keepOpen = message instanceof byte[]
+                            ? session.onFrame((byte[]) message)
+                            : session.onMessage((String) message);
+                    if (!keepOpen) {
+                        closing = true;
+                        synchronized (this) {
+                            inbox.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    closing = true;
+                }
+                requestUpdate(this);
+
+                // A watch or stream answers later: the next command waits for it, but not on a worker
+                CompletableFuture<Void> awaited = session.getAwaitedAnswer();
+                if (awaited != null) {
+                    awaited.whenComplete((ignored, error) -> resumeDrain());
+                    return;
+                }
+            }
+            synchronized (this) {
+                processing = false;
+            }
+        }
+
+        // Still processing: the connection's commands keep their order
+        private void resumeDrain() {
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                rejectPending();
+            }
+        }
+
+        private void rejectPending() {
+            List<Object> rejected;
+            synchronized (this) {
+                rejected = new ArrayList<>(inbox);
+                inbox.clear();
+                processing = false;
+            }
+            try {
+                for (Object message : rejected) {
+                    if (message instanceof byte[]) {
+                        session.rejectFrame((byte[]) message);
+                    } else {
+                        session.rejectMessage((String) message);
+                    }
+                }
+            } catch (IOException e) {
+                closing = true;
+            }
+            requestUpdate(this);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.Response;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Answer of a command that goes on without holding a thread, such as a stats watch or a log stream:
+ * the dispatcher returns at once and the connection sends the result once it completes. The work
+ * behind it stops when the result is cancelled, which the connection does when the client is gone.
+ */
+public class PendingResponse extends Response {
+    private final transient CompletableFuture<Response> result;
+
+    PendingResponse(CompletableFuture<Response> result) {
+        super(true, "Pending", null);
+        this.result = result;
+    }
+
+    public CompletableFuture<Response> getResult() {
+        return result;
+    }
+
+    public void cancel() {
+        result.cancel(false);
+    }
+}
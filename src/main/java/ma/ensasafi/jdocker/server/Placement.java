@@ -0,0 +1,31 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Built-in placement strategies, chosen with --placement
+public enum Placement implements PlacementStrategy {
+    // Fewest running containers; ties go to the first host configured
+    LEAST_LOADED {
+        @Override
+        public Candidate choose(List<Candidate> candidates, String image) {
+            return candidates.stream()
+                    .min(Comparator.comparingInt(Candidate::getRunningContainers))
+                    .orElseThrow();
+        }
+    },
+    // Least loaded of the hosts that already have the image, so creating needs no pull; any host otherwise
+    IMAGE_PRESENT {
+        @Override
+        public Candidate choose(List<Candidate> candidates, String image) {
+            List<Candidate> withImage = new ArrayList<>();
+            for (Candidate candidate : candidates) {
+                if (candidate.getImages().contains(image)) {
+                    withImage.add(candidate);
+                }
+            }
+            return LEAST_LOADED.choose(withImage.isEmpty() ? candidates : withImage, image);
+        }
+    }
+}
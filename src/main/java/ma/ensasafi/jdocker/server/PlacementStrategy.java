@@ -0,0 +1,37 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.List;
+import java.util.Set;
+
+// Chooses the host FederatedEngine creates a new container on
+public interface PlacementStrategy {
+    // candidates holds the reachable hosts only and is never empty; image is normalized like PullCoordinator does
+    Candidate choose(List<Candidate> candidates, String image);
+
+    // What a strategy knows about a host when it places a container
+    final class Candidate {
+        private final String host;
+        private final int runningContainers;
+        private final Set<String> images;
+
+        public Candidate(String host, int runningContainers, Set<String> images) {
+            this.host = host;
+            this.runningContainers = runningContainers;
+            this.images = images;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        // Running at the last listing, plus containers placed on the host since
+        public int getRunningContainers() {
+            return runningContainers;
+        }
+
+        // Normalized references, e.g. docker.io/library/nginx:latest
+        public Set<String> getImages() {
+            return images;
+        }
+    }
+}
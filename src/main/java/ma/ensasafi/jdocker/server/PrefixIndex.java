@@ -0,0 +1,47 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/*
+ * Keys kept in sorted order, so every key starting with a prefix sits in one contiguous run:
+ * a lookup is a logarithmic seek followed by a walk of at most limit entries, however many keys
+ * there are. Updated one key at a time; readers never lock and see each put or remove whole.
+ */
+public class PrefixIndex<V> {
+    private final ConcurrentSkipListMap<String, V> entries = new ConcurrentSkipListMap<>();
+
+    public void put(String key, V value) {
+        entries.put(key, value);
+    }
+
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    public V get(String key) {
+        return entries.get(key);
+    }
+
+    // Values of the first keys starting with prefix, in key order, no more than limit of them
+    public List<V> find(String prefix, int limit) {
+        List<V> found = new ArrayList<>(Math.min(limit, 4));
+        for (Map.Entry<String, V> entry : entries.tailMap(prefix, true).entrySet()) {
+            if (found.size() == limit || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            found.add(entry.getValue());
+        }
+        return found;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
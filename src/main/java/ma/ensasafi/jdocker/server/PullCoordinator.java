@@ -0,0 +1,222 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.command.PullImageResultCallback;
+import com.github.dockerjava.api.model.PullResponseItem;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/*
+ * Runs at most one engine pull per image reference. Concurrent requests for the same
+ * reference attach to the pull in progress, receive its progress items, and get its real
+ * outcome. A semaphore caps how many different images are pulled at once.
+ * The engine pull runs on its own thread, so a requester can stop waiting without
+ * hurting the others; the pull is only aborted once nobody waits for it anymore.
+ */
+public class PullCoordinator {
+    private ContainerEngine engine;
+    private Semaphore permits;
+    private ConcurrentHashMap<String, PullOperation> inFlight;
+    private ExecutorService pullExecutor;
+    // Told the normalized reference of each image pulled
+    private Consumer<String> onPulled;
+
+    public PullCoordinator(ContainerEngine engine, int maxConcurrentPulls, Consumer<String> onPulled) {
+        this.engine = engine;
+        this.permits = new Semaphore(maxConcurrentPulls, true);
+        this.inFlight = new ConcurrentHashMap<>();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.pullExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "image-pull-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.onPulled = onPulled;
+    }
+
+    public String pull(String imageName) {
+        return pull(imageName, null);
+    }
+
+    // Blocks until the image is pulled; progress items go to the listener if one is given.
+    // Interrupting the caller detaches it and throws CancellationException.
+    public String pull(String imageName, Consumer<PullResponseItem> listener) {
+        String reference = normalize(imageName);
+        PullOperation operation = attach(reference, listener);
+
+        try {
+            operation.result.get();
+        } catch (InterruptedException e) {
+            detach(reference, operation, listener);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Pull of " + imageName + " cancelled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("Pull exception: " + cause.getMessage());
+            throw new RuntimeException("Failed to pull image: " + cause.getMessage(), cause);
+        }
+        return "Successfully pulled image: " + imageName;
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    public void close() {
+        pullExecutor.shutdownNow();
+    }
+
+    private PullOperation attach(String reference, Consumer<PullResponseItem> listener) {
+        PullOperation[] created = new PullOperation[1];
+        PullOperation operation = inFlight.compute(reference, (key, existing) -> {
+            PullOperation current = existing;
+            if (current == null || current.cancelled) {
+                current = new PullOperation();
+                created[0] = current;
+            } else {
+                System.out.println("Joining pull in progress: " + reference);
+            }
+            current.waiters++;
+            if (listener != null) {
+                current.listeners.add(listener);
+            }
+            return current;
+        });
+
+        if (created[0] != null) {
+            pullExecutor.execute(() -> run(reference, created[0]));
+        }
+        return operation;
+    }
+
+    private void detach(String reference, PullOperation operation, Consumer<PullResponseItem> listener) {
+        if (listener != null) {
+            operation.listeners.remove(listener);
+        }
+        inFlight.computeIfPresent(reference, (key, current) -> {
+            if (current != operation) {
+                return current;
+            }
+            current.waiters--;
+            if (current.waiters > 0) {
+                return current;
+            }
+            current.cancel();
+            return null;
+        });
+    }
+
+    private void run(String reference, PullOperation operation) {
+        try {
+            permits.acquire();
+            try {
+                if (!operation.cancelled) {
+                    execute(reference, operation);
+                }
+            } finally {
+                permits.release();
+            }
+
+            if (operation.cancelled) {
+                operation.result.completeExceptionally(new CancellationException("Pull cancelled"));
+            } else {
+                operation.result.complete(null);
+                if (onPulled != null) {
+                    onPulled.accept(reference);
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            operation.result.completeExceptionally(e);
+        } finally {
+            inFlight.remove(reference, operation);
+        }
+    }
+
+    private void execute(String reference, PullOperation operation) throws InterruptedException {
+        System.out.println("Pulling image: " + reference);
+
+        PullImageResultCallback callback = new PullImageResultCallback() {
+            @Override
+            public void onNext(PullResponseItem item) {
+                if (item.getStatus() != null) {
+                    System.out.println("  " + item.getStatus() +
+                            (item.getProgress() != null ? " " + item.getProgress() : ""));
+                }
+                for (Consumer<PullResponseItem> listener : operation.listeners) {
+                    try {
+                        listener.accept(item);
+                    } catch (Exception e) {
+                        // A broken listener must not abort the pull for everyone else
+                        operation.listeners.remove(listener);
+                    }
+                }
+                super.onNext(item);
+            }
+        };
+        operation.callback = callback;
+
+        engine.pullImage(reference, callback);
+
+        // cancel() may have run before the callback was registered
+        if (operation.cancelled) {
+            operation.cancel();
+        }
+        callback.awaitCompletion();
+    }
+
+    // nginx, library/nginx:latest and docker.io/library/nginx:latest are the same pull
+    static String normalize(String imageName) {
+        String reference = imageName.trim();
+        if (reference.startsWith("docker.io/")) {
+            reference = reference.substring("docker.io/".length());
+        } else if (reference.startsWith("index.docker.io/")) {
+            reference = reference.substring("index.docker.io/".length());
+        }
+
+        int slash = reference.indexOf('/');
+        String firstPart = slash < 0 ? "" : reference.substring(0, slash);
+        boolean hasRegistry = firstPart.contains(".") || firstPart.contains(":") || firstPart.equals("localhost");
+        if (slash < 0) {
+            reference = "library/" + reference;
+        }
+
+        if (reference.indexOf('@') < 0 && reference.lastIndexOf(':') <= reference.lastIndexOf('/')) {
+            reference = reference + ":latest";
+        }
+        return hasRegistry ? reference : "docker.io/" + reference;
+    }
+
+    private static class PullOperation {
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final List<Consumer<PullResponseItem>> listeners = new CopyOnWriteArrayList<>();
+        // Guarded by the inFlight map entry
+        private int waiters;
+        private volatile boolean cancelled;
+        private volatile PullImageResultCallback callback;
+
+        void cancel() {
+            cancelled = true;
+            PullImageResultCallback current = callback;
+            if (current != null) {
+                try {
+                    // Closing the response stream makes the daemon abort the pull
+                    current.close();
+                } catch (Exception e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
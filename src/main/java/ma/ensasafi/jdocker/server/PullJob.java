@@ -0,0 +1,186 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.ResponseItem;
+import ma.ensasafi.jdocker.protocol.PullProgress;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+public class PullJob {
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+
+    private String id;
+    private String image;
+    private volatile State state;
+    private String status;
+    private String error;
+    private Map<String, Layer> layers;
+    // Progress items only mark the job dirty; PullJobManager publishes at a fixed pace
+    private volatile boolean dirty;
+    private volatile long finishedAt;
+    private volatile Future<?> task;
+    private List<Consumer<PullProgress>> subscribers;
+    private CompletableFuture<PullProgress> done;
+
+    public PullJob(String id, String image) {
+        this.id = id;
+        this.image = image;
+        this.state = State.RUNNING;
+        this.status = "Waiting";
+        this.layers = new LinkedHashMap<>();
+        this.subscribers = new CopyOnWriteArrayList<>();
+        this.done = new CompletableFuture<>();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    void setTask(Future<?> task) {
+        this.task = task;
+    }
+
+    public boolean cancel() {
+        Future<?> current = task;
+        if (state != State.RUNNING || current == null) {
+            return false;
+        }
+        // Interrupting the job thread detaches it from the daemon pull; a job that has
+        // not started yet never runs, so the state is settled here in both cases
+        if (current.cancel(true)) {
+            finish(State.CANCELLED, "Cancelled by client");
+        }
+        return true;
+    }
+
+    public void subscribe(Consumer<PullProgress> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Consumer<PullProgress> subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    // Blocks until the job ends and returns its last snapshot
+    public PullProgress await() throws InterruptedException {
+        try {
+            return done.get();
+        } catch (ExecutionException e) {
+            return snapshot();
+        }
+    }
+
+    synchronized void onItem(PullResponseItem item) {
+        if (item.getStatus() != null) {
+            status = item.getStatus();
+        }
+        if (item.getId() != null && item.getStatus() != null && !item.getStatus().startsWith("Pulling from")) {
+            Layer layer = layers.computeIfAbsent(item.getId(), key -> new Layer());
+            layer.status = item.getStatus();
+
+            ResponseItem.ProgressDetail detail = item.getProgressDetail();
+            if (detail != null && detail.getTotal() != null && detail.getTotal() > 0) {
+                // Download and extraction both report bytes; keep the download figures
+                if (item.getStatus().startsWith("Downloading")) {
+                    layer.total = detail.getTotal();
+                    layer.current = detail.getCurrent() != null ? detail.getCurrent() : layer.current;
+                }
+            }
+            if ("Download complete".equals(item.getStatus()) || "Pull complete".equals(item.getStatus())
+                    || "Already exists".equals(item.getStatus())) {
+                layer.current = layer.total;
+                layer.done = "Pull complete".equals(item.getStatus()) || "Already exists".equals(item.getStatus());
+            }
+        }
+        dirty = true;
+    }
+
+    void publishIfDirty() {
+        if (!dirty || subscribers.isEmpty()) {
+            return;
+        }
+        dirty = false;
+        PullProgress progress = snapshot();
+        for (Consumer<PullProgress> subscriber : subscribers) {
+            try {
+                subscriber.accept(progress);
+            } catch (Exception e) {
+                subscribers.remove(subscriber);
+            }
+        }
+    }
+
+    void finish(State finalState, String failure) {
+        synchronized (this) {
+            if (state != State.RUNNING) {
+                return;
+            }
+            state = finalState;
+            error = failure;
+            status = finalState == State.COMPLETED ? "Pull complete" : status;
+            finishedAt = System.currentTimeMillis();
+        }
+        subscribers.clear();
+        done.complete(snapshot());
+    }
+
+    public synchronized PullProgress snapshot() {
+        PullProgress progress = new PullProgress();
+        progress.setJobId(id);
+        progress.setImage(image);
+        progress.setState(state.name());
+        progress.setStatus(status);
+        progress.setError(error);
+
+        long current = 0;
+        long total = 0;
+        int layersDone = 0;
+        List<PullProgress.LayerProgress> details = new ArrayList<>(layers.size());
+        for (Map.Entry<String, Layer> entry : layers.entrySet()) {
+            Layer layer = entry.getValue();
+            current += layer.current;
+            total += layer.total;
+            if (layer.done) {
+                layersDone++;
+            }
+            details.add(new PullProgress.LayerProgress(entry.getKey(), layer.status, layer.current, layer.total));
+        }
+        progress.setCurrentBytes(current);
+        progress.setTotalBytes(total);
+        progress.setLayersDone(layersDone);
+        progress.setLayers(details);
+        return progress;
+    }
+
+    private static class Layer {
+        private String status;
+        private long current;
+        private long total;
+        private boolean done;
+    }
+}
@@ -0,0 +1,103 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.PullProgress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Turns pulls into jobs that can be watched, polled and cancelled independently of any connection
+public class PullJobManager {
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final long FINISHED_JOB_RETENTION_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private PullCoordinator coordinator;
+    private ExecutorService jobExecutor;
+    private ScheduledExecutorService ticker;
+    private Map<String, PullJob> jobs;
+    private AtomicLong jobCounter;
+
+    public PullJobManager(PullCoordinator coordinator) {
+        this.coordinator = coordinator;
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.jobExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "pull-job-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pull-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobs = new ConcurrentHashMap<>();
+        this.jobCounter = new AtomicLong(0);
+
+        // Coalesces progress: subscribers see at most one snapshot per interval, whatever the item rate
+        this.ticker.scheduleAtFixedRate(this::tick, PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public PullJob submit(String image) {
+        PullJob job = new PullJob("pull-" + jobCounter.incrementAndGet(), image);
+        jobs.put(job.getId(), job);
+        job.setTask(jobExecutor.submit(() -> run(job)));
+        return job;
+    }
+
+    public PullJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    public List<PullProgress> list() {
+        List<PullProgress> snapshots = new ArrayList<>();
+        for (PullJob job : jobs.values()) {
+            snapshots.add(job.snapshot());
+        }
+        snapshots.sort((a, b) -> Long.compare(sequence(a.getJobId()), sequence(b.getJobId())));
+        return snapshots;
+    }
+
+    public boolean cancel(String jobId) {
+        PullJob job = jobs.get(jobId);
+        return job != null && job.cancel();
+    }
+
+    public void close() {
+        ticker.shutdownNow();
+        jobExecutor.shutdownNow();
+    }
+
+    private void run(PullJob job) {
+        try {
+            coordinator.pull(job.getImage(), job::onItem);
+            job.finish(PullJob.State.COMPLETED, null);
+        } catch (CancellationException e) {
+            job.finish(PullJob.State.CANCELLED, "Cancelled by client");
+        } catch (Exception e) {
+            job.finish(PullJob.State.FAILED, e.getMessage());
+        }
+    }
+
+    private void tick() {
+        long expiry = System.currentTimeMillis() - FINISHED_JOB_RETENTION_MS;
+        for (PullJob job : jobs.values()) {
+            if (job.getState() == PullJob.State.RUNNING) {
+                job.publishIfDirty();
+            } else if (job.getFinishedAt() < expiry) {
+                jobs.remove(job.getId());
+            }
+        }
+    }
+
+    private static long sequence(String jobId) {
+        return Long.parseLong(jobId.substring(jobId.indexOf('-') + 1));
+    }
+}
@@ -0,0 +1,142 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Lets identical reads share one engine call. The first caller for a key runs the call on its own
+ * thread; callers with the same key arriving meanwhile wait for it and get the same result or the
+ * same error. With a window, a successful result keeps answering the key for that many milliseconds.
+ *
+ * invalidate() is called after every change the server makes, so a read that arrives after a change
+ * never joins a call started before it, nor gets a result read before it. Results are shared between
+ * callers and must not be modified.
+ */
+public class ReadCoalescer {
+    // Past this many keys, finished entries are dropped when a new key comes in
+    private static final int MAX_KEYS = 4096;
+    private static final Gson KEY_FORMAT = new GsonBuilder().serializeNulls().create();
+
+    private final long windowNanos;
+    private final ConcurrentHashMap<String, Call> calls;
+    private final AtomicLong generation;
+    private final LongAdder executed;
+    private final LongAdder shared;
+
+    public ReadCoalescer(long windowMillis) {
+        this.windowNanos = Math.max(0, windowMillis) * 1_000_000L;
+        this.calls = new ConcurrentHashMap<>();
+        this.generation = new AtomicLong();
+        this.executed = new LongAdder();
+        this.shared = new LongAdder();
+    }
+
+    // Unambiguous key of an operation and its normalized parameters, nulls included
+    public static String key(String operation, Object... parameters) {
+        return operation + KEY_FORMAT.toJson(parameters);
+    }
+
+    // key names the operation and its normalized parameters, see key()
+    @SuppressWarnings("unchecked")
+    public <T> T read(String key, Supplier<T> loader) {
+        while (true) {
+            Call call = calls.get(key);
+            if (call != null && !call.isExpired(System.nanoTime())) {
+                shared.increment();
+                return (T) call.await();
+            }
+
+            Call created = new Call(generation.get());
+            boolean won = call == null ? calls.putIfAbsent(key, created) == null : calls.replace(key, call, created);
+            if (!won) {
+                // Another caller started the call first: join it
+                continue;
+            }
+            if (call == null && calls.size() > MAX_KEYS) {
+                long now = System.nanoTime();
+                calls.values().removeIf(other -> other.isExpired(now));
+            }
+            return run(key, created, loader);
+        }
+    }
+
+    private <T> T run(String key, Call call, Supplier<T> loader) {
+        executed.increment();
+        T result;
+        try {
+            result = loader.get();
+        } catch (RuntimeException | Error e) {
+            // Errors are shared with the callers already waiting, never kept
+            calls.remove(key, call);
+            call.result.completeExceptionally(e);
+            throw e;
+        }
+
+        if (windowNanos == 0 || call.generation != generation.get()) {
+            calls.remove(key, call);
+        } else {
+            call.expiresAt = System.nanoTime() + windowNanos;
+            call.kept = true;
+        }
+        call.result.complete(result);
+        return result;
+    }
+
+    // Something changed: later reads go to the engine again
+    public void invalidate() {
+        generation.incrementAndGet();
+        calls.clear();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("windowMs", windowNanos / 1_000_000);
+        snapshot.put("engineCalls", executed.sum());
+        snapshot.put("shared", shared.sum());
+        snapshot.put("keys", calls.size());
+        return snapshot;
+    }
+
+    private static final class Call {
+        private final long generation;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        // Set once the result is in and may be reused; until then the call is in flight
+        private volatile long expiresAt;
+        private volatile boolean kept;
+
+        Call(long generation) {
+            this.generation = generation;
+        }
+
+        boolean isExpired(long now) {
+            return result.isDone() && (!kept || now - expiresAt >= 0);
+        }
+
+        Object await() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a shared read");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
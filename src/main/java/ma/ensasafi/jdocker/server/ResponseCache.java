@@ -0,0 +1,141 @@
+package ma.ensasafi.jdocker.server;
+
+import com.google.gson.Gson;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.Command;
+import ma.ensasafi.jdocker.protocol.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Encoded bytes of popular read responses, shared by every connection that asks the same thing.
+ * An entry is keyed by the command and its parameters and is only valid at the inventory version it
+ * was built from; any change bumps the version, so stale entries are never served and are replaced
+ * on the next miss. Encodings are produced the first time a connection needs them, JSON or binary,
+ * without the request ID, which connections write themselves around the cached bytes.
+ * The cache is an LRU bounded by the size of those encodings.
+ */
+public class ResponseCache {
+    private final long maxBytes;
+    private final Gson gson;
+    // Access order: the eldest entry is the least recently served
+    private final LinkedHashMap<String, Entry> entries;
+    private long bytes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.gson = new Gson();
+        this.entries = new LinkedHashMap<>(64, 0.75f, true);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    // The command without its request ID, parameters in a stable order
+    public static String key(Command command) {
+        Map<String, String> parameters = command.getParameters();
+        return ReadCoalescer.key(String.valueOf(command.getType()),
+                parameters != null ? new TreeMap<>(parameters) : null);
+    }
+
+    // A fresh response carrying the cached encodings, or null when nothing was cached at this version
+    public CachedResponse get(String key, long version) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry == null || entry.version != version) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return new CachedResponse(entry);
+    }
+
+    // Caches a successful response built at version and returns it ready to send
+    public CachedResponse put(String key, long version, Response response) {
+        Entry entry = new Entry(key, version, response);
+        synchronized (this) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.size;
+            }
+        }
+        return new CachedResponse(entry);
+    }
+
+    // An entry got an encoding: count it, then drop least recently served entries past the budget
+    private synchronized void grown(Entry entry, int size) {
+        if (entries.get(entry.key) != entry) {
+            // Replaced or evicted meanwhile; the connection still uses the bytes once
+            return;
+        }
+        entry.size += size;
+        bytes += size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.size;
+            evictions.increment();
+        }
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("entries", entries.size());
+        snapshot.put("bytes", bytes);
+        snapshot.put("maxBytes", maxBytes);
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("evictions", evictions.sum());
+        return snapshot;
+    }
+
+    final class Entry {
+        private final String key;
+        private final long version;
+        private final Response response;
+        // Guarded by the cache
+        private long size;
+        // Guarded by this entry
+        private byte[] json;
+        private byte[][] binary;
+
+        Entry(String key, long version, Response response) {
+            this.key = key;
+            this.version = version;
+            this.response = response;
+        }
+
+        Response getResponse() {
+            return response;
+        }
+
+        // The JSON document without requestId, starting with '{' and without a line break
+        synchronized byte[] json() {
+            if (json == null) {
+                json = gson.toJson(response, Response.class).getBytes(StandardCharsets.UTF_8);
+                grown(this, json.length);
+            }
+            return json;
+        }
+
+        // Head and tail of the binary payload, see BinaryCodec.encodeResponseParts
+        synchronized byte[][] binary() {
+            if (binary == null) {
+                binary = BinaryCodec.encodeResponseParts(response);
+                grown(this, binary[0].length + binary[1].length);
+            }
+            return binary;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.Compression;
+import ma.ensasafi.jdocker.protocol.Response;
+import ma.ensasafi.jdocker.protocol.WireFormat;
+
+import java.io.IOException;
+
+public interface ResponseSink {
+    // compressor is null unless the connection negotiated compression
+    void send(Response response, WireFormat format, Compression.Compressor compressor) throws IOException;
+
+    // An encoded binary frame such as a stream frame, enveloped like responses when compressing
+    default void sendFrame(byte[] frame, Compression.Compressor compressor) throws IOException {
+        throw new IOException("This connection cannot carry streams");
+    }
+}
@@ -0,0 +1,488 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.Compression;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ServerConfig {
+    public static final int DEFAULT_PORT = 9999;
+    public static final String DEFAULT_DOCKER_HOST = "unix:///var/run/docker.sock";
+
+    private int port = DEFAULT_PORT;
+    private Path unixSocket;
+    private String dockerHost = DEFAULT_DOCKER_HOST;
+    private ConnectionEngineType engine = ConnectionEngineType.THREAD;
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 8;
+    private int workerQueueSize = 10_000;
+    private boolean inventoryEnabled = true;
+    private boolean statsEnabled = true;
+    private boolean coalescingEnabled = true;
+    private long coalesceWindowMillis;
+    private long responseCacheBytes = 32L * 1024 * 1024;
+    private int maxConcurrentPulls = 4;
+    private int maxBulkConcurrency = 32;
+    private ContainerEngineType containerEngine = ContainerEngineType.DOCKER;
+    private SimulationProfile simulation = new SimulationProfile();
+    private int metricsPort;
+    private int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+    private final Map<AdmissionController.Lane, Integer> laneLimits = defaultLaneLimits();
+    private long admissionWaitMillis = 50;
+    private double clientRate;
+    private double clientBurst;
+    private Map<String, String> hosts = new LinkedHashMap<>();
+    private long hostTimeoutMillis = 2000;
+    private PlacementStrategy placement = Placement.IMAGE_PRESENT;
+    private Map<String, Integer> warmPool = new LinkedHashMap<>();
+    private boolean warmPoolPaused;
+    private double warmPoolRate = 2;
+    private long warmPoolMaxAgeSeconds = 600;
+
+    public ServerConfig() {}
+
+    public ServerConfig(int port) {
+        this.port = port;
+    }
+
+    // Reads are cheap and many; a bulk command already fans out to --bulk-concurrency engine calls
+    private static Map<AdmissionController.Lane, Integer> defaultLaneLimits() {
+        Map<AdmissionController.Lane, Integer> limits = new EnumMap<>(AdmissionController.Lane.class);
+        limits.put(AdmissionController.Lane.READ, 256);
+        limits.put(AdmissionController.Lane.MUTATE, 16);
+        limits.put(AdmissionController.Lane.BULK, 2);
+        limits.put(AdmissionController.Lane.PULL, 32);
+        limits.put(AdmissionController.Lane.STREAM, 64);
+        return limits;
+    }
+
+    // Accepts the legacy positional port plus --key=value options
+    public static ServerConfig fromArgs(String[] args) {
+        ServerConfig config = new ServerConfig();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                try {
+                    config.port = Integer.parseInt(arg);
+                } catch (NumberFormatException e) {
+                    System.err.println("Invalid port number. Using default: " + DEFAULT_PORT);
+                }
+                continue;
+            }
+
+            int eq = arg.indexOf('=');
+            String key = eq > 0 ? arg.substring(2, eq) : arg.substring(2);
+            String value = eq > 0 ? arg.substring(eq + 1) : "true";
+
+            try {
+                switch (key) {
+                    case "port":
+                        config.port = Integer.parseInt(value);
+                        break;
+                    case "unix-socket":
+                        config.unixSocket = value.isEmpty() ? null : Paths.get(value);
+                        break;
+                    case "docker-host":
+                        config.dockerHost = value;
+                        break;
+                    case "engine":
+                        config.engine = ConnectionEngineType.valueOf(value.toUpperCase());
+                        break;
+                    case "workers":
+                        config.workerThreads = Integer.parseInt(value);
+                        break;
+                    case "worker-queue":
+                        config.workerQueueSize = Integer.parseInt(value);
+                        break;
+                    case "inventory":
+                        config.inventoryEnabled = Boolean.parseBoolean(value);
+                        break;
+                    case "stats":
+                        config.statsEnabled = Boolean.parseBoolean(value);
+                        break;
+                    case "coalesce":
+                        config.coalescingEnabled = Boolean.parseBoolean(value);
+                        break;
+                    case "coalesce-window":
+                        config.coalesceWindowMillis = Long.parseLong(value);
+                        break;
+                    case "response-cache":
+                        config.responseCacheBytes = Long.parseLong(value);
+                        break;
+                    case "max-pulls":
+                        config.maxConcurrentPulls = Integer.parseInt(value);
+                        break;
+                    case "bulk-concurrency":
+                        config.maxBulkConcurrency = Integer.parseInt(value);
+                        break;
+                    case "container-engine":
+                        config.containerEngine = ContainerEngineType.valueOf(value.toUpperCase());
+                        break;
+                    case "sim-containers":
+                        config.simulation.setContainers(Integer.parseInt(value));
+                        break;
+                    case "sim-images":
+                        config.simulation.setImages(Integer.parseInt(value));
+                        break;
+                    case "sim-latency":
+                        config.simulation.setLatency(value);
+                        break;
+                    case "sim-jitter":
+                        config.simulation.setJitter(value);
+                        break;
+                    case "sim-failure-rate":
+                        config.simulation.setFailureRate(value);
+                        break;
+                    case "sim-seed":
+                        config.simulation.setSeed(Long.parseLong(value));
+                        break;
+                    case "metrics-port":
+                        config.metricsPort = Integer.parseInt(value);
+                        break;
+                    case "compression-threshold":
+                        config.compressionThreshold = Integer.parseInt(value);
+                        break;
+                    case "lane-limits":
+                        config.setLaneLimits(value);
+                        break;
+                    case "admission-wait":
+                        config.admissionWaitMillis = Long.parseLong(value);
+                        break;
+                    case "client-rate":
+                        config.clientRate = Double.parseDouble(value);
+                        break;
+                    case "client-burst":
+                        config.clientBurst = Double.parseDouble(value);
+                        break;
+                    case "hosts":
+                        config.setHosts(value);
+                        break;
+                    case "host-timeout":
+                        config.hostTimeoutMillis = Long.parseLong(value);
+                        break;
+                    case "placement":
+                        config.placement = Placement.valueOf(value.toUpperCase().replace('-', '_'));
+                        break;
+                    case "warm-pool":
+                        config.setWarmPool(value);
+                        break;
+                    case "warm-pool-paused":
+                        config.warmPoolPaused = Boolean.parseBoolean(value);
+                        break;
+                    case "warm-pool-rate":
+                        config.warmPoolRate = Double.parseDouble(value);
+                        break;
+                    case "warm-pool-max-age":
+                        config.warmPoolMaxAgeSeconds = Long.parseLong(value);
+                        break;
+                    default:
+                        System.err.println("Unknown option ignored: " + arg);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid value for --" + key + ": " + value);
+            }
+        }
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    // 0 leaves TCP off, for a server only reachable through its Unix domain socket
+    public boolean isTcpEnabled() {
+        return port > 0;
+    }
+
+    // Path of a Unix domain socket accepting clients next to the TCP port, null for none
+    public Path getUnixSocket() {
+        return unixSocket;
+    }
+
+    public void setUnixSocket(Path unixSocket) {
+        this.unixSocket = unixSocket;
+    }
+
+    // Endpoint of the daemon when --hosts names none: its local socket, or "tcp://localhost:2375"
+    public String getDockerHost() {
+        return dockerHost;
+    }
+
+    public void setDockerHost(String dockerHost) {
+        this.dockerHost = dockerHost;
+    }
+
+    public ConnectionEngineType getEngine() {
+        return engine;
+    }
+
+    public void setEngine(ConnectionEngineType engine) {
+        this.engine = engine;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    public void setWorkerQueueSize(int workerQueueSize) {
+        this.workerQueueSize = workerQueueSize;
+    }
+
+    public boolean isInventoryEnabled() {
+        return inventoryEnabled;
+    }
+
+    public void setInventoryEnabled(boolean inventoryEnabled) {
+        this.inventoryEnabled = inventoryEnabled;
+    }
+
+    public boolean isStatsEnabled() {
+        return statsEnabled;
+    }
+
+    public void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    public boolean isCoalescingEnabled() {
+        return coalescingEnabled;
+    }
+
+    public void setCoalescingEnabled(boolean coalescingEnabled) {
+        this.coalescingEnabled = coalescingEnabled;
+    }
+
+    // How long a shared read keeps answering identical reads once done; 0 shares in-flight calls only
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    public void setCoalesceWindowMillis(long coalesceWindowMillis) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+    }
+
+    // Budget of encoded responses kept for reuse; 0 turns the cache off
+    public long getResponseCacheBytes() {
+        return responseCacheBytes;
+    }
+
+    public void setResponseCacheBytes(long responseCacheBytes) {
+        this.responseCacheBytes = responseCacheBytes;
+    }
+
+    public int getMaxConcurrentPulls() {
+        return maxConcurrentPulls;
+    }
+
+    public void setMaxConcurrentPulls(int maxConcurrentPulls) {
+        this.maxConcurrentPulls = maxConcurrentPulls;
+    }
+
+    public int getMaxBulkConcurrency() {
+        return maxBulkConcurrency;
+    }
+
+    public void setMaxBulkConcurrency(int maxBulkConcurrency) {
+        this.maxBulkConcurrency = maxBulkConcurrency;
+    }
+
+    public ContainerEngineType getContainerEngine() {
+        return containerEngine;
+    }
+
+    public void setContainerEngine(ContainerEngineType containerEngine) {
+        this.containerEngine = containerEngine;
+    }
+
+    public SimulationProfile getSimulation() {
+        return simulation;
+    }
+
+    public void setSimulation(SimulationProfile simulation) {
+        this.simulation = simulation;
+    }
+
+    // 0 keeps the Prometheus endpoint off
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    // Responses of at least this many bytes are compressed on connections that asked for it
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getLaneLimit(AdmissionController.Lane lane) {
+        return laneLimits.get(lane);
+    }
+
+    public void setLaneLimit(AdmissionController.Lane lane, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Lane limit must be positive: " + limit);
+        }
+        laneLimits.put(lane, limit);
+    }
+
+    // "read=512,mutate=8"; parses everything before touching the limits, so a bad spec changes none
+    public void setLaneLimits(String spec) {
+        Map<AdmissionController.Lane, Integer> limits = new EnumMap<>(AdmissionController.Lane.class);
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected lane=limit: " + entry);
+            }
+            int limit = Integer.parseInt(entry.substring(eq + 1).trim());
+            if (limit < 1) {
+                throw new IllegalArgumentException("Lane limit must be positive: " + entry);
+            }
+            limits.put(AdmissionController.Lane.valueOf(entry.substring(0, eq).trim().toUpperCase()), limit);
+        }
+        laneLimits.putAll(limits);
+    }
+
+    // How long a command may wait for a slot in its lane before it is answered busy
+    public long getAdmissionWaitMillis() {
+        return admissionWaitMillis;
+    }
+
+    public void setAdmissionWaitMillis(long admissionWaitMillis) {
+        this.admissionWaitMillis = admissionWaitMillis;
+    }
+
+    // Commands per second allowed to each client address; 0 turns rate limiting off
+    public double getClientRate() {
+        return clientRate;
+    }
+
+    public void setClientRate(double clientRate) {
+        this.clientRate = clientRate;
+    }
+
+    // Commands a client may send at once above its rate; 0 means one second's worth
+    public double getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(double clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    // Name to daemon endpoint ("tcp://10.0.0.2:2375", or "simulated"); two or more make a federation
+    public Map<String, String> getHosts() {
+        return hosts;
+    }
+
+    // "node1=tcp://10.0.0.1:2375,node2=tcp://10.0.0.2:2375"; parses everything before replacing the hosts
+    public void setHosts(String spec) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int eq = entry.indexOf('=');
+            String name = eq > 0 ? entry.substring(0, eq).trim() : "";
+            if (name.isEmpty() || name.indexOf('/') >= 0 || eq == entry.length() - 1) {
+                throw new IllegalArgumentException("Expected name=endpoint, name without '/': " + entry);
+            }
+            parsed.put(name, entry.substring(eq + 1).trim());
+        }
+        hosts = parsed;
+    }
+
+    // How long a listing waits for each host before answering without it
+    public long getHostTimeoutMillis() {
+        return hostTimeoutMillis;
+    }
+
+    public void setHostTimeoutMillis(long hostTimeoutMillis) {
+        this.hostTimeoutMillis = hostTimeoutMillis;
+    }
+
+    public PlacementStrategy getPlacement() {
+        return placement;
+    }
+
+    public void setPlacement(PlacementStrategy placement) {
+        this.placement = placement;
+    }
+
+    // Image to number of containers kept created ahead of CREATE; empty for no warm pool
+    public Map<String, Integer> getWarmPool() {
+        return warmPool;
+    }
+
+    // "nginx:latest=4,redis:7=2"; parses everything before replacing the pools
+    public void setWarmPool(String spec) {
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected image=size: " + entry);
+            }
+            int size = Integer.parseInt(entry.substring(eq + 1).trim());
+            if (size < 1) {
+                throw new IllegalArgumentException("Pool size must be positive: " + entry);
+            }
+            parsed.put(entry.substring(0, eq).trim(), size);
+        }
+        warmPool = parsed;
+    }
+
+    // Pooled containers are also started then paused, so START only has to unpause them
+    public boolean isWarmPoolPaused() {
+        return warmPoolPaused;
+    }
+
+    public void setWarmPoolPaused(boolean warmPoolPaused) {
+        this.warmPoolPaused = warmPoolPaused;
+    }
+
+    // Pooled containers created per second at most, all pools together
+    public double getWarmPoolRate() {
+        return warmPoolRate;
+    }
+
+    public void setWarmPoolRate(double warmPoolRate) {
+        this.warmPoolRate = warmPoolRate;
+    }
+
+    // A pooled container older than this is replaced rather than handed out
+    public long getWarmPoolMaxAgeSeconds() {
+        return warmPoolMaxAgeSeconds;
+    }
+
+    public void setWarmPoolMaxAgeSeconds(long warmPoolMaxAgeSeconds) {
+        this.warmPoolMaxAgeSeconds = warmPoolMaxAgeSeconds;
+    }
+}
@@ -0,0 +1,268 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.CommandType;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Counters and latency histograms for the whole server, readable through STATS and /metrics.
+ * Everything on the recording path is a LongAdder, so connections never contend on a lock.
+ * Command latency is split in two: time spent in engine calls made by the dispatching thread,
+ * and the rest (parsing, dispatch, inventory reads, waiting). Work handed to other threads,
+ * such as pull jobs and bulk workers, only shows in the per-operation engine figures.
+ */
+public class ServerMetrics {
+    // Engine time accumulated by the current thread, read before and after each command
+    private static final ThreadLocal<long[]> ENGINE_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+    private long startedAt;
+    private Map<CommandType, CommandMetrics> commands;
+    private Map<String, OperationMetrics> operations;
+    private LongAdder activeConnections;
+    private LongAdder totalConnections;
+    private LongAdder bytesReceived;
+    private LongAdder bytesSent;
+
+    public ServerMetrics() {
+        this.startedAt = System.currentTimeMillis();
+        // Filled once here and only read afterwards, so the EnumMap needs no synchronization
+        this.commands = new EnumMap<>(CommandType.class);
+        for (CommandType type : CommandType.values()) {
+            commands.put(type, new CommandMetrics());
+        }
+        this.operations = new ConcurrentHashMap<>();
+        this.activeConnections = new LongAdder();
+        this.totalConnections = new LongAdder();
+        this.bytesReceived = new LongAdder();
+        this.bytesSent = new LongAdder();
+    }
+
+    public long engineNanosOnThisThread() {
+        return ENGINE_NANOS.get()[0];
+    }
+
+    public void commandStarted(CommandType type) {
+        commands.get(type).inFlight.increment();
+    }
+
+    public void commandFinished(CommandType type, long totalNanos, long engineNanos, boolean success) {
+        CommandMetrics metrics = commands.get(type);
+        metrics.inFlight.decrement();
+        metrics.requests.increment();
+        if (!success) {
+            metrics.errors.increment();
+        }
+        metrics.serverTime.recordNanos(totalNanos - engineNanos);
+        metrics.engineTime.recordNanos(engineNanos);
+    }
+
+    // Turned away by admission control without being dispatched
+    public void commandRejected(CommandType type) {
+        commands.get(type).rejected.increment();
+    }
+
+    public void engineCall(String operation, long nanos, boolean success) {
+        ENGINE_NANOS.get()[0] += nanos;
+
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = operations.computeIfAbsent(operation, key -> new OperationMetrics());
+        }
+        metrics.calls.increment();
+        if (!success) {
+            metrics.errors.increment();
+        }
+        metrics.latency.recordNanos(nanos);
+    }
+
+    public void connectionOpened() {
+        activeConnections.increment();
+        totalConnections.increment();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void bytesReceived(long count) {
+        bytesReceived.add(count);
+    }
+
+    public void bytesSent(long count) {
+        bytesSent.add(count);
+    }
+
+    // Shape of the STATS reply; percentiles are bucket upper bounds in milliseconds
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("uptimeSeconds", (System.currentTimeMillis() - startedAt) / 1000);
+        stats.put("activeConnections", activeConnections.sum());
+        stats.put("totalConnections", totalConnections.sum());
+        stats.put("bytesReceived", bytesReceived.sum());
+        stats.put("bytesSent", bytesSent.sum());
+
+        Map<String, Object> commandStats = new LinkedHashMap<>();
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            CommandMetrics metrics = entry.getValue();
+            long inFlight = metrics.inFlight.sum();
+            long rejected = metrics.rejected.sum();
+            if (metrics.requests.sum() == 0 && inFlight == 0 && rejected == 0) {
+                continue;
+            }
+
+            Map<String, Object> command = new LinkedHashMap<>();
+            command.put("count", metrics.requests.sum());
+            command.put("errors", metrics.errors.sum());
+            command.put("inFlight", inFlight);
+            command.put("rejected", rejected);
+            command.put("serverP50Ms", percentileMillis(metrics.serverTime, 50));
+            command.put("serverP99Ms", percentileMillis(metrics.serverTime, 99));
+            command.put("engineP50Ms", percentileMillis(metrics.engineTime, 50));
+            command.put("engineP99Ms", percentileMillis(metrics.engineTime, 99));
+            commandStats.put(entry.getKey().name(), command);
+        }
+        stats.put("commands", commandStats);
+
+        Map<String, Object> operationStats = new LinkedHashMap<>();
+        for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+            OperationMetrics metrics = entry.getValue();
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("count", metrics.calls.sum());
+            operation.put("errors", metrics.errors.sum());
+            operation.put("p50Ms", percentileMillis(metrics.latency, 50));
+            operation.put("p99Ms", percentileMillis(metrics.latency, 99));
+            operationStats.put(entry.getKey(), operation);
+        }
+        stats.put("engine", operationStats);
+        return stats;
+    }
+
+    // Prometheus text exposition format, version 0.0.4
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+
+        gauge(out, "jdocker_uptime_seconds", "Seconds since the server started",
+                (System.currentTimeMillis() - startedAt) / 1000);
+        gauge(out, "jdocker_connections_active", "Open client connections", activeConnections.sum());
+        counter(out, "jdocker_connections_total", "Client connections accepted", totalConnections.sum());
+        counter(out, "jdocker_bytes_received_total", "Bytes read from clients", bytesReceived.sum());
+        counter(out, "jdocker_bytes_sent_total", "Bytes written to clients", bytesSent.sum());
+
+        out.append("# HELP jdocker_commands_total Commands handled\n# TYPE jdocker_commands_total counter\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            sample(out, "jdocker_commands_total", "command", entry.getKey().name(), entry.getValue().requests.sum());
+        }
+        out.append("# HELP jdocker_command_errors_total Commands answered with an error\n")
+                .append("# TYPE jdocker_command_errors_total counter\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            sample(out, "jdocker_command_errors_total", "command", entry.getKey().name(), entry.getValue().errors.sum());
+        }
+        out.append("# HELP jdocker_commands_rejected_total Commands turned away busy by admission control\n")
+                .append("# TYPE jdocker_commands_rejected_total counter\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            sample(out, "jdocker_commands_rejected_total", "command", entry.getKey().name(),
+                    entry.getValue().rejected.sum());
+        }
+        out.append("# HELP jdocker_commands_in_flight Commands being handled\n")
+                .append("# TYPE jdocker_commands_in_flight gauge\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            sample(out, "jdocker_commands_in_flight", "command", entry.getKey().name(), entry.getValue().inFlight.sum());
+        }
+
+        out.append("# HELP jdocker_command_server_seconds Command time outside engine calls\n")
+                .append("# TYPE jdocker_command_server_seconds histogram\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            histogram(out, "jdocker_command_server_seconds", "command", entry.getKey().name(), entry.getValue().serverTime);
+        }
+        out.append("# HELP jdocker_command_engine_seconds Command time spent in engine calls\n")
+                .append("# TYPE jdocker_command_engine_seconds histogram\n");
+        for (Map.Entry<CommandType, CommandMetrics> entry : commands.entrySet()) {
+            histogram(out, "jdocker_command_engine_seconds", "command", entry.getKey().name(), entry.getValue().engineTime);
+        }
+
+        out.append("# HELP jdocker_engine_calls_total Calls made to the container engine\n")
+                .append("# TYPE jdocker_engine_calls_total counter\n");
+        for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+            sample(out, "jdocker_engine_calls_total", "operation", entry.getKey(), entry.getValue().calls.sum());
+        }
+        out.append("# HELP jdocker_engine_errors_total Container engine calls that failed\n")
+                .append("# TYPE jdocker_engine_errors_total counter\n");
+        for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+            sample(out, "jdocker_engine_errors_total", "operation", entry.getKey(), entry.getValue().errors.sum());
+        }
+        out.append("# HELP jdocker_engine_call_seconds Container engine call latency\n")
+                .append("# TYPE jdocker_engine_call_seconds histogram\n");
+        for (Map.Entry<String, OperationMetrics> entry : operations.entrySet()) {
+            histogram(out, "jdocker_engine_call_seconds", "operation", entry.getKey(), entry.getValue().latency);
+        }
+        return out.toString();
+    }
+
+    private static double percentileMillis(BucketHistogram histogram, double percentile) {
+        long micros = histogram.getPercentileMicros(percentile);
+        if (micros < 0) {
+            return 0;
+        }
+        // Above the last bucket: report its bound, the real value is at least that
+        long bounded = Math.min(micros, BucketHistogram.BOUNDS_MICROS[BucketHistogram.BOUNDS_MICROS.length - 1]);
+        return bounded / 1000.0;
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" gauge\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(" counter\n")
+                .append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, long value) {
+        out.append(name).append('{').append(label).append("=\"").append(labelValue).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String label, String labelValue,
+                                  BucketHistogram histogram) {
+        long count = histogram.getCount();
+        if (count == 0) {
+            return;
+        }
+
+        long cumulative = 0;
+        for (int i = 0; i <= BucketHistogram.BOUNDS_MICROS.length; i++) {
+            cumulative += histogram.getBucketCount(i);
+            String le = i < BucketHistogram.BOUNDS_MICROS.length
+                    ? Double.toString(BucketHistogram.BOUNDS_MICROS[i] / 1_000_000.0)
+                    : "+Inf";
+            out.append(name).append("_bucket{").append(label).append("=\"").append(labelValue)
+                    .append("\",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum{").append(label).append("=\"").append(labelValue).append("\"} ")
+                .append(histogram.getSumMicros() / 1_000_000.0).append('\n');
+        out.append(name).append("_count{").append(label).append("=\"").append(labelValue).append("\"} ")
+                .append(count).append('\n');
+    }
+
+    private static class CommandMetrics {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final BucketHistogram serverTime = new BucketHistogram();
+        private final BucketHistogram engineTime = new BucketHistogram();
+    }
+
+    private static class OperationMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final BucketHistogram latency = new BucketHistogram();
+    }
+}
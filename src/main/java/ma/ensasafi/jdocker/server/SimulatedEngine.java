@@ -0,0 +1,1005 @@
+package ma.ensasafi.jdocker.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.exception.BadRequestException;
+import com.github.dockerjava.api.exception.ConflictException;
+import com.github.dockerjava.api.exception.InternalServerErrorException;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.api.model.EventActor;
+import com.github.dockerjava.api.model.EventType;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.PullResponseItem;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.api.model.StreamType;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.models.ImageInfo;
+import ma.ensasafi.jdocker.server.SimulationProfile.Operation;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * In-memory stand-in for a Docker daemon, used to measure the server without one.
+ * It is seeded with generated containers and images and answers like the daemon does:
+ * same state transitions, same exception types, events for every change, layered pull progress.
+ * Every operation first waits the profile's latency plus jitter, then may fail on purpose.
+ */
+public class SimulatedEngine implements ContainerEngine {
+    private static final String[] IMAGE_NAMES = {
+            "nginx", "redis", "postgres", "alpine", "ubuntu", "busybox", "node", "python", "httpd", "mysql"};
+    private static final String[] IMAGE_TAGS = {"latest", "stable", "alpine", "1.0", "2.4", "3.12", "16", "22.04"};
+    private static final String[] TIERS = {"web", "cache", "db"};
+    private static final int PULL_STEPS_PER_LAYER = 4;
+    private static final int STATS_CPUS = 4;
+    private static final long STATS_MEMORY_LIMIT = 8L << 30;
+    private static final int LOG_HISTORY = 1000;
+    private static final long LOG_INTERVAL_MILLIS = 50;
+    private static final String[] LOG_PATHS = {"/", "/index.html", "/api/items", "/api/users/42", "/health", "/static/app.js"};
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SimulationProfile profile;
+    private Map<String, SimulatedContainer> containers;
+    private Map<String, String> containerIdsByName;
+    // ID prefixes are resolved in these, like the daemon's own index
+    private PrefixIndex<SimulatedContainer> containerIds;
+    private PrefixIndex<String> imageReferencesById;
+    private Map<String, ImageInfo> imagesByReference;
+    private List<ResultCallback<Event>> eventListeners;
+    private ExecutorService pullExecutor;
+    private ScheduledExecutorService statsScheduler;
+    // Log and exec streams, one thread each for as long as they last
+    private ExecutorService streamExecutor;
+    // Exec exit codes, null while running; forgotten once read after the exec ended
+    private Map<String, SimulatedExec> execs;
+
+    public SimulatedEngine(SimulationProfile profile) {
+        this.profile = profile;
+        this.containers = new ConcurrentHashMap<>();
+        this.containerIdsByName = new ConcurrentHashMap<>();
+        this.containerIds = new PrefixIndex<>();
+        this.imageReferencesById = new PrefixIndex<>();
+        this.imagesByReference = new ConcurrentHashMap<>();
+        this.eventListeners = new CopyOnWriteArrayList<>();
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.pullExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "simulated-pull-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger streamCounter = new AtomicInteger(0);
+        this.streamExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "simulated-stream-" + streamCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.execs = new ConcurrentHashMap<>();
+        this.statsScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simulated-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        seed(new Random(profile.getSeed()));
+        System.out.println("✓ Simulated engine ready (" + containers.size() + " containers, "
+                + imagesByReference.size() + " images)");
+    }
+
+    private void seed(Random random) {
+        long now = System.currentTimeMillis();
+
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i < profile.getImages(); i++) {
+            String repository = i < IMAGE_NAMES.length ? IMAGE_NAMES[i] : "sim/app-" + i;
+            String tag = IMAGE_TAGS[random.nextInt(IMAGE_TAGS.length)];
+            long created = (now - (long) random.nextInt(365) * 86_400_000L) / 1000;
+            long size = 5_000_000L + (long) (random.nextDouble() * 900_000_000L);
+            addImage(new ImageInfo(randomHex(random, 64), repository, tag, size, created));
+            references.add(repository + ":" + tag);
+        }
+
+        for (int i = 0; i < profile.getContainers() && !references.isEmpty(); i++) {
+            Map<String, String> labels = new LinkedHashMap<>();
+            labels.put("sim", "true");
+            labels.put("app", "app-" + (i % 50));
+            labels.put("tier", TIERS[i % TIERS.length]);
+
+            long created = now - (long) (random.nextDouble() * 30 * 86_400_000L);
+            SimulatedContainer container = new SimulatedContainer(randomHex(random, 64), String.format("sim-%05d", i + 1),
+                    references.get(random.nextInt(references.size())), labels, created / 1000);
+
+            // Roughly like a busy host: most running, some exited, a few never started
+            int roll = random.nextInt(10);
+            if (roll < 6) {
+                container.state = "running";
+                container.startedAt = created + (long) (random.nextDouble() * (now - created));
+            } else if (roll < 9) {
+                container.state = "exited";
+                container.startedAt = created;
+                container.finishedAt = created + (long) (random.nextDouble() * (now - created));
+            }
+
+            containers.put(container.id, container);
+            containerIds.put(container.id, container);
+            containerIdsByName.put(container.name, container.id);
+        }
+    }
+
+    private void addImage(ImageInfo image) {
+        String reference = image.getRepository() + ":" + image.getTag();
+        imagesByReference.put(reference, image);
+        imageReferencesById.put(image.getId(), reference);
+    }
+
+    @Override
+    public String describe() {
+        return "Simulated (" + containers.size() + " containers, " + imagesByReference.size() + " images)";
+    }
+
+    // Simulated images carry no labels, so a label filter matches none of them
+    @Override
+    public List<ImageInfo> listImages(ImageFilter filter) {
+        simulate(Operation.LIST);
+        List<ImageInfo> images = new ArrayList<>();
+        if (!filter.hasLabels()) {
+            for (ImageInfo image : imagesByReference.values()) {
+                if (filter.matches(image)) {
+                    images.add(image);
+                }
+            }
+        }
+        images.sort(Comparator.comparing(ImageInfo::getCreated, Comparator.nullsLast(Comparator.reverseOrder())));
+        return images;
+    }
+
+    @Override
+    public List<ContainerInfo> listContainers(ContainerFilter filter) {
+        simulate(Operation.LIST);
+        List<ContainerInfo> listed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (SimulatedContainer container : containers.values()) {
+            ContainerInfo info = container.toInfoIfMatching(filter, now);
+            if (info != null) {
+                listed.add(info);
+            }
+        }
+        listed.sort(Comparator.comparing(ContainerInfo::getCreated, Comparator.nullsLast(Comparator.reverseOrder())));
+        return listed;
+    }
+
+    @Override
+    public ContainerInfo getContainer(String containerId) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = containers.get(containerId);
+        return container != null ? container.toInfo(System.currentTimeMillis()) : null;
+    }
+
+    @Override
+    public List<String> selectContainers(List<String> labels, String name) {
+        simulate(Operation.LIST);
+        List<String> ids = new ArrayList<>();
+        for (SimulatedContainer container : containers.values()) {
+            if (container.matches(labels, name)) {
+                ids.add(container.id);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public String createContainer(String imageName, String containerName) {
+        simulate(Operation.CREATE);
+        String reference = imageName.indexOf(':') > imageName.lastIndexOf('/') ? imageName : imageName + ":latest";
+        if (!imagesByReference.containsKey(reference)) {
+            reference = imageReference(imageName, reference);
+        }
+
+        String id = randomHex(ThreadLocalRandom.current(), 64);
+        String name = containerName != null ? containerName : "sim-" + id.substring(0, 12);
+        String existing = containerIdsByName.putIfAbsent(name, id);
+        if (existing != null) {
+            throw new ConflictException("Conflict. The container name \"/" + name
+                    + "\" is already in use by container \"" + existing + "\"");
+        }
+
+        SimulatedContainer container = new SimulatedContainer(id, name, reference, new LinkedHashMap<>(),
+                System.currentTimeMillis() / 1000);
+        containers.put(id, container);
+        containerIds.put(id, container);
+        publish(EventType.CONTAINER, "create", id, reference);
+        return id;
+    }
+
+    @Override
+    public void startContainer(String containerId) {
+        simulate(Operation.START);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            if ("running".equals(container.state)) {
+                throw new NotModifiedException("Container already started");
+            }
+            if ("paused".equals(container.state)) {
+                throw new ConflictException("Cannot start a paused container, try unpause instead");
+            }
+            container.state = "running";
+            container.startedAt = System.currentTimeMillis();
+        }
+        publish(EventType.CONTAINER, "start", container.id, container.image);
+    }
+
+    @Override
+    public void stopContainer(String containerId) {
+        simulate(Operation.STOP);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            if (!"running".equals(container.state) && !"paused".equals(container.state)) {
+                throw new NotModifiedException("Container already stopped");
+            }
+            container.state = "exited";
+            container.finishedAt = System.currentTimeMillis();
+        }
+        publish(EventType.CONTAINER, "stop", container.id, container.image);
+    }
+
+    @Override
+    public void deleteContainer(String containerId) {
+        simulate(Operation.DELETE);
+        SimulatedContainer container = resolve(containerId);
+        if (containers.remove(container.id) == null) {
+            throw new NotFoundException("No such container: " + containerId);
+        }
+        containerIds.remove(container.id);
+        containerIdsByName.remove(container.name, container.id);
+        publish(EventType.CONTAINER, "destroy", container.id, container.image);
+    }
+
+    // Names only change under containerIdsByName's entry for the new name, which is taken first
+    @Override
+    public void renameContainer(String containerId, String newName) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = resolve(containerId);
+        String name = newName.startsWith("/") ? newName.substring(1) : newName;
+        String existing = containerIdsByName.putIfAbsent(name, container.id);
+        if (existing != null && !existing.equals(container.id)) {
+            throw new ConflictException("Conflict. The container name \"/" + name
+                    + "\" is already in use by container \"" + existing + "\"");
+        }
+        String previous;
+        synchronized (container) {
+            previous = container.name;
+            container.name = name;
+        }
+        if (!previous.equals(name)) {
+            containerIdsByName.remove(previous, container.id);
+        }
+        publish(EventType.CONTAINER, "rename", container.id, container.image);
+    }
+
+    @Override
+    public void pauseContainer(String containerId) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            if (!"running".equals(container.state)) {
+                throw new ConflictException("Container " + container.id + " is not running");
+            }
+            container.state = "paused";
+        }
+        publish(EventType.CONTAINER, "pause", container.id, container.image);
+    }
+
+    @Override
+    public void unpauseContainer(String containerId) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            if (!"paused".equals(container.state)) {
+                throw new ConflictException("Container " + container.id + " is not paused");
+            }
+            container.state = "running";
+        }
+        publish(EventType.CONTAINER, "unpause", container.id, container.image);
+    }
+
+    @Override
+    public String getContainerState(String containerId) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            return container.state;
+        }
+    }
+
+    @Override
+    public void pullImage(String reference, ResultCallback<PullResponseItem> callback) {
+        pullExecutor.execute(() -> runPull(reference, callback));
+    }
+
+    @Override
+    public void streamStats(String containerId, ResultCallback<Statistics> callback) {
+        SimulatedContainer container;
+        try {
+            container = resolve(containerId);
+        } catch (NotFoundException e) {
+            callback.onError(e);
+            return;
+        }
+        StatsFeed feed = new StatsFeed(container, callback);
+        callback.onStart(feed);
+        feed.start();
+    }
+
+    @Override
+    public void streamLogs(String containerId, boolean follow, Integer tail, boolean timestamps,
+                           ResultCallback<Frame> callback) {
+        simulate(Operation.INSPECT);
+        SimulatedContainer container = resolve(containerId);
+        streamExecutor.execute(() -> runLogs(container, follow, tail, timestamps, callback));
+    }
+
+    @Override
+    public String execCommand(String containerId, List<String> command, boolean tty, InputStream stdin,
+                              ResultCallback<Frame> callback) {
+        simulate(Operation.START);
+        SimulatedContainer container = resolve(containerId);
+        synchronized (container) {
+            if (!"running".equals(container.state)) {
+                throw new ConflictException("Container " + container.id + " is not running");
+            }
+        }
+        if (command == null || command.isEmpty()) {
+            throw new BadRequestException("No exec command specified");
+        }
+
+        String execId = randomHex(ThreadLocalRandom.current(), 64);
+        SimulatedExec exec = new SimulatedExec(container, command, tty, stdin, callback);
+        execs.put(execId, exec);
+        streamExecutor.execute(exec);
+        return execId;
+    }
+
+    @Override
+    public Long getExecExitCode(String execId) {
+        simulate(Operation.INSPECT);
+        SimulatedExec exec = execs.get(execId);
+        if (exec == null) {
+            throw new NotFoundException("No such exec instance: " + execId);
+        }
+        Long exitCode = exec.exitCode;
+        if (exitCode != null) {
+            execs.remove(execId, exec);
+        }
+        return exitCode;
+    }
+
+    @Override
+    public Closeable subscribeEvents(ResultCallback<Event> callback) {
+        eventListeners.add(callback);
+        callback.onStart(() -> eventListeners.remove(callback));
+        return callback;
+    }
+
+    @Override
+    public void close() {
+        eventListeners.clear();
+        pullExecutor.shutdownNow();
+        streamExecutor.shutdownNow();
+        statsScheduler.shutdownNow();
+    }
+
+    private void runPull(String reference, ResultCallback<PullResponseItem> callback) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        callback.onStart(() -> closed.set(true));
+
+        try {
+            simulate(Operation.PULL);
+
+            // docker.io/library/nginx:latest is listed by the daemon as nginx:latest
+            String shortReference = reference.replaceFirst("^docker\\.io/(library/)?", "");
+            int digest = shortReference.indexOf('@');
+            int colon = shortReference.lastIndexOf(':');
+            String repository;
+            String tag;
+            if (digest >= 0) {
+                repository = shortReference.substring(0, digest);
+                tag = "<none>";
+            } else if (colon > shortReference.lastIndexOf('/')) {
+                repository = shortReference.substring(0, colon);
+                tag = shortReference.substring(colon + 1);
+            } else {
+                repository = shortReference;
+                tag = "latest";
+            }
+
+            if (imagesByReference.containsKey(repository + ":" + tag)) {
+                emit(callback, closed, null, "Status: Image is up to date for " + shortReference, null, null);
+                callback.onComplete();
+                return;
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            emit(callback, closed, tag, "Pulling from " + repository, null, null);
+            int layerCount = 2 + random.nextInt(4);
+            String[] layers = new String[layerCount];
+            long[] sizes = new long[layerCount];
+            for (int i = 0; i < layerCount; i++) {
+                layers[i] = randomHex(random, 12);
+                sizes[i] = 1_000_000L + random.nextLong(30_000_000L);
+                emit(callback, closed, layers[i], "Pulling fs layer", null, null);
+            }
+
+            long totalSize = 0;
+            for (int i = 0; i < layerCount; i++) {
+                for (int step = 1; step <= PULL_STEPS_PER_LAYER; step++) {
+                    // Each step costs one pull latency, so a pull takes layers x steps of it
+                    if (step > 1 || i > 0) {
+                        simulateDelay(Operation.PULL);
+                    }
+                    emit(callback, closed, layers[i], "Downloading", sizes[i] * step / PULL_STEPS_PER_LAYER, sizes[i]);
+                }
+                emit(callback, closed, layers[i], "Download complete", null, null);
+                emit(callback, closed, layers[i], "Pull complete", null, null);
+                totalSize += sizes[i];
+            }
+
+            emit(callback, closed, null, "Digest: sha256:" + randomHex(random, 64), null, null);
+            addImage(new ImageInfo(randomHex(random, 64), repository, tag, totalSize,
+                    System.currentTimeMillis() / 1000));
+            publish(EventType.IMAGE, "pull", repository + ":" + tag, null);
+            emit(callback, closed, null, "Status: Downloaded newer image for " + shortReference, null, null);
+            callback.onComplete();
+        } catch (PullClosedException e) {
+            // The caller closed the callback, which already released its waiter
+        } catch (Exception e) {
+            if (!closed.get()) {
+                callback.onError(e);
+            }
+        }
+    }
+
+    /*
+     * Access-log lines of a web server, numbered from the container's start: the history is the last
+     * LOG_HISTORY lines, and following adds one line every LOG_INTERVAL_MILLIS while it runs.
+     * Every tenth line is a warning on stderr.
+     */
+    private void runLogs(SimulatedContainer container, boolean follow, Integer tail, boolean timestamps,
+                         ResultCallback<Frame> callback) {
+        AtomicBoolean closed = new AtomicBoolean(false);
+        callback.onStart(() -> closed.set(true));
+
+        try {
+            long startedAt;
+            synchronized (container) {
+                startedAt = container.startedAt;
+            }
+            long now = System.currentTimeMillis();
+            long written = startedAt > 0 ? Math.max(0, (now - startedAt) / LOG_INTERVAL_MILLIS) : 0;
+            long first = Math.max(0, written - Math.min(LOG_HISTORY, tail != null ? tail : LOG_HISTORY));
+            for (long line = first; line < written && !closed.get(); line++) {
+                callback.onNext(logLine(container, line, startedAt + line * LOG_INTERVAL_MILLIS, timestamps));
+            }
+
+            long line = written;
+            while (follow && !closed.get()) {
+                synchronized (container) {
+                    if (!"running".equals(container.state) || !containers.containsKey(container.id)) {
+                        break;
+                    }
+                }
+                Thread.sleep(LOG_INTERVAL_MILLIS);
+                callback.onNext(logLine(container, line++, System.currentTimeMillis(), timestamps));
+            }
+            callback.onComplete();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            if (!closed.get()) {
+                callback.onError(e);
+            }
+        }
+    }
+
+    private static Frame logLine(SimulatedContainer container, long line, long time, boolean timestamps) {
+        int hash = (int) (line * 0x9E3779B1L ^ container.id.hashCode());
+        String prefix = timestamps ? Instant.ofEpochMilli(time) + " " : "";
+        if (line % 10 == 9) {
+            return new Frame(StreamType.STDERR, (prefix + "[warn] " + container.name + ": upstream slow, "
+                    + Math.floorMod(hash, 900) + " ms (request " + line + ")\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return new Frame(StreamType.STDOUT, (prefix + "172.17.0." + (2 + Math.floorMod(hash, 200))
+                + " - - \"GET " + LOG_PATHS[Math.floorMod(hash, LOG_PATHS.length)] + " HTTP/1.1\" 200 "
+                + (200 + Math.floorMod(hash >> 8, 20_000)) + " (request " + line + ")\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void emit(ResultCallback<PullResponseItem> callback, AtomicBoolean closed, String id, String status,
+                      Long current, Long total) {
+        if (closed.get()) {
+            throw new PullClosedException();
+        }
+
+        // The item classes are read-only, so build them the way docker-java does: from JSON fields
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("status", status);
+        if (id != null) {
+            fields.put("id", id);
+        }
+        if (total != null) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("current", current);
+            detail.put("total", total);
+            fields.put("progressDetail", detail);
+        }
+        callback.onNext(MAPPER.convertValue(fields, PullResponseItem.class));
+    }
+
+    private void publish(EventType type, String action, String id, String from) {
+        if (eventListeners.isEmpty()) {
+            return;
+        }
+
+        Event event = new Event(action, id, from, System.currentTimeMillis() / 1000)
+                .withType(type)
+                .withAction(action)
+                .withEventActor(new EventActor().withId(id));
+        for (ResultCallback<Event> listener : eventListeners) {
+            try {
+                listener.onNext(event);
+            } catch (Exception e) {
+                eventListeners.remove(listener);
+            }
+        }
+    }
+
+    // Exact ID, exact name, or an unambiguous ID prefix, like the daemon
+    private SimulatedContainer resolve(String idOrName) {
+        SimulatedContainer container = containers.get(idOrName);
+        if (container != null) {
+            return container;
+        }
+
+        String byName = containerIdsByName.get(idOrName.startsWith("/") ? idOrName.substring(1) : idOrName);
+        if (byName != null && (container = containers.get(byName)) != null) {
+            return container;
+        }
+
+        List<SimulatedContainer> matches = containerIds.find(idOrName, 2);
+        if (matches.size() > 1) {
+            throw new NotFoundException("Multiple IDs found with provided prefix: " + idOrName);
+        }
+        if (matches.isEmpty()) {
+            throw new NotFoundException("No such container: " + idOrName);
+        }
+        return matches.get(0);
+    }
+
+    // No repository matched: the daemon then takes the name as an image ID or ID prefix
+    private String imageReference(String imageName, String reference) {
+        String id = imageName.startsWith("sha256:") ? imageName.substring("sha256:".length()) : imageName;
+        List<String> matches = id.isEmpty() ? List.of() : imageReferencesById.find(id, 2);
+        if (matches.size() > 1) {
+            throw new NotFoundException("Multiple IDs found with provided prefix: " + imageName);
+        }
+        if (matches.isEmpty()) {
+            throw new NotFoundException("No such image: " + reference);
+        }
+        return matches.get(0);
+    }
+
+    private void simulate(Operation operation) {
+        simulateDelay(operation);
+
+        double failureRate = profile.getFailureRate(operation);
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            throw new InternalServerErrorException("Simulated " + operation.name().toLowerCase() + " failure");
+        }
+    }
+
+    private void simulateDelay(Operation operation) {
+        long delay = profile.getLatencyMillis(operation);
+        long jitter = profile.getJitterMillis(operation);
+        if (jitter > 0) {
+            delay += ThreadLocalRandom.current().nextLong(jitter + 1);
+        }
+        if (delay <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while simulating " + operation.name().toLowerCase());
+        }
+    }
+
+    private static String randomHex(Random random, int length) {
+        StringBuilder hex = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            hex.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return hex.toString();
+    }
+
+    // Docker's wording: "Up 5 minutes", "Exited (0) 2 hours ago"
+    static String humanDuration(long millis) {
+        long seconds = millis / 1000;
+        if (seconds < 1) {
+            return "Less than a second";
+        } else if (seconds < 60) {
+            return seconds + (seconds == 1 ? " second" : " seconds");
+        }
+
+        long minutes = seconds / 60;
+        if (minutes == 1) {
+            return "About a minute";
+        } else if (minutes < 60) {
+            return minutes + " minutes";
+        }
+
+        long hours = Math.round(seconds / 3600.0);
+        if (hours == 1) {
+            return "About an hour";
+        } else if (hours < 48) {
+            return hours + " hours";
+        } else if (hours < 24 * 14) {
+            return (hours / 24) + " days";
+        } else if (hours < 24 * 60) {
+            return (hours / 24 / 7) + " weeks";
+        }
+        return (hours / 24 / 30) + " months";
+    }
+
+    /*
+     * One sample a second for one container, like the daemon's stats stream: cumulative counters that
+     * keep growing plus the previous CPU reading. Each container has a steady load of its own, derived
+     * from its ID, that drifts a little from sample to sample.
+     */
+    private final class StatsFeed implements Closeable, Runnable {
+        private final SimulatedContainer container;
+        private final ResultCallback<Statistics> callback;
+        private final double baseLoad;
+        private final long baseMemory;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean closed;
+        private double load;
+        private long cpuTotal;
+        private long systemTotal;
+        private long rxBytes;
+        private long txBytes;
+        private long readBytes;
+        private long writeBytes;
+
+        StatsFeed(SimulatedContainer container, ResultCallback<Statistics> callback) {
+            this.container = container;
+            this.callback = callback;
+            Random random = new Random(container.id.hashCode());
+            // Mostly idle containers, a few busy ones
+            this.baseLoad = Math.pow(random.nextDouble(), 3) * STATS_CPUS * 0.8;
+            this.baseMemory = 20_000_000L + (long) (random.nextDouble() * 1_500_000_000L);
+            this.load = baseLoad;
+            this.systemTotal = System.nanoTime() * STATS_CPUS;
+        }
+
+        void start() {
+            future = statsScheduler.scheduleAtFixedRate(this, 0, 1, TimeUnit.SECONDS);
+            if (closed) {
+                future.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (closed) {
+                return;
+            }
+            boolean running;
+            synchronized (container) {
+                running = "running".equals(container.state);
+            }
+            if (!running || !containers.containsKey(container.id)) {
+                close();
+                callback.onComplete();
+                return;
+            }
+
+            try {
+                callback.onNext(next());
+            } catch (Exception e) {
+                close();
+            }
+        }
+
+        private Statistics next() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            load = Math.max(0, load + (baseLoad - load) * 0.2 + random.nextGaussian() * (0.02 + baseLoad * 0.1));
+            long previousCpu = cpuTotal;
+            long previousSystem = systemTotal;
+            cpuTotal += (long) (Math.min(load, STATS_CPUS) * 1_000_000_000L);
+            systemTotal += STATS_CPUS * 1_000_000_000L;
+            rxBytes += (long) (load * 2_000_000 * random.nextDouble());
+            txBytes += (long) (load * 1_000_000 * random.nextDouble());
+            readBytes += random.nextInt(10) == 0 ? random.nextInt(4_000_000) : 0;
+            writeBytes += (long) (load * 500_000 * random.nextDouble());
+            long memory = baseMemory + (long) (load * 50_000_000 * random.nextDouble());
+
+            // Statistics is read-only too: same route as the pull items
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("read", Instant.now().toString());
+            fields.put("cpu_stats", cpuFields(cpuTotal, systemTotal));
+            fields.put("precpu_stats", cpuFields(previousCpu, previousSystem));
+            fields.put("memory_stats", Map.of(
+                    "usage", memory + memory / 10,
+                    "limit", STATS_MEMORY_LIMIT,
+                    "stats", Map.of("inactive_file", memory / 10)));
+            fields.put("networks", Map.of("eth0", Map.of("rx_bytes", rxBytes, "tx_bytes", txBytes)));
+            fields.put("blkio_stats", Map.of("io_service_bytes_recursive", List.of(
+                    Map.of("major", 8, "minor", 0, "op", "read", "value", readBytes),
+                    Map.of("major", 8, "minor", 0, "op", "write", "value", writeBytes))));
+            return MAPPER.convertValue(fields, Statistics.class);
+        }
+
+        private Map<String, Object> cpuFields(long total, long system) {
+            return Map.of(
+                    "cpu_usage", Map.of("total_usage", total),
+                    "system_cpu_usage", system,
+                    "online_cpus", STATS_CPUS);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    /*
+     * A tiny shell for execs: echo, cat (copies stdin), yes (endless output, to exercise flow control),
+     * hostname, true, false, sleep and exit, and sh, which runs the same commands from -c or one per
+     * stdin line. Anything else fails like a missing binary, with 127.
+     */
+    private final class SimulatedExec implements Runnable {
+        private final SimulatedContainer container;
+        private final List<String> command;
+        private final boolean tty;
+        private final InputStream stdin;
+        private final ResultCallback<Frame> callback;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile Long exitCode;
+
+        SimulatedExec(SimulatedContainer container, List<String> command, boolean tty, InputStream stdin,
+                      ResultCallback<Frame> callback) {
+            this.container = container;
+            this.command = command;
+            this.tty = tty;
+            this.stdin = stdin;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            callback.onStart(() -> closed.set(true));
+            int code;
+            try {
+                code = runCommand(command);
+            } catch (ExecClosedException e) {
+                code = 130;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                code = 130;
+            } catch (Exception e) {
+                code = 1;
+            }
+            exitCode = (long) code;
+            if (!closed.get()) {
+                callback.onComplete();
+            }
+        }
+
+        private int runCommand(List<String> args) throws Exception {
+            String name = args.get(0);
+            switch (name) {
+                case "echo":
+                    out(String.join(" ", args.subList(1, args.size())) + "\n");
+                    return 0;
+                case "hostname":
+                    out(container.id.substring(0, 12) + "\n");
+                    return 0;
+                case "true":
+                    return 0;
+                case "false":
+                    return 1;
+                case "exit":
+                    return args.size() > 1 ? Integer.parseInt(args.get(1)) : 0;
+                case "sleep":
+                    Thread.sleep((long) (Double.parseDouble(args.size() > 1 ? args.get(1) : "1") * 1000));
+                    return 0;
+                case "yes":
+                    byte[] line = ((args.size() > 1 ? String.join(" ", args.subList(1, args.size())) : "y") + "\n")
+                            .getBytes(StandardCharsets.UTF_8);
+                    byte[] chunk = new byte[8192 - 8192 % line.length];
+                    for (int i = 0; i < chunk.length; i++) {
+                        chunk[i] = line[i % line.length];
+                    }
+                    while (true) {
+                        send(StreamType.STDOUT, chunk.clone());
+                    }
+                case "cat":
+                    if (stdin != null) {
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = stdin.read(buffer)) >= 0) {
+                            if (read > 0) {
+                                send(StreamType.STDOUT, Arrays.copyOf(buffer, read));
+                            }
+                        }
+                    }
+                    return 0;
+                case "sh":
+                case "bash":
+                    return shell(args);
+                default:
+                    err("exec: \"" + name + "\": executable file not found in $PATH\n");
+                    return 127;
+            }
+        }
+
+        private int shell(List<String> args) throws Exception {
+            if (args.size() > 2 && "-c".equals(args.get(1))) {
+                int code = 0;
+                for (String statement : args.get(2).split("[;\n]")) {
+                    if (!statement.isBlank()) {
+                        code = runStatement(statement);
+                    }
+                }
+                return code;
+            }
+            if (stdin == null) {
+                return 0;
+            }
+
+            BufferedReader lines = new BufferedReader(new InputStreamReader(stdin, StandardCharsets.UTF_8));
+            int code = 0;
+            String statement;
+            while ((statement = lines.readLine()) != null) {
+                if (tty) {
+                    // A terminal echoes what was typed
+                    out(statement + "\r\n");
+                }
+                if (statement.isBlank()) {
+                    continue;
+                }
+                if (statement.trim().startsWith("exit")) {
+                    return runStatement(statement);
+                }
+                code = runStatement(statement);
+            }
+            return code;
+        }
+
+        private int runStatement(String statement) throws Exception {
+            List<String> words = List.of(statement.trim().split("\\s+"));
+            if ("cat".equals(words.get(0)) || "sh".equals(words.get(0))) {
+                // Would read the shell's own stdin
+                err("sh: " + words.get(0) + ": not supported here\n");
+                return 2;
+            }
+            int code = runCommand(words);
+            if (code == 127) {
+                err("sh: " + words.get(0) + ": not found\n");
+            }
+            return code;
+        }
+
+        private void out(String text) {
+            send(StreamType.STDOUT, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void err(String text) {
+            send(StreamType.STDERR, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // A terminal has a single output stream: the daemon sends it raw
+        private void send(StreamType type, byte[] payload) {
+            if (closed.get()) {
+                throw new ExecClosedException();
+            }
+            callback.onNext(new Frame(tty ? StreamType.RAW : type, payload));
+        }
+    }
+
+    private static class ExecClosedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExecClosedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class PullClosedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PullClosedException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class SimulatedContainer {
+        private final String id;
+        // Guarded by this container, like state
+        private volatile String name;
+        private final String image;
+        private final Map<String, String> labels;
+        private final long created;
+        // Guarded by this container
+        private String state = "created";
+        private long startedAt;
+        private long finishedAt;
+
+        SimulatedContainer(String id, String name, String image, Map<String, String> labels, long created) {
+            this.id = id;
+            this.name = name;
+            this.image = image;
+            this.labels = labels;
+            this.created = created;
+        }
+
+        synchronized ContainerInfo toInfo(long now) {
+            String status;
+            if ("running".equals(state)) {
+                status = "Up " + humanDuration(now - startedAt);
+            } else if ("paused".equals(state)) {
+                status = "Up " + humanDuration(now - startedAt) + " (Paused)";
+            } else if ("exited".equals(state)) {
+                status = "Exited (0) " + humanDuration(now - finishedAt) + " ago";
+            } else {
+                status = "Created";
+            }
+            return new ContainerInfo(id, name, image, state, status, created);
+        }
+
+        // Filters on the raw fields so that only listed containers pay for a ContainerInfo
+        synchronized ContainerInfo toInfoIfMatching(ContainerFilter filter, long now) {
+            if (!filter.matches(name, image, state, created)
+                    || !ContainerFilter.labelsMatch(labels, filter.getLabels())) {
+                return null;
+            }
+            return toInfo(now);
+        }
+
+        // Labels are "key" or "key=value"; the name is matched as a substring
+        boolean matches(List<String> selectors, String namePattern) {
+            if (namePattern != null && !namePattern.isEmpty() && !name.contains(namePattern)) {
+                return false;
+            }
+            return ContainerFilter.labelsMatch(labels, selectors);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Size and behaviour of the simulated engine.
+ * Latency, jitter and failure rate take a default and optional per-operation overrides,
+ * written as "5" or "5,start=200,pull=50".
+ */
+public class SimulationProfile {
+    public enum Operation {
+        LIST,
+        INSPECT,
+        CREATE,
+        START,
+        STOP,
+        DELETE,
+        PULL
+    }
+
+    private int containers = 1000;
+    private int images = 50;
+    private long seed = 42;
+    private Map<Operation, Long> latencyMillis = new EnumMap<>(Operation.class);
+    private Map<Operation, Long> jitterMillis = new EnumMap<>(Operation.class);
+    private Map<Operation, Double> failureRates = new EnumMap<>(Operation.class);
+
+    public SimulationProfile() {
+        setLatency("0");
+        setJitter("0");
+        setFailureRate("0");
+    }
+
+    public int getContainers() {
+        return containers;
+    }
+
+    public void setContainers(int containers) {
+        this.containers = containers;
+    }
+
+    public int getImages() {
+        return images;
+    }
+
+    public void setImages(int images) {
+        this.images = images;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getLatencyMillis(Operation operation) {
+        return latencyMillis.get(operation);
+    }
+
+    public void setLatency(String spec) {
+        apply(spec, latencyMillis, Long::parseLong);
+    }
+
+    public long getJitterMillis(Operation operation) {
+        return jitterMillis.get(operation);
+    }
+
+    public void setJitter(String spec) {
+        apply(spec, jitterMillis, Long::parseLong);
+    }
+
+    public double getFailureRate(Operation operation) {
+        return failureRates.get(operation);
+    }
+
+    public void setFailureRate(String spec) {
+        apply(spec, failureRates, Double::parseDouble);
+    }
+
+    // Parses everything before touching the target, so a bad spec leaves the previous values
+    private static <T> void apply(String spec, Map<Operation, T> target, Function<String, T> parser) {
+        T defaultValue = null;
+        Map<Operation, T> overrides = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                defaultValue = parser.apply(entry);
+            } else {
+                Operation operation = Operation.valueOf(entry.substring(0, eq).trim().toUpperCase());
+                overrides.put(operation, parser.apply(entry.substring(eq + 1).trim()));
+            }
+        }
+
+        if (defaultValue != null) {
+            for (Operation operation : Operation.values()) {
+                target.put(operation, defaultValue);
+            }
+        }
+        target.putAll(overrides);
+    }
+}
@@ -0,0 +1,131 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.UnixSockets;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Blocking engine: one thread per connection, either a platform thread or a virtual thread
+public class SocketConnectionEngine implements ConnectionEngine {
+    private ServerSocket serverSocket;
+    // Null without --unix-socket; accepted on a thread of its own when TCP is on too
+    private ServerSocketChannel unixChannel;
+    private Path unixSocket;
+    private ExecutorService executorService;
+    private CommandDispatcher dispatcher;
+    private AtomicInteger clientCounter;
+    private int compressionThreshold;
+    private volatile boolean running;
+
+    public SocketConnectionEngine(ServerConfig config, CommandDispatcher dispatcher) throws IOException {
+        if (config.isTcpEnabled()) {
+            this.serverSocket = new ServerSocket(config.getPort());
+        }
+        if (config.getUnixSocket() != null) {
+            this.unixSocket = config.getUnixSocket();
+            try {
+                this.unixChannel = UnixSockets.bind(unixSocket, 50);
+            } catch (IOException e) {
+                if (serverSocket != null) {
+                    serverSocket.close();
+                }
+                throw e;
+            }
+        }
+        this.executorService = config.getEngine() == ConnectionEngineType.VIRTUAL
+                ? newVirtualThreadExecutor()
+                : Executors.newCachedThreadPool();
+        this.dispatcher = dispatcher;
+        this.clientCounter = new AtomicInteger(0);
+        this.compressionThreshold = config.getCompressionThreshold();
+        this.running = true;
+    }
+
+    @Override
+    public void start() {
+        if (unixChannel != null) {
+            if (serverSocket == null) {
+                acceptUnix();
+                return;
+            }
+            Thread acceptor = new Thread(this::acceptUnix, "unix-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        acceptTcp();
+    }
+
+    private void acceptTcp() {
+        while (running) {
+            try {
+                Socket clientSocket = serverSocket.accept();
+                int clientNum = clientCounter.incrementAndGet();
+                ClientHandler handler = new ClientHandler(clientSocket, dispatcher, executorService, clientNum,
+                        compressionThreshold);
+                executorService.execute(handler);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("✗ Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void acceptUnix() {
+        while (running) {
+            try {
+                SocketChannel channel = unixChannel.accept();
+                int clientNum = clientCounter.incrementAndGet();
+                ClientHandler handler = new ClientHandler(channel, dispatcher, executorService, clientNum,
+                        compressionThreshold);
+                executorService.execute(handler);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("✗ Error accepting client connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        running = false;
+
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+            if (unixChannel != null) {
+                UnixSockets.unbind(unixChannel, unixSocket);
+            }
+
+            executorService.shutdown();
+            if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                executorService.shutdownNow();
+            }
+        } catch (Exception e) {
+            System.err.println("✗ Error stopping connection engine: " + e.getMessage());
+            executorService.shutdownNow();
+        }
+    }
+
+    // The project targets Java 17, so virtual threads are looked up at runtime (Java 21+)
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("⚠ Virtual threads require Java 21+, falling back to platform threads");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.BlkioStatEntry;
+import com.github.dockerjava.api.model.BlkioStatsConfig;
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.StatisticNetworksConfig;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.api.model.StatsConfig;
+import ma.ensasafi.jdocker.models.ContainerInfo;
+import ma.ensasafi.jdocker.protocol.ContainerStats;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Resource usage of every running container, gathered once for all clients.
+ * One engine stats stream per running container feeds fixed-size rings at three resolutions
+ * (1s, 10s, 1m), so memory is bounded by the number of containers whatever the uptime or the
+ * number of viewers. The set of streams follows the running containers on each reconcile.
+ *
+ * Aggregate views such as "top 10 by CPU" are computed at most once per second and resolution and
+ * shared by every client asking in that second; a watcher costs one cached lookup per interval.
+ * Watchers are timed by one scheduler thread and their updates sent from a pool of watch threads,
+ * so between updates a watcher holds no thread at all.
+ */
+public class StatsCollector {
+    private static final long RECONCILE_SECONDS = 5;
+    // A container whose stream fell silent this long is left out of the views
+    private static final long STALE_SECONDS = 10;
+
+    public enum Resolution {
+        SECOND("1s", 1, 120),
+        TEN_SECONDS("10s", 10, 180),
+        MINUTE("1m", 60, 240);
+
+        private final String label;
+        private final int period;
+        private final int capacity;
+
+        Resolution(String label, int period, int capacity) {
+            this.label = label;
+            this.period = period;
+            this.capacity = capacity;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getPeriodSeconds() {
+            return period;
+        }
+
+        public static Resolution parse(String value) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equalsIgnoreCase(value)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("Unknown resolution: " + value + " (1s, 10s or 1m)");
+        }
+    }
+
+    // The field order of StatsRing
+    public enum Metric {
+        CPU("cpu"),
+        MEMORY("memory"),
+        NET_RX("netRx"),
+        NET_TX("netTx"),
+        BLOCK_READ("blockRead"),
+        BLOCK_WRITE("blockWrite");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        public static Metric parse(String value) {
+            for (Metric metric : values()) {
+                if (metric.label.equalsIgnoreCase(value)) {
+                    return metric;
+                }
+            }
+            throw new IllegalArgumentException("Unknown metric: " + value
+                    + " (cpu, memory, netRx, netTx, blockRead or blockWrite)");
+        }
+    }
+
+    private final ContainerEngine engine;
+    private final Supplier<List<ContainerInfo>> runningContainers;
+    private final Map<String, Collector> collectors;
+    // Sorted views, one per metric and resolution, replaced at most once per second
+    private final Map<String, View> views;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledThreadPoolExecutor watchTimer;
+    // Send the updates; only a client slow to take its update keeps one busy
+    private final ExecutorService watchSenders;
+    private final AtomicInteger watchers;
+    private volatile boolean running;
+
+    public StatsCollector(ContainerEngine engine, Supplier<List<ContainerInfo>> runningContainers) {
+        this.engine = engine;
+        this.runningContainers = runningContainers;
+        this.collectors = new ConcurrentHashMap<>();
+        this.views = new ConcurrentHashMap<>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "stats-watch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // A cancelled watch leaves nothing queued for up to an interval
+        this.watchTimer.setRemoveOnCancelPolicy(true);
+        AtomicInteger senders = new AtomicInteger();
+        this.watchSenders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stats-watch-" + senders.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchers = new AtomicInteger();
+    }
+
+    public void start() {
+        running = true;
+        scheduler.scheduleWithFixedDelay(this::reconcile, 0, RECONCILE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // Opens a stream for each running container without one and closes those of containers gone
+    private void reconcile() {
+        if (!running) {
+            return;
+        }
+
+        List<ContainerInfo> containers;
+        try {
+            containers = runningContainers.get();
+        } catch (Exception e) {
+            System.err.println("✗ Stats reconcile failed: " + e.getMessage());
+            return;
+        }
+
+        Set<String> ids = new HashSet<>();
+        for (ContainerInfo container : containers) {
+            ids.add(container.getId());
+            if (collectors.containsKey(container.getId())) {
+                continue;
+            }
+            Collector collector = new Collector(container.getId(), container.getName());
+            collectors.put(container.getId(), collector);
+            try {
+                engine.streamStats(container.getId(), collector);
+            } catch (Exception e) {
+                // Retried on the next reconcile
+                collectors.remove(container.getId(), collector);
+            }
+        }
+
+        for (Collector collector : collectors.values()) {
+            if (!ids.contains(collector.id)) {
+                collectors.remove(collector.id, collector);
+                collector.closeQuietly();
+            }
+        }
+    }
+
+    // The newest figures of the busiest containers by metric, highest first
+    public List<ContainerStats> top(int limit, Metric metric, Resolution resolution) {
+        List<ContainerStats> sorted = view(metric, resolution);
+        return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+
+    private List<ContainerStats> view(Metric metric, Resolution resolution) {
+        long second = System.currentTimeMillis() / 1000;
+        String key = metric.name() + "/" + resolution.name();
+        View cached = views.get(key);
+        if (cached != null && cached.second == second) {
+            return cached.stats;
+        }
+
+        List<ContainerStats> stats = new ArrayList<>();
+        for (Collector collector : collectors.values()) {
+            ContainerStats latest = collector.latest(resolution, second);
+            if (latest != null) {
+                stats.add(latest);
+            }
+        }
+        stats.sort(Comparator.comparingDouble((ContainerStats s) -> valueOf(s, metric)).reversed());
+        List<ContainerStats> frozen = List.copyOf(stats);
+        views.put(key, new View(second, frozen));
+        return frozen;
+    }
+
+    // Every interval of one container's history, oldest first; null when it is not tracked.
+    // The container is given by ID, name or ID prefix
+    public List<ContainerStats> history(String container, Resolution resolution) {
+        Collector collector = find(container);
+        return collector != null ? collector.history(resolution) : null;
+    }
+
+    // Newest figures of one container, null when it is not tracked or silent
+    public ContainerStats latest(String container, Resolution resolution) {
+        Collector collector = find(container);
+        return collector != null ? collector.latest(resolution, System.currentTimeMillis() / 1000) : null;
+    }
+
+    /*
+     * Runs update every intervalMillis until durationMillis have passed, the last time at the deadline.
+     * The returned future completes with the number of updates, or with what update threw; cancelling
+     * it stops the watch. Updates of one watch never overlap: the next is timed once the last is sent.
+     */
+    public CompletableFuture<Integer> watch(long intervalMillis, long durationMillis, Runnable update) {
+        Watch watch = new Watch(intervalMillis, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis),
+                update);
+        watchers.incrementAndGet();
+        watch.done.whenComplete((sent, error) -> {
+            watchers.decrementAndGet();
+            ScheduledFuture<?> next = watch.next;
+            if (next != null) {
+                next.cancel(false);
+            }
+        });
+        watch.schedule(0);
+        return watch.done;
+    }
+
+    private Collector find(String reference) {
+        Collector collector = collectors.get(reference);
+        if (collector != null) {
+            return collector;
+        }
+        String name = reference.startsWith("/") ? reference.substring(1) : reference;
+        Collector byPrefix = null;
+        boolean ambiguous = false;
+        for (Collector candidate : collectors.values()) {
+            if (name.equals(candidate.name)) {
+                return candidate;
+            }
+            if (candidate.id.startsWith(reference)) {
+                ambiguous |= byPrefix != null;
+                byPrefix = candidate;
+            }
+        }
+        return ambiguous ? null : byPrefix;
+    }
+
+    private static double valueOf(ContainerStats stats, Metric metric) {
+        switch (metric) {
+            case MEMORY:
+                return stats.getMemoryBytes();
+            case NET_RX:
+                return stats.getNetRxBytesPerSec();
+            case NET_TX:
+                return stats.getNetTxBytesPerSec();
+            case BLOCK_READ:
+                return stats.getBlockReadBytesPerSec();
+            case BLOCK_WRITE:
+                return stats.getBlockWriteBytesPerSec();
+            case CPU:
+            default:
+                return stats.getCpuPercent();
+        }
+    }
+
+    // Shape of the "stats" section of STATS
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("containers", collectors.size());
+        snapshot.put("watchers", watchers.get());
+        int intervals = 0;
+        for (Resolution resolution : Resolution.values()) {
+            intervals += resolution.capacity;
+        }
+        snapshot.put("bytesPerContainer", intervals * StatsRing.FIELDS * Float.BYTES);
+        return snapshot;
+    }
+
+    public void close() {
+        running = false;
+        scheduler.shutdownNow();
+        watchTimer.shutdownNow();
+        watchSenders.shutdownNow();
+        for (Collector collector : collectors.values()) {
+            collector.closeQuietly();
+        }
+        collectors.clear();
+    }
+
+    private final class Watch implements Runnable {
+        private final long intervalMillis;
+        private final long deadline;
+        private final Runnable update;
+        private final CompletableFuture<Integer> done = new CompletableFuture<>();
+        // Only touched by the thread sending the current update
+        private int sent;
+        private volatile ScheduledFuture<?> next;
+
+        Watch(long intervalMillis, long deadline, Runnable update) {
+            this.intervalMillis = intervalMillis;
+            this.deadline = deadline;
+            this.update = update;
+        }
+
+        void schedule(long delayMillis) {
+            try {
+                next = watchTimer.schedule(() -> {
+                    try {
+                        watchSenders.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        done.completeExceptionally(e);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                return;
+            }
+            sent++;
+
+            long wait = Math.min(intervalMillis, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            if (wait <= 0) {
+                done.complete(sent);
+            } else if (!done.isDone()) {
+                schedule(wait);
+            }
+        }
+    }
+
+    private static final class View {
+        private final long second;
+        private final List<ContainerStats> stats;
+
+        View(long second, List<ContainerStats> stats) {
+            this.second = second;
+            this.stats = stats;
+        }
+    }
+
+    /*
+     * One container's stats stream and history. The daemon reports cumulative counters: CPU% comes
+     * from the CPU time used against the host's since the previous reading, and the I/O rates from
+     * the counters' growth between two samples.
+     */
+    private final class Collector extends ResultCallback.Adapter<Statistics> {
+        private final String id;
+        private final String name;
+        // Guarded by this collector
+        private final StatsRing[] rings;
+        private final double[] sample = new double[StatsRing.FIELDS];
+        private long memoryLimit;
+        private long lastSecond = -1;
+        private long previousNanos = -1;
+        private long previousRx;
+        private long previousTx;
+        private long previousRead;
+        private long previousWrite;
+
+        Collector(String id, String name) {
+            this.id = id;
+            this.name = name;
+            Resolution[] resolutions = Resolution.values();
+            this.rings = new StatsRing[resolutions.length];
+            for (Resolution resolution : resolutions) {
+                rings[resolution.ordinal()] = new StatsRing(resolution.period, resolution.capacity);
+            }
+        }
+
+        @Override
+        public void onNext(Statistics statistics) {
+            long readNanos = readTime(statistics.getRead());
+            // Stopped containers report a zero time
+            if (readNanos <= 0) {
+                return;
+            }
+            synchronized (this) {
+                record(statistics, readNanos);
+            }
+        }
+
+        private void record(Statistics statistics, long readNanos) {
+            sample[Metric.CPU.ordinal()] = cpuPercent(statistics.getCpuStats(), statistics.getPreCpuStats());
+
+            MemoryStatsConfig memory = statistics.getMemoryStats();
+            if (memory != null) {
+                sample[Metric.MEMORY.ordinal()] = memoryUsage(memory);
+                memoryLimit = memory.getLimit() != null ? memory.getLimit() : 0;
+            }
+
+            long rx = 0;
+            long tx = 0;
+            if (statistics.getNetworks() != null) {
+                for (StatisticNetworksConfig network : statistics.getNetworks().values()) {
+                    rx += orZero(network.getRxBytes());
+                    tx += orZero(network.getTxBytes());
+                }
+            }
+            long read = 0;
+            long write = 0;
+            BlkioStatsConfig blkio = statistics.getBlkioStats();
+            if (blkio != null && blkio.getIoServiceBytesRecursive() != null) {
+                for (BlkioStatEntry entry : blkio.getIoServiceBytesRecursive()) {
+                    if ("read".equalsIgnoreCase(entry.getOp())) {
+                        read += orZero(entry.getValue());
+                    } else if ("write".equalsIgnoreCase(entry.getOp())) {
+                        write += orZero(entry.getValue());
+                    }
+                }
+            }
+
+            double elapsed = previousNanos < 0 ? 0 : (readNanos - previousNanos) / 1e9;
+            sample[Metric.NET_RX.ordinal()] = rate(rx, previousRx, elapsed);
+            sample[Metric.NET_TX.ordinal()] = rate(tx, previousTx, elapsed);
+            sample[Metric.BLOCK_READ.ordinal()] = rate(read, previousRead, elapsed);
+            sample[Metric.BLOCK_WRITE.ordinal()] = rate(write, previousWrite, elapsed);
+            previousNanos = readNanos;
+            previousRx = rx;
+            previousTx = tx;
+            previousRead = read;
+            previousWrite = write;
+
+            long second = readNanos / 1_000_000_000L;
+            for (StatsRing ring : rings) {
+                ring.record(second, sample);
+            }
+            lastSecond = Math.max(lastSecond, second);
+        }
+
+        // Newest complete interval, or the one filling when it is the first; null when silent
+        synchronized ContainerStats latest(Resolution resolution, long now) {
+            if (lastSecond < 0 || now - lastSecond > Math.max(STALE_SECONDS, resolution.period * 2L)) {
+                return null;
+            }
+            StatsRing ring = rings[resolution.ordinal()];
+            double[] values = new double[StatsRing.FIELDS];
+            int age = resolution.period > 1 && ring.read(1, values) ? 1 : 0;
+            if (age == 0 && !ring.read(0, values)) {
+                return null;
+            }
+            return toStats(ring.startOf(age), values);
+        }
+
+        synchronized List<ContainerStats> history(Resolution resolution) {
+            StatsRing ring = rings[resolution.ordinal()];
+            List<ContainerStats> history = new ArrayList<>(ring.size());
+            double[] values = new double[StatsRing.FIELDS];
+            for (int age = ring.size() - 1; age >= 0; age--) {
+                if (ring.read(age, values)) {
+                    history.add(toStats(ring.startOf(age), values));
+                }
+            }
+            return history;
+        }
+
+        private ContainerStats toStats(long time, double[] values) {
+            return new ContainerStats(id, name, time, values[Metric.CPU.ordinal()],
+                    (long) values[Metric.MEMORY.ordinal()], memoryLimit,
+                    values[Metric.NET_RX.ordinal()], values[Metric.NET_TX.ordinal()],
+                    values[Metric.BLOCK_READ.ordinal()], values[Metric.BLOCK_WRITE.ordinal()]);
+        }
+
+        // The stream ends when the container stops; the next reconcile drops or reopens it
+        @Override
+        public void onError(Throwable throwable) {
+            collectors.remove(id, this);
+            closeQuietly();
+        }
+
+        @Override
+        public void onComplete() {
+            collectors.remove(id, this);
+            closeQuietly();
+        }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (Exception e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static long readTime(String read) {
+        if (read == null) {
+            return System.currentTimeMillis() * 1_000_000L;
+        }
+        try {
+            Instant instant = Instant.parse(read);
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        } catch (DateTimeParseException e) {
+            return System.currentTimeMillis() * 1_000_000L;
+        }
+    }
+
+    // Like docker stats: the container's share of the host's CPU time, times the CPUs it can use
+    private static double cpuPercent(CpuStatsConfig cpu, CpuStatsConfig previous) {
+        if (cpu == null || previous == null || cpu.getCpuUsage() == null || previous.getCpuUsage() == null
+                || cpu.getSystemCpuUsage() == null || previous.getSystemCpuUsage() == null) {
+            return 0;
+        }
+        long cpuDelta = orZero(cpu.getCpuUsage().getTotalUsage()) - orZero(previous.getCpuUsage().getTotalUsage());
+        long systemDelta = cpu.getSystemCpuUsage() - previous.getSystemCpuUsage();
+        if (cpuDelta <= 0 || systemDelta <= 0) {
+            return 0;
+        }
+        long cpus = cpu.getOnlineCpus() != null ? cpu.getOnlineCpus()
+                : cpu.getCpuUsage().getPercpuUsage() != null ? cpu.getCpuUsage().getPercpuUsage().size() : 1;
+        return (double) cpuDelta / systemDelta * cpus * 100;
+    }
+
+    // Usage without the reclaimable page cache: inactive_file on cgroup v2, total_inactive_file or
+    // cache on v1
+    private static long memoryUsage(MemoryStatsConfig memory) {
+        long usage = orZero(memory.getUsage());
+        StatsConfig stats = memory.getStats();
+        if (stats == null) {
+            return usage;
+        }
+        Long reclaimable = stats.getInactiveFile() != null ? stats.getInactiveFile()
+                : stats.getTotalInactiveFile() != null ? stats.getTotalInactiveFile() : stats.getCache();
+        return reclaimable != null && reclaimable < usage ? usage - reclaimable : usage;
+    }
+
+    // Counters restart with the container: a drop counts as nothing transferred
+    private static double rate(long current, long previous, double elapsedSeconds) {
+        return elapsedSeconds > 0 && current >= previous ? (current - previous) / elapsedSeconds : 0;
+    }
+
+    private static long orZero(Long value) {
+        return value != null ? value : 0;
+    }
+}
@@ -0,0 +1,81 @@
+package ma.ensasafi.jdocker.server;
+
+import java.util.Arrays;
+
+/*
+ * History of one container at one resolution: the last capacity intervals of period seconds, the
+ * oldest overwritten first. An interval holds the mean of the samples recorded in it, NaN when it got
+ * none. Memory is allocated once, FIELDS floats per interval, so it does not grow with uptime.
+ * Callers synchronize.
+ */
+final class StatsRing {
+    // cpu %, memory, net rx/s, net tx/s, block read/s, block write/s
+    static final int FIELDS = 6;
+
+    private final int period;
+    private final int capacity;
+    private final float[] values;
+    private final double[] sums = new double[FIELDS];
+    private int samples;
+    // Interval number (epoch seconds / period) of the newest interval, -1 before the first sample
+    private long current = -1;
+    private int head;
+    private int size;
+
+    StatsRing(int period, int capacity) {
+        this.period = period;
+        this.capacity = capacity;
+        this.values = new float[capacity * FIELDS];
+        this.head = capacity - 1;
+    }
+
+    void record(long epochSeconds, double[] sample) {
+        long interval = epochSeconds / period;
+        if (interval < current) {
+            return;
+        }
+        if (interval > current) {
+            // Intervals without samples in between are kept as gaps
+            long advance = current < 0 ? 1 : Math.min(interval - current, capacity);
+            for (long i = 0; i < advance; i++) {
+                head = (head + 1) % capacity;
+                Arrays.fill(values, head * FIELDS, head * FIELDS + FIELDS, Float.NaN);
+                size = Math.min(size + 1, capacity);
+            }
+            current = interval;
+            Arrays.fill(sums, 0);
+            samples = 0;
+        }
+
+        samples++;
+        for (int field = 0; field < FIELDS; field++) {
+            sums[field] += sample[field];
+            values[head * FIELDS + field] = (float) (sums[field] / samples);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Start, in epoch seconds, of the interval age steps back from the newest
+    long startOf(int age) {
+        return (current - age) * period;
+    }
+
+    // Copies the interval age steps back from the newest (0 is the newest, possibly still filling);
+    // false when it is out of the history or a gap
+    boolean read(int age, double[] out) {
+        if (age < 0 || age >= size) {
+            return false;
+        }
+        int slot = Math.floorMod(head - age, capacity);
+        if (Float.isNaN(values[slot * FIELDS])) {
+            return false;
+        }
+        for (int field = 0; field < FIELDS; field++) {
+            out[field] = values[slot * FIELDS + field];
+        }
+        return true;
+    }
+}
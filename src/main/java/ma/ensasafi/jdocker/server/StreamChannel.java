@@ -0,0 +1,234 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * One log or exec stream of a connection. As the engine's callback it forwards each output frame's
+ * payload to the client as it came from docker-java, split to the credit the client granted. While
+ * the credit is spent the engine's callback thread waits, which pushes back on the daemon's socket
+ * instead of buffering output here; that thread belongs to this stream alone, so other streams and
+ * the server's workers keep going. The command that opened the stream answers once it has ended.
+ * Stdin, when attached, goes through a fixed buffer whose free space is what the client is granted.
+ */
+final class StreamChannel extends ResultCallback.Adapter<Frame> {
+    private static final int INPUT_BUFFER = 64 * 1024;
+
+    private final long id;
+    private final StreamMultiplexer owner;
+    private final InputPipe input;
+    // Guarded by this channel
+    private long credit;
+    private volatile boolean cancelled;
+    // Completes once the engine's stream is closed, exceptionally with the engine's error if any
+    private final CompletableFuture<Void> ended = new CompletableFuture<>();
+
+    StreamChannel(long id, StreamMultiplexer owner, long window, boolean attachInput) {
+        this.id = id;
+        this.owner = owner;
+        this.credit = window;
+        this.input = attachInput ? new InputPipe() : null;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    // What the engine reads as the process's stdin, null when none is attached
+    InputStream getInput() {
+        return input;
+    }
+
+    // Stdin the client may send before the first CREDIT frame
+    int getInitialInputCredit() {
+        return input != null ? INPUT_BUFFER : 0;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    CompletableFuture<Void> whenEnded() {
+        return ended;
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        ended.completeExceptionally(throwable);
+        super.onError(throwable);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            ended.complete(null);
+        }
+    }
+
+    @Override
+    public void onNext(Frame frame) {
+        byte[] payload = frame.getPayload();
+        if (payload == null) {
+            return;
+        }
+        byte kind = frame.getStreamType() == StreamType.STDERR ? StreamFrame.STDERR : StreamFrame.STDOUT;
+        try {
+            int offset = 0;
+            while (offset < payload.length) {
+                int length = acquire(Math.min(payload.length - offset, StreamFrame.MAX_CHUNK));
+                if (length == 0) {
+                    return;
+                }
+                owner.send(BinaryCodec.encodeStreamFrame(id, kind, payload, offset, length));
+                offset += length;
+            }
+        } catch (IOException e) {
+            cancel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+        }
+    }
+
+    // Up to wanted bytes of credit, waiting for some if none is left; 0 once cancelled
+    private synchronized int acquire(int wanted) throws InterruptedException {
+        while (credit == 0 && !cancelled) {
+            wait();
+        }
+        if (cancelled) {
+            return 0;
+        }
+        int granted = (int) Math.min(wanted, credit);
+        credit -= granted;
+        return granted;
+    }
+
+    synchronized void grant(long bytes) {
+        if (bytes > 0) {
+            credit = Math.min(credit + bytes, StreamFrame.MAX_WINDOW);
+            notifyAll();
+        }
+    }
+
+    // Called on the connection's reader: never waits
+    void input(byte[] buffer, int offset, int length) {
+        if (input == null || !input.offer(buffer, offset, length)) {
+            // More than it was granted: the client does not follow the protocol
+            cancel();
+        }
+    }
+
+    void endInput() {
+        if (input != null) {
+            input.end();
+        }
+    }
+
+    // Stops forwarding and closes the engine's stream; the command that opened it then answers
+    void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        endInput();
+        try {
+            close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    // Fixed ring buffer; every quarter of it read back is granted again to the client
+    private final class InputPipe extends InputStream {
+        private final byte[] ring = new byte[INPUT_BUFFER];
+        private int head;
+        private int size;
+        private int consumed;
+        private boolean ended;
+
+        synchronized boolean offer(byte[] buffer, int offset, int length) {
+            if (ended || length > ring.length - size) {
+                return ended;
+            }
+            int tail = (head + size) % ring.length;
+            int first = Math.min(length, ring.length - tail);
+            System.arraycopy(buffer, offset, ring, tail, first);
+            System.arraycopy(buffer, offset + first, ring, 0, length - first);
+            size += length;
+            notifyAll();
+            return true;
+        }
+
+        synchronized void end() {
+            ended = true;
+            notifyAll();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int read = read(one, 0, 1);
+            return read < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int read;
+            int regrant = 0;
+            synchronized (this) {
+                while (size == 0 && !ended) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while reading stdin");
+                    }
+                }
+                if (size == 0) {
+                    return -1;
+                }
+                read = Math.min(length, size);
+                int first = Math.min(read, ring.length - head);
+                System.arraycopy(ring, head, buffer, offset, first);
+                System.arraycopy(ring, 0, buffer, offset + first, read - first);
+                head = (head + read) % ring.length;
+                size -= read;
+                consumed += read;
+                if (consumed >= ring.length / 4 && !ended) {
+                    regrant = consumed;
+                    consumed = 0;
+                }
+            }
+            if (regrant > 0) {
+                try {
+                    owner.send(BinaryCodec.encodeStreamCredit(id, regrant));
+                } catch (IOException e) {
+                    end();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public synchronized int available() {
+            return size;
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ma.ensasafi.jdocker.server;
+
+import ma.ensasafi.jdocker.protocol.BinaryCodec;
+import ma.ensasafi.jdocker.protocol.StreamFrame;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Log and exec streams open on one connection, keyed by the ID the client chose for each.
+ * Stream frames from the client are handled on the connection's reader and never wait: credit wakes
+ * the stream's writer, stdin lands in a buffer the client was allowed to fill, so one stream that
+ * stalls holds up neither the other streams nor the commands of the connection.
+ */
+public class StreamMultiplexer {
+    private static final int MAX_STREAMS = 32;
+    private static final int MAX_EARLY_CANCELS = 1024;
+
+    // Writes one encoded frame to the connection, compressed like responses when negotiated
+    public interface FrameSink {
+        void send(byte[] frame) throws IOException;
+    }
+
+    private final FrameSink sink;
+    private final Map<Long, StreamChannel> streams;
+    // Streams cancelled before their command got to open them
+    private final Set<Long> earlyCancels;
+    private volatile boolean closed;
+
+    public StreamMultiplexer(FrameSink sink) {
+        this.sink = sink;
+        this.streams = new ConcurrentHashMap<>();
+        this.earlyCancels = ConcurrentHashMap.newKeySet();
+    }
+
+    /*
+     * Stream frames are handled as they arrive, possibly before the command that opens their stream:
+     * the client sends stdin and EOF only after the CREDIT frame sent here, and output credit only
+     * after output, so CANCEL is the one frame that can come early. window is the output the client
+     * accepts before its first CREDIT frame.
+     */
+    StreamChannel open(long id, long window, boolean attachInput) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (earlyCancels.remove(id)) {
+            throw new IllegalArgumentException("Stream " + id + " was cancelled");
+        }
+        if (streams.size() >= MAX_STREAMS) {
+            throw new IllegalArgumentException("Too many open streams on this connection (" + MAX_STREAMS + ")");
+        }
+        StreamChannel channel = new StreamChannel(id, this, window, attachInput);
+        if (streams.putIfAbsent(id, channel) != null) {
+            throw new IllegalArgumentException("Stream " + id + " is already open");
+        }
+        if (attachInput) {
+            try {
+                send(BinaryCodec.encodeStreamCredit(id, channel.getInitialInputCredit()));
+            } catch (IOException e) {
+                release(channel);
+                throw e;
+            }
+        }
+        return channel;
+    }
+
+    // Once the command answers: frames arriving later for the ID are dropped
+    void release(StreamChannel channel) {
+        streams.remove(channel.getId(), channel);
+        channel.cancel();
+    }
+
+    public void onFrame(StreamFrame frame) {
+        StreamChannel channel = streams.get(frame.getStream());
+        if (channel == null) {
+            if (frame.getKind() == StreamFrame.CANCEL && earlyCancels.size() < MAX_EARLY_CANCELS) {
+                earlyCancels.add(frame.getStream());
+            }
+            return;
+        }
+        switch (frame.getKind()) {
+            case StreamFrame.CREDIT:
+                channel.grant(frame.getCredit());
+                break;
+            case StreamFrame.STDIN:
+                channel.input(frame.getBuffer(), frame.getOffset(), frame.getLength());
+                break;
+            case StreamFrame.EOF:
+                channel.endInput();
+                break;
+            case StreamFrame.CANCEL:
+                channel.cancel();
+                break;
+            default:
+                // Output kinds only travel to the client
+        }
+    }
+
+    void send(byte[] frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        sink.send(frame);
+    }
+
+    // The connection is gone: every stream stops and its command answers into the void
+    public void closeAll() {
+        closed = true;
+        for (StreamChannel channel : streams.values()) {
+            channel.cancel();
+        }
+        streams.clear();
+    }
+}
@@ -0,0 +1,389 @@
+package ma.ensasafi.jdocker.server;
+
+import com.github.dockerjava.api.exception.ConflictException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Containers of selected images created ahead of time, so a CREATE for one of those images only
+ * renames a pooled container to the name asked for instead of waiting for the daemon to create one.
+ * With paused pools they are also started then paused, and the first START unpauses them.
+ *
+ * One thread refills the pools, no faster than the configured rate for all pools together, and
+ * recycles pooled containers that went stale: older than the maximum age, or created from an image
+ * that was pulled again since. Pooled containers are named "jdocker-warm-..."; those left behind by
+ * a server that did not stop cleanly are removed when the pool starts.
+ */
+public class WarmPool {
+    static final String NAME_PREFIX = "jdocker-warm-";
+    private static final long TICK_MILLIS = 100;
+    // How long a pool whose image cannot be created waits before trying again
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ContainerEngine engine;
+    private final boolean paused;
+    private final double rate;
+    private final double burst;
+    private final long maxAgeNanos;
+    // By normalized reference, fixed at construction
+    private final Map<String, Pool> pools;
+    // Claimed while paused and not started since, by ID and by the name they were claimed under
+    private final ConcurrentHashMap<String, Claim> pausedClaims;
+    // Taken out of a pool by a claim that found them stale, deleted by the refill thread
+    private final ConcurrentLinkedQueue<String> retiring;
+    private final ScheduledExecutorService refiller;
+    // Refill thread only
+    private double tokens;
+    private long refilledAt;
+    private volatile boolean running;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder created;
+    private final LongAdder recycled;
+    private final LongAdder failures;
+
+    public WarmPool(ContainerEngine engine, ServerConfig config) {
+        this.engine = engine;
+        this.paused = config.isWarmPoolPaused();
+        this.rate = config.getWarmPoolRate();
+        this.burst = Math.max(1, rate);
+        this.maxAgeNanos = TimeUnit.SECONDS.toNanos(config.getWarmPoolMaxAgeSeconds());
+        this.pools = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> pool : config.getWarmPool().entrySet()) {
+            pools.put(PullCoordinator.normalize(pool.getKey()), new Pool(pool.getKey(), pool.getValue()));
+        }
+        this.pausedClaims = new ConcurrentHashMap<>();
+        this.retiring = new ConcurrentLinkedQueue<>();
+        this.refiller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "warm-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.created = new LongAdder();
+        this.recycled = new LongAdder();
+        this.failures = new LongAdder();
+    }
+
+    public void start() {
+        running = true;
+        tokens = burst;
+        refilledAt = System.nanoTime();
+        refiller.execute(this::removeLeftovers);
+        refiller.scheduleWithFixedDelay(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * ID of a pooled container of imageName, renamed to containerName, or null when the image has
+     * no pool or its pool is empty. A name already in use is left for the engine's create to reject.
+     */
+    public String claim(String imageName, String containerName) {
+        Pool pool = pools.get(PullCoordinator.normalize(imageName));
+        if (pool == null) {
+            return null;
+        }
+        // Unnamed containers keep the pool's name, and "host/name" asks for a host the pool may not be on
+        if (containerName == null || containerName.isEmpty() || containerName.indexOf('/') >= 0) {
+            misses.increment();
+            return null;
+        }
+
+        Warm warm;
+        while ((warm = take(pool)) != null) {
+            try {
+                engine.renameContainer(warm.id, containerName);
+            } catch (ConflictException e) {
+                synchronized (pool) {
+                    pool.ready.addFirst(warm);
+                }
+                misses.increment();
+                return null;
+            } catch (Exception e) {
+                // Removed or broken behind the pool's back; the next one may do
+                failures.increment();
+                retiring.add(warm.id);
+                continue;
+            }
+
+            if (paused) {
+                Claim claim = new Claim(warm.id, containerName);
+                pausedClaims.put(warm.id, claim);
+                pausedClaims.put(containerName, claim);
+            }
+            hits.increment();
+            return warm.id;
+        }
+        misses.increment();
+        return null;
+    }
+
+    // The oldest fresh container of the pool; stale ones met on the way are left to the refill thread
+    private Warm take(Pool pool) {
+        long now = System.nanoTime();
+        synchronized (pool) {
+            Warm warm;
+            while ((warm = pool.ready.pollFirst()) != null) {
+                if (!isStale(pool, warm, now)) {
+                    return warm;
+                }
+                retiring.add(warm.id);
+            }
+            return null;
+        }
+    }
+
+    /*
+     * Unpauses a container claimed paused and not started since, given by ID or by the name it was
+     * claimed under; false for any other container, which is started the usual way.
+     */
+    public boolean resume(String containerId) {
+        String id = release(containerId);
+        if (id == null) {
+            return false;
+        }
+        try {
+            engine.unpauseContainer(id);
+        } catch (ConflictException e) {
+            // Unpaused meanwhile by someone else: an ordinary start then
+            return false;
+        }
+        return true;
+    }
+
+    // A claimed container being stopped or deleted needs no unpause anymore
+    public void forget(String containerId) {
+        release(containerId);
+    }
+
+    private String release(String reference) {
+        if (pausedClaims.isEmpty()) {
+            return null;
+        }
+        Claim claim = pausedClaims.remove(reference);
+        if (claim == null) {
+            return null;
+        }
+        pausedClaims.remove(claim.id, claim);
+        pausedClaims.remove(claim.name, claim);
+        return claim.id;
+    }
+
+    /*
+     * A pull may have brought a new image under reference: what the pool holds for it is stale, and a
+     * pool that failed because the image was missing can try again at once.
+     */
+    public void imagePulled(String reference) {
+        Pool pool = pools.get(reference);
+        if (pool != null) {
+            pool.generation.incrementAndGet();
+            pool.retryAt = System.nanoTime();
+        }
+    }
+
+    private boolean isStale(Pool pool, Warm warm, long now) {
+        return warm.generation != pool.generation.get() || now - warm.createdAt > maxAgeNanos;
+    }
+
+    private void tick() {
+        if (!running) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            for (Pool pool : pools.values()) {
+                recycle(pool, now);
+            }
+            String id;
+            while ((id = retiring.poll()) != null) {
+                remove(id);
+            }
+            for (Pool pool : pools.values()) {
+                refill(pool);
+            }
+        } catch (Exception e) {
+            System.err.println("✗ Warm pool refill failed: " + e.getMessage());
+        }
+    }
+
+    private void recycle(Pool pool, long now) {
+        List<Warm> stale = new ArrayList<>();
+        synchronized (pool) {
+            Iterator<Warm> ready = pool.ready.iterator();
+            while (ready.hasNext()) {
+                Warm warm = ready.next();
+                if (isStale(pool, warm, now)) {
+                    ready.remove();
+                    stale.add(warm);
+                }
+            }
+        }
+        for (Warm warm : stale) {
+            remove(warm.id);
+        }
+    }
+
+    // Creates containers until the pool is full, the rate is used up or the engine fails
+    private void refill(Pool pool) {
+        while (running && System.nanoTime() - pool.retryAt >= 0 && pool.available() < pool.size && takeToken()) {
+            int generation = pool.generation.get();
+            String id = null;
+            try {
+                id = engine.createContainer(pool.image, NAME_PREFIX + randomSuffix());
+                if (paused) {
+                    engine.startContainer(id);
+                    engine.pauseContainer(id);
+                }
+            } catch (Exception e) {
+                failures.increment();
+                pool.retryAt = System.nanoTime() + FAILURE_BACKOFF_NANOS;
+                System.err.println("⚠ Warm pool for " + pool.image + " failed to create a container: "
+                        + e.getMessage());
+                if (id != null) {
+                    remove(id);
+                }
+                return;
+            }
+
+            created.increment();
+            synchronized (pool) {
+                pool.ready.addLast(new Warm(id, System.nanoTime(), generation));
+            }
+        }
+    }
+
+    private boolean takeToken() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1_000_000_000.0);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private void remove(String containerId) {
+        try {
+            engine.deleteContainer(containerId);
+            recycled.increment();
+        } catch (Exception e) {
+            // Already gone
+        }
+    }
+
+    // Pooled containers of a previous run were never claimed, nobody else knows them
+    private void removeLeftovers() {
+        try {
+            for (String id : engine.selectContainers(null, NAME_PREFIX)) {
+                remove(id);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠ Could not remove leftover pooled containers: " + e.getMessage());
+        }
+    }
+
+    private static String randomSuffix() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("paused", paused);
+        snapshot.put("hits", hits.sum());
+        snapshot.put("misses", misses.sum());
+        snapshot.put("created", created.sum());
+        snapshot.put("recycled", recycled.sum());
+        snapshot.put("failures", failures.sum());
+        Map<String, Object> available = new LinkedHashMap<>();
+        for (Pool pool : pools.values()) {
+            available.put(pool.image, pool.available() + "/" + pool.size);
+        }
+        snapshot.put("available", available);
+        return snapshot;
+    }
+
+    // Stops refilling and removes the containers nobody claimed
+    public void close() {
+        running = false;
+        refiller.shutdown();
+        try {
+            refiller.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        refiller.shutdownNow();
+
+        for (Pool pool : pools.values()) {
+            List<Warm> unclaimed;
+            synchronized (pool) {
+                unclaimed = new ArrayList<>(pool.ready);
+                pool.ready.clear();
+            }
+            for (Warm warm : unclaimed) {
+                remove(warm.id);
+            }
+        }
+        String id;
+        while ((id = retiring.poll()) != null) {
+            remove(id);
+        }
+    }
+
+    private static final class Pool {
+        // As configured, which is what the engine creates from
+        private final String image;
+        private final int size;
+        // Oldest first; guarded by this pool
+        private final ArrayDeque<Warm> ready = new ArrayDeque<>();
+        // Bumped by each pull of the image
+        private final AtomicInteger generation = new AtomicInteger();
+        // Set by the refill thread after a failure, cleared by a pull
+        private volatile long retryAt = System.nanoTime();
+
+        Pool(String image, int size) {
+            this.image = image;
+            this.size = size;
+        }
+
+        synchronized int available() {
+            return ready.size();
+        }
+    }
+
+    private static final class Warm {
+        private final String id;
+        private final long createdAt;
+        private final int generation;
+
+        Warm(String id, long createdAt, int generation) {
+            this.id = id;
+            this.createdAt = createdAt;
+            this.generation = generation;
+        }
+    }
+
+    private static final class Claim {
+        private final String id;
+        private final String name;
+
+        Claim(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}